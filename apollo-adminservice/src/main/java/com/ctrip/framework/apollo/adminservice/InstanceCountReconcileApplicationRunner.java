@@ -0,0 +1,115 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.adminservice;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.service.JobLeaseService;
+import com.ctrip.framework.apollo.biz.service.NamespaceInstanceCountService;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reconcile the materialized instance counts of the namespaces with the active instance configs.
+ * <p>
+ * The counts are increased incrementally by the instance config audits, but the instance configs
+ * falling out of the active window, purged or lost in a failed increase are only corrected here.
+ * The reconciliation runs on the admin service holding the job lease only.
+ */
+@Component
+public class InstanceCountReconcileApplicationRunner implements ApplicationRunner {
+  private static final Logger logger = LoggerFactory.getLogger(
+      InstanceCountReconcileApplicationRunner.class);
+  private static final String JOB_NAME = "InstanceCountReconcile";
+  private static final long INITIAL_DELAY_IN_MINUTES = 1;
+
+  private final ScheduledExecutorService reconcileExecutorService;
+  private final NamespaceInstanceCountService namespaceInstanceCountService;
+  private final JobLeaseService jobLeaseService;
+  private final BizConfig bizConfig;
+  private final Counter countersCorrected;
+
+  public InstanceCountReconcileApplicationRunner(
+      final NamespaceInstanceCountService namespaceInstanceCountService,
+      final JobLeaseService jobLeaseService,
+      final BizConfig bizConfig,
+      final MeterRegistry meterRegistry) {
+    this.namespaceInstanceCountService = namespaceInstanceCountService;
+    this.jobLeaseService = jobLeaseService;
+    this.bizConfig = bizConfig;
+    this.reconcileExecutorService = Executors.newSingleThreadScheduledExecutor(
+        ApolloThreadFactory.create("InstanceCountReconcile", true));
+    this.countersCorrected = meterRegistry.counter("instance.count.reconcile.corrected");
+  }
+
+  @Override
+  public void run(ApplicationArguments args) throws Exception {
+    reconcileExecutorService.scheduleWithFixedDelay(this::reconcileInstanceCounts,
+        INITIAL_DELAY_IN_MINUTES, bizConfig.instanceCountReconcileIntervalInMinutes(),
+        TimeUnit.MINUTES);
+  }
+
+  void reconcileInstanceCounts() {
+    Transaction transaction = Tracer.newTransaction("Apollo.InstanceCountReconcile",
+        "reconcileInstanceCounts");
+    try {
+      //held across the runs by the same admin service, and taken over by others if it is gone
+      long leaseInMilli = TimeUnit.MINUTES.toMillis(
+          bizConfig.instanceCountReconcileIntervalInMinutes() * 2L);
+      if (!jobLeaseService.tryAcquireLease(JOB_NAME, leaseInMilli)) {
+        transaction.setStatus(Transaction.SUCCESS);
+        return;
+      }
+      int corrected = namespaceInstanceCountService.reconcileInstanceCounts();
+      countersCorrected.increment(corrected);
+      if (corrected > 0) {
+        logger.info("Corrected {} namespace instance counts", corrected);
+      }
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.error("Reconcile namespace instance counts failed", ex);
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  @PreDestroy
+  void stopReconcile() {
+    reconcileExecutorService.shutdownNow();
+    releaseLease();
+  }
+
+  private void releaseLease() {
+    try {
+      jobLeaseService.releaseLease(JOB_NAME);
+    } catch (Throwable ex) {
+      logger.warn("Release the lease of {} failed", JOB_NAME, ex);
+    }
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.adminservice;
+
+import static com.ctrip.framework.apollo.biz.config.BizConfig.DEFAULT_INSTANCE_RETENTION_DAYS;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.Instance;
+import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
+import com.ctrip.framework.apollo.biz.service.InstanceService;
+import com.ctrip.framework.apollo.biz.service.JobLeaseService;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * Purge the instance configs which are not refreshed within the retention days, then the instances
+ * left without instance configs.
+ * <p>
+ * Rows are scanned in id order and deleted in batches of 500, each batch in its own short
+ * transaction and followed by a pause, so that the purge neither holds locks for long nor competes
+ * with the instance config audits of the config services. The purge runs on the admin service
+ * holding the job lease only, which is renewed before each batch, and stops once the lease is lost.
+ */
+@Component
+public class InstanceRetentionApplicationRunner implements ApplicationRunner {
+  private static final Logger logger = LoggerFactory.getLogger(
+      InstanceRetentionApplicationRunner.class);
+  private static final String JOB_NAME = "InstanceRetention";
+  private static final long PURGE_INTERVAL_IN_MINUTES = 60;
+  //held across the runs by the same admin service, and taken over by others if it is gone
+  private static final long LEASE_IN_MILLI = TimeUnit.MINUTES.toMillis(
+      PURGE_INTERVAL_IN_MINUTES * 2);
+  //same as the page size of the findFirst500 queries
+  private static final int BATCH_SIZE = 500;
+  private static final String INSTANCE_TABLE = "Instance";
+  private static final String INSTANCE_CONFIG_TABLE = "InstanceConfig";
+
+  private final ScheduledExecutorService purgeExecutorService;
+  private final InstanceService instanceService;
+  private final JobLeaseService jobLeaseService;
+  private final BizConfig bizConfig;
+  private final Counter instanceConfigsScanned;
+  private final Counter instanceConfigsPurged;
+  private final Counter instancesScanned;
+  private final Counter instancesPurged;
+
+  public InstanceRetentionApplicationRunner(
+      final InstanceService instanceService,
+      final JobLeaseService jobLeaseService,
+      final BizConfig bizConfig,
+      final MeterRegistry meterRegistry) {
+    this.instanceService = instanceService;
+    this.jobLeaseService = jobLeaseService;
+    this.bizConfig = bizConfig;
+    this.purgeExecutorService = Executors.newSingleThreadScheduledExecutor(
+        ApolloThreadFactory.create("InstanceRetention", true));
+    this.instanceConfigsScanned = meterRegistry.counter("instance.retention.scanned", "table",
+        INSTANCE_CONFIG_TABLE);
+    this.instanceConfigsPurged = meterRegistry.counter("instance.retention.purged", "table",
+        INSTANCE_CONFIG_TABLE);
+    this.instancesScanned = meterRegistry.counter("instance.retention.scanned", "table",
+        INSTANCE_TABLE);
+    this.instancesPurged = meterRegistry.counter("instance.retention.purged", "table",
+        INSTANCE_TABLE);
+  }
+
+  @Override
+  public void run(ApplicationArguments args) throws Exception {
+    purgeExecutorService.scheduleWithFixedDelay(this::purgeExpiredInstances,
+        PURGE_INTERVAL_IN_MINUTES, PURGE_INTERVAL_IN_MINUTES, TimeUnit.MINUTES);
+  }
+
+  void purgeExpiredInstances() {
+    int retentionDays = bizConfig.instanceRetentionDays();
+    if (retentionDays == DEFAULT_INSTANCE_RETENTION_DAYS) {
+      return;
+    }
+    Date expireDate = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays));
+
+    Transaction transaction = Tracer.newTransaction("Apollo.InstanceRetention",
+        "purgeExpiredInstances");
+    try {
+      if (!jobLeaseService.tryAcquireLease(JOB_NAME, LEASE_IN_MILLI)) {
+        transaction.setStatus(Transaction.SUCCESS);
+        return;
+      }
+      long instanceConfigs = purge(INSTANCE_CONFIG_TABLE,
+          lastId -> instanceService.findInstanceConfigsModifiedBefore(lastId, expireDate),
+          InstanceConfig::getId,
+          ids -> instanceService.batchDeleteInstanceConfigsModifiedBefore(ids, expireDate),
+          instanceConfigsScanned, instanceConfigsPurged);
+      long instances = purge(INSTANCE_TABLE,
+          lastId -> instanceService.findInstancesModifiedBefore(lastId, expireDate),
+          Instance::getId,
+          ids -> instanceService.batchDeleteUnusedInstancesModifiedBefore(ids, expireDate),
+          instancesScanned, instancesPurged);
+      logger.info("Purged {} instance configs and {} instances not active since {}",
+          instanceConfigs, instances, expireDate);
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      transaction.setStatus(ex);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.error("Purge expired instances failed", ex);
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  private <T> long purge(String table, Function<Long, List<T>> findBatch, ToLongFunction<T> getId,
+      Function<List<Long>, Integer> deleteBatch, Counter scanned, Counter purged)
+      throws InterruptedException {
+    long purgedCount = 0;
+    long lastId = 0;
+    boolean hasMore = true;
+    while (hasMore && !Thread.currentThread().isInterrupted()) {
+      if (!jobLeaseService.tryAcquireLease(JOB_NAME, LEASE_IN_MILLI)) {
+        logger.warn("Lost the lease of {}, stop purging {} at id {}", JOB_NAME, table, lastId);
+        break;
+      }
+      List<T> batch = findBatch.apply(lastId);
+      if (batch.isEmpty()) {
+        break;
+      }
+      List<Long> ids = batch.stream().map(getId::applyAsLong).collect(Collectors.toList());
+      int deleted = deleteBatch.apply(ids);
+      scanned.increment(ids.size());
+      purged.increment(deleted);
+      purgedCount += deleted;
+      lastId = ids.get(ids.size() - 1);
+      Tracer.logEvent("Apollo.InstanceRetention.Purged", table + ":" + lastId);
+      hasMore = batch.size() == BATCH_SIZE;
+      if (hasMore) {
+        TimeUnit.MILLISECONDS.sleep(bizConfig.instanceRetentionBatchIntervalInMilli());
+      }
+    }
+    return purgedCount;
+  }
+
+  @PreDestroy
+  void stopPurge() {
+    purgeExecutorService.shutdownNow();
+    releaseLease();
+  }
+
+  private void releaseLease() {
+    try {
+      jobLeaseService.releaseLease(JOB_NAME);
+    } catch (Throwable ex) {
+      logger.warn("Release the lease of {} failed", JOB_NAME, ex);
+    }
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.adminservice;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.ReleaseHistory;
+import com.ctrip.framework.apollo.biz.service.JobLeaseService;
+import com.ctrip.framework.apollo.biz.service.ReleaseHistoryService;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * Purge the release histories beyond the retention sizes of their namespace branches, together with
+ * the releases no longer referenced by any release history.
+ * <p>
+ * The namespace branches beyond their retention sizes are found with one grouped query over all
+ * the release histories on the first run and whenever the retention sizes change, and afterwards
+ * only among the namespace branches with release histories created since the last run. Their
+ * release histories are purged in batches of 500, each batch with one statement per table in its
+ * own short transaction and followed by a pause. The purge runs on the admin service holding the
+ * job lease only.
+ */
+@Component
+public class ReleaseHistoryRetentionApplicationRunner implements ApplicationRunner {
+  private static final Logger logger = LoggerFactory.getLogger(
+      ReleaseHistoryRetentionApplicationRunner.class);
+  //same as the page size of the findFirst500 query
+  private static final int BATCH_SIZE = 500;
+  private static final String JOB_NAME = "ReleaseHistoryRetention";
+  private static final String RELEASE_HISTORY_TABLE = "ReleaseHistory";
+  private static final String RELEASE_TABLE = "Release";
+
+  private final ScheduledExecutorService purgeExecutorService;
+  private final ReleaseHistoryService releaseHistoryService;
+  private final JobLeaseService jobLeaseService;
+  private final BizConfig bizConfig;
+  private final AtomicLong namespacesBeyondRetention;
+  private final Counter releaseHistoriesPurged;
+  private final Counter releasesPurged;
+  //the release histories scanned and the retention sizes of the last run, only accessed by the
+  //purge thread
+  private long scannedMaxId;
+  private int lastRetentionSize;
+  private Map<String, Integer> lastRetentionSizeOverride = Collections.emptyMap();
+
+  public ReleaseHistoryRetentionApplicationRunner(
+      final ReleaseHistoryService releaseHistoryService,
+      final JobLeaseService jobLeaseService,
+      final BizConfig bizConfig,
+      final MeterRegistry meterRegistry) {
+    this.releaseHistoryService = releaseHistoryService;
+    this.jobLeaseService = jobLeaseService;
+    this.bizConfig = bizConfig;
+    this.purgeExecutorService = Executors.newSingleThreadScheduledExecutor(
+        ApolloThreadFactory.create("ReleaseHistoryRetention", true));
+    this.namespacesBeyondRetention = meterRegistry.gauge("release.history.retention.namespaces",
+        new AtomicLong());
+    this.releaseHistoriesPurged = meterRegistry.counter("release.history.retention.purged",
+        "table", RELEASE_HISTORY_TABLE);
+    this.releasesPurged = meterRegistry.counter("release.history.retention.purged", "table",
+        RELEASE_TABLE);
+  }
+
+  @Override
+  public void run(ApplicationArguments args) throws Exception {
+    int interval = bizConfig.releaseHistoryRetentionPurgeInterval();
+    purgeExecutorService.scheduleWithFixedDelay(this::purgeReleaseHistories, interval, interval,
+        bizConfig.releaseHistoryRetentionPurgeIntervalTimeUnit());
+  }
+
+  void purgeReleaseHistories() {
+    Transaction transaction = Tracer.newTransaction("Apollo.ReleaseHistoryRetention",
+        "purgeReleaseHistories");
+    try {
+      //held across the runs by the same admin service, and taken over by others if it is gone
+      long leaseInMilli = bizConfig.releaseHistoryRetentionPurgeIntervalTimeUnit().toMillis(
+          bizConfig.releaseHistoryRetentionPurgeInterval() * 2L);
+      if (!jobLeaseService.tryAcquireLease(JOB_NAME, leaseInMilli)) {
+        transaction.setStatus(Transaction.SUCCESS);
+        return;
+      }
+      Long maxId = releaseHistoryService.findMaxReleaseHistoryId();
+      if (maxId == null) {
+        transaction.setStatus(Transaction.SUCCESS);
+        return;
+      }
+
+      int retentionSize = bizConfig.releaseHistoryRetentionSize();
+      Map<String, Integer> retentionSizeOverride = bizConfig.releaseHistoryRetentionSizeOverride();
+      boolean fullScan = scannedMaxId == 0 || retentionSize != lastRetentionSize
+          || !retentionSizeOverride.equals(lastRetentionSizeOverride);
+      List<ReleaseHistory> latestOutOfRetention = fullScan
+          ? releaseHistoryService.findLatestReleaseHistoriesOutOfRetention()
+          : releaseHistoryService.findLatestReleaseHistoriesOutOfRetention(scannedMaxId, maxId);
+      namespacesBeyondRetention.set(latestOutOfRetention.size());
+
+      long purged = 0;
+      for (ReleaseHistory releaseHistory : latestOutOfRetention) {
+        if (Thread.currentThread().isInterrupted()) {
+          break;
+        }
+        purged += purge(releaseHistory);
+      }
+      //scan the same release histories again in the next run if not all purged
+      if (!Thread.currentThread().isInterrupted()) {
+        scannedMaxId = maxId;
+        lastRetentionSize = retentionSize;
+        lastRetentionSizeOverride = retentionSizeOverride;
+      }
+      if (purged > 0) {
+        logger.info("Purged {} release histories of {} namespace branches", purged,
+            latestOutOfRetention.size());
+      }
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      transaction.setStatus(ex);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.error("Purge release histories failed", ex);
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  private long purge(ReleaseHistory latestOutOfRetention) throws InterruptedException {
+    long purged = 0;
+    boolean hasMore = true;
+    while (hasMore && !Thread.currentThread().isInterrupted()) {
+      List<ReleaseHistory> batch = releaseHistoryService.findReleaseHistoriesToPurge(
+          latestOutOfRetention);
+      if (batch.isEmpty()) {
+        break;
+      }
+      int releases = releaseHistoryService.purgeReleaseHistories(batch);
+      releaseHistoriesPurged.increment(batch.size());
+      releasesPurged.increment(releases);
+      purged += batch.size();
+      Tracer.logEvent("Apollo.ReleaseHistoryRetention.Purged", String.format("%s+%s+%s+%s",
+          latestOutOfRetention.getAppId(), latestOutOfRetention.getClusterName(),
+          latestOutOfRetention.getNamespaceName(), latestOutOfRetention.getBranchName()));
+      hasMore = batch.size() == BATCH_SIZE;
+      TimeUnit.MILLISECONDS.sleep(bizConfig.releaseHistoryRetentionPurgeBatchIntervalInMilli());
+    }
+    return purged;
+  }
+
+  @PreDestroy
+  void stopPurge() {
+    purgeExecutorService.shutdownNow();
+    releaseLease();
+  }
+
+  private void releaseLease() {
+    try {
+      jobLeaseService.releaseLease(JOB_NAME);
+    } catch (Throwable ex) {
+      logger.warn("Release the lease of {} failed", JOB_NAME, ex);
+    }
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.adminservice;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.service.JobLeaseService;
+import com.ctrip.framework.apollo.biz.service.ReleaseMessageService;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * Compact the release messages superseded by newer ones of the same message, as the config
+ * services only notify the latest release message of each message.
+ * <p>
+ * The release messages are compacted in id ranges of 500, each range with one select and one
+ * delete statement in its own short transaction and followed by a pause, so that the compaction
+ * neither holds locks for long nor competes with the release message scanners. The compaction
+ * runs on the admin service holding the job lease only, which is renewed before each range, and
+ * stops once the lease is lost.
+ */
+@Component
+public class ReleaseMessageCompactionApplicationRunner implements ApplicationRunner {
+  private static final Logger logger = LoggerFactory.getLogger(
+      ReleaseMessageCompactionApplicationRunner.class);
+  private static final String JOB_NAME = "ReleaseMessageCompaction";
+  private static final int RANGE_SIZE = 500;
+
+  private final ScheduledExecutorService compactionExecutorService;
+  private final ReleaseMessageService releaseMessageService;
+  private final JobLeaseService jobLeaseService;
+  private final BizConfig bizConfig;
+  private final Counter releaseMessagesReclaimed;
+  private final AtomicLong releaseMessagesSize;
+
+  public ReleaseMessageCompactionApplicationRunner(
+      final ReleaseMessageService releaseMessageService,
+      final JobLeaseService jobLeaseService,
+      final BizConfig bizConfig,
+      final MeterRegistry meterRegistry) {
+    this.releaseMessageService = releaseMessageService;
+    this.jobLeaseService = jobLeaseService;
+    this.bizConfig = bizConfig;
+    this.compactionExecutorService = Executors.newSingleThreadScheduledExecutor(
+        ApolloThreadFactory.create("ReleaseMessageCompaction", true));
+    this.releaseMessagesReclaimed = meterRegistry.counter("release.message.compaction.reclaimed");
+    this.releaseMessagesSize = meterRegistry.gauge("release.message.table.size",
+        new AtomicLong());
+  }
+
+  @Override
+  public void run(ApplicationArguments args) throws Exception {
+    int interval = bizConfig.releaseMessageCompactionInterval();
+    compactionExecutorService.scheduleWithFixedDelay(this::compactReleaseMessages, interval,
+        interval, bizConfig.releaseMessageCompactionIntervalTimeUnit());
+  }
+
+  void compactReleaseMessages() {
+    Transaction transaction = Tracer.newTransaction("Apollo.ReleaseMessageCompaction",
+        "compactReleaseMessages");
+    try {
+      //held across the runs by the same admin service, and taken over by others if it is gone
+      long leaseInMilli = bizConfig.releaseMessageCompactionIntervalTimeUnit().toMillis(
+          bizConfig.releaseMessageCompactionInterval() * 2L);
+      if (!jobLeaseService.tryAcquireLease(JOB_NAME, leaseInMilli)) {
+        transaction.setStatus(Transaction.SUCCESS);
+        return;
+      }
+      long reclaimed = compact(leaseInMilli);
+      releaseMessagesSize.set(releaseMessageService.countReleaseMessages());
+      if (reclaimed > 0) {
+        logger.info("Compacted {} superseded release messages", reclaimed);
+      }
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      transaction.setStatus(ex);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.error("Compact release messages failed", ex);
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  private long compact(long leaseInMilli) throws InterruptedException {
+    //the release messages sent during the compaction are left to the next one
+    Long maxId = releaseMessageService.findMaxId();
+    if (maxId == null) {
+      return 0;
+    }
+
+    long reclaimed = 0;
+    Long fromId = releaseMessageService.findFirstIdFrom(0);
+    while (fromId != null && fromId < maxId && !Thread.currentThread().isInterrupted()) {
+      if (!jobLeaseService.tryAcquireLease(JOB_NAME, leaseInMilli)) {
+        logger.warn("Lost the lease of {}, stop compacting at id {}", JOB_NAME, fromId);
+        break;
+      }
+      long toId = Math.min(fromId + RANGE_SIZE, maxId);
+      int deleted = releaseMessageService.deleteSupersededReleaseMessages(fromId, toId);
+      releaseMessagesReclaimed.increment(deleted);
+      reclaimed += deleted;
+      if (deleted > 0) {
+        Tracer.logEvent("Apollo.ReleaseMessageCompaction.Reclaimed", fromId + "-" + toId);
+      }
+
+      //skip the ranges without release messages, the ids become sparse after compaction
+      fromId = releaseMessageService.findFirstIdFrom(toId);
+      if (fromId != null && fromId < maxId) {
+        TimeUnit.MILLISECONDS.sleep(bizConfig.releaseMessageCompactionBatchIntervalInMilli());
+      }
+    }
+    return reclaimed;
+  }
+
+  @PreDestroy
+  void stopCompaction() {
+    compactionExecutorService.shutdownNow();
+    releaseLease();
+  }
+
+  private void releaseLease() {
+    try {
+      jobLeaseService.releaseLease(JOB_NAME);
+    } catch (Throwable ex) {
+      logger.warn("Release the lease of {} failed", JOB_NAME, ex);
+    }
+  }
+}
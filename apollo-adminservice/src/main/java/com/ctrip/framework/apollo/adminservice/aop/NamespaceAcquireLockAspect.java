@@ -26,6 +26,7 @@ import com.ctrip.framework.apollo.biz.service.NamespaceLockService;
 import com.ctrip.framework.apollo.biz.service.NamespaceService;
 import com.ctrip.framework.apollo.common.dto.ItemChangeSets;
 import com.ctrip.framework.apollo.common.dto.ItemDTO;
+import com.ctrip.framework.apollo.common.dto.NamespaceImportDTO;
 import com.ctrip.framework.apollo.common.exception.BadRequestException;
 import com.ctrip.framework.apollo.common.exception.ServiceException;
 import org.aspectj.lang.annotation.Aspect;
@@ -83,6 +84,17 @@ public class NamespaceAcquireLockAspect {
     acquireLock(appId, clusterName, namespaceName, changeSet.getDataChangeLastModifiedBy());
   }
 
+  //import namespace, the namespace is only locked if existed before the import
+  @Before("@annotation(PreAcquireNamespaceLock) && args(appId, clusterName, namespaceName, namespaceImport, ..)")
+  public void requireLockAdvice(String appId, String clusterName, String namespaceName,
+                                NamespaceImportDTO namespaceImport) {
+    if (bizConfig.isNamespaceLockSwitchOff()
+        || namespaceService.findOne(appId, clusterName, namespaceName) == null) {
+      return;
+    }
+    acquireLock(appId, clusterName, namespaceName, namespaceImport.getDataChangeLastModifiedBy());
+  }
+
   //delete item
   @Before("@annotation(PreAcquireNamespaceLock) && args(itemId, operator, ..)")
   public void requireLockAdvice(long itemId, String operator) {
@@ -20,7 +20,10 @@ import com.ctrip.framework.apollo.biz.entity.Instance;
 import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
 import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.biz.service.InstanceService;
+import com.ctrip.framework.apollo.biz.service.NamespaceInstanceCountService;
 import com.ctrip.framework.apollo.biz.service.ReleaseService;
+import com.ctrip.framework.apollo.common.controller.HttpMessageConverterConfiguration;
+import com.ctrip.framework.apollo.common.dto.CursorPageDTO;
 import com.ctrip.framework.apollo.common.dto.InstanceConfigDTO;
 import com.ctrip.framework.apollo.common.dto.InstanceDTO;
 import com.ctrip.framework.apollo.common.dto.PageDTO;
@@ -30,24 +33,34 @@ import com.ctrip.framework.apollo.common.utils.BeanUtils;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import javax.servlet.http.HttpServletResponse;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -57,12 +70,19 @@ import java.util.stream.Collectors;
 public class InstanceConfigController {
   private static final Splitter RELEASES_SPLITTER = Splitter.on(",").omitEmptyStrings()
       .trimResults();
+  private static final int MAX_CURSOR_PAGE_SIZE = 500;
+  private static final int STREAM_BATCH_SIZE = 500;
+  private static final Gson GSON = new GsonBuilder()
+      .setDateFormat(HttpMessageConverterConfiguration.DATE_FORMAT).create();
   private final ReleaseService releaseService;
   private final InstanceService instanceService;
+  private final NamespaceInstanceCountService namespaceInstanceCountService;
 
-  public InstanceConfigController(final ReleaseService releaseService, final InstanceService instanceService) {
+  public InstanceConfigController(final ReleaseService releaseService, final InstanceService instanceService,
+      final NamespaceInstanceCountService namespaceInstanceCountService) {
     this.releaseService = releaseService;
     this.instanceService = instanceService;
+    this.namespaceInstanceCountService = namespaceInstanceCountService;
   }
 
   @GetMapping("/by-release")
@@ -117,62 +137,53 @@ public class InstanceConfigController {
                                               @RequestParam("clusterName") String clusterName,
                                               @RequestParam("namespaceName") String namespaceName,
                                               @RequestParam("releaseIds") String releaseIds) {
-    Set<Long> releaseIdSet = RELEASES_SPLITTER.splitToList(releaseIds).stream().map(Long::parseLong)
-        .collect(Collectors.toSet());
-
-    List<Release> releases = releaseService.findByReleaseIds(releaseIdSet);
-
-    if (CollectionUtils.isEmpty(releases)) {
-      throw NotFoundException.releaseNotFound(releaseIds);
-    }
-
-    Set<String> releaseKeys = releases.stream().map(Release::getReleaseKey).collect(Collectors
-        .toSet());
+    Set<String> releaseKeys = findReleaseKeys(releaseIds);
 
     List<InstanceConfig> instanceConfigs = instanceService
         .findInstanceConfigsByNamespaceWithReleaseKeysNotIn(appId, clusterName, namespaceName,
             releaseKeys);
 
-    Multimap<Long, InstanceConfig> instanceConfigMap = HashMultimap.create();
-    Set<String> otherReleaseKeys = Sets.newHashSet();
-
-    for (InstanceConfig instanceConfig : instanceConfigs) {
-      instanceConfigMap.put(instanceConfig.getInstanceId(), instanceConfig);
-      otherReleaseKeys.add(instanceConfig.getReleaseKey());
-    }
+    return assembleInstanceDTOsWithReleases(instanceConfigs, Maps.newHashMap());
+  }
 
-    List<Instance> instances = instanceService.findInstancesByIds(instanceConfigMap.keySet());
+  /**
+   * Same as {@link #getByReleasesNotIn(String, String, String, String)}, but the instance configs
+   * are loaded in batches and the instances are written to the response as a json array batch by
+   * batch, so the memory used doesn't grow with the number of instances.
+   */
+  @GetMapping("/by-namespace-and-releases-not-in/stream")
+  public void streamByReleasesNotIn(@RequestParam("appId") String appId,
+                                    @RequestParam("clusterName") String clusterName,
+                                    @RequestParam("namespaceName") String namespaceName,
+                                    @RequestParam("releaseIds") String releaseIds,
+                                    HttpServletResponse response) throws IOException {
+    Set<String> releaseKeys = findReleaseKeys(releaseIds);
 
-    if (CollectionUtils.isEmpty(instances)) {
-      return Collections.emptyList();
-    }
+    response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+    response.setCharacterEncoding(StandardCharsets.UTF_8.name());
 
-    List<InstanceDTO> instanceDTOs = BeanUtils.batchTransform(InstanceDTO.class, instances);
-
-    List<Release> otherReleases = releaseService.findByReleaseKeys(otherReleaseKeys);
+    //releases are shared by the batches, there are usually only a few of them
     Map<String, ReleaseDTO> releaseMap = Maps.newHashMap();
-
-    for (Release release : otherReleases) {
-      //unset configurations to save space
-      release.setConfigurations(null);
-      ReleaseDTO releaseDTO = BeanUtils.transform(ReleaseDTO.class, release);
-      releaseMap.put(release.getReleaseKey(), releaseDTO);
-    }
-
-    for (InstanceDTO instanceDTO : instanceDTOs) {
-      Collection<InstanceConfig> configs = instanceConfigMap.get(instanceDTO.getId());
-      List<InstanceConfigDTO> configDTOs = configs.stream().map(instanceConfig -> {
-        InstanceConfigDTO instanceConfigDTO = new InstanceConfigDTO();
-        instanceConfigDTO.setRelease(releaseMap.get(instanceConfig.getReleaseKey()));
-        instanceConfigDTO.setReleaseDeliveryTime(instanceConfig.getReleaseDeliveryTime());
-        instanceConfigDTO.setDataChangeLastModifiedTime(instanceConfig
-            .getDataChangeLastModifiedTime());
-        return instanceConfigDTO;
-      }).collect(Collectors.toList());
-      instanceDTO.setConfigs(configDTOs);
-    }
-
-    return instanceDTOs;
+    JsonWriter writer = new JsonWriter(new OutputStreamWriter(response.getOutputStream(),
+        StandardCharsets.UTF_8));
+    writer.beginArray();
+    long afterId = 0;
+    List<InstanceConfig> instanceConfigs;
+    do {
+      instanceConfigs = instanceService.findInstanceConfigsByNamespaceWithReleaseKeysNotIn(appId,
+          clusterName, namespaceName, releaseKeys, afterId, STREAM_BATCH_SIZE);
+      if (instanceConfigs.isEmpty()) {
+        break;
+      }
+      for (InstanceDTO instanceDTO : assembleInstanceDTOsWithReleases(instanceConfigs,
+          releaseMap)) {
+        GSON.toJson(instanceDTO, InstanceDTO.class, writer);
+      }
+      writer.flush();
+      afterId = instanceConfigs.get(instanceConfigs.size() - 1).getId();
+    } while (instanceConfigs.size() == STREAM_BATCH_SIZE);
+    writer.endArray();
+    writer.flush();
   }
 
   @GetMapping("/by-namespace")
@@ -194,12 +205,151 @@ public class InstanceConfigController {
     return new PageDTO<>(instanceDTOs, pageable, instances.getTotalElements());
   }
 
+  /**
+   * Keyset paginated version of {@link #getByRelease(long, Pageable)}, the instances are ordered by
+   * their instance config ids and the next page starts after the returned cursor
+   */
+  @GetMapping("/by-release/cursor")
+  public CursorPageDTO<InstanceDTO> getByReleaseAfter(@RequestParam("releaseId") long releaseId,
+      @RequestParam(value = "afterId", defaultValue = "0") long afterId,
+      @RequestParam(value = "size", defaultValue = "20") int size) {
+    Release release = releaseService.findOne(releaseId);
+    if (release == null) {
+      throw NotFoundException.releaseNotFound(releaseId);
+    }
+    int pageSize = normalizeCursorPageSize(size);
+    List<InstanceConfig> instanceConfigs = instanceService.findActiveInstanceConfigsByReleaseKey(
+        release.getReleaseKey(), afterId, pageSize);
+
+    List<InstanceDTO> instanceDTOs = assembleInstanceDTOs(instanceConfigs, instanceConfig -> {
+      InstanceConfigDTO instanceConfigDTO = new InstanceConfigDTO();
+      instanceConfigDTO.setReleaseDeliveryTime(instanceConfig.getReleaseDeliveryTime());
+      instanceConfigDTO.setDataChangeLastModifiedTime(instanceConfig
+          .getDataChangeLastModifiedTime());
+      return instanceConfigDTO;
+    });
+
+    return assembleCursorPage(instanceDTOs, instanceConfigs, pageSize);
+  }
+
+  /**
+   * Keyset paginated version of {@link #getInstancesByNamespace(String, String, String, String,
+   * Pageable)}
+   */
+  @GetMapping("/by-namespace/cursor")
+  public CursorPageDTO<InstanceDTO> getInstancesByNamespaceAfter(
+      @RequestParam("appId") String appId, @RequestParam("clusterName") String clusterName,
+      @RequestParam("namespaceName") String namespaceName,
+      @RequestParam(value = "instanceAppId", required = false) String instanceAppId,
+      @RequestParam(value = "afterId", defaultValue = "0") long afterId,
+      @RequestParam(value = "size", defaultValue = "20") int size) {
+    int pageSize = normalizeCursorPageSize(size);
+    List<InstanceConfig> instanceConfigs;
+    if (Strings.isNullOrEmpty(instanceAppId)) {
+      instanceConfigs = instanceService.findActiveInstanceConfigsByNamespace(appId, clusterName,
+          namespaceName, afterId, pageSize);
+    } else {
+      instanceConfigs = instanceService.findActiveInstanceConfigsByNamespaceAndInstanceAppId(
+          instanceAppId, appId, clusterName, namespaceName, afterId, pageSize);
+    }
+
+    return assembleCursorPage(assembleInstanceDTOs(instanceConfigs, null), instanceConfigs,
+        pageSize);
+  }
+
   @GetMapping("/by-namespace/count")
   public long getInstancesCountByNamespace(@RequestParam("appId") String appId,
                                           @RequestParam("clusterName") String clusterName,
                                           @RequestParam("namespaceName") String namespaceName) {
-    Page<Instance> instances = instanceService.findInstancesByNamespace(appId, clusterName,
-        namespaceName, PageRequest.of(0, 1));
-    return instances.getTotalElements();
+    return namespaceInstanceCountService.countInstances(appId, clusterName, namespaceName);
+  }
+
+  private Set<String> findReleaseKeys(String releaseIds) {
+    Set<Long> releaseIdSet = RELEASES_SPLITTER.splitToList(releaseIds).stream().map(Long::parseLong)
+        .collect(Collectors.toSet());
+
+    List<Release> releases = releaseService.findByReleaseIds(releaseIdSet);
+
+    if (CollectionUtils.isEmpty(releases)) {
+      throw NotFoundException.releaseNotFound(releaseIds);
+    }
+
+    return releases.stream().map(Release::getReleaseKey).collect(Collectors.toSet());
+  }
+
+  /**
+   * @param releaseMap release key -> release, the releases not in the map are loaded and put into it
+   */
+  private List<InstanceDTO> assembleInstanceDTOsWithReleases(List<InstanceConfig> instanceConfigs,
+      Map<String, ReleaseDTO> releaseMap) {
+    Set<String> otherReleaseKeys = instanceConfigs.stream().map(InstanceConfig::getReleaseKey)
+        .filter(releaseKey -> !releaseMap.containsKey(releaseKey)).collect(Collectors.toSet());
+
+    if (!otherReleaseKeys.isEmpty()) {
+      for (Release release : releaseService.findByReleaseKeys(otherReleaseKeys)) {
+        //unset configurations to save space
+        release.setConfigurations(null);
+        releaseMap.put(release.getReleaseKey(), BeanUtils.transform(ReleaseDTO.class, release));
+      }
+    }
+
+    return assembleInstanceDTOs(instanceConfigs, instanceConfig -> {
+      InstanceConfigDTO instanceConfigDTO = new InstanceConfigDTO();
+      instanceConfigDTO.setRelease(releaseMap.get(instanceConfig.getReleaseKey()));
+      instanceConfigDTO.setReleaseDeliveryTime(instanceConfig.getReleaseDeliveryTime());
+      instanceConfigDTO.setDataChangeLastModifiedTime(instanceConfig
+          .getDataChangeLastModifiedTime());
+      return instanceConfigDTO;
+    });
+  }
+
+  /**
+   * @param configTransformer transforms the instance configs of each instance, or null if the
+   *                          instance configs are not needed
+   * @return the instances in the order of their first instance configs
+   */
+  private List<InstanceDTO> assembleInstanceDTOs(List<InstanceConfig> instanceConfigs,
+      Function<InstanceConfig, InstanceConfigDTO> configTransformer) {
+    if (CollectionUtils.isEmpty(instanceConfigs)) {
+      return Collections.emptyList();
+    }
+    Map<Long, List<InstanceConfig>> instanceConfigMap = new LinkedHashMap<>();
+    for (InstanceConfig instanceConfig : instanceConfigs) {
+      instanceConfigMap.computeIfAbsent(instanceConfig.getInstanceId(), k -> Lists.newArrayList())
+          .add(instanceConfig);
+    }
+
+    Map<Long, Instance> instances = Maps.newHashMap();
+    for (Instance instance : instanceService.findInstancesByIds(instanceConfigMap.keySet())) {
+      instances.put(instance.getId(), instance);
+    }
+
+    List<InstanceDTO> instanceDTOs = Lists.newArrayListWithCapacity(instances.size());
+    for (Map.Entry<Long, List<InstanceConfig>> entry : instanceConfigMap.entrySet()) {
+      Instance instance = instances.get(entry.getKey());
+      if (instance == null) {
+        continue;
+      }
+      InstanceDTO instanceDTO = BeanUtils.transform(InstanceDTO.class, instance);
+      if (configTransformer != null) {
+        instanceDTO.setConfigs(entry.getValue().stream().map(configTransformer)
+            .collect(Collectors.toList()));
+      }
+      instanceDTOs.add(instanceDTO);
+    }
+    return instanceDTOs;
+  }
+
+  private CursorPageDTO<InstanceDTO> assembleCursorPage(List<InstanceDTO> instanceDTOs,
+      List<InstanceConfig> instanceConfigs, int size) {
+    Long nextCursor = null;
+    if (instanceConfigs.size() == size) {
+      nextCursor = instanceConfigs.get(instanceConfigs.size() - 1).getId();
+    }
+    return new CursorPageDTO<>(instanceDTOs, size, nextCursor);
+  }
+
+  private int normalizeCursorPageSize(int size) {
+    return Math.max(1, Math.min(size, MAX_CURSOR_PAGE_SIZE));
   }
 }
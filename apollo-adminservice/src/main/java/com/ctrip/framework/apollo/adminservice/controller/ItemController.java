@@ -17,6 +17,7 @@
 package com.ctrip.framework.apollo.adminservice.controller;
 
 import com.ctrip.framework.apollo.adminservice.aop.PreAcquireNamespaceLock;
+import com.ctrip.framework.apollo.adminservice.search.ItemSearchService;
 import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Commit;
 import com.ctrip.framework.apollo.biz.entity.Item;
@@ -60,13 +61,15 @@ public class ItemController {
   private final CommitService commitService;
   private final ReleaseService releaseService;
   private final BizConfig bizConfig;
+  private final ItemSearchService itemSearchService;
 
-  public ItemController(final ItemService itemService, final NamespaceService namespaceService, final CommitService commitService, final ReleaseService releaseService, final BizConfig bizConfig) {
+  public ItemController(final ItemService itemService, final NamespaceService namespaceService, final CommitService commitService, final ReleaseService releaseService, final BizConfig bizConfig, final ItemSearchService itemSearchService) {
     this.itemService = itemService;
     this.namespaceService = namespaceService;
     this.commitService = commitService;
     this.releaseService = releaseService;
     this.bizConfig = bizConfig;
+    this.itemSearchService = itemSearchService;
   }
 
   @PreAcquireNamespaceLock
@@ -216,7 +219,9 @@ public class ItemController {
   public PageDTO<ItemInfoDTO> getItemInfoBySearch(@RequestParam(value = "key", required = false) String key,
                                                   @RequestParam(value = "value", required = false) String value,
                                                   Pageable limit) {
-    Page<ItemInfoDTO> pageItemInfoDTO = itemService.getItemInfoBySearch(key, value, limit);
+    Page<ItemInfoDTO> pageItemInfoDTO = itemSearchService.isReady()
+        ? itemSearchService.search(key, value, limit)
+        : itemService.getItemInfoBySearch(key, value, limit);
     return new PageDTO<>(pageItemInfoDTO.getContent(), limit, pageItemInfoDTO.getTotalElements());
   }
 
@@ -19,6 +19,8 @@ package com.ctrip.framework.apollo.adminservice.controller;
 import com.ctrip.framework.apollo.adminservice.aop.PreAcquireNamespaceLock;
 import com.ctrip.framework.apollo.biz.service.ItemSetService;
 import com.ctrip.framework.apollo.common.dto.ItemChangeSets;
+import com.ctrip.framework.apollo.common.dto.NamespaceImportDTO;
+import com.ctrip.framework.apollo.common.dto.NamespaceImportResultDTO;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -45,5 +47,16 @@ public class ItemSetController {
     return ResponseEntity.status(HttpStatus.OK).build();
   }
 
+  /**
+   * import a whole namespace with one request instead of one request per item
+   */
+  @PreAcquireNamespaceLock
+  @PostMapping("/apps/{appId}/clusters/{clusterName}/namespaces/{namespaceName}/import")
+  public NamespaceImportResultDTO importNamespace(@PathVariable String appId,
+      @PathVariable String clusterName, @PathVariable String namespaceName,
+      @RequestBody NamespaceImportDTO namespaceImport) {
+    return itemSetService.importNamespace(appId, clusterName, namespaceName, namespaceImport);
+  }
+
 
 }
@@ -16,13 +16,24 @@
  */
 package com.ctrip.framework.apollo.adminservice.controller;
 
+import com.ctrip.framework.apollo.biz.entity.Commit;
+import com.ctrip.framework.apollo.biz.entity.Item;
 import com.ctrip.framework.apollo.biz.entity.Namespace;
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.biz.service.CommitService;
+import com.ctrip.framework.apollo.biz.service.ItemService;
 import com.ctrip.framework.apollo.biz.service.NamespaceService;
+import com.ctrip.framework.apollo.biz.service.ReleaseService;
+import com.ctrip.framework.apollo.biz.utils.ConfigChangeContentBuilder;
+import com.ctrip.framework.apollo.common.dto.ItemDTO;
 import com.ctrip.framework.apollo.common.dto.NamespaceDTO;
+import com.ctrip.framework.apollo.common.dto.NamespaceSnapshotDTO;
 import com.ctrip.framework.apollo.common.dto.PageDTO;
+import com.ctrip.framework.apollo.common.dto.ReleaseDTO;
 import com.ctrip.framework.apollo.common.exception.BadRequestException;
 import com.ctrip.framework.apollo.common.exception.NotFoundException;
 import com.ctrip.framework.apollo.common.utils.BeanUtils;
+import com.google.common.collect.Lists;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -35,16 +46,33 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.validation.Valid;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @RestController
 public class NamespaceController {
 
   private final NamespaceService namespaceService;
-
-  public NamespaceController(final NamespaceService namespaceService) {
+  private final ItemService itemService;
+  private final ReleaseService releaseService;
+  private final CommitService commitService;
+
+  public NamespaceController(
+      final NamespaceService namespaceService,
+      final ItemService itemService,
+      final ReleaseService releaseService,
+      final CommitService commitService) {
     this.namespaceService = namespaceService;
+    this.itemService = itemService;
+    this.releaseService = releaseService;
+    this.commitService = commitService;
   }
 
   @PostMapping("/apps/{appId}/clusters/{clusterName}/namespaces")
@@ -81,6 +109,75 @@ public class NamespaceController {
     return BeanUtils.batchTransform(NamespaceDTO.class, groups);
   }
 
+  /**
+   * load all the namespaces of the cluster with their items, deleted items and latest active
+   * releases, each kind of them with one query instead of one request per namespace
+   */
+  @GetMapping("/apps/{appId}/clusters/{clusterName}/namespace-snapshots")
+  public List<NamespaceSnapshotDTO> findSnapshots(@PathVariable("appId") String appId,
+      @PathVariable("clusterName") String clusterName,
+      @RequestParam(value = "includeDeletedItems", defaultValue = "true") boolean includeDeletedItems) {
+    List<Namespace> namespaces = namespaceService.findNamespaces(appId, clusterName);
+    if (namespaces.isEmpty()) {
+      return Collections.emptyList();
+    }
+    Set<Long> namespaceIds = namespaces.stream().map(Namespace::getId).collect(Collectors.toSet());
+    Set<String> namespaceNames = namespaces.stream().map(Namespace::getNamespaceName)
+        .collect(Collectors.toSet());
+
+    Map<Long, List<Item>> items = itemService.findItemsWithOrdered(namespaceIds).stream()
+        .collect(Collectors.groupingBy(Item::getNamespaceId));
+    Map<String, Release> latestReleases = releaseService
+        .findLatestActiveReleases(appId, clusterName, namespaceNames).stream()
+        .collect(Collectors.toMap(Release::getNamespaceName, Function.identity()));
+    Map<String, List<Item>> deletedItems = includeDeletedItems
+        ? findDeletedItems(appId, clusterName, namespaceNames, latestReleases)
+        : Collections.emptyMap();
+
+    return namespaces.stream().map(namespace -> {
+      NamespaceSnapshotDTO snapshot = new NamespaceSnapshotDTO();
+      snapshot.setNamespace(BeanUtils.transform(NamespaceDTO.class, namespace));
+      snapshot.setItems(BeanUtils.batchTransform(ItemDTO.class,
+          items.getOrDefault(namespace.getId(), Collections.emptyList())));
+      snapshot.setDeletedItems(BeanUtils.batchTransform(ItemDTO.class,
+          deletedItems.getOrDefault(namespace.getNamespaceName(), Collections.emptyList())));
+      Release latestRelease = latestReleases.get(namespace.getNamespaceName());
+      if (latestRelease != null) {
+        snapshot.setLatestRelease(BeanUtils.transform(ReleaseDTO.class, latestRelease));
+      }
+      return snapshot;
+    }).collect(Collectors.toList());
+  }
+
+  /**
+   * same as the deleted items of each namespace, i.e. the items deleted by the commits since its
+   * latest active release or all the commits if never released
+   */
+  private Map<String, List<Item>> findDeletedItems(String appId, String clusterName,
+      Set<String> namespaceNames, Map<String, Release> latestReleases) {
+    Set<String> unreleasedNamespaceNames = namespaceNames.stream()
+        .filter(namespaceName -> !latestReleases.containsKey(namespaceName))
+        .collect(Collectors.toSet());
+    List<Commit> commits = Lists.newArrayList(
+        commitService.find(appId, clusterName, unreleasedNamespaceNames, null));
+
+    if (!latestReleases.isEmpty()) {
+      Date earliestReleaseTime = latestReleases.values().stream()
+          .map(Release::getDataChangeCreatedTime).min(Date::compareTo).get();
+      commitService.find(appId, clusterName, latestReleases.keySet(), earliestReleaseTime).stream()
+          .filter(commit -> !commit.getDataChangeLastModifiedTime().before(
+              latestReleases.get(commit.getNamespaceName()).getDataChangeCreatedTime()))
+          .forEach(commits::add);
+    }
+
+    Map<String, List<Item>> deletedItems = new HashMap<>();
+    for (Commit commit : commits) {
+      deletedItems.computeIfAbsent(commit.getNamespaceName(), k -> new ArrayList<>()).addAll(
+          ConfigChangeContentBuilder.convertJsonString(commit.getChangeSets()).getDeleteItems());
+    }
+    return deletedItems;
+  }
+
   @GetMapping("/namespaces/{namespaceId}")
   public NamespaceDTO get(@PathVariable("namespaceId") Long namespaceId) {
     Namespace namespace = namespaceService.findOne(namespaceId);
@@ -0,0 +1,596 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.adminservice.search;
+
+import com.google.common.collect.Sets;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory trigram index over the keys and values of the items.
+ * <p>
+ * The items are numbered by ordinals in the order added, and each trigram of the keys and values
+ * maps to the ordinals of the items containing it in ascending order. A search intersects the
+ * ordinals of the trigrams of the keyword, then checks the items found contain the keyword, so
+ * the results are exact. Updated or removed items leave their old ordinals behind, which are
+ * compacted once they are the majority.
+ * <p>
+ * The ordinals are in the order of ids except the ones of the items added with smaller ids than
+ * the items before them, e.g. the updated ones, which are tracked in the order of ids as well. A
+ * search merges both in the order of ids and stops once the matches beyond the page are counted up
+ * to {@link #MAX_COUNTED_MATCHES}, so the keywords matching many items don't verify all of them.
+ * <p>
+ * A reconciliation confirms the items still existing one by one, and then removes the others
+ * indexed before it started.
+ */
+class ItemSearchIndex {
+
+  private static final int FORMAT_VERSION = 1;
+  private static final int GRAM_SIZE = 3;
+  //the values longer than this are not indexed but checked on each search, to bound the memory
+  private static final int MAX_INDEXED_VALUE_LENGTH = 1024;
+  private static final int MIN_ORDINALS_TO_COMPACT = 10000;
+  //the total of a search is not exact beyond this
+  static final int MAX_COUNTED_MATCHES = 10000;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  //null for the items removed or updated
+  private final List<IndexedItem> items = new ArrayList<>();
+  private final Map<Long, Integer> ordinals = new HashMap<>();
+  private final Map<Long, IntList> keyPostings = new HashMap<>();
+  private final Map<Long, IntList> valuePostings = new HashMap<>();
+  private final IntList unindexedValues = new IntList();
+  //the largest id added since the last compaction
+  private long maxId;
+  private final BitSet misplacedOrdinals = new BitSet();
+  //id -> ordinal of the misplaced items
+  private final TreeMap<Long, Integer> misplacedItems = new TreeMap<>();
+  //ordinals confirmed by the reconciliation in progress, null if none in progress
+  private BitSet reconciled;
+  private int ordinalsBeforeReconcile;
+
+  void upsert(long id, long namespaceId, String key, String value) {
+    IndexedItem item = new IndexedItem(id, namespaceId, nullToEmpty(key), nullToEmpty(value));
+    lock.writeLock().lock();
+    try {
+      Integer ordinal = ordinals.get(id);
+      if (ordinal != null && item.equals(items.get(ordinal))) {
+        return;
+      }
+      removeOrdinal(id);
+      add(item);
+      compactIfNecessary();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  void remove(long id) {
+    lock.writeLock().lock();
+    try {
+      removeOrdinal(id);
+      compactIfNecessary();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * remove the items of the namespaces, e.g. the namespaces deleted before their items are scanned
+   */
+  void removeNamespaces(Set<Long> namespaceIds) {
+    lock.writeLock().lock();
+    try {
+      for (IndexedItem item : items) {
+        if (item != null && namespaceIds.contains(item.namespaceId)) {
+          removeOrdinal(item.id);
+        }
+      }
+      compactIfNecessary();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  void startReconcile() {
+    lock.writeLock().lock();
+    try {
+      reconciled = new BitSet(items.size());
+      ordinalsBeforeReconcile = items.size();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Same as {@link #upsert(long, long, String, String)}, and confirm the item still exists
+   */
+  void reconcile(long id, long namespaceId, String key, String value) {
+    upsert(id, namespaceId, key, value);
+    lock.writeLock().lock();
+    try {
+      Integer ordinal = ordinals.get(id);
+      if (reconciled != null && ordinal != null) {
+        reconciled.set(ordinal);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Remove the items indexed before the reconciliation started and not confirmed since, the ones
+   * indexed afterwards are changed since and kept
+   *
+   * @return the number of the items removed
+   */
+  int finishReconcile() {
+    lock.writeLock().lock();
+    try {
+      int removed = 0;
+      for (int ordinal = 0; ordinal < ordinalsBeforeReconcile; ordinal++) {
+        IndexedItem item = items.get(ordinal);
+        if (item != null && !reconciled.get(ordinal)) {
+          removeOrdinal(item.id);
+          removed++;
+        }
+      }
+      reconciled = null;
+      compactIfNecessary();
+      return removed;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Stop the reconciliation in progress without removing any items, e.g. if it fails halfway
+   */
+  void abortReconcile() {
+    lock.writeLock().lock();
+    try {
+      reconciled = null;
+      compactIfNecessary();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  int size() {
+    lock.readLock().lock();
+    try {
+      return ordinals.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Find the items whose keys and values contain the keywords ignoring case, in the order of ids.
+   * The matches are counted up to {@link #MAX_COUNTED_MATCHES} or the end of the page, whichever is
+   * larger, so the total is a lower bound beyond that.
+   *
+   * @param key empty to match all the keys
+   * @param value empty to match all the values
+   */
+  SearchResult search(String key, String value, long offset, int limit) {
+    key = nullToEmpty(key);
+    value = nullToEmpty(value);
+
+    Matches matches = new Matches(offset, limit);
+    lock.readLock().lock();
+    try {
+      int[] candidates = intersect(findCandidates(keyPostings, key, null),
+          findCandidates(valuePostings, value, unindexedValues));
+      Iterator<Integer> misplaced = misplacedItems.values().iterator();
+      IndexedItem nextMisplaced = nextMatch(misplaced, candidates, key, value);
+      int size = candidates == null ? items.size() : candidates.length;
+      for (int i = 0; i < size && !matches.isFull(); i++) {
+        int ordinal = candidates == null ? i : candidates[i];
+        IndexedItem item = items.get(ordinal);
+        if (item == null || misplacedOrdinals.get(ordinal) || !matches(item, key, value)) {
+          continue;
+        }
+        while (nextMisplaced != null && nextMisplaced.id < item.id && !matches.isFull()) {
+          matches.add(nextMisplaced);
+          nextMisplaced = nextMatch(misplaced, candidates, key, value);
+        }
+        if (!matches.isFull()) {
+          matches.add(item);
+        }
+      }
+      while (nextMisplaced != null && !matches.isFull()) {
+        matches.add(nextMisplaced);
+        nextMisplaced = nextMatch(misplaced, candidates, key, value);
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    return new SearchResult(matches.page, matches.total);
+  }
+
+  void writeTo(DataOutputStream out) throws IOException {
+    lock.readLock().lock();
+    try {
+      out.writeInt(FORMAT_VERSION);
+      out.writeInt(ordinals.size());
+      for (IndexedItem item : items) {
+        if (item == null) {
+          continue;
+        }
+        out.writeLong(item.id);
+        out.writeLong(item.namespaceId);
+        writeString(out, item.key);
+        writeString(out, item.value);
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  static ItemSearchIndex readFrom(DataInputStream in) throws IOException {
+    int version = in.readInt();
+    if (version != FORMAT_VERSION) {
+      throw new IOException("Unsupported item search index format version: " + version);
+    }
+    ItemSearchIndex index = new ItemSearchIndex();
+    int size = in.readInt();
+    for (int i = 0; i < size; i++) {
+      index.upsert(in.readLong(), in.readLong(), readString(in), readString(in));
+    }
+    return index;
+  }
+
+  private void add(IndexedItem item) {
+    int ordinal = items.size();
+    items.add(item);
+    ordinals.put(item.id, ordinal);
+    if (item.id < maxId) {
+      misplacedOrdinals.set(ordinal);
+      misplacedItems.put(item.id, ordinal);
+    } else {
+      maxId = item.id;
+    }
+
+    addPostings(keyPostings, item.key, ordinal);
+    if (item.value.length() > MAX_INDEXED_VALUE_LENGTH) {
+      unindexedValues.add(ordinal);
+    } else {
+      addPostings(valuePostings, item.value, ordinal);
+    }
+  }
+
+  private void removeOrdinal(long id) {
+    Integer ordinal = ordinals.remove(id);
+    if (ordinal != null) {
+      items.set(ordinal, null);
+      misplacedItems.remove(id);
+    }
+  }
+
+  /**
+   * Rebuild the postings without the ordinals of the removed items, and with the ordinals in the
+   * order of ids again
+   */
+  private void compactIfNecessary() {
+    int removed = items.size() - ordinals.size();
+    //the ordinals are kept during the reconciliation
+    if (reconciled != null || removed < MIN_ORDINALS_TO_COMPACT || removed < ordinals.size()) {
+      return;
+    }
+    List<IndexedItem> liveItems = new ArrayList<>(ordinals.size());
+    for (IndexedItem item : items) {
+      if (item != null) {
+        liveItems.add(item);
+      }
+    }
+    liveItems.sort(Comparator.comparingLong(item -> item.id));
+    items.clear();
+    ordinals.clear();
+    keyPostings.clear();
+    valuePostings.clear();
+    unindexedValues.clear();
+    maxId = 0;
+    misplacedOrdinals.clear();
+    misplacedItems.clear();
+    liveItems.forEach(this::add);
+  }
+
+  private void addPostings(Map<Long, IntList> postings, String text, int ordinal) {
+    //the ordinals are added in ascending order, so the postings stay sorted
+    for (long gram : grams(text)) {
+      postings.computeIfAbsent(gram, k -> new IntList()).add(ordinal);
+    }
+  }
+
+  /**
+   * @return the sorted ordinals of the candidates, or null if all the items are candidates
+   */
+  private int[] findCandidates(Map<Long, IntList> postings, String keyword, IntList unindexed) {
+    if (keyword.length() < GRAM_SIZE) {
+      return null;
+    }
+    List<IntList> gramPostings = new ArrayList<>();
+    for (long gram : grams(keyword)) {
+      IntList posting = postings.get(gram);
+      if (posting == null) {
+        gramPostings.clear();
+        break;
+      }
+      gramPostings.add(posting);
+    }
+
+    //intersect from the shortest postings, which bound the candidates
+    gramPostings.sort(Comparator.comparingInt(posting -> posting.size));
+    int[] candidates = new int[0];
+    for (int i = 0; i < gramPostings.size(); i++) {
+      candidates = i == 0 ? gramPostings.get(i).toArray()
+          : intersect(candidates, gramPostings.get(i).toArray());
+      if (candidates.length == 0) {
+        break;
+      }
+    }
+    return unindexed == null ? candidates : union(candidates, unindexed.toArray());
+  }
+
+  /**
+   * @return the next misplaced item among the candidates matching the keywords, or null if none
+   */
+  private IndexedItem nextMatch(Iterator<Integer> misplaced, int[] candidates, String key,
+      String value) {
+    while (misplaced.hasNext()) {
+      int ordinal = misplaced.next();
+      if (candidates != null && Arrays.binarySearch(candidates, ordinal) < 0) {
+        continue;
+      }
+      IndexedItem item = items.get(ordinal);
+      if (matches(item, key, value)) {
+        return item;
+      }
+    }
+    return null;
+  }
+
+  private static boolean matches(IndexedItem item, String key, String value) {
+    return containsIgnoreCase(item.key, key) && containsIgnoreCase(item.value, value);
+  }
+
+  private static Set<Long> grams(String text) {
+    Set<Long> grams = Sets.newHashSet();
+    for (int i = 0; i + GRAM_SIZE <= text.length(); i++) {
+      grams.add((long) normalize(text.charAt(i)) << 32 | (long) normalize(text.charAt(i + 1)) << 16
+          | normalize(text.charAt(i + 2)));
+    }
+    return grams;
+  }
+
+  /**
+   * The chars equal ignoring case by {@link String#regionMatches(boolean, int, String, int, int)}
+   * are normalized to the same char
+   */
+  private static char normalize(char c) {
+    return Character.toLowerCase(Character.toUpperCase(c));
+  }
+
+  private static boolean containsIgnoreCase(String text, String keyword) {
+    for (int i = 0; i + keyword.length() <= text.length(); i++) {
+      if (text.regionMatches(true, i, keyword, 0, keyword.length())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param left null for all the ordinals
+   * @param right null for all the ordinals
+   */
+  private static int[] intersect(int[] left, int[] right) {
+    if (left == null) {
+      return right;
+    }
+    if (right == null) {
+      return left;
+    }
+    int[] result = new int[Math.min(left.length, right.length)];
+    int size = 0;
+    for (int i = 0, j = 0; i < left.length && j < right.length; ) {
+      if (left[i] < right[j]) {
+        i++;
+      } else if (left[i] > right[j]) {
+        j++;
+      } else {
+        result[size++] = left[i];
+        i++;
+        j++;
+      }
+    }
+    return Arrays.copyOf(result, size);
+  }
+
+  private static int[] union(int[] left, int[] right) {
+    int[] result = new int[left.length + right.length];
+    int size = 0;
+    int i = 0;
+    int j = 0;
+    while (i < left.length || j < right.length) {
+      if (j == right.length || (i < left.length && left[i] < right[j])) {
+        result[size++] = left[i++];
+      } else if (i == left.length || left[i] > right[j]) {
+        result[size++] = right[j++];
+      } else {
+        result[size++] = left[i];
+        i++;
+        j++;
+      }
+    }
+    return Arrays.copyOf(result, size);
+  }
+
+  private static String nullToEmpty(String text) {
+    return text == null ? "" : text;
+  }
+
+  private static void writeString(DataOutputStream out, String text) throws IOException {
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  static class IndexedItem {
+
+    private final long id;
+    private final long namespaceId;
+    private final String key;
+    private final String value;
+
+    IndexedItem(long id, long namespaceId, String key, String value) {
+      this.id = id;
+      this.namespaceId = namespaceId;
+      this.key = key;
+      this.value = value;
+    }
+
+    long getId() {
+      return id;
+    }
+
+    long getNamespaceId() {
+      return namespaceId;
+    }
+
+    String getKey() {
+      return key;
+    }
+
+    String getValue() {
+      return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      IndexedItem that = (IndexedItem) o;
+      return id == that.id && namespaceId == that.namespaceId && key.equals(that.key)
+          && value.equals(that.value);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(id, namespaceId, key, value);
+    }
+  }
+
+  /**
+   * The matches in the order of ids, only the ones in the page are kept
+   */
+  private static class Matches {
+
+    private final long offset;
+    private final long end;
+    private final long maxCounted;
+    private final List<IndexedItem> page = new ArrayList<>();
+    private long total;
+
+    Matches(long offset, int limit) {
+      this.offset = offset;
+      this.end = offset + limit;
+      this.maxCounted = Math.max(MAX_COUNTED_MATCHES, end);
+    }
+
+    boolean isFull() {
+      return total >= maxCounted;
+    }
+
+    void add(IndexedItem item) {
+      if (total >= offset && total < end) {
+        page.add(item);
+      }
+      total++;
+    }
+  }
+
+  static class SearchResult {
+
+    private final List<IndexedItem> items;
+    private final long total;
+
+    SearchResult(List<IndexedItem> items, long total) {
+      this.items = items;
+      this.total = total;
+    }
+
+    List<IndexedItem> getItems() {
+      return items;
+    }
+
+    long getTotal() {
+      return total;
+    }
+  }
+
+  /**
+   * A growable int array, as the postings would take several times the memory with boxed integers
+   */
+  private static class IntList {
+
+    private int[] elements = new int[4];
+    private int size;
+
+    void add(int element) {
+      if (size == elements.length) {
+        elements = Arrays.copyOf(elements, size * 2);
+      }
+      elements[size++] = element;
+    }
+
+    void clear() {
+      elements = new int[4];
+      size = 0;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(elements, size);
+    }
+  }
+}
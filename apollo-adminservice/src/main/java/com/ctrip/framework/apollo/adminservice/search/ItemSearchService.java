@@ -0,0 +1,327 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.adminservice.search;
+
+import com.ctrip.framework.apollo.adminservice.search.ItemSearchIndex.IndexedItem;
+import com.ctrip.framework.apollo.adminservice.search.ItemSearchIndex.SearchResult;
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.Item;
+import com.ctrip.framework.apollo.biz.entity.Namespace;
+import com.ctrip.framework.apollo.biz.repository.ItemRepository;
+import com.ctrip.framework.apollo.biz.repository.NamespaceRepository;
+import com.ctrip.framework.apollo.common.dto.ItemInfoDTO;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.google.common.base.Strings;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+/**
+ * Search the items with an in-memory {@link ItemSearchIndex} instead of the full table scans of
+ * the like queries.
+ * <p>
+ * The index is built from all the items on startup, or loaded from the local file persisted
+ * before. It's then kept up to date by scanning the items changed since the last scan, including
+ * the deleted ones, and persisted again periodically. The scans only look back a minute before
+ * the last one, so the changes committed later than that after their modified times, e.g. by long
+ * transactions, are caught by rescanning all the items periodically. The searches go to the
+ * database until the index is ready.
+ */
+@Service
+public class ItemSearchService implements ApplicationRunner {
+
+  private static final Logger logger = LoggerFactory.getLogger(ItemSearchService.class);
+  //same as the page size of the findFirst500 queries
+  private static final int BATCH_SIZE = 500;
+  //the items are rescanned this long before the last scan, for the changes committed late
+  private static final long SCAN_OVERLAP_IN_MILLI = TimeUnit.MINUTES.toMillis(1);
+  private static final long PERSIST_INTERVAL_IN_MILLI = TimeUnit.MINUTES.toMillis(10);
+
+  private final ItemRepository itemRepository;
+  private final NamespaceRepository namespaceRepository;
+  private final BizConfig bizConfig;
+  private final ScheduledExecutorService indexExecutorService;
+  //null until the index is built or loaded
+  private volatile ItemSearchIndex index;
+  private Date lastTimeScanned;
+  private boolean changedSinceLastPersist;
+  private long lastTimePersisted;
+  private long lastTimeReconciled;
+
+  public ItemSearchService(
+      final ItemRepository itemRepository,
+      final NamespaceRepository namespaceRepository,
+      final BizConfig bizConfig) {
+    this.itemRepository = itemRepository;
+    this.namespaceRepository = namespaceRepository;
+    this.bizConfig = bizConfig;
+    this.indexExecutorService = Executors.newSingleThreadScheduledExecutor(
+        ApolloThreadFactory.create("ItemSearchIndex", true));
+  }
+
+  @Override
+  public void run(ApplicationArguments args) throws Exception {
+    if (!bizConfig.isItemSearchIndexEnabled()) {
+      return;
+    }
+    indexExecutorService.scheduleWithFixedDelay(this::scanItems, 0,
+        bizConfig.itemSearchIndexScanInterval(), bizConfig.itemSearchIndexScanIntervalTimeUnit());
+  }
+
+  public boolean isReady() {
+    return index != null;
+  }
+
+  /**
+   * Find the items whose keys and values contain the keywords ignoring case, in the order of ids.
+   * <p>
+   * The items of the namespaces deleted since the last scan are removed from the index once found,
+   * and the page is searched again, so the page is full and the total leaves them out.
+   */
+  public Page<ItemInfoDTO> search(String key, String value, Pageable pageable) {
+    while (true) {
+      SearchResult result = index.search(key, value, pageable.getOffset(), pageable.getPageSize());
+
+      Set<Long> namespaceIds = result.getItems().stream().map(IndexedItem::getNamespaceId)
+          .collect(Collectors.toSet());
+      Map<Long, Namespace> namespaces = StreamSupport.stream(
+              namespaceRepository.findAllById(namespaceIds).spliterator(), false)
+          .collect(Collectors.toMap(Namespace::getId, Function.identity()));
+
+      if (namespaces.size() < namespaceIds.size()) {
+        namespaceIds.removeAll(namespaces.keySet());
+        index.removeNamespaces(namespaceIds);
+        continue;
+      }
+
+      List<ItemInfoDTO> itemInfos = result.getItems().stream().map(item -> {
+        Namespace namespace = namespaces.get(item.getNamespaceId());
+        return new ItemInfoDTO(namespace.getAppId(), namespace.getClusterName(),
+            namespace.getNamespaceName(), item.getKey(), item.getValue());
+      }).collect(Collectors.toList());
+      return new PageImpl<>(itemInfos, pageable, result.getTotal());
+    }
+  }
+
+  void scanItems() {
+    Transaction transaction = Tracer.newTransaction("Apollo.ItemSearchIndex", "scanItems");
+    try {
+      ItemSearchIndex current = index;
+      if (current == null) {
+        current = loadIndex();
+        if (current == null) {
+          current = buildIndex();
+        }
+      }
+      loadChangedItems(current);
+      index = current;
+
+      long reconcileInterval = bizConfig.itemSearchIndexReconcileIntervalTimeUnit().toMillis(
+          bizConfig.itemSearchIndexReconcileInterval());
+      if (System.currentTimeMillis() - lastTimeReconciled >= reconcileInterval) {
+        reconcileIndex(current);
+      }
+
+      if (changedSinceLastPersist
+          && System.currentTimeMillis() - lastTimePersisted >= PERSIST_INTERVAL_IN_MILLI) {
+        persistIndex();
+      }
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.error("Scan items for the item search index failed", ex);
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  private ItemSearchIndex buildIndex() {
+    ItemSearchIndex built = new ItemSearchIndex();
+    //the items changed during the build are scanned again afterwards
+    lastTimeScanned = new Date();
+    long lastId = 0;
+    boolean hasMore = true;
+    while (hasMore && !Thread.currentThread().isInterrupted()) {
+      List<Item> items = itemRepository.findFirst500ByIdGreaterThanOrderByIdAsc(lastId);
+      if (items.isEmpty()) {
+        break;
+      }
+      items.forEach(item -> built.upsert(item.getId(), item.getNamespaceId(), item.getKey(),
+          item.getValue()));
+      hasMore = items.size() == BATCH_SIZE;
+      lastId = items.get(items.size() - 1).getId();
+    }
+    logger.info("Built the item search index of {} items", built.size());
+    changedSinceLastPersist = true;
+    lastTimePersisted = 0;
+    lastTimeReconciled = System.currentTimeMillis();
+    return built;
+  }
+
+  private void reconcileIndex(ItemSearchIndex current) {
+    lastTimeReconciled = System.currentTimeMillis();
+    current.startReconcile();
+    boolean completed = false;
+    try {
+      long lastId = 0;
+      boolean hasMore = true;
+      while (hasMore) {
+        if (Thread.currentThread().isInterrupted()) {
+          return;
+        }
+        List<Item> items = itemRepository.findFirst500ByIdGreaterThanOrderByIdAsc(lastId);
+        if (items.isEmpty()) {
+          break;
+        }
+        items.forEach(item -> current.reconcile(item.getId(), item.getNamespaceId(), item.getKey(),
+            item.getValue()));
+        hasMore = items.size() == BATCH_SIZE;
+        lastId = items.get(items.size() - 1).getId();
+      }
+      completed = true;
+    } finally {
+      if (completed) {
+        int removed = current.finishReconcile();
+        logger.info("Reconciled the item search index of {} items, {} removed", current.size(),
+            removed);
+        changedSinceLastPersist = true;
+      } else {
+        current.abortReconcile();
+      }
+    }
+  }
+
+  private void loadChangedItems(ItemSearchIndex current) {
+    Date scanned = new Date(lastTimeScanned.getTime() - SCAN_OVERLAP_IN_MILLI);
+    boolean hasMore = true;
+    while (hasMore && !Thread.currentThread().isInterrupted()) {
+      List<Item> items = itemRepository.findFirst500ChangedItems(scanned);
+      if (items.isEmpty()) {
+        break;
+      }
+      mergeItems(current, items);
+
+      hasMore = items.size() == BATCH_SIZE;
+      scanned = items.get(items.size() - 1).getDataChangeLastModifiedTime();
+      //the other items changed at the same time may be beyond the batch
+      if (hasMore) {
+        mergeItems(current, itemRepository.findChangedItems(scanned));
+      }
+    }
+    if (scanned.after(lastTimeScanned)) {
+      lastTimeScanned = scanned;
+    }
+  }
+
+  private void mergeItems(ItemSearchIndex current, List<Item> items) {
+    for (Item item : items) {
+      if (item.isDeleted()) {
+        current.remove(item.getId());
+      } else {
+        current.upsert(item.getId(), item.getNamespaceId(), item.getKey(), item.getValue());
+      }
+    }
+    changedSinceLastPersist = true;
+  }
+
+  /**
+   * @return null if the index was never persisted or can't be loaded
+   */
+  private ItemSearchIndex loadIndex() {
+    String path = bizConfig.itemSearchIndexPath();
+    if (Strings.isNullOrEmpty(path) || !new File(path).isFile()) {
+      return null;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new GZIPInputStream(new FileInputStream(path))))) {
+      Date scanned = new Date(in.readLong());
+      ItemSearchIndex loaded = ItemSearchIndex.readFrom(in);
+      lastTimeScanned = scanned;
+      lastTimePersisted = System.currentTimeMillis();
+      //not persisted, the loaded index is reconciled one interval later
+      lastTimeReconciled = lastTimePersisted;
+      logger.info("Loaded the item search index of {} items from {}", loaded.size(), path);
+      return loaded;
+    } catch (Throwable ex) {
+      logger.warn("Load the item search index from {} failed, will build it again", path, ex);
+      return null;
+    }
+  }
+
+  private void persistIndex() {
+    String path = bizConfig.itemSearchIndexPath();
+    if (Strings.isNullOrEmpty(path)) {
+      return;
+    }
+    File file = new File(path);
+    File tmpFile = new File(path + ".tmp");
+    try {
+      Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+          new GZIPOutputStream(new FileOutputStream(tmpFile))))) {
+        out.writeLong(lastTimeScanned.getTime());
+        index.writeTo(out);
+      }
+      Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      changedSinceLastPersist = false;
+    } catch (IOException ex) {
+      logger.warn("Persist the item search index to {} failed", path, ex);
+    } finally {
+      lastTimePersisted = System.currentTimeMillis();
+    }
+  }
+
+  @PreDestroy
+  void stopIndex() throws InterruptedException {
+    indexExecutorService.shutdown();
+    if (indexExecutorService.awaitTermination(5, TimeUnit.SECONDS) && index != null
+        && changedSinceLastPersist) {
+      persistIndex();
+    }
+  }
+}
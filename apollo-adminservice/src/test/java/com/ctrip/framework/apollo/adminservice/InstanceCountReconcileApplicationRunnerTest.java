@@ -0,0 +1,84 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.adminservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.service.JobLeaseService;
+import com.ctrip.framework.apollo.biz.service.NamespaceInstanceCountService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class InstanceCountReconcileApplicationRunnerTest {
+  @Mock
+  private NamespaceInstanceCountService namespaceInstanceCountService;
+  @Mock
+  private JobLeaseService jobLeaseService;
+  @Mock
+  private BizConfig bizConfig;
+  private SimpleMeterRegistry meterRegistry;
+  private InstanceCountReconcileApplicationRunner runner;
+
+  @Before
+  public void setUp() throws Exception {
+    meterRegistry = new SimpleMeterRegistry();
+    runner = new InstanceCountReconcileApplicationRunner(namespaceInstanceCountService,
+        jobLeaseService, bizConfig, meterRegistry);
+    when(bizConfig.instanceCountReconcileIntervalInMinutes()).thenReturn(60);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    runner.stopReconcile();
+  }
+
+  @Test
+  public void testReconcile() {
+    when(jobLeaseService.tryAcquireLease(anyString(), anyLong())).thenReturn(true);
+    when(namespaceInstanceCountService.reconcileInstanceCounts()).thenReturn(3);
+
+    runner.reconcileInstanceCounts();
+
+    //the lease outlives the interval, so the same admin service keeps it
+    verify(jobLeaseService).tryAcquireLease(anyString(), eq(TimeUnit.MINUTES.toMillis(120)));
+    assertEquals(3, meterRegistry.get("instance.count.reconcile.corrected").counter().count(), 0);
+  }
+
+  @Test
+  public void testReconcileWithoutLease() {
+    //held by another admin service
+    when(jobLeaseService.tryAcquireLease(anyString(), anyLong())).thenReturn(false);
+
+    runner.reconcileInstanceCounts();
+
+    verify(namespaceInstanceCountService, never()).reconcileInstanceCounts();
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.adminservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.Instance;
+import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
+import com.ctrip.framework.apollo.biz.service.InstanceService;
+import com.ctrip.framework.apollo.biz.service.JobLeaseService;
+import com.google.common.collect.Lists;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class InstanceRetentionApplicationRunnerTest {
+  @Mock
+  private InstanceService instanceService;
+  @Mock
+  private JobLeaseService jobLeaseService;
+  @Mock
+  private BizConfig bizConfig;
+  private SimpleMeterRegistry meterRegistry;
+  private InstanceRetentionApplicationRunner runner;
+
+  @Before
+  public void setUp() throws Exception {
+    meterRegistry = new SimpleMeterRegistry();
+    runner = new InstanceRetentionApplicationRunner(instanceService, jobLeaseService, bizConfig,
+        meterRegistry);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    runner.stopPurge();
+  }
+
+  @Test
+  public void testPurgeDisabled() {
+    when(bizConfig.instanceRetentionDays()).thenReturn(BizConfig.DEFAULT_INSTANCE_RETENTION_DAYS);
+
+    runner.purgeExpiredInstances();
+
+    verify(instanceService, never()).findInstanceConfigsModifiedBefore(anyLong(), any());
+    verify(instanceService, never()).findInstancesModifiedBefore(anyLong(), any());
+  }
+
+  @Test
+  public void testPurgeInBatches() {
+    int retentionDays = 7;
+    when(bizConfig.instanceRetentionDays()).thenReturn(retentionDays);
+    when(jobLeaseService.tryAcquireLease(anyString(), anyLong())).thenReturn(true);
+    when(bizConfig.instanceRetentionBatchIntervalInMilli()).thenReturn(0);
+
+    List<InstanceConfig> firstBatch = assembleInstanceConfigs(1, 500);
+    List<InstanceConfig> secondBatch = assembleInstanceConfigs(501, 10);
+    when(instanceService.findInstanceConfigsModifiedBefore(eq(0L), any())).thenReturn(firstBatch);
+    when(instanceService.findInstanceConfigsModifiedBefore(eq(500L), any()))
+        .thenReturn(secondBatch);
+    when(instanceService.batchDeleteInstanceConfigsModifiedBefore(any(), any()))
+        .thenReturn(500, 8);
+
+    List<Instance> instances = Lists.newArrayList(assembleInstance(3), assembleInstance(5));
+    when(instanceService.findInstancesModifiedBefore(eq(0L), any())).thenReturn(instances);
+    when(instanceService.batchDeleteUnusedInstancesModifiedBefore(any(), any())).thenReturn(1);
+
+    long start = System.currentTimeMillis();
+    runner.purgeExpiredInstances();
+
+    ArgumentCaptor<Date> expireDate = ArgumentCaptor.forClass(Date.class);
+    verify(instanceService).batchDeleteInstanceConfigsModifiedBefore(
+        eq(LongStream.rangeClosed(501, 510).boxed().collect(Collectors.toList())),
+        expireDate.capture());
+    verify(instanceService).batchDeleteUnusedInstancesModifiedBefore(
+        eq(Lists.newArrayList(3L, 5L)), eq(expireDate.getValue()));
+    long expectedExpireTime = start - TimeUnit.DAYS.toMillis(retentionDays);
+    assertEquals(expectedExpireTime, expireDate.getValue().getTime(), 1000);
+    //the instance config scan stops at the last partial batch
+    verify(instanceService, never()).findInstanceConfigsModifiedBefore(eq(510L), any());
+
+    assertEquals(510, counter("instance.retention.scanned", "InstanceConfig"), 0);
+    assertEquals(508, counter("instance.retention.purged", "InstanceConfig"), 0);
+    assertEquals(2, counter("instance.retention.scanned", "Instance"), 0);
+    assertEquals(1, counter("instance.retention.purged", "Instance"), 0);
+  }
+
+  @Test
+  public void testPurgeWithoutLease() {
+    when(bizConfig.instanceRetentionDays()).thenReturn(2);
+    //held by another admin service
+    when(jobLeaseService.tryAcquireLease(anyString(), anyLong())).thenReturn(false);
+
+    runner.purgeExpiredInstances();
+
+    verify(instanceService, never()).findInstanceConfigsModifiedBefore(anyLong(), any());
+    verify(instanceService, never()).findInstancesModifiedBefore(anyLong(), any());
+  }
+
+  @Test
+  public void testPurgeStopsWhenLeaseLost() {
+    when(bizConfig.instanceRetentionDays()).thenReturn(2);
+    when(bizConfig.instanceRetentionBatchIntervalInMilli()).thenReturn(0);
+    //acquired and renewed for the first batch, then taken over by another admin service
+    when(jobLeaseService.tryAcquireLease(anyString(), anyLong())).thenReturn(true, true, false);
+    when(instanceService.findInstanceConfigsModifiedBefore(eq(0L), any()))
+        .thenReturn(assembleInstanceConfigs(1, 500));
+    when(instanceService.batchDeleteInstanceConfigsModifiedBefore(any(), any())).thenReturn(500);
+
+    runner.purgeExpiredInstances();
+
+    verify(instanceService).batchDeleteInstanceConfigsModifiedBefore(any(), any());
+    verify(instanceService, never()).findInstanceConfigsModifiedBefore(eq(500L), any());
+    verify(instanceService, never()).findInstancesModifiedBefore(anyLong(), any());
+  }
+
+  @Test
+  public void testPurgeNothing() {
+    when(bizConfig.instanceRetentionDays()).thenReturn(2);
+    when(jobLeaseService.tryAcquireLease(anyString(), anyLong())).thenReturn(true);
+    when(instanceService.findInstanceConfigsModifiedBefore(eq(0L), any()))
+        .thenReturn(Collections.emptyList());
+    when(instanceService.findInstancesModifiedBefore(eq(0L), any()))
+        .thenReturn(Collections.emptyList());
+
+    runner.purgeExpiredInstances();
+
+    verify(instanceService, never()).batchDeleteInstanceConfigsModifiedBefore(any(), any());
+    verify(instanceService, never()).batchDeleteUnusedInstancesModifiedBefore(any(), any());
+  }
+
+  private double counter(String name, String table) {
+    return meterRegistry.get(name).tag("table", table).counter().count();
+  }
+
+  private List<InstanceConfig> assembleInstanceConfigs(long startId, int size) {
+    return LongStream.range(startId, startId + size).mapToObj(id -> {
+      InstanceConfig instanceConfig = new InstanceConfig();
+      instanceConfig.setId(id);
+      return instanceConfig;
+    }).collect(Collectors.toList());
+  }
+
+  private Instance assembleInstance(long id) {
+    Instance instance = new Instance();
+    instance.setId(id);
+    return instance;
+  }
+}
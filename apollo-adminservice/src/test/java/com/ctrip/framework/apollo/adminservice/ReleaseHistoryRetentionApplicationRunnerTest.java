@@ -0,0 +1,169 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.adminservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.ReleaseHistory;
+import com.ctrip.framework.apollo.biz.service.JobLeaseService;
+import com.ctrip.framework.apollo.biz.service.ReleaseHistoryService;
+import com.google.common.collect.Lists;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReleaseHistoryRetentionApplicationRunnerTest {
+  @Mock
+  private ReleaseHistoryService releaseHistoryService;
+  @Mock
+  private JobLeaseService jobLeaseService;
+  @Mock
+  private BizConfig bizConfig;
+  private SimpleMeterRegistry meterRegistry;
+  private ReleaseHistoryRetentionApplicationRunner runner;
+
+  @Before
+  public void setUp() throws Exception {
+    meterRegistry = new SimpleMeterRegistry();
+    runner = new ReleaseHistoryRetentionApplicationRunner(releaseHistoryService,
+        jobLeaseService, bizConfig, meterRegistry);
+    when(bizConfig.releaseHistoryRetentionPurgeInterval()).thenReturn(60);
+    when(bizConfig.releaseHistoryRetentionPurgeIntervalTimeUnit()).thenReturn(TimeUnit.SECONDS);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    runner.stopPurge();
+  }
+
+  @Test
+  public void testPurgeInBatches() {
+    when(jobLeaseService.tryAcquireLease(anyString(), anyLong())).thenReturn(true);
+    when(releaseHistoryService.findMaxReleaseHistoryId()).thenReturn(800L);
+    when(bizConfig.releaseHistoryRetentionPurgeBatchIntervalInMilli()).thenReturn(0);
+    ReleaseHistory someNamespace = assembleReleaseHistory("someNamespace", 600);
+    ReleaseHistory anotherNamespace = assembleReleaseHistory("anotherNamespace", 700);
+    when(releaseHistoryService.findLatestReleaseHistoriesOutOfRetention())
+        .thenReturn(Lists.newArrayList(someNamespace, anotherNamespace));
+
+    List<ReleaseHistory> firstBatch = assembleReleaseHistories(1, 500);
+    List<ReleaseHistory> secondBatch = assembleReleaseHistories(501, 100);
+    when(releaseHistoryService.findReleaseHistoriesToPurge(someNamespace))
+        .thenReturn(firstBatch, secondBatch);
+    when(releaseHistoryService.purgeReleaseHistories(firstBatch)).thenReturn(499);
+    when(releaseHistoryService.purgeReleaseHistories(secondBatch)).thenReturn(100);
+    List<ReleaseHistory> anotherBatch = assembleReleaseHistories(601, 3);
+    when(releaseHistoryService.findReleaseHistoriesToPurge(anotherNamespace))
+        .thenReturn(anotherBatch);
+    when(releaseHistoryService.purgeReleaseHistories(anotherBatch)).thenReturn(3);
+
+    runner.purgeReleaseHistories();
+
+    //the purge of a namespace stops at the last partial batch
+    verify(releaseHistoryService, times(2)).findReleaseHistoriesToPurge(someNamespace);
+    verify(releaseHistoryService, times(1)).findReleaseHistoriesToPurge(anotherNamespace);
+    assertEquals(2, meterRegistry.get("release.history.retention.namespaces").gauge().value(), 0);
+    assertEquals(603, counter("ReleaseHistory"), 0);
+    assertEquals(602, counter("Release"), 0);
+  }
+
+  @Test
+  public void testPurgeNothing() {
+    when(jobLeaseService.tryAcquireLease(anyString(), anyLong())).thenReturn(true);
+    when(releaseHistoryService.findMaxReleaseHistoryId()).thenReturn(800L);
+    when(releaseHistoryService.findLatestReleaseHistoriesOutOfRetention())
+        .thenReturn(Collections.emptyList());
+
+    runner.purgeReleaseHistories();
+
+    verify(releaseHistoryService, never()).findReleaseHistoriesToPurge(any());
+    verify(releaseHistoryService, never()).purgeReleaseHistories(any());
+  }
+
+  @Test
+  public void testScanReleaseHistoriesCreatedSinceLastRun() {
+    when(jobLeaseService.tryAcquireLease(anyString(), anyLong())).thenReturn(true);
+    when(bizConfig.releaseHistoryRetentionSize()).thenReturn(10);
+    when(releaseHistoryService.findMaxReleaseHistoryId()).thenReturn(800L, 900L, 900L);
+    when(releaseHistoryService.findLatestReleaseHistoriesOutOfRetention())
+        .thenReturn(Collections.emptyList());
+    when(releaseHistoryService.findLatestReleaseHistoriesOutOfRetention(800, 900))
+        .thenReturn(Collections.emptyList());
+
+    runner.purgeReleaseHistories();
+    runner.purgeReleaseHistories();
+
+    verify(releaseHistoryService, times(1)).findLatestReleaseHistoriesOutOfRetention();
+    verify(releaseHistoryService, times(1)).findLatestReleaseHistoriesOutOfRetention(800, 900);
+
+    //scan all again when the retention size changes
+    when(bizConfig.releaseHistoryRetentionSize()).thenReturn(5);
+    runner.purgeReleaseHistories();
+
+    verify(releaseHistoryService, times(2)).findLatestReleaseHistoriesOutOfRetention();
+  }
+
+  @Test
+  public void testPurgeWithoutLease() {
+    //held by another admin service
+    when(jobLeaseService.tryAcquireLease(anyString(), anyLong())).thenReturn(false);
+
+    runner.purgeReleaseHistories();
+
+    verify(releaseHistoryService, never()).findLatestReleaseHistoriesOutOfRetention();
+    verify(releaseHistoryService, never()).findLatestReleaseHistoriesOutOfRetention(anyLong(),
+        anyLong());
+  }
+
+  private double counter(String table) {
+    return meterRegistry.get("release.history.retention.purged").tag("table", table).counter()
+        .count();
+  }
+
+  private ReleaseHistory assembleReleaseHistory(String namespaceName, long id) {
+    ReleaseHistory releaseHistory = new ReleaseHistory();
+    releaseHistory.setId(id);
+    releaseHistory.setAppId("someAppId");
+    releaseHistory.setClusterName("default");
+    releaseHistory.setNamespaceName(namespaceName);
+    releaseHistory.setBranchName("default");
+    return releaseHistory;
+  }
+
+  private List<ReleaseHistory> assembleReleaseHistories(long startId, int size) {
+    return LongStream.range(startId, startId + size)
+        .mapToObj(id -> assembleReleaseHistory("someNamespace", id)).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.adminservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.service.JobLeaseService;
+import com.ctrip.framework.apollo.biz.service.ReleaseMessageService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReleaseMessageCompactionApplicationRunnerTest {
+  @Mock
+  private ReleaseMessageService releaseMessageService;
+  @Mock
+  private JobLeaseService jobLeaseService;
+  @Mock
+  private BizConfig bizConfig;
+  private SimpleMeterRegistry meterRegistry;
+  private ReleaseMessageCompactionApplicationRunner runner;
+
+  @Before
+  public void setUp() throws Exception {
+    meterRegistry = new SimpleMeterRegistry();
+    runner = new ReleaseMessageCompactionApplicationRunner(releaseMessageService,
+        jobLeaseService, bizConfig, meterRegistry);
+    when(bizConfig.releaseMessageCompactionInterval()).thenReturn(60);
+    when(bizConfig.releaseMessageCompactionIntervalTimeUnit()).thenReturn(TimeUnit.SECONDS);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    runner.stopCompaction();
+  }
+
+  @Test
+  public void testCompactInRanges() {
+    when(jobLeaseService.tryAcquireLease(anyString(), eq(120000L))).thenReturn(true);
+    when(bizConfig.releaseMessageCompactionBatchIntervalInMilli()).thenReturn(0);
+    when(releaseMessageService.findMaxId()).thenReturn(5000L);
+    when(releaseMessageService.findFirstIdFrom(0)).thenReturn(10L);
+    when(releaseMessageService.deleteSupersededReleaseMessages(10, 510)).thenReturn(300);
+    //no release messages between 510 and 4800
+    when(releaseMessageService.findFirstIdFrom(510)).thenReturn(4800L);
+    when(releaseMessageService.deleteSupersededReleaseMessages(4800, 5000)).thenReturn(20);
+    when(releaseMessageService.findFirstIdFrom(5000)).thenReturn(5000L);
+    when(releaseMessageService.countReleaseMessages()).thenReturn(180L);
+
+    runner.compactReleaseMessages();
+
+    verify(releaseMessageService, never()).deleteSupersededReleaseMessages(5000, 5000);
+    assertEquals(320, meterRegistry.get("release.message.compaction.reclaimed").counter().count(),
+        0);
+    assertEquals(180, meterRegistry.get("release.message.table.size").gauge().value(), 0);
+  }
+
+  @Test
+  public void testCompactStopsWhenLeaseLost() {
+    //acquired and renewed for the first range, then taken over by another admin service
+    when(jobLeaseService.tryAcquireLease(anyString(), eq(120000L))).thenReturn(true, true, false);
+    when(bizConfig.releaseMessageCompactionBatchIntervalInMilli()).thenReturn(0);
+    when(releaseMessageService.findMaxId()).thenReturn(5000L);
+    when(releaseMessageService.findFirstIdFrom(0)).thenReturn(10L);
+    when(releaseMessageService.deleteSupersededReleaseMessages(10, 510)).thenReturn(300);
+    when(releaseMessageService.findFirstIdFrom(510)).thenReturn(510L);
+
+    runner.compactReleaseMessages();
+
+    verify(releaseMessageService, never()).deleteSupersededReleaseMessages(510, 1010);
+    assertEquals(300, meterRegistry.get("release.message.compaction.reclaimed").counter().count(),
+        0);
+  }
+
+  @Test
+  public void testCompactWithoutReleaseMessages() {
+    when(jobLeaseService.tryAcquireLease(anyString(), anyLong())).thenReturn(true);
+    when(releaseMessageService.findMaxId()).thenReturn(null);
+
+    runner.compactReleaseMessages();
+
+    verify(releaseMessageService, never()).deleteSupersededReleaseMessages(anyLong(), anyLong());
+    assertEquals(0, meterRegistry.get("release.message.table.size").gauge().value(), 0);
+  }
+
+  @Test
+  public void testCompactWithoutLease() {
+    //held by another admin service
+    when(jobLeaseService.tryAcquireLease(anyString(), anyLong())).thenReturn(false);
+
+    runner.compactReleaseMessages();
+
+    verify(releaseMessageService, never()).findMaxId();
+    verify(releaseMessageService, never()).deleteSupersededReleaseMessages(anyLong(), anyLong());
+  }
+}
@@ -20,13 +20,17 @@ import com.ctrip.framework.apollo.biz.entity.Instance;
 import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
 import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.biz.service.InstanceService;
+import com.ctrip.framework.apollo.biz.service.NamespaceInstanceCountService;
 import com.ctrip.framework.apollo.biz.service.ReleaseService;
+import com.ctrip.framework.apollo.common.controller.HttpMessageConverterConfiguration;
+import com.ctrip.framework.apollo.common.dto.CursorPageDTO;
 import com.ctrip.framework.apollo.common.dto.InstanceDTO;
 import com.ctrip.framework.apollo.common.dto.PageDTO;
 import com.ctrip.framework.apollo.common.exception.NotFoundException;
 import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.gson.GsonBuilder;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -36,16 +40,23 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
 
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -61,11 +72,15 @@ public class InstanceConfigControllerTest {
   @Mock
   private InstanceService instanceService;
 
+  @Mock
+  private NamespaceInstanceCountService namespaceInstanceCountService;
+
   private Pageable pageable;
 
   @Before
   public void setUp() throws Exception {
-    instanceConfigController = new InstanceConfigController(releaseService, instanceService);
+    instanceConfigController = new InstanceConfigController(releaseService, instanceService,
+        namespaceInstanceCountService);
 
     pageable = PageRequest.of(0, 2);
   }
@@ -314,15 +329,154 @@ public class InstanceConfigControllerTest {
 
 
   @Test
-  public void testGetInstancesCountByNamespace() throws Exception {
+  public void testGetByReleaseAfter() throws Exception {
+    long someReleaseId = 1;
+    long someAfterId = 10;
+    String someReleaseKey = "someKey";
+    Release someRelease = new Release();
+    someRelease.setReleaseKey(someReleaseKey);
+    when(releaseService.findOne(someReleaseId)).thenReturn(someRelease);
+
+    InstanceConfig someInstanceConfig = assembleInstanceConfig(2, "someConfigAppId",
+        "someNamespace", someReleaseKey, new Date());
+    someInstanceConfig.setId(11);
+    InstanceConfig anotherInstanceConfig = assembleInstanceConfig(1, "someConfigAppId",
+        "someNamespace", someReleaseKey, new Date());
+    anotherInstanceConfig.setId(12);
+    when(instanceService.findActiveInstanceConfigsByReleaseKey(someReleaseKey, someAfterId, 2))
+        .thenReturn(Lists.newArrayList(someInstanceConfig, anotherInstanceConfig));
+
+    Instance someInstance = assembleInstance(2, "someAppId", "someCluster", "someDC", "someIp");
+    Instance anotherInstance = assembleInstance(1, "someAppId", "someCluster", "someDC",
+        "anotherIp");
+    when(instanceService.findInstancesByIds(Sets.newHashSet(1L, 2L)))
+        .thenReturn(Lists.newArrayList(anotherInstance, someInstance));
+
+    CursorPageDTO<InstanceDTO> result = instanceConfigController.getByReleaseAfter(someReleaseId,
+        someAfterId, 2);
+
+    //ordered by instance config ids
+    assertEquals(2, result.getContent().size());
+    verifyInstance(someInstance, result.getContent().get(0));
+    verifyInstance(anotherInstance, result.getContent().get(1));
+    assertEquals(someInstanceConfig.getReleaseDeliveryTime(),
+        result.getContent().get(0).getConfigs().get(0).getReleaseDeliveryTime());
+    assertNull(result.getContent().get(0).getConfigs().get(0).getRelease());
+    assertEquals(Long.valueOf(12), result.getNextCursor());
+
+    when(instanceService.findActiveInstanceConfigsByReleaseKey(someReleaseKey, 12, 2))
+        .thenReturn(Collections.emptyList());
+
+    result = instanceConfigController.getByReleaseAfter(someReleaseId, 12, 2);
+
+    assertFalse(result.hasContent());
+    assertFalse(result.hasNext());
+  }
+
+  @Test(expected = NotFoundException.class)
+  public void testGetByReleaseAfterWithReleaseNotFound() throws Exception {
+    instanceConfigController.getByReleaseAfter(1, 0, 20);
+  }
+
+  @Test
+  public void testGetInstancesByNamespaceAfter() throws Exception {
     String someAppId = "someAppId";
     String someClusterName = "someClusterName";
     String someNamespaceName = "someNamespaceName";
+    String someInstanceAppId = "someInstanceAppId";
+    long someAfterId = 10;
+
+    InstanceConfig someInstanceConfig = assembleInstanceConfig(1, someAppId, someNamespaceName,
+        "someReleaseKey", new Date());
+    someInstanceConfig.setId(11);
+    when(instanceService.findActiveInstanceConfigsByNamespaceAndInstanceAppId(someInstanceAppId,
+        someAppId, someClusterName, someNamespaceName, someAfterId, 500))
+        .thenReturn(Lists.newArrayList(someInstanceConfig));
+    Instance someInstance = assembleInstance(1, someInstanceAppId, someClusterName, "someDC",
+        "someIp");
+    when(instanceService.findInstancesByIds(Sets.newHashSet(1L)))
+        .thenReturn(Lists.newArrayList(someInstance));
+
+    //size is limited
+    CursorPageDTO<InstanceDTO> result = instanceConfigController.getInstancesByNamespaceAfter(
+        someAppId, someClusterName, someNamespaceName, someInstanceAppId, someAfterId, 10000);
+
+    assertEquals(1, result.getContent().size());
+    verifyInstance(someInstance, result.getContent().get(0));
+    assertNull(result.getContent().get(0).getConfigs());
+    assertEquals(500, result.getSize());
+    assertFalse(result.hasNext());
+  }
 
-    Page<Instance> instances = new PageImpl<>(Collections.emptyList(), pageable, 2);
+  @Test
+  public void testStreamByReleasesNotIn() throws Exception {
+    long someReleaseId = 1;
+    String someConfigAppId = "someConfigAppId";
+    String someConfigClusterName = "someConfigClusterName";
+    String someConfigNamespaceName = "someConfigNamespaceName";
+    String someReleaseKey = "someReleaseKey";
+    String someInstanceConfigReleaseKey = "someInstanceConfigReleaseKey";
+    Release someRelease = new Release();
+    someRelease.setReleaseKey(someReleaseKey);
+    when(releaseService.findByReleaseIds(Sets.newHashSet(someReleaseId)))
+        .thenReturn(Lists.newArrayList(someRelease));
+
+    List<InstanceConfig> firstBatch = Lists.newArrayList();
+    for (int i = 1; i <= 500; i++) {
+      InstanceConfig instanceConfig = assembleInstanceConfig(i, someConfigAppId,
+          someConfigNamespaceName, someInstanceConfigReleaseKey, new Date());
+      instanceConfig.setId(i);
+      firstBatch.add(instanceConfig);
+    }
+    InstanceConfig lastInstanceConfig = assembleInstanceConfig(501, someConfigAppId,
+        someConfigNamespaceName, someInstanceConfigReleaseKey, new Date());
+    lastInstanceConfig.setId(501);
+    Set<String> releaseKeys = Sets.newHashSet(someReleaseKey);
+    when(instanceService.findInstanceConfigsByNamespaceWithReleaseKeysNotIn(someConfigAppId,
+        someConfigClusterName, someConfigNamespaceName, releaseKeys, 0, 500))
+        .thenReturn(firstBatch);
+    when(instanceService.findInstanceConfigsByNamespaceWithReleaseKeysNotIn(someConfigAppId,
+        someConfigClusterName, someConfigNamespaceName, releaseKeys, 500, 500))
+        .thenReturn(Lists.newArrayList(lastInstanceConfig));
+    when(instanceService.findInstancesByIds(any())).thenAnswer(invocation -> {
+      Set<Long> instanceIds = invocation.getArgument(0);
+      return instanceIds.stream().map(instanceId -> assembleInstance(instanceId, "someAppId",
+          "someCluster", "someDC", "someIp")).collect(Collectors.toList());
+    });
+    Release someInstanceConfigRelease = new Release();
+    someInstanceConfigRelease.setReleaseKey(someInstanceConfigReleaseKey);
+    someInstanceConfigRelease.setConfigurations("{}");
+    when(releaseService.findByReleaseKeys(Sets.newHashSet(someInstanceConfigReleaseKey)))
+        .thenReturn(Lists.newArrayList(someInstanceConfigRelease));
+
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    instanceConfigController.streamByReleasesNotIn(someConfigAppId, someConfigClusterName,
+        someConfigNamespaceName, String.valueOf(someReleaseId), response);
+
+    InstanceDTO[] result = new GsonBuilder()
+        .setDateFormat(HttpMessageConverterConfiguration.DATE_FORMAT).create()
+        .fromJson(response.getContentAsString(), InstanceDTO[].class);
+
+    assertEquals(MediaType.APPLICATION_JSON_VALUE, response.getContentType().split(";")[0]);
+    assertEquals(501, result.length);
+    for (int i = 0; i < result.length; i++) {
+      assertEquals(i + 1, result[i].getId());
+      assertEquals(someInstanceConfigReleaseKey,
+          result[i].getConfigs().get(0).getRelease().getReleaseKey());
+      assertNull(result[i].getConfigs().get(0).getRelease().getConfigurations());
+    }
+    //the releases are loaded only once
+    verify(releaseService, times(1)).findByReleaseKeys(any());
+  }
+
+  @Test
+  public void testGetInstancesCountByNamespace() throws Exception {
+    String someAppId = "someAppId";
+    String someClusterName = "someClusterName";
+    String someNamespaceName = "someNamespaceName";
 
-    when(instanceService.findInstancesByNamespace(eq(someAppId), eq(someClusterName),
-        eq(someNamespaceName), any(Pageable.class))).thenReturn(instances);
+    when(namespaceInstanceCountService.countInstances(someAppId, someClusterName,
+        someNamespaceName)).thenReturn(2L);
 
     long result = instanceConfigController.getInstancesCountByNamespace(someAppId,
         someClusterName, someNamespaceName);
@@ -23,8 +23,11 @@ import com.ctrip.framework.apollo.common.dto.ClusterDTO;
 import com.ctrip.framework.apollo.common.dto.ItemChangeSets;
 import com.ctrip.framework.apollo.common.dto.ItemDTO;
 import com.ctrip.framework.apollo.common.dto.NamespaceDTO;
+import com.ctrip.framework.apollo.common.dto.NamespaceImportDTO;
+import com.ctrip.framework.apollo.common.dto.NamespaceImportResultDTO;
 
 import com.ctrip.framework.apollo.common.exception.BadRequestException;
+import com.google.common.collect.Lists;
 import java.util.Objects;
 import org.junit.Assert;
 import org.junit.Test;
@@ -316,7 +319,36 @@ public class ItemSetControllerTest extends AbstractControllerTest {
     Assert.assertEquals(createdSize, savedItems.size());
   }
 
+  @Test
+  @Sql(scripts = "/controller/test-itemset.sql", executionPhase = ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/controller/cleanup.sql", executionPhase = ExecutionPhase.AFTER_TEST_METHOD)
+  public void testImportNamespace() {
+    String appId = "someAppId";
+    String clusterName = "default";
+    String namespaceName = "importedNamespace";
+
+    NamespaceImportDTO namespaceImport = new NamespaceImportDTO();
+    namespaceImport.setDataChangeLastModifiedBy("imported");
+    namespaceImport.setItems(Lists.newArrayList(new ItemDTO("k1", "v1", "", 1),
+        new ItemDTO("k2", "v2", "", 2)));
+
+    NamespaceImportResultDTO result = restTemplate.postForObject(importBaseUrl(), namespaceImport,
+        NamespaceImportResultDTO.class, appId, clusterName, namespaceName);
+
+    Assert.assertNotNull(result);
+    Assert.assertTrue(result.isNamespaceCreated());
+    Assert.assertEquals(2, result.getCreatedItems());
+    List<Item> items = itemRepository.findByNamespaceIdOrderByLineNumAsc(
+        result.getNamespace().getId());
+    Assert.assertEquals(2, items.size());
+    Assert.assertEquals("imported", items.get(0).getDataChangeCreatedBy());
+  }
+
   private String itemSetBaseUrl() {
     return url("/apps/{appId}/clusters/{clusterName}/namespaces/{namespaceName}/itemset");
   }
+
+  private String importBaseUrl() {
+    return url("/apps/{appId}/clusters/{clusterName}/namespaces/{namespaceName}/import");
+  }
 }
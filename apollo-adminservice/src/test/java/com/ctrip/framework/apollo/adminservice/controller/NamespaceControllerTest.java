@@ -16,10 +16,20 @@
  */
 package com.ctrip.framework.apollo.adminservice.controller;
 
+import com.ctrip.framework.apollo.common.dto.ItemDTO;
 import com.ctrip.framework.apollo.common.dto.NamespaceDTO;
+import com.ctrip.framework.apollo.common.dto.NamespaceSnapshotDTO;
 import com.ctrip.framework.apollo.common.utils.InputValidator;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import org.junit.Assert;
 import org.junit.Test;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.jdbc.Sql.ExecutionPhase;
 import org.springframework.web.client.HttpClientErrorException;
 import static org.hamcrest.Matchers.containsString;
 
@@ -44,4 +54,62 @@ public class NamespaceControllerTest extends AbstractControllerTest {
       Assert.assertThat(new String(e.getResponseBodyAsByteArray()), containsString(InputValidator.INVALID_CLUSTER_NAMESPACE_MESSAGE));
     }
   }
+
+  @Test
+  @Sql(scripts = "/controller/test-namespace-snapshot.sql", executionPhase = ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/controller/cleanup.sql", executionPhase = ExecutionPhase.AFTER_TEST_METHOD)
+  @Sql(statements = "DELETE FROM \"Release\" WHERE AppId = 'snapshotAppId'", executionPhase = ExecutionPhase.AFTER_TEST_METHOD)
+  public void findSnapshots() {
+    Map<String, NamespaceSnapshotDTO> snapshots = findSnapshots(true);
+    Assert.assertEquals(3, snapshots.size());
+
+    NamespaceSnapshotDTO application = snapshots.get("application");
+    Assert.assertEquals(200, application.getNamespace().getId());
+    Assert.assertEquals(Arrays.asList("k2", "k1"), keys(application.getItems()));
+    Assert.assertEquals("snapshot-release-1", application.getLatestRelease().getReleaseKey());
+    Assert.assertEquals(Collections.singletonList("k0"), keys(application.getDeletedItems()));
+
+    NamespaceSnapshotDTO another = snapshots.get("another");
+    Assert.assertEquals(Collections.singletonList("k3"), keys(another.getItems()));
+    Assert.assertEquals("snapshot-release-3", another.getLatestRelease().getReleaseKey());
+    Assert.assertTrue(another.getDeletedItems().isEmpty());
+
+    NamespaceSnapshotDTO unreleased = snapshots.get("unreleased");
+    Assert.assertTrue(unreleased.getItems().isEmpty());
+    Assert.assertNull(unreleased.getLatestRelease());
+    Assert.assertEquals(Collections.singletonList("k4"), keys(unreleased.getDeletedItems()));
+  }
+
+  @Test
+  @Sql(scripts = "/controller/test-namespace-snapshot.sql", executionPhase = ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/controller/cleanup.sql", executionPhase = ExecutionPhase.AFTER_TEST_METHOD)
+  @Sql(statements = "DELETE FROM \"Release\" WHERE AppId = 'snapshotAppId'", executionPhase = ExecutionPhase.AFTER_TEST_METHOD)
+  public void findSnapshotsWithoutDeletedItems() {
+    Map<String, NamespaceSnapshotDTO> snapshots = findSnapshots(false);
+
+    Assert.assertEquals(3, snapshots.size());
+    snapshots.values().forEach(snapshot -> Assert.assertTrue(snapshot.getDeletedItems().isEmpty()));
+    Assert.assertEquals(Arrays.asList("k2", "k1"), keys(snapshots.get("application").getItems()));
+  }
+
+  @Test
+  public void findSnapshotsOfEmptyCluster() {
+    NamespaceSnapshotDTO[] snapshots = restTemplate.getForObject(
+        url("/apps/{appId}/clusters/{clusterName}/namespace-snapshots"),
+        NamespaceSnapshotDTO[].class, "someNotExistAppId", "default");
+
+    Assert.assertEquals(0, snapshots.length);
+  }
+
+  private Map<String, NamespaceSnapshotDTO> findSnapshots(boolean includeDeletedItems) {
+    NamespaceSnapshotDTO[] snapshots = restTemplate.getForObject(
+        url("/apps/{appId}/clusters/{clusterName}/namespace-snapshots?includeDeletedItems={includeDeletedItems}"),
+        NamespaceSnapshotDTO[].class, "snapshotAppId", "default", includeDeletedItems);
+    return Arrays.stream(snapshots).collect(Collectors.toMap(
+        snapshot -> snapshot.getNamespace().getNamespaceName(), Function.identity()));
+  }
+
+  private List<String> keys(List<ItemDTO> items) {
+    return items.stream().map(ItemDTO::getKey).collect(Collectors.toList());
+  }
 }
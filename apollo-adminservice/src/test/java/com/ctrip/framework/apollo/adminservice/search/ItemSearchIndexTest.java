@@ -0,0 +1,188 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.adminservice.search;
+
+import static org.junit.Assert.assertEquals;
+
+import com.ctrip.framework.apollo.adminservice.search.ItemSearchIndex.IndexedItem;
+import com.ctrip.framework.apollo.adminservice.search.ItemSearchIndex.SearchResult;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ItemSearchIndexTest {
+
+  private ItemSearchIndex index;
+
+  @Before
+  public void setUp() throws Exception {
+    index = new ItemSearchIndex();
+    index.upsert(1, 100, "timeout", "3000");
+    index.upsert(2, 100, "db.url", "jdbc:mysql://localhost:3306/apollo");
+    index.upsert(3, 200, "redis.timeout", "5000");
+    index.upsert(4, 200, "Redis.Host", "LocalHost");
+  }
+
+  @Test
+  public void testSearch() {
+    assertEquals(Lists.newArrayList(1L, 3L), ids(index.search("timeout", "", 0, 10)));
+    assertEquals(Lists.newArrayList(2L, 4L), ids(index.search(null, "localhost", 0, 10)));
+    assertEquals(Lists.newArrayList(4L), ids(index.search("redis", "host", 0, 10)));
+    //the keywords shorter than the grams match by scanning
+    assertEquals(Lists.newArrayList(3L, 4L), ids(index.search("s", "", 0, 10)));
+    assertEquals(Lists.newArrayList(1L, 2L, 3L, 4L), ids(index.search("", "", 0, 10)));
+    assertEquals(0, index.search("timeouts", "", 0, 10).getTotal());
+  }
+
+  @Test
+  public void testSearchWithPage() {
+    SearchResult result = index.search("", "", 1, 2);
+
+    assertEquals(Lists.newArrayList(2L, 3L), ids(result));
+    assertEquals(4, result.getTotal());
+    assertEquals(0, index.search("", "", 4, 2).getItems().size());
+  }
+
+  @Test
+  public void testSearchInOrderOfIdsAfterUpdates() {
+    //added after the items with larger ids
+    index.upsert(1, 100, "timeout", "1000");
+    index.upsert(3, 200, "redis.timeout", "6000");
+    index.upsert(5, 200, "connect.timeout", "7000");
+
+    assertEquals(Lists.newArrayList(1L, 3L, 5L), ids(index.search("timeout", "", 0, 10)));
+    assertEquals(Lists.newArrayList(2L, 3L), ids(index.search("", "", 1, 2)));
+    assertEquals(Lists.newArrayList(1L, 3L), ids(index.search("", "00", 0, 10)).subList(0, 2));
+    assertEquals(Lists.newArrayList(5L), ids(index.search("", "7000", 0, 10)));
+  }
+
+  @Test
+  public void testSearchCountsUpToMax() {
+    for (long id = 10; id < 10010; id++) {
+      index.upsert(id, 300, "key" + id, "value");
+    }
+    index.upsert(1, 100, "timeout", "value");
+
+    SearchResult result = index.search("", "value", 0, 10);
+    assertEquals(ItemSearchIndex.MAX_COUNTED_MATCHES, result.getTotal());
+    assertEquals(1L, ids(result).get(0).longValue());
+    assertEquals(10L, ids(result).get(1).longValue());
+
+    //counted to the end of the page at least
+    result = index.search("", "value", 9995, 10);
+    assertEquals(10001, result.getTotal());
+    assertEquals(6, result.getItems().size());
+    assertEquals(10004L, ids(result).get(0).longValue());
+  }
+
+  @Test
+  public void testUpdateAndRemove() {
+    index.upsert(1, 100, "connect.timeout", "1000");
+    index.remove(3);
+    index.remove(5);
+
+    assertEquals(3, index.size());
+    assertEquals(Lists.newArrayList(1L), ids(index.search("timeout", "", 0, 10)));
+    assertEquals(0, index.search("", "3000", 0, 10).getTotal());
+    assertEquals("connect.timeout", index.search("", "1000", 0, 10).getItems().get(0).getKey());
+  }
+
+  @Test
+  public void testRemoveNamespaces() {
+    index.removeNamespaces(Collections.singleton(200L));
+
+    assertEquals(2, index.size());
+    assertEquals(Lists.newArrayList(1L), ids(index.search("timeout", "", 0, 10)));
+  }
+
+  @Test
+  public void testReconcile() {
+    index.startReconcile();
+    index.reconcile(1, 100, "timeout", "3000");
+    index.reconcile(2, 100, "db.url", "jdbc:mysql://localhost:3306/portal");
+    //changed during the reconciliation
+    index.upsert(4, 200, "Redis.Port", "6379");
+    index.upsert(5, 200, "redis.timeout", "6000");
+
+    assertEquals(1, index.finishReconcile());
+
+    assertEquals(Lists.newArrayList(1L, 5L), ids(index.search("timeout", "", 0, 10)));
+    assertEquals(Lists.newArrayList(2L), ids(index.search("", "portal", 0, 10)));
+    assertEquals(Lists.newArrayList(4L), ids(index.search("port", "", 0, 10)));
+  }
+
+  @Test
+  public void testAbortReconcile() {
+    index.startReconcile();
+    index.reconcile(1, 100, "timeout", "3000");
+    index.abortReconcile();
+
+    assertEquals(4, index.size());
+  }
+
+  @Test
+  public void testSearchLongValues() {
+    index.upsert(5, 300, "someKey", Strings.repeat("x", 2000) + "needle");
+
+    assertEquals(Lists.newArrayList(5L), ids(index.search("", "NEEDLE", 0, 10)));
+    assertEquals(Lists.newArrayList(5L), ids(index.search("key", "needle", 0, 10)));
+  }
+
+  @Test
+  public void testCompact() {
+    for (int i = 0; i < 3; i++) {
+      for (long id = 10; id < 10010; id++) {
+        index.upsert(id, 300, "key" + id, "value" + i);
+      }
+    }
+
+    assertEquals(10004, index.size());
+    assertEquals(10000, index.search("", "value2", 0, 10).getTotal());
+    assertEquals(0, index.search("", "value1", 0, 10).getTotal());
+  }
+
+  @Test
+  public void testPersistAndLoad() throws Exception {
+    index.upsert(5, 300, "中文", "值");
+    index.remove(2);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      index.writeTo(out);
+    }
+
+    ItemSearchIndex loaded = ItemSearchIndex.readFrom(
+        new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+    assertEquals(4, loaded.size());
+    assertEquals(Lists.newArrayList(1L, 3L), ids(loaded.search("timeout", "", 0, 10)));
+    IndexedItem item = loaded.search("中", "", 0, 10).getItems().get(0);
+    assertEquals(300, item.getNamespaceId());
+    assertEquals("值", item.getValue());
+  }
+
+  private List<Long> ids(SearchResult result) {
+    return result.getItems().stream().map(IndexedItem::getId).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.adminservice.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.Item;
+import com.ctrip.framework.apollo.biz.entity.Namespace;
+import com.ctrip.framework.apollo.biz.repository.ItemRepository;
+import com.ctrip.framework.apollo.biz.repository.NamespaceRepository;
+import com.ctrip.framework.apollo.common.dto.ItemInfoDTO;
+import com.google.common.collect.Lists;
+import java.io.File;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ItemSearchServiceTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+  @Mock
+  private ItemRepository itemRepository;
+  @Mock
+  private NamespaceRepository namespaceRepository;
+  @Mock
+  private BizConfig bizConfig;
+  private String indexPath;
+  private ItemSearchService itemSearchService;
+
+  @Before
+  public void setUp() throws Exception {
+    indexPath = new File(temporaryFolder.getRoot(), "index/item-search-index").getPath();
+    when(bizConfig.itemSearchIndexPath()).thenReturn(indexPath);
+    itemSearchService = new ItemSearchService(itemRepository, namespaceRepository, bizConfig);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    itemSearchService.stopIndex();
+  }
+
+  @Test
+  public void testBuildAndUpdateIndex() {
+    stubReconcileInterval(60);
+    when(itemRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0))
+        .thenReturn(Lists.newArrayList(assembleItem(1, "timeout", "3000", false),
+            assembleItem(2, "db.url", "localhost", false)));
+    when(itemRepository.findFirst500ChangedItems(any())).thenReturn(Collections.emptyList());
+
+    assertFalse(itemSearchService.isReady());
+    itemSearchService.scanItems();
+
+    assertTrue(itemSearchService.isReady());
+    assertTrue(new File(indexPath).isFile());
+    when(namespaceRepository.findAllById(Collections.singleton(100L)))
+        .thenReturn(Lists.newArrayList(assembleNamespace()));
+    assertEquals(2, itemSearchService.search("", "", PageRequest.of(0, 10)).getTotalElements());
+
+    when(itemRepository.findFirst500ChangedItems(any()))
+        .thenReturn(Lists.newArrayList(assembleItem(1, "timeout", "3000", true),
+            assembleItem(3, "read.timeout", "5000", false)));
+    itemSearchService.scanItems();
+
+    Page<ItemInfoDTO> result = itemSearchService.search("timeout", "", PageRequest.of(0, 10));
+    assertEquals(1, result.getTotalElements());
+    ItemInfoDTO itemInfo = result.getContent().get(0);
+    assertEquals("someAppId", itemInfo.getAppId());
+    assertEquals("default", itemInfo.getClusterName());
+    assertEquals("application", itemInfo.getNamespaceName());
+    assertEquals("read.timeout", itemInfo.getKey());
+    assertEquals("5000", itemInfo.getValue());
+  }
+
+  @Test
+  public void testLoadPersistedIndex() throws Exception {
+    stubReconcileInterval(60);
+    when(itemRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0))
+        .thenReturn(Lists.newArrayList(assembleItem(1, "timeout", "3000", false)));
+    when(itemRepository.findFirst500ChangedItems(any())).thenReturn(Collections.emptyList());
+    itemSearchService.scanItems();
+    itemSearchService.stopIndex();
+
+    ItemSearchService anotherService = new ItemSearchService(itemRepository, namespaceRepository,
+        bizConfig);
+    try {
+      anotherService.scanItems();
+
+      assertTrue(anotherService.isReady());
+      verify(itemRepository).findFirst500ByIdGreaterThanOrderByIdAsc(anyLong());
+      when(namespaceRepository.findAllById(Collections.singleton(100L)))
+          .thenReturn(Lists.newArrayList(assembleNamespace()));
+      assertEquals(1, anotherService.search("time", "", PageRequest.of(0, 10)).getTotalElements());
+    } finally {
+      anotherService.stopIndex();
+    }
+  }
+
+  @Test
+  public void testSearchWithoutItemsOfDeletedNamespaces() {
+    stubReconcileInterval(60);
+    long deletedNamespaceId = 200;
+    when(itemRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0))
+        .thenReturn(Lists.newArrayList(assembleItem(1, deletedNamespaceId, "timeout", "1000", false),
+            assembleItem(2, deletedNamespaceId, "read.timeout", "2000", false),
+            assembleItem(3, "timeout", "3000", false),
+            assembleItem(4, "read.timeout", "4000", false),
+            assembleItem(5, "connect.timeout", "5000", false)));
+    when(itemRepository.findFirst500ChangedItems(any())).thenReturn(Collections.emptyList());
+    itemSearchService.scanItems();
+    when(namespaceRepository.findAllById(Collections.singleton(deletedNamespaceId)))
+        .thenReturn(Collections.emptyList());
+    when(namespaceRepository.findAllById(Collections.singleton(100L)))
+        .thenReturn(Lists.newArrayList(assembleNamespace()));
+
+    Page<ItemInfoDTO> result = itemSearchService.search("timeout", "", PageRequest.of(0, 2));
+
+    assertEquals(3, result.getTotalElements());
+    assertEquals(2, result.getContent().size());
+    assertEquals("3000", result.getContent().get(0).getValue());
+    assertEquals("4000", result.getContent().get(1).getValue());
+    assertEquals("5000",
+        itemSearchService.search("timeout", "", PageRequest.of(1, 2)).getContent().get(0)
+            .getValue());
+  }
+
+  @Test
+  public void testReconcileIndex() {
+    //reconciled on every scan
+    stubReconcileInterval(0);
+    when(itemRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0))
+        .thenReturn(Lists.newArrayList(assembleItem(1, "timeout", "3000", false),
+            assembleItem(2, "read.timeout", "4000", false)));
+    when(itemRepository.findFirst500ChangedItems(any())).thenReturn(Collections.emptyList());
+    itemSearchService.scanItems();
+
+    //changes committed too late to be found by the scans of the changed items
+    when(itemRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0))
+        .thenReturn(Lists.newArrayList(assembleItem(1, "timeout", "1000", false),
+            assembleItem(3, "connect.timeout", "5000", false)));
+    itemSearchService.scanItems();
+
+    when(namespaceRepository.findAllById(Collections.singleton(100L)))
+        .thenReturn(Lists.newArrayList(assembleNamespace()));
+    Page<ItemInfoDTO> result = itemSearchService.search("timeout", "", PageRequest.of(0, 10));
+    assertEquals(2, result.getTotalElements());
+    assertEquals("1000", result.getContent().get(0).getValue());
+    assertEquals("connect.timeout", result.getContent().get(1).getKey());
+  }
+
+  @Test
+  public void testNotReadyIfScanFailed() {
+    when(bizConfig.itemSearchIndexPath()).thenReturn("");
+    when(itemRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0))
+        .thenThrow(new RuntimeException("some exception"));
+
+    itemSearchService.scanItems();
+
+    assertFalse(itemSearchService.isReady());
+    verify(itemRepository, never()).findFirst500ChangedItems(any());
+  }
+
+  private void stubReconcileInterval(int intervalInMinutes) {
+    when(bizConfig.itemSearchIndexReconcileInterval()).thenReturn(intervalInMinutes);
+    when(bizConfig.itemSearchIndexReconcileIntervalTimeUnit()).thenReturn(TimeUnit.MINUTES);
+  }
+
+  private Item assembleItem(long id, String key, String value, boolean deleted) {
+    return assembleItem(id, 100, key, value, deleted);
+  }
+
+  private Item assembleItem(long id, long namespaceId, String key, String value,
+      boolean deleted) {
+    Item item = new Item();
+    item.setId(id);
+    item.setNamespaceId(namespaceId);
+    item.setKey(key);
+    item.setValue(value);
+    item.setDeleted(deleted);
+    item.setDataChangeLastModifiedTime(new Date());
+    return item;
+  }
+
+  private Namespace assembleNamespace() {
+    Namespace namespace = new Namespace("someAppId", "default", "application");
+    namespace.setId(100);
+    return namespace;
+  }
+}
@@ -0,0 +1,35 @@
+--
+-- Copyright 2024 Apollo Authors
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+-- http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+--
+INSERT INTO "App" (AppId, Name, OwnerName, OwnerEmail) VALUES ('snapshotAppId','someAppName','someOwnerName','someOwnerName@ctrip.com');
+
+INSERT INTO "Cluster" (AppId, Name) VALUES ('snapshotAppId', 'default');
+
+INSERT INTO "Namespace" (Id, AppId, ClusterName, NamespaceName) VALUES (200, 'snapshotAppId', 'default', 'application');
+INSERT INTO "Namespace" (Id, AppId, ClusterName, NamespaceName) VALUES (201, 'snapshotAppId', 'default', 'another');
+INSERT INTO "Namespace" (Id, AppId, ClusterName, NamespaceName) VALUES (202, 'snapshotAppId', 'default', 'unreleased');
+
+INSERT INTO "Item" (NamespaceId, "Key", "Type", "Value", LineNum) VALUES (200, 'k1', '0', 'v1-modified', 2);
+INSERT INTO "Item" (NamespaceId, "Key", "Type", "Value", LineNum) VALUES (200, 'k2', '0', 'v2', 1);
+INSERT INTO "Item" (NamespaceId, "Key", "Type", "Value", LineNum) VALUES (201, 'k3', '0', 'v3', 1);
+
+INSERT INTO "Release" (ReleaseKey, Name, Comment, AppId, ClusterName, NamespaceName, Configurations, IsAbandoned, DataChange_CreatedTime) VALUES ('snapshot-release-1', 'REV1', '', 'snapshotAppId', 'default', 'application', '{"k0":"v0","k1":"v1"}', 0, '2024-01-01 10:00:00');
+INSERT INTO "Release" (ReleaseKey, Name, Comment, AppId, ClusterName, NamespaceName, Configurations, IsAbandoned, DataChange_CreatedTime) VALUES ('snapshot-release-2', 'REV2', '', 'snapshotAppId', 'default', 'application', '{}', 1, '2024-01-02 10:00:00');
+INSERT INTO "Release" (ReleaseKey, Name, Comment, AppId, ClusterName, NamespaceName, Configurations, IsAbandoned, DataChange_CreatedTime) VALUES ('snapshot-release-3', 'REV3', '', 'snapshotAppId', 'default', 'another', '{"k3":"v3"}', 0, '2024-01-03 10:00:00');
+
+INSERT INTO "Commit" (ChangeSets, AppId, ClusterName, NamespaceName, DataChange_CreatedBy, DataChange_CreatedTime, DataChange_LastTime) VALUES ('{"createItems":[],"updateItems":[],"deleteItems":[{"namespaceId":200,"key":"k-before-release","value":"v","lineNum":3}]}', 'snapshotAppId', 'default', 'application', 'apollo', '2024-01-01 09:00:00', '2024-01-01 09:00:00');
+INSERT INTO "Commit" (ChangeSets, AppId, ClusterName, NamespaceName, DataChange_CreatedBy, DataChange_CreatedTime, DataChange_LastTime) VALUES ('{"createItems":[],"updateItems":[],"deleteItems":[{"namespaceId":200,"key":"k0","value":"v0","lineNum":3}]}', 'snapshotAppId', 'default', 'application', 'apollo', '2024-01-01 11:00:00', '2024-01-01 11:00:00');
+INSERT INTO "Commit" (ChangeSets, AppId, ClusterName, NamespaceName, DataChange_CreatedBy, DataChange_CreatedTime, DataChange_LastTime) VALUES ('{"createItems":[],"updateItems":[],"deleteItems":[{"namespaceId":201,"key":"k-before-release","value":"v","lineNum":2}]}', 'snapshotAppId', 'default', 'another', 'apollo', '2024-01-02 09:00:00', '2024-01-02 09:00:00');
+INSERT INTO "Commit" (ChangeSets, AppId, ClusterName, NamespaceName, DataChange_CreatedBy, DataChange_CreatedTime, DataChange_LastTime) VALUES ('{"createItems":[],"updateItems":[],"deleteItems":[{"namespaceId":202,"key":"k4","value":"v4","lineNum":1}]}', 'snapshotAppId', 'default', 'unreleased', 'apollo', '2023-01-01 09:00:00', '2023-01-01 09:00:00');
@@ -49,6 +49,7 @@ public class BizConfig extends RefreshableConfig {
 
   private static final int DEFAULT_APPNAMESPACE_CACHE_REBUILD_INTERVAL = 60; //60s
   private static final int DEFAULT_GRAY_RELEASE_RULE_SCAN_INTERVAL = 60; //60s
+  private static final int DEFAULT_GRAY_RELEASE_RULE_REBUILD_INTERVAL = 3600; //3600s
   private static final int DEFAULT_APPNAMESPACE_CACHE_SCAN_INTERVAL = 1; //1s
   private static final int DEFAULT_ACCESS_KEY_CACHE_SCAN_INTERVAL = 1; //1s
   private static final int DEFAULT_ACCESS_KEY_CACHE_REBUILD_INTERVAL = 60; //60s
@@ -58,7 +59,24 @@ public class BizConfig extends RefreshableConfig {
   private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH = 100;
   private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH_INTERVAL_IN_MILLI = 100;//100ms
   private static final int DEFAULT_LONG_POLLING_TIMEOUT = 60; //60s
+  private static final int DEFAULT_INSTANCE_CONFIG_AUDIT_SHARDS = 4;
+  private static final int DEFAULT_INSTANCE_CONFIG_AUDIT_QUEUE_SIZE = 10000;
+  private static final int DEFAULT_INSTANCE_CONFIG_AUDIT_FLUSH_INTERVAL_IN_MILLI = 1000; //1000ms
+  private static final int DEFAULT_INSTANCE_CONFIG_AUDIT_INSTANCE_CACHE_SIZE = 200000;
+  private static final int DEFAULT_INSTANCE_CONFIG_AUDIT_RELEASE_KEY_CACHE_SIZE = 1000000;
   public static final int DEFAULT_RELEASE_HISTORY_RETENTION_SIZE = -1;
+  public static final int DEFAULT_INSTANCE_RETENTION_DAYS = -1;
+  private static final int DEFAULT_INSTANCE_RETENTION_BATCH_INTERVAL_IN_MILLI = 100; //100ms
+  private static final int DEFAULT_INSTANCE_COUNT_RECONCILE_INTERVAL_IN_MINUTES = 60; //60min
+  private static final int DEFAULT_RELEASE_CONFIGURATIONS_COMPRESSION_THRESHOLD = 4096; //4KB
+  private static final int DEFAULT_RELEASE_PAYLOAD_CACHE_SIZE = 1000;
+  private static final int DEFAULT_RELEASE_MESSAGE_COMPACTION_INTERVAL = 60; //60s
+  private static final int DEFAULT_RELEASE_HISTORY_RETENTION_PURGE_INTERVAL = 60; //60s
+  private static final int DEFAULT_RELEASE_HISTORY_RETENTION_PURGE_BATCH_INTERVAL_IN_MILLI = 100; //100ms
+  private static final int DEFAULT_RELEASE_MESSAGE_COMPACTION_BATCH_INTERVAL_IN_MILLI = 100; //100ms
+  private static final int DEFAULT_ITEM_SEARCH_INDEX_SCAN_INTERVAL = 5; //5s
+  private static final int DEFAULT_ITEM_SEARCH_INDEX_RECONCILE_INTERVAL = 60; //60 minutes
+  private static final String DEFAULT_ITEM_SEARCH_INDEX_PATH = "/opt/data/apollo-adminservice/item-search-index";
 
   private static final Gson GSON = new Gson();
 
@@ -97,6 +115,11 @@ public class BizConfig extends RefreshableConfig {
     return checkInt(interval, 1, Integer.MAX_VALUE, DEFAULT_GRAY_RELEASE_RULE_SCAN_INTERVAL);
   }
 
+  public int grayReleaseRuleRebuildInterval() {
+    int interval = getIntProperty("apollo.gray-release-rule-rebuild.interval", DEFAULT_GRAY_RELEASE_RULE_REBUILD_INTERVAL);
+    return checkInt(interval, 1, Integer.MAX_VALUE, DEFAULT_GRAY_RELEASE_RULE_REBUILD_INTERVAL);
+  }
+
   public long longPollingTimeoutInMilli() {
     int timeout = getIntProperty("long.polling.timeout", DEFAULT_LONG_POLLING_TIMEOUT);
     // java client's long polling timeout is 90 seconds, so server side long polling timeout must be less than 90
@@ -199,11 +222,78 @@ public class BizConfig extends RefreshableConfig {
     return checkInt(count, 1, Integer.MAX_VALUE, DEFAULT_RELEASE_HISTORY_RETENTION_SIZE);
   }
 
+  /**
+   * Release configurations are stored compressed when enabled. Compressed ones are always readable,
+   * so only enable it after all the config services and admin services are upgraded.
+   */
+  public boolean isReleaseConfigurationsCompressionEnabled() {
+    return getBooleanProperty("apollo.release.configurations.compression.enabled", false);
+  }
+
+  public int releaseConfigurationsCompressionThreshold() {
+    int threshold = getIntProperty("apollo.release.configurations.compression.threshold", DEFAULT_RELEASE_CONFIGURATIONS_COMPRESSION_THRESHOLD);
+    return checkInt(threshold, 0, Integer.MAX_VALUE, DEFAULT_RELEASE_CONFIGURATIONS_COMPRESSION_THRESHOLD);
+  }
+
+  /**
+   * Releases with the same configurations share one payload when enabled. The same as the
+   * compression, only enable it after all the config services and admin services are upgraded.
+   */
+  public boolean isReleasePayloadDedupEnabled() {
+    return getBooleanProperty("apollo.release.payload.dedup.enabled", false);
+  }
+
+  public int releasePayloadCacheSize() {
+    int size = getIntProperty("apollo.release.payload.cache.size", DEFAULT_RELEASE_PAYLOAD_CACHE_SIZE);
+    return checkInt(size, 1, Integer.MAX_VALUE, DEFAULT_RELEASE_PAYLOAD_CACHE_SIZE);
+  }
+
   public Map<String, Integer> releaseHistoryRetentionSizeOverride() {
     String overrideString = getValue("apollo.release-history.retention.size.override");
     return parseOverrideConfig(overrideString, releaseHistoryRetentionSizeOverrideTypeReference, value -> value > 0);
   }
 
+  /**
+   * The release histories beyond the retention sizes are purged periodically
+   */
+  public int releaseHistoryRetentionPurgeInterval() {
+    int interval = getIntProperty("apollo.release-history.retention.purge.interval", DEFAULT_RELEASE_HISTORY_RETENTION_PURGE_INTERVAL);
+    return checkInt(interval, 1, Integer.MAX_VALUE, DEFAULT_RELEASE_HISTORY_RETENTION_PURGE_INTERVAL);
+  }
+
+  public TimeUnit releaseHistoryRetentionPurgeIntervalTimeUnit() {
+    return TimeUnit.SECONDS;
+  }
+
+  public int releaseHistoryRetentionPurgeBatchIntervalInMilli() {
+    int interval = getIntProperty("apollo.release-history.retention.purge.batch.interval", DEFAULT_RELEASE_HISTORY_RETENTION_PURGE_BATCH_INTERVAL_IN_MILLI);
+    return checkInt(interval, 0, Integer.MAX_VALUE, DEFAULT_RELEASE_HISTORY_RETENTION_PURGE_BATCH_INTERVAL_IN_MILLI);
+  }
+
+  /**
+   * Instance configs not refreshed for the retention days are purged, and so are the instances
+   * left without instance configs. Active instances refresh their instance configs every day, so
+   * the minimum is 2 days.
+   */
+  public int instanceRetentionDays() {
+    int days = getIntProperty("apollo.instance.retention.days", DEFAULT_INSTANCE_RETENTION_DAYS);
+    return checkInt(days, 2, Integer.MAX_VALUE, DEFAULT_INSTANCE_RETENTION_DAYS);
+  }
+
+  public int instanceRetentionBatchIntervalInMilli() {
+    int interval = getIntProperty("apollo.instance.retention.batch.interval", DEFAULT_INSTANCE_RETENTION_BATCH_INTERVAL_IN_MILLI);
+    return checkInt(interval, 0, Integer.MAX_VALUE, DEFAULT_INSTANCE_RETENTION_BATCH_INTERVAL_IN_MILLI);
+  }
+
+  /**
+   * The materialized instance counts are reconciled with the active instance configs periodically,
+   * e.g. for the instance configs expired or purged.
+   */
+  public int instanceCountReconcileIntervalInMinutes() {
+    int interval = getIntProperty("apollo.instance.count.reconcile.interval", DEFAULT_INSTANCE_COUNT_RECONCILE_INTERVAL_IN_MINUTES);
+    return checkInt(interval, 1, Integer.MAX_VALUE, DEFAULT_INSTANCE_COUNT_RECONCILE_INTERVAL_IN_MINUTES);
+  }
+
   public int releaseMessageCacheScanInterval() {
     int interval = getIntProperty("apollo.release-message-cache-scan.interval", DEFAULT_RELEASE_MESSAGE_CACHE_SCAN_INTERVAL);
     return checkInt(interval, 1, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_CACHE_SCAN_INTERVAL);
@@ -218,6 +308,23 @@ public class BizConfig extends RefreshableConfig {
     return checkInt(interval, 100, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_SCAN_INTERVAL_IN_MS);
   }
 
+  /**
+   * The release messages superseded by newer ones of the same message are compacted periodically
+   */
+  public int releaseMessageCompactionInterval() {
+    int interval = getIntProperty("apollo.release-message.compaction.interval", DEFAULT_RELEASE_MESSAGE_COMPACTION_INTERVAL);
+    return checkInt(interval, 1, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_COMPACTION_INTERVAL);
+  }
+
+  public TimeUnit releaseMessageCompactionIntervalTimeUnit() {
+    return TimeUnit.SECONDS;
+  }
+
+  public int releaseMessageCompactionBatchIntervalInMilli() {
+    int interval = getIntProperty("apollo.release-message.compaction.batch.interval", DEFAULT_RELEASE_MESSAGE_COMPACTION_BATCH_INTERVAL_IN_MILLI);
+    return checkInt(interval, 0, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_COMPACTION_BATCH_INTERVAL_IN_MILLI);
+  }
+
   public int releaseMessageNotificationBatch() {
     int batch = getIntProperty("apollo.release-message.notification.batch", DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH);
     return checkInt(batch, 1, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH);
@@ -228,6 +335,31 @@ public class BizConfig extends RefreshableConfig {
     return checkInt(interval, 10, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH_INTERVAL_IN_MILLI);
   }
 
+  public int instanceConfigAuditShards() {
+    int shards = getIntProperty("instance.config.audit.shards", DEFAULT_INSTANCE_CONFIG_AUDIT_SHARDS);
+    return checkInt(shards, 1, 64, DEFAULT_INSTANCE_CONFIG_AUDIT_SHARDS);
+  }
+
+  public int instanceConfigAuditQueueSize() {
+    int size = getIntProperty("instance.config.audit.queue.size", DEFAULT_INSTANCE_CONFIG_AUDIT_QUEUE_SIZE);
+    return checkInt(size, 1, Integer.MAX_VALUE, DEFAULT_INSTANCE_CONFIG_AUDIT_QUEUE_SIZE);
+  }
+
+  public int instanceConfigAuditFlushIntervalInMilli() {
+    int interval = getIntProperty("instance.config.audit.flush.interval", DEFAULT_INSTANCE_CONFIG_AUDIT_FLUSH_INTERVAL_IN_MILLI);
+    return checkInt(interval, 10, Integer.MAX_VALUE, DEFAULT_INSTANCE_CONFIG_AUDIT_FLUSH_INTERVAL_IN_MILLI);
+  }
+
+  public int instanceConfigAuditInstanceCacheSize() {
+    int size = getIntProperty("instance.config.audit.instance.cache.size", DEFAULT_INSTANCE_CONFIG_AUDIT_INSTANCE_CACHE_SIZE);
+    return checkInt(size, 1, 1 << 26, DEFAULT_INSTANCE_CONFIG_AUDIT_INSTANCE_CACHE_SIZE);
+  }
+
+  public int instanceConfigAuditReleaseKeyCacheSize() {
+    int size = getIntProperty("instance.config.audit.release-key.cache.size", DEFAULT_INSTANCE_CONFIG_AUDIT_RELEASE_KEY_CACHE_SIZE);
+    return checkInt(size, 1, 1 << 26, DEFAULT_INSTANCE_CONFIG_AUDIT_RELEASE_KEY_CACHE_SIZE);
+  }
+
   public boolean isConfigServiceCacheEnabled() {
     return getBooleanProperty("config-service.cache.enabled", false);
   }
@@ -240,6 +372,44 @@ public class BizConfig extends RefreshableConfig {
     return getBooleanProperty("config-service.cache.key.ignore-case", false);
   }
 
+  /**
+   * Whether the admin service searches the items with an in-memory index instead of the database
+   */
+  public boolean isItemSearchIndexEnabled() {
+    return getBooleanProperty("apollo.item-search.index.enabled", false);
+  }
+
+  public int itemSearchIndexScanInterval() {
+    int interval = getIntProperty("apollo.item-search.index.scan.interval", DEFAULT_ITEM_SEARCH_INDEX_SCAN_INTERVAL);
+    return checkInt(interval, 1, Integer.MAX_VALUE, DEFAULT_ITEM_SEARCH_INDEX_SCAN_INTERVAL);
+  }
+
+  public TimeUnit itemSearchIndexScanIntervalTimeUnit() {
+    return TimeUnit.SECONDS;
+  }
+
+  /**
+   * How often the item search index rescans all the items, for the changes committed too late to
+   * be found by the scans of the changed items
+   */
+  public int itemSearchIndexReconcileInterval() {
+    int interval = getIntProperty("apollo.item-search.index.reconcile.interval",
+        DEFAULT_ITEM_SEARCH_INDEX_RECONCILE_INTERVAL);
+    return checkInt(interval, 1, Integer.MAX_VALUE, DEFAULT_ITEM_SEARCH_INDEX_RECONCILE_INTERVAL);
+  }
+
+  public TimeUnit itemSearchIndexReconcileIntervalTimeUnit() {
+    return TimeUnit.MINUTES;
+  }
+
+  /**
+   * The local file to persist the item search index, so that it's not built from scratch on restart.
+   * Empty not to persist the index.
+   */
+  public String itemSearchIndexPath() {
+    return getValue("apollo.item-search.index.path", DEFAULT_ITEM_SEARCH_INDEX_PATH);
+  }
+
   int checkInt(int value, int min, int max, int defaultValue) {
     if (value >= min && value <= max) {
       return value;
@@ -16,6 +16,7 @@
  */
 package com.ctrip.framework.apollo.biz.entity;
 
+import com.ctrip.framework.apollo.biz.utils.ReleaseConfigurationsCodec;
 import com.ctrip.framework.apollo.common.entity.BaseEntity;
 
 import org.hibernate.annotations.SQLDelete;
@@ -53,6 +54,9 @@ public class Release extends BaseEntity {
   @Lob
   private String configurations;
 
+  //configurations decoded from the stored ones on first read, see ReleaseConfigurationsCodec
+  private transient volatile String decodedConfigurations;
+
   @Column(name = "`Comment`", nullable = false)
   private String comment;
 
@@ -75,8 +79,17 @@ public class Release extends BaseEntity {
     return comment;
   }
 
+  /**
+   * @throws IllegalStateException if the release references a payload not resolved, see
+   * ReleasePayloadService#resolve
+   */
   public String getConfigurations() {
-    return configurations;
+    String decoded = decodedConfigurations;
+    if (decoded == null && configurations != null) {
+      decoded = ReleaseConfigurationsCodec.decode(configurations);
+      decodedConfigurations = decoded;
+    }
+    return decoded;
   }
 
   public String getNamespaceName() {
@@ -103,8 +116,26 @@ public class Release extends BaseEntity {
     this.comment = comment;
   }
 
+  /**
+   * @param configurations the plain json, or the ones encoded by {@link ReleaseConfigurationsCodec}
+   */
   public void setConfigurations(String configurations) {
     this.configurations = configurations;
+    this.decodedConfigurations = null;
+  }
+
+  /**
+   * @return the configurations as stored, which may be encoded by {@link ReleaseConfigurationsCodec}
+   */
+  public String getStoredConfigurations() {
+    return configurations;
+  }
+
+  /**
+   * Set the configurations of the referenced payload, the stored reference is kept as it is.
+   */
+  public void resolveConfigurations(String configurations) {
+    this.decodedConfigurations = configurations;
   }
 
   public void setNamespaceName(String namespaceName) {
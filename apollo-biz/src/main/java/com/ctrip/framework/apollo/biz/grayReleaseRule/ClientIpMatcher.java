@@ -0,0 +1,235 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.biz.grayReleaseRule;
+
+import com.ctrip.framework.apollo.common.dto.GrayReleaseRuleItemDTO;
+import com.google.common.collect.Sets;
+import com.google.common.net.InetAddresses;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Matches client ips against the ip list of a gray release rule item.
+ * <p>
+ * Besides exact ips and {@link GrayReleaseRuleItemDTO#ALL_IP}, the ip list supports CIDR blocks,
+ * e.g. 10.1.0.0/16 or 2001:db8::/32, and inclusive ranges, e.g. 10.1.1.1-10.1.1.100. All of them
+ * are stored in {@link IpPrefixTrie}s, so matching costs at most one step per address bit no
+ * matter how many ips the rule covers. Entries which are not ip literals, e.g. host names, are
+ * matched as exact strings like before.
+ */
+final class ClientIpMatcher {
+  private static final int IPV4_BITS = 32;
+  private static final int IPV6_BITS = 128;
+  private static final BigInteger IPV6_LOW_MASK = BigInteger.ONE.shiftLeft(64)
+      .subtract(BigInteger.ONE);
+
+  private final boolean allIps;
+  private final IpPrefixTrie ipv4Trie;
+  private final IpPrefixTrie ipv6Trie;
+  private final Set<String> otherClientIps;
+
+  ClientIpMatcher(Set<String> clientIpList) {
+    IpPrefixTrie ipv4 = new IpPrefixTrie(IPV4_BITS);
+    IpPrefixTrie ipv6 = new IpPrefixTrie(IPV6_BITS);
+    Set<String> others = Sets.newHashSet();
+    boolean all = false;
+
+    if (clientIpList != null) {
+      for (String clientIp : clientIpList) {
+        if (clientIp == null) {
+          continue;
+        }
+        String entry = clientIp.trim();
+        if (GrayReleaseRuleItemDTO.ALL_IP.equals(entry)) {
+          all = true;
+        } else if (!addCidr(entry, ipv4, ipv6) && !addRange(entry, ipv4, ipv6)
+            && !addAddress(entry, ipv4, ipv6)) {
+          others.add(clientIp);
+        }
+      }
+    }
+
+    this.allIps = all;
+    this.ipv4Trie = ipv4.isEmpty() ? null : ipv4;
+    this.ipv6Trie = ipv6.isEmpty() ? null : ipv6;
+    this.otherClientIps = others.isEmpty() ? Collections.emptySet() : others;
+  }
+
+  boolean matches(String clientIp) {
+    if (allIps) {
+      return true;
+    }
+    if (clientIp == null) {
+      return false;
+    }
+    if (clientIp.indexOf(':') >= 0) {
+      if ((ipv4Trie != null || ipv6Trie != null) && InetAddresses.isInetAddress(clientIp)
+          && containsAddress(InetAddresses.forString(clientIp).getAddress())) {
+        return true;
+      }
+    } else if (ipv4Trie != null) {
+      long ipv4 = parseIpv4(clientIp);
+      if (ipv4 >= 0 && ipv4Trie.contains(ipv4 << 32, 0)) {
+        return true;
+      }
+    }
+    return otherClientIps.contains(clientIp);
+  }
+
+  private boolean containsAddress(byte[] address) {
+    if (address.length == 4) {
+      return ipv4Trie != null && ipv4Trie.contains(toLong(address, 0), 0);
+    }
+    return ipv6Trie != null && ipv6Trie.contains(toLong(address, 0), toLong(address, 8));
+  }
+
+  /**
+   * Parses dotted decimal IPv4 addresses without allocation.
+   *
+   * @return the address as an unsigned int, or -1 if it's not an IPv4 address
+   */
+  private static long parseIpv4(String ip) {
+    int length = ip.length();
+    long address = 0;
+    int octets = 0;
+    int i = 0;
+    while (i < length) {
+      int start = i;
+      int octet = 0;
+      while (i < length && ip.charAt(i) != '.') {
+        char c = ip.charAt(i);
+        if (c < '0' || c > '9' || i - start >= 3) {
+          return -1;
+        }
+        octet = octet * 10 + (c - '0');
+        i++;
+      }
+      //disallow empty octets, leading zeroes and octets over 255
+      if (i == start || (i - start > 1 && ip.charAt(start) == '0') || octet > 255) {
+        return -1;
+      }
+      address = (address << 8) | octet;
+      octets++;
+      if (i < length) {
+        //skip the dot, which must be followed by another octet
+        i++;
+        if (i == length) {
+          return -1;
+        }
+      }
+    }
+    return octets == 4 ? address : -1;
+  }
+
+  private static boolean addAddress(String entry, IpPrefixTrie ipv4, IpPrefixTrie ipv6) {
+    if (!InetAddresses.isInetAddress(entry)) {
+      return false;
+    }
+    byte[] address = InetAddresses.forString(entry).getAddress();
+    insert(address, address.length * 8, ipv4, ipv6);
+    return true;
+  }
+
+  private static boolean addCidr(String entry, IpPrefixTrie ipv4, IpPrefixTrie ipv6) {
+    int slash = entry.indexOf('/');
+    if (slash <= 0) {
+      return false;
+    }
+    String ip = entry.substring(0, slash).trim();
+    String prefix = entry.substring(slash + 1).trim();
+    if (!InetAddresses.isInetAddress(ip) || prefix.isEmpty() || prefix.length() > 3) {
+      return false;
+    }
+    int prefixLength;
+    try {
+      prefixLength = Integer.parseInt(prefix);
+    } catch (NumberFormatException ex) {
+      return false;
+    }
+    byte[] address = InetAddresses.forString(ip).getAddress();
+    if (prefixLength < 0 || prefixLength > address.length * 8) {
+      return false;
+    }
+    insert(address, prefixLength, ipv4, ipv6);
+    return true;
+  }
+
+  private static boolean addRange(String entry, IpPrefixTrie ipv4, IpPrefixTrie ipv6) {
+    int dash = entry.indexOf('-');
+    if (dash <= 0) {
+      return false;
+    }
+    String from = entry.substring(0, dash).trim();
+    String to = entry.substring(dash + 1).trim();
+    if (!InetAddresses.isInetAddress(from) || !InetAddresses.isInetAddress(to)) {
+      return false;
+    }
+    byte[] fromAddress = InetAddresses.forString(from).getAddress();
+    byte[] toAddress = InetAddresses.forString(to).getAddress();
+    if (fromAddress.length != toAddress.length) {
+      return false;
+    }
+    int bits = fromAddress.length * 8;
+    BigInteger start = new BigInteger(1, fromAddress);
+    BigInteger end = new BigInteger(1, toAddress);
+    if (start.compareTo(end) > 0) {
+      return false;
+    }
+    IpPrefixTrie trie = bits == IPV4_BITS ? ipv4 : ipv6;
+
+    //split the range into the minimal list of CIDR blocks
+    while (start.compareTo(end) <= 0) {
+      int blockBits = start.signum() == 0 ? bits : start.getLowestSetBit();
+      while (blockBits > 0
+          && start.add(BigInteger.ONE.shiftLeft(blockBits)).subtract(BigInteger.ONE)
+          .compareTo(end) > 0) {
+        blockBits--;
+      }
+      if (bits == IPV4_BITS) {
+        trie.insert(start.longValue() << 32, 0, bits - blockBits);
+      } else {
+        trie.insert(start.shiftRight(64).longValue(), start.and(IPV6_LOW_MASK).longValue(),
+            bits - blockBits);
+      }
+      start = start.add(BigInteger.ONE.shiftLeft(blockBits));
+    }
+    return true;
+  }
+
+  private static void insert(byte[] address, int prefixLength, IpPrefixTrie ipv4,
+      IpPrefixTrie ipv6) {
+    if (address.length == 4) {
+      ipv4.insert(toLong(address, 0), 0, prefixLength);
+    } else {
+      ipv6.insert(toLong(address, 0), toLong(address, 8), prefixLength);
+    }
+  }
+
+  /**
+   * Reads up to 8 bytes starting from offset as the high bits of a long.
+   */
+  private static long toLong(byte[] bytes, int offset) {
+    long value = 0;
+    for (int i = 0; i < 8; i++) {
+      int index = offset + i;
+      value = (value << 8) | (index < bytes.length ? bytes[index] & 0xFF : 0);
+    }
+    return value;
+  }
+}
@@ -25,30 +25,47 @@ import java.util.Set;
  */
 public class GrayReleaseRuleCache implements Comparable<GrayReleaseRuleCache> {
   private long ruleId;
+  private String appId;
+  private String clusterName;
   private String branchName;
   private String namespaceName;
   private long releaseId;
   private long loadVersion;
   private int branchStatus;
-  private Set<GrayReleaseRuleItemDTO> ruleItems;
+  private GrayReleaseRuleItemMatcher[] ruleItemMatchers;
 
-  public GrayReleaseRuleCache(long ruleId, String branchName, String namespaceName, long
-      releaseId, int branchStatus, long loadVersion, Set<GrayReleaseRuleItemDTO> ruleItems) {
+  public GrayReleaseRuleCache(long ruleId, String appId, String clusterName, String branchName,
+      String namespaceName, long releaseId, int branchStatus, long loadVersion,
+      Set<GrayReleaseRuleItemDTO> ruleItems) {
     this.ruleId = ruleId;
+    this.appId = appId;
+    this.clusterName = clusterName;
     this.branchName = branchName;
     this.namespaceName = namespaceName;
     this.releaseId = releaseId;
     this.branchStatus = branchStatus;
     this.loadVersion = loadVersion;
-    this.ruleItems = ruleItems;
+    this.ruleItemMatchers = new GrayReleaseRuleItemMatcher[ruleItems.size()];
+    int i = 0;
+    for (GrayReleaseRuleItemDTO ruleItem : ruleItems) {
+      ruleItemMatchers[i++] = new GrayReleaseRuleItemMatcher(ruleItem);
+    }
   }
 
   public long getRuleId() {
     return ruleId;
   }
 
-  public Set<GrayReleaseRuleItemDTO> getRuleItems() {
-    return ruleItems;
+  GrayReleaseRuleItemMatcher[] getRuleItemMatchers() {
+    return ruleItemMatchers;
+  }
+
+  public String getAppId() {
+    return appId;
+  }
+
+  public String getClusterName() {
+    return clusterName;
   }
 
   public String getBranchName() {
@@ -76,8 +93,8 @@ public class GrayReleaseRuleCache implements Comparable<GrayReleaseRuleCache> {
   }
 
   public boolean matches(String clientAppId, String clientIp, String clientLabel) {
-    for (GrayReleaseRuleItemDTO ruleItem : ruleItems) {
-      if (ruleItem.matches(clientAppId, clientIp, clientLabel)) {
+    for (GrayReleaseRuleItemMatcher ruleItemMatcher : ruleItemMatchers) {
+      if (ruleItemMatcher.matches(clientAppId, clientIp, clientLabel)) {
         return true;
       }
     }
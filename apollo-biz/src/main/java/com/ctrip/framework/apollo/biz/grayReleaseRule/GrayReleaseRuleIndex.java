@@ -0,0 +1,220 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.biz.grayReleaseRule;
+
+import com.ctrip.framework.apollo.common.constants.NamespaceBranchStatus;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the active gray release rules.
+ * <p>
+ * The snapshot is rebuilt by {@link GrayReleaseRulesHolder} whenever the rules change and then
+ * published as a whole, so lookups never lock and never allocate. All keys are compared case
+ * insensitively, the hash codes are computed on the folded characters so the lookup doesn't need
+ * to join or lower case the incoming strings.
+ */
+final class GrayReleaseRuleIndex {
+  private static final GrayReleaseRuleCache[] NO_RULES = new GrayReleaseRuleCache[0];
+  private static final ClientIpMatcher[] NO_IP_MATCHERS = new ClientIpMatcher[0];
+  private static final Comparator<String[]> KEY_COMPARATOR = (left, right) -> {
+    for (int i = 0; i < left.length; i++) {
+      int result = compareIgnoreCase(left[i], right[i]);
+      if (result != 0) {
+        return result;
+      }
+    }
+    return 0;
+  };
+
+  static final GrayReleaseRuleIndex EMPTY = build(Collections.emptyList());
+
+  //configAppId+configCluster+configNamespace -> active rules ordered by rule id
+  private final KeyTable<GrayReleaseRuleCache[]> activeRules;
+  //clientAppId+clientNamespace -> ip matchers of the active rules
+  private final KeyTable<ClientIpMatcher[]> reversedActiveRules;
+
+  private GrayReleaseRuleIndex(KeyTable<GrayReleaseRuleCache[]> activeRules,
+      KeyTable<ClientIpMatcher[]> reversedActiveRules) {
+    this.activeRules = activeRules;
+    this.reversedActiveRules = reversedActiveRules;
+  }
+
+  static GrayReleaseRuleIndex build(Collection<GrayReleaseRuleCache> rules) {
+    Map<String[], List<GrayReleaseRuleCache>> rulesByKey = Maps.newTreeMap(KEY_COMPARATOR);
+    Map<String[], List<ClientIpMatcher>> reversedRules = Maps.newTreeMap(KEY_COMPARATOR);
+
+    for (GrayReleaseRuleCache rule : rules) {
+      if (rule.getBranchStatus() != NamespaceBranchStatus.ACTIVE) {
+        continue;
+      }
+      rulesByKey.computeIfAbsent(new String[]{rule.getAppId(), rule.getClusterName(),
+          rule.getNamespaceName()}, k -> Lists.newArrayList()).add(rule);
+      for (GrayReleaseRuleItemMatcher ruleItemMatcher : rule.getRuleItemMatchers()) {
+        reversedRules.computeIfAbsent(new String[]{ruleItemMatcher.getClientAppId(),
+            rule.getNamespaceName()}, k -> Lists.newArrayList())
+            .add(ruleItemMatcher.getClientIpMatcher());
+      }
+    }
+
+    Map<String[], GrayReleaseRuleCache[]> sortedRulesByKey = Maps.newTreeMap(KEY_COMPARATOR);
+    for (Map.Entry<String[], List<GrayReleaseRuleCache>> entry : rulesByKey.entrySet()) {
+      List<GrayReleaseRuleCache> sameKeyRules = entry.getValue();
+      Collections.sort(sameKeyRules);
+      sortedRulesByKey.put(entry.getKey(), sameKeyRules.toArray(NO_RULES));
+    }
+
+    Map<String[], ClientIpMatcher[]> reversedIpMatchers = Maps.newTreeMap(KEY_COMPARATOR);
+    for (Map.Entry<String[], List<ClientIpMatcher>> entry : reversedRules.entrySet()) {
+      reversedIpMatchers.put(entry.getKey(), entry.getValue().toArray(NO_IP_MATCHERS));
+    }
+
+    return new GrayReleaseRuleIndex(new KeyTable<>(sortedRulesByKey),
+        new KeyTable<>(reversedIpMatchers));
+  }
+
+  /**
+   * @return the active rules of the config namespace ordered by rule id, or null if there is none
+   */
+  GrayReleaseRuleCache[] findActiveRules(String configAppId, String configCluster,
+      String configNamespaceName) {
+    return activeRules.get(configAppId, configCluster, configNamespaceName);
+  }
+
+  boolean hasActiveRule(String clientAppId, String clientNamespaceName, String clientIp) {
+    ClientIpMatcher[] ipMatchers = reversedActiveRules.get(clientAppId, clientNamespaceName);
+    if (ipMatchers == null) {
+      return false;
+    }
+    for (ClientIpMatcher ipMatcher : ipMatchers) {
+      if (ipMatcher.matches(clientIp)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int compareIgnoreCase(String left, String right) {
+    if (left == null || right == null) {
+      return left == null ? (right == null ? 0 : -1) : 1;
+    }
+    return String.CASE_INSENSITIVE_ORDER.compare(left, right);
+  }
+
+  private static boolean equalsIgnoreCase(String left, String right) {
+    return left == null ? right == null : left.equalsIgnoreCase(right);
+  }
+
+  /**
+   * Consistent with {@link String#equalsIgnoreCase(String)}, i.e. strings equal ignoring case
+   * have the same hash code.
+   */
+  private static int hashIgnoreCase(String value) {
+    if (value == null) {
+      return 0;
+    }
+    int hash = 0;
+    for (int i = 0; i < value.length(); i++) {
+      hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(value.charAt(i)));
+    }
+    return hash;
+  }
+
+  /**
+   * Open addressing hash table keyed by two or three case insensitive strings.
+   */
+  private static final class KeyTable<V> {
+    private final String[][] keys;
+    private final Object[] values;
+    private final int mask;
+
+    KeyTable(Map<String[], V> entries) {
+      int capacity = 2;
+      while (capacity < entries.size() * 2) {
+        capacity <<= 1;
+      }
+      keys = new String[capacity][];
+      values = new Object[capacity];
+      mask = capacity - 1;
+
+      for (Map.Entry<String[], V> entry : entries.entrySet()) {
+        String[] key = entry.getKey();
+        int slot = hash(key) & mask;
+        while (keys[slot] != null) {
+          slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = entry.getValue();
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(String first, String second) {
+      int slot = hash(first, second) & mask;
+      String[] key;
+      while ((key = keys[slot]) != null) {
+        if (key.length == 2 && equalsIgnoreCase(key[0], first)
+            && equalsIgnoreCase(key[1], second)) {
+          return (V) values[slot];
+        }
+        slot = (slot + 1) & mask;
+      }
+      return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(String first, String second, String third) {
+      int slot = hash(first, second, third) & mask;
+      String[] key;
+      while ((key = keys[slot]) != null) {
+        if (key.length == 3 && equalsIgnoreCase(key[0], first)
+            && equalsIgnoreCase(key[1], second) && equalsIgnoreCase(key[2], third)) {
+          return (V) values[slot];
+        }
+        slot = (slot + 1) & mask;
+      }
+      return null;
+    }
+
+    private static int hash(String[] key) {
+      int hash = hashIgnoreCase(key[0]);
+      for (int i = 1; i < key.length; i++) {
+        hash = 31 * hash + hashIgnoreCase(key[i]);
+      }
+      return spread(hash);
+    }
+
+    private static int hash(String first, String second) {
+      return spread(31 * hashIgnoreCase(first) + hashIgnoreCase(second));
+    }
+
+    private static int hash(String first, String second, String third) {
+      int hash = 31 * hashIgnoreCase(first) + hashIgnoreCase(second);
+      return spread(31 * hash + hashIgnoreCase(third));
+    }
+
+    private static int spread(int hash) {
+      return hash ^ (hash >>> 16);
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.biz.grayReleaseRule;
+
+import com.ctrip.framework.apollo.common.dto.GrayReleaseRuleItemDTO;
+import com.google.common.collect.Sets;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Precompiled form of {@link GrayReleaseRuleItemDTO}, the wildcards, CIDR blocks and ip ranges are
+ * resolved once when the rule is loaded so that matching a client only needs a couple of lookups.
+ */
+final class GrayReleaseRuleItemMatcher {
+  private final String clientAppId;
+  private final ClientIpMatcher clientIpMatcher;
+  private final boolean allLabels;
+  private final Set<String> clientLabels;
+
+  GrayReleaseRuleItemMatcher(GrayReleaseRuleItemDTO ruleItem) {
+    this.clientAppId = ruleItem.getClientAppId() == null ? "" : ruleItem.getClientAppId();
+    this.clientIpMatcher = new ClientIpMatcher(ruleItem.getClientIpList());
+    this.clientLabels = copyOf(ruleItem.getClientLabelList());
+    this.allLabels = clientLabels.contains(GrayReleaseRuleItemDTO.ALL_Label);
+  }
+
+  boolean matches(String clientAppId, String clientIp, String clientLabel) {
+    if (!this.clientAppId.equalsIgnoreCase(clientAppId)) {
+      return false;
+    }
+    return clientIpMatcher.matches(clientIp) || allLabels || clientLabels.contains(clientLabel);
+  }
+
+  String getClientAppId() {
+    return clientAppId;
+  }
+
+  ClientIpMatcher getClientIpMatcher() {
+    return clientIpMatcher;
+  }
+
+  private static Set<String> copyOf(Set<String> values) {
+    if (values == null || values.isEmpty()) {
+      return Collections.emptySet();
+    }
+    return Collections.unmodifiableSet(Sets.newHashSet(values));
+  }
+}
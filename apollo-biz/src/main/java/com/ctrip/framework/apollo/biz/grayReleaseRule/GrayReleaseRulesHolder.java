@@ -19,9 +19,7 @@ package com.ctrip.framework.apollo.biz.grayReleaseRule;
 import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
 
@@ -45,6 +43,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.util.CollectionUtils;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Executors;
@@ -58,28 +57,32 @@ import java.util.concurrent.atomic.AtomicLong;
 public class GrayReleaseRulesHolder implements ReleaseMessageListener, InitializingBean {
   private static final Logger logger = LoggerFactory.getLogger(GrayReleaseRulesHolder.class);
   private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
+  //rules modified shortly before the last scan are scanned again, in case of clock skew among
+  //admin services or transactions committed late
+  private static final long MODIFIED_RULES_SCAN_LOOKBACK_MILLIS = TimeUnit.MINUTES.toMillis(1);
 
   private final GrayReleaseRuleRepository grayReleaseRuleRepository;
   private final BizConfig bizConfig;
 
   private int databaseScanInterval;
+  private int databaseRebuildInterval;
   private ScheduledExecutorService executorService;
-  //store configAppId+configCluster+configNamespace -> GrayReleaseRuleCache map
-  private Multimap<String, GrayReleaseRuleCache> grayReleaseRuleCache;
-  //store clientAppId+clientNamespace+ip -> ruleId map
-  private Multimap<String, Long> reversedGrayReleaseRuleCache;
+  //store configAppId+configCluster+configNamespace -> GrayReleaseRuleCache map, guarded by this
+  private final Multimap<String, GrayReleaseRuleCache> grayReleaseRuleCache;
+  //immutable snapshot of the active rules for lookups, replaced as a whole when rules change
+  private volatile GrayReleaseRuleIndex grayReleaseRuleIndex;
   //an auto increment version to indicate the age of rules
   private AtomicLong loadVersion;
+  //the latest modified time of the scanned rules, only accessed by the scan thread
+  private Date lastModifiedTimeScanned;
 
   public GrayReleaseRulesHolder(final GrayReleaseRuleRepository grayReleaseRuleRepository,
       final BizConfig bizConfig) {
     this.grayReleaseRuleRepository = grayReleaseRuleRepository;
     this.bizConfig = bizConfig;
     loadVersion = new AtomicLong();
-    grayReleaseRuleCache = Multimaps.synchronizedSetMultimap(
-        TreeMultimap.create(String.CASE_INSENSITIVE_ORDER, Ordering.natural()));
-    reversedGrayReleaseRuleCache = Multimaps.synchronizedSetMultimap(
-        TreeMultimap.create(String.CASE_INSENSITIVE_ORDER, Ordering.natural()));
+    grayReleaseRuleCache = TreeMultimap.create(String.CASE_INSENSITIVE_ORDER, Ordering.natural());
+    grayReleaseRuleIndex = GrayReleaseRuleIndex.EMPTY;
     executorService = Executors.newScheduledThreadPool(1, ApolloThreadFactory
         .create("GrayReleaseRulesHolder", true));
   }
@@ -89,7 +92,12 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     populateDataBaseInterval();
     //force sync load for the first time
     periodicScanRules();
+    //full scan in a low frequency to reconcile and age out inactive rules
     executorService.scheduleWithFixedDelay(this::periodicScanRules,
+        getDatabaseRebuildIntervalSecond(), getDatabaseRebuildIntervalSecond(),
+        getDatabaseScanTimeUnit());
+    //only scan the modified rules in between
+    executorService.scheduleWithFixedDelay(this::periodicScanModifiedRules,
         getDatabaseScanIntervalSecond(), getDatabaseScanIntervalSecond(), getDatabaseScanTimeUnit()
     );
   }
@@ -113,7 +121,9 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     List<GrayReleaseRule> rules = grayReleaseRuleRepository
         .findByAppIdAndClusterNameAndNamespaceName(appId, cluster, namespace);
 
-    mergeGrayReleaseRules(rules);
+    if (mergeGrayReleaseRules(rules)) {
+      rebuildGrayReleaseRuleIndex();
+    }
   }
 
   private void periodicScanRules() {
@@ -131,19 +141,29 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     }
   }
 
+  private void periodicScanModifiedRules() {
+    Transaction transaction = Tracer.newTransaction("Apollo.GrayReleaseRulesScanner",
+        "scanModifiedGrayReleaseRules");
+    try {
+      scanModifiedGrayReleaseRules();
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.error("Scan modified gray release rule failed", ex);
+    } finally {
+      transaction.complete();
+    }
+  }
+
   public Long findReleaseIdFromGrayReleaseRule(String clientAppId, String clientIp, String clientLabel, String
       configAppId, String configCluster, String configNamespaceName) {
-    String key = assembleGrayReleaseRuleKey(configAppId, configCluster, configNamespaceName);
-    if (!grayReleaseRuleCache.containsKey(key)) {
+    //only active rules are indexed
+    GrayReleaseRuleCache[] rules = grayReleaseRuleIndex.findActiveRules(configAppId,
+        configCluster, configNamespaceName);
+    if (rules == null) {
       return null;
     }
-    //create a new list to avoid ConcurrentModificationException
-    List<GrayReleaseRuleCache> rules = Lists.newArrayList(grayReleaseRuleCache.get(key));
     for (GrayReleaseRuleCache rule : rules) {
-      //check branch status
-      if (rule.getBranchStatus() != NamespaceBranchStatus.ACTIVE) {
-        continue;
-      }
       if (rule.matches(clientAppId, clientIp, clientLabel)) {
         return rule.getReleaseId();
       }
@@ -157,15 +177,13 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
    * load gray releases. Because gray release rules actually apply to one more dimension - cluster.
    */
   public boolean hasGrayReleaseRule(String clientAppId, String clientIp, String namespaceName) {
-    return reversedGrayReleaseRuleCache.containsKey(assembleReversedGrayReleaseRuleKey(clientAppId,
-        namespaceName, clientIp)) || reversedGrayReleaseRuleCache.containsKey
-        (assembleReversedGrayReleaseRuleKey(clientAppId, namespaceName, GrayReleaseRuleItemDTO
-            .ALL_IP));
+    return grayReleaseRuleIndex.hasActiveRule(clientAppId, namespaceName, clientIp);
   }
 
   private void scanGrayReleaseRules() {
     long maxIdScanned = 0;
     boolean hasMore = true;
+    boolean changed = false;
 
     while (hasMore && !Thread.currentThread().isInterrupted()) {
       List<GrayReleaseRule> grayReleaseRules = grayReleaseRuleRepository
@@ -173,18 +191,79 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
       if (CollectionUtils.isEmpty(grayReleaseRules)) {
         break;
       }
-      mergeGrayReleaseRules(grayReleaseRules);
+      changed |= mergeGrayReleaseRules(grayReleaseRules);
+      updateLastModifiedTimeScanned(grayReleaseRules);
       int rulesScanned = grayReleaseRules.size();
       maxIdScanned = grayReleaseRules.get(rulesScanned - 1).getId();
       //batch is 500
       hasMore = rulesScanned == 500;
     }
+
+    if (changed) {
+      rebuildGrayReleaseRuleIndex();
+    }
   }
 
-  private void mergeGrayReleaseRules(List<GrayReleaseRule> grayReleaseRules) {
-    if (CollectionUtils.isEmpty(grayReleaseRules)) {
+  /**
+   * Scan the rules modified since the last scan, so the cost only depends on the number of rule
+   * changes. As rules are never updated in place, i.e. each change inserts a new rule, only the
+   * newly inserted rules need to be parsed.
+   */
+  private void scanModifiedGrayReleaseRules() {
+    if (lastModifiedTimeScanned == null) {
+      //no rules scanned yet
+      scanGrayReleaseRules();
       return;
     }
+    Date timeScanned = new Date(lastModifiedTimeScanned.getTime()
+        - MODIFIED_RULES_SCAN_LOOKBACK_MILLIS);
+    boolean hasMore = true;
+    boolean changed = false;
+
+    while (hasMore && !Thread.currentThread().isInterrupted()) {
+      List<GrayReleaseRule> grayReleaseRules = grayReleaseRuleRepository
+          .findFirst500ByDataChangeLastModifiedTimeGreaterThanOrderByDataChangeLastModifiedTimeAsc(
+              timeScanned);
+      if (CollectionUtils.isEmpty(grayReleaseRules)) {
+        break;
+      }
+      changed |= mergeGrayReleaseRules(grayReleaseRules);
+      updateLastModifiedTimeScanned(grayReleaseRules);
+      int rulesScanned = grayReleaseRules.size();
+      //batch is 500
+      hasMore = rulesScanned == 500;
+      timeScanned = grayReleaseRules.get(rulesScanned - 1).getDataChangeLastModifiedTime();
+
+      // In order to avoid missing some records at the last time, we need to scan records at this time individually
+      if (hasMore) {
+        changed |= mergeGrayReleaseRules(
+            grayReleaseRuleRepository.findByDataChangeLastModifiedTime(timeScanned));
+      }
+    }
+
+    if (changed) {
+      rebuildGrayReleaseRuleIndex();
+    }
+  }
+
+  private void updateLastModifiedTimeScanned(List<GrayReleaseRule> grayReleaseRules) {
+    for (GrayReleaseRule grayReleaseRule : grayReleaseRules) {
+      Date modifiedTime = grayReleaseRule.getDataChangeLastModifiedTime();
+      if (modifiedTime != null && (lastModifiedTimeScanned == null
+          || modifiedTime.getTime() > lastModifiedTimeScanned.getTime())) {
+        lastModifiedTimeScanned = new Date(modifiedTime.getTime());
+      }
+    }
+  }
+
+  /**
+   * @return whether the active rules are changed, i.e. the index needs to be rebuilt
+   */
+  private synchronized boolean mergeGrayReleaseRules(List<GrayReleaseRule> grayReleaseRules) {
+    if (CollectionUtils.isEmpty(grayReleaseRules)) {
+      return false;
+    }
+    boolean changed = false;
     for (GrayReleaseRule grayReleaseRule : grayReleaseRules) {
       if (grayReleaseRule.getReleaseId() == null || grayReleaseRule.getReleaseId() == 0) {
         //filter rules with no release id, i.e. never released
@@ -192,10 +271,8 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
       }
       String key = assembleGrayReleaseRuleKey(grayReleaseRule.getAppId(), grayReleaseRule
           .getClusterName(), grayReleaseRule.getNamespaceName());
-      //create a new list to avoid ConcurrentModificationException
-      List<GrayReleaseRuleCache> rules = Lists.newArrayList(grayReleaseRuleCache.get(key));
       GrayReleaseRuleCache oldRule = null;
-      for (GrayReleaseRuleCache ruleCache : rules) {
+      for (GrayReleaseRuleCache ruleCache : grayReleaseRuleCache.get(key)) {
         if (ruleCache.getBranchName().equals(grayReleaseRule.getBranchName())) {
           oldRule = ruleCache;
           break;
@@ -209,42 +286,29 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
 
       //use id comparison to avoid synchronization
       if (oldRule == null || grayReleaseRule.getId() > oldRule.getRuleId()) {
-        addCache(key, transformRuleToRuleCache(grayReleaseRule));
         if (oldRule != null) {
-          removeCache(key, oldRule);
+          grayReleaseRuleCache.remove(key, oldRule);
         }
+        grayReleaseRuleCache.put(key, transformRuleToRuleCache(grayReleaseRule));
+        changed = true;
       } else {
         if (oldRule.getBranchStatus() == NamespaceBranchStatus.ACTIVE) {
           //update load version
           oldRule.setLoadVersion(loadVersion.get());
         } else if ((loadVersion.get() - oldRule.getLoadVersion()) > 1) {
           //remove outdated inactive branch rule after 2 update cycles
-          removeCache(key, oldRule);
+          grayReleaseRuleCache.remove(key, oldRule);
+          changed = true;
         }
       }
     }
-  }
 
-  private void addCache(String key, GrayReleaseRuleCache ruleCache) {
-    if (ruleCache.getBranchStatus() == NamespaceBranchStatus.ACTIVE) {
-      for (GrayReleaseRuleItemDTO ruleItemDTO : ruleCache.getRuleItems()) {
-        for (String clientIp : ruleItemDTO.getClientIpList()) {
-          reversedGrayReleaseRuleCache.put(assembleReversedGrayReleaseRuleKey(ruleItemDTO
-              .getClientAppId(), ruleCache.getNamespaceName(), clientIp), ruleCache.getRuleId());
-        }
-      }
-    }
-    grayReleaseRuleCache.put(key, ruleCache);
+    return changed;
   }
 
-  private void removeCache(String key, GrayReleaseRuleCache ruleCache) {
-    grayReleaseRuleCache.remove(key, ruleCache);
-    for (GrayReleaseRuleItemDTO ruleItemDTO : ruleCache.getRuleItems()) {
-      for (String clientIp : ruleItemDTO.getClientIpList()) {
-        reversedGrayReleaseRuleCache.remove(assembleReversedGrayReleaseRuleKey(ruleItemDTO
-            .getClientAppId(), ruleCache.getNamespaceName(), clientIp), ruleCache.getRuleId());
-      }
-    }
+  private synchronized void rebuildGrayReleaseRuleIndex() {
+    //rules change rarely, so rebuild the whole index and publish it for lock free lookups
+    grayReleaseRuleIndex = GrayReleaseRuleIndex.build(grayReleaseRuleCache.values());
   }
 
   private GrayReleaseRuleCache transformRuleToRuleCache(GrayReleaseRule grayReleaseRule) {
@@ -258,20 +322,26 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     }
 
     GrayReleaseRuleCache ruleCache = new GrayReleaseRuleCache(grayReleaseRule.getId(),
-        grayReleaseRule.getBranchName(), grayReleaseRule.getNamespaceName(), grayReleaseRule
-        .getReleaseId(), grayReleaseRule.getBranchStatus(), loadVersion.get(), ruleItems);
+        grayReleaseRule.getAppId(), grayReleaseRule.getClusterName(), grayReleaseRule
+        .getBranchName(), grayReleaseRule.getNamespaceName(), grayReleaseRule.getReleaseId(),
+        grayReleaseRule.getBranchStatus(), loadVersion.get(), ruleItems);
 
     return ruleCache;
   }
 
   private void populateDataBaseInterval() {
     databaseScanInterval = bizConfig.grayReleaseRuleScanInterval();
+    databaseRebuildInterval = bizConfig.grayReleaseRuleRebuildInterval();
   }
 
   private int getDatabaseScanIntervalSecond() {
     return databaseScanInterval;
   }
 
+  private int getDatabaseRebuildIntervalSecond() {
+    return databaseRebuildInterval;
+  }
+
   private TimeUnit getDatabaseScanTimeUnit() {
     return TimeUnit.SECONDS;
   }
@@ -281,9 +351,4 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     return STRING_JOINER.join(configAppId, configCluster, configNamespaceName);
   }
 
-  private String assembleReversedGrayReleaseRuleKey(String clientAppId, String
-      clientNamespaceName, String clientIp) {
-    return STRING_JOINER.join(clientAppId, clientNamespaceName, clientIp);
-  }
-
 }
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.biz.grayReleaseRule;
+
+/**
+ * Path compressed binary radix trie of address prefixes.
+ * <p>
+ * Addresses are up to 128 bits and are passed as two longs, the most significant bits first. IPv4
+ * addresses are left aligned in the high long. A lookup visits at most one node per address bit and
+ * a trie of n prefixes holds less than 2n nodes, prefixes covered by a shorter one are dropped.
+ * <p>
+ * The trie is populated once when the rule is loaded and only read afterwards.
+ */
+final class IpPrefixTrie {
+  private final int addressBits;
+  private Node root;
+
+  IpPrefixTrie(int addressBits) {
+    this.addressBits = addressBits;
+  }
+
+  boolean isEmpty() {
+    return root == null;
+  }
+
+  void insert(long high, long low, int prefixLength) {
+    long maskedHigh = maskHigh(high, prefixLength);
+    long maskedLow = maskLow(low, prefixLength);
+    if (root == null) {
+      root = new Node(maskedHigh, maskedLow, prefixLength, true);
+      return;
+    }
+
+    Node parent = null;
+    Node node = root;
+    while (true) {
+      int common = commonPrefixLength(node.high, node.low, maskedHigh, maskedLow,
+          Math.min(node.prefixLength, prefixLength));
+      if (common < node.prefixLength) {
+        //split the node at the first differing bit
+        Node split = new Node(maskHigh(maskedHigh, common), maskLow(maskedLow, common), common,
+            common == prefixLength);
+        if (!split.terminal) {
+          split.setChild(bit(node.high, node.low, common), node);
+          split.setChild(bit(maskedHigh, maskedLow, common),
+              new Node(maskedHigh, maskedLow, prefixLength, true));
+        }
+        replaceChild(parent, node, split);
+        return;
+      }
+      if (node.terminal) {
+        //already covered by a shorter or equal prefix
+        return;
+      }
+      if (node.prefixLength == prefixLength) {
+        node.markTerminal();
+        return;
+      }
+      int nextBit = bit(maskedHigh, maskedLow, node.prefixLength);
+      Node child = node.child(nextBit);
+      if (child == null) {
+        node.setChild(nextBit, new Node(maskedHigh, maskedLow, prefixLength, true));
+        return;
+      }
+      parent = node;
+      node = child;
+    }
+  }
+
+  boolean contains(long high, long low) {
+    Node node = root;
+    while (node != null) {
+      if (commonPrefixLength(node.high, node.low, high, low, node.prefixLength)
+          < node.prefixLength) {
+        return false;
+      }
+      if (node.terminal) {
+        return true;
+      }
+      if (node.prefixLength >= addressBits) {
+        return false;
+      }
+      node = node.child(bit(high, low, node.prefixLength));
+    }
+    return false;
+  }
+
+  private void replaceChild(Node parent, Node oldChild, Node newChild) {
+    if (parent == null) {
+      root = newChild;
+    } else if (parent.zero == oldChild) {
+      parent.zero = newChild;
+    } else {
+      parent.one = newChild;
+    }
+  }
+
+  private static int commonPrefixLength(long high1, long low1, long high2, long low2, int limit) {
+    long highDiff = high1 ^ high2;
+    int common = highDiff != 0 ? Long.numberOfLeadingZeros(highDiff)
+        : 64 + Long.numberOfLeadingZeros(low1 ^ low2);
+    return Math.min(common, limit);
+  }
+
+  private static int bit(long high, long low, int index) {
+    return (int) (index < 64 ? (high >>> (63 - index)) & 1 : (low >>> (127 - index)) & 1);
+  }
+
+  private static long maskHigh(long high, int prefixLength) {
+    if (prefixLength >= 64) {
+      return high;
+    }
+    return prefixLength == 0 ? 0 : high & (-1L << (64 - prefixLength));
+  }
+
+  private static long maskLow(long low, int prefixLength) {
+    if (prefixLength <= 64) {
+      return 0;
+    }
+    return prefixLength == 128 ? low : low & (-1L << (128 - prefixLength));
+  }
+
+  private static final class Node {
+    private final long high;
+    private final long low;
+    private final int prefixLength;
+    private boolean terminal;
+    private Node zero;
+    private Node one;
+
+    Node(long high, long low, int prefixLength, boolean terminal) {
+      this.high = high;
+      this.low = low;
+      this.prefixLength = prefixLength;
+      this.terminal = terminal;
+    }
+
+    Node child(int bit) {
+      return bit == 0 ? zero : one;
+    }
+
+    void setChild(int bit, Node child) {
+      if (bit == 0) {
+        zero = child;
+      } else {
+        one = child;
+      }
+    }
+
+    void markTerminal() {
+      terminal = true;
+      //everything below is covered now
+      zero = null;
+      one = null;
+    }
+  }
+}
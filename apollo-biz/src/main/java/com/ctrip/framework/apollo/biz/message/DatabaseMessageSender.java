@@ -18,41 +18,28 @@ package com.ctrip.framework.apollo.biz.message;
 
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
-import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
-import com.google.common.collect.Queues;
-import javax.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
-import javax.annotation.PostConstruct;
-import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
+ * The release messages superseded by the sent ones are compacted in the background by the admin
+ * services.
+ *
  * @author Jason Song(song_s@ctrip.com)
  */
 @Component
 public class DatabaseMessageSender implements MessageSender {
   private static final Logger logger = LoggerFactory.getLogger(DatabaseMessageSender.class);
-  private static final int CLEAN_QUEUE_MAX_SIZE = 100;
-  private final BlockingQueue<Long> toClean = Queues.newLinkedBlockingQueue(CLEAN_QUEUE_MAX_SIZE);
-  private final ExecutorService cleanExecutorService;
-  private final AtomicBoolean cleanStopped;
 
   private final ReleaseMessageRepository releaseMessageRepository;
 
   public DatabaseMessageSender(final ReleaseMessageRepository releaseMessageRepository) {
-    cleanExecutorService = Executors.newSingleThreadExecutor(ApolloThreadFactory.create("DatabaseMessageSender", true));
-    cleanStopped = new AtomicBoolean(false);
     this.releaseMessageRepository = releaseMessageRepository;
   }
 
@@ -68,10 +55,7 @@ public class DatabaseMessageSender implements MessageSender {
     Tracer.logEvent("Apollo.AdminService.ReleaseMessage", message);
     Transaction transaction = Tracer.newTransaction("Apollo.AdminService", "sendMessage");
     try {
-      ReleaseMessage newMessage = releaseMessageRepository.save(new ReleaseMessage(message));
-      if(!toClean.offer(newMessage.getId())){
-        logger.warn("Queue is full, Failed to add message {} to clean queue", newMessage.getId());
-      }
+      releaseMessageRepository.save(new ReleaseMessage(message));
       transaction.setStatus(Transaction.SUCCESS);
     } catch (Throwable ex) {
       logger.error("Sending message to database failed", ex);
@@ -81,46 +65,4 @@ public class DatabaseMessageSender implements MessageSender {
       transaction.complete();
     }
   }
-
-  @PostConstruct
-  private void initialize() {
-    cleanExecutorService.submit(() -> {
-      while (!cleanStopped.get() && !Thread.currentThread().isInterrupted()) {
-        try {
-          Long rm = toClean.poll(1, TimeUnit.SECONDS);
-          if (rm != null) {
-            cleanMessage(rm);
-          } else {
-            TimeUnit.SECONDS.sleep(5);
-          }
-        } catch (Throwable ex) {
-          Tracer.logError(ex);
-        }
-      }
-    });
-  }
-
-  private void cleanMessage(Long id) {
-    //double check in case the release message is rolled back
-    ReleaseMessage releaseMessage = releaseMessageRepository.findById(id).orElse(null);
-    if (releaseMessage == null) {
-      return;
-    }
-    boolean hasMore = true;
-    while (hasMore && !Thread.currentThread().isInterrupted()) {
-      List<ReleaseMessage> messages = releaseMessageRepository.findFirst100ByMessageAndIdLessThanOrderByIdAsc(
-          releaseMessage.getMessage(), releaseMessage.getId());
-
-      releaseMessageRepository.deleteAll(messages);
-      hasMore = messages.size() == 100;
-
-      messages.forEach(toRemove -> Tracer.logEvent(
-          String.format("ReleaseMessage.Clean.%s", toRemove.getMessage()), String.valueOf(toRemove.getId())));
-    }
-  }
-
-  @PreDestroy
-  void stopClean() {
-    cleanStopped.set(true);
-  }
 }
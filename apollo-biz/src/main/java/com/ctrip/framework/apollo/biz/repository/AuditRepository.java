@@ -24,7 +24,8 @@ import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 
-public interface AuditRepository extends PagingAndSortingRepository<Audit, Long> {
+public interface AuditRepository extends PagingAndSortingRepository<Audit, Long>,
+    AuditRepositoryCustom {
 
   @Query("SELECT a from Audit a WHERE a.dataChangeCreatedBy = :owner")
   List<Audit> findByOwner(@Param("owner") String owner);
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.biz.repository;
+
+import com.ctrip.framework.apollo.biz.entity.Audit;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Date;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.Session;
+
+public class AuditRepositoryCustomImpl implements AuditRepositoryCustom {
+  private static final int BATCH_SIZE = 500;
+  private static final String INSERT_SQL = "INSERT INTO `Audit` (`EntityName`, `EntityId`,"
+      + " `OpName`, `Comment`, `IsDeleted`, `DeletedAt`, `DataChange_CreatedBy`,"
+      + " `DataChange_CreatedTime`, `DataChange_LastModifiedBy`, `DataChange_LastTime`)"
+      + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Override
+  public void batchInsert(List<Audit> audits) {
+    Date now = new Date();
+    entityManager.unwrap(Session.class).doWork(connection -> {
+      try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+        for (int from = 0; from < audits.size(); from += BATCH_SIZE) {
+          for (Audit audit : audits.subList(from, Math.min(from + BATCH_SIZE, audits.size()))) {
+            Date createdTime = audit.getDataChangeCreatedTime() == null ? now
+                : audit.getDataChangeCreatedTime();
+            String lastModifiedBy = audit.getDataChangeLastModifiedBy() == null
+                ? audit.getDataChangeCreatedBy() : audit.getDataChangeLastModifiedBy();
+            statement.setString(1, audit.getEntityName());
+            if (audit.getEntityId() == null) {
+              statement.setNull(2, Types.BIGINT);
+            } else {
+              statement.setLong(2, audit.getEntityId());
+            }
+            statement.setString(3, audit.getOpName());
+            statement.setString(4, audit.getComment());
+            statement.setBoolean(5, false);
+            statement.setLong(6, 0);
+            statement.setString(7, audit.getDataChangeCreatedBy());
+            statement.setTimestamp(8, new Timestamp(createdTime.getTime()));
+            statement.setString(9, lastModifiedBy);
+            statement.setTimestamp(10, new Timestamp(createdTime.getTime()));
+            statement.addBatch();
+          }
+          statement.executeBatch();
+        }
+      }
+    });
+  }
+}
@@ -18,6 +18,7 @@ package com.ctrip.framework.apollo.biz.repository;
 
 import com.ctrip.framework.apollo.biz.entity.Commit;
 
+import java.util.Collection;
 import java.util.Date;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Modifying;
@@ -34,6 +35,13 @@ public interface CommitRepository extends PagingAndSortingRepository<Commit, Lon
   List<Commit> findByAppIdAndClusterNameAndNamespaceNameAndDataChangeLastModifiedTimeGreaterThanEqualOrderByIdDesc(
       String appId, String clusterName, String namespaceName, Date dataChangeLastModifiedTime, Pageable pageable);
 
+  List<Commit> findByAppIdAndClusterNameAndNamespaceNameInOrderByIdDesc(String appId,
+      String clusterName, Collection<String> namespaceNames);
+
+  List<Commit> findByAppIdAndClusterNameAndNamespaceNameInAndDataChangeLastModifiedTimeGreaterThanEqualOrderByIdDesc(
+      String appId, String clusterName, Collection<String> namespaceNames,
+      Date dataChangeLastModifiedTime);
+
   @Modifying
   @Query("update Commit set IsDeleted = true, DeletedAt = ROUND(UNIX_TIMESTAMP(NOW(4))*1000), DataChange_LastModifiedBy = ?4 where AppId=?1 and ClusterName=?2 and NamespaceName = ?3 and IsDeleted = false")
   int batchDelete(String appId, String clusterName, String namespaceName, String operator);
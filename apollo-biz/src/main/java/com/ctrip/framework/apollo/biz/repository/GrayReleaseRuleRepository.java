@@ -20,6 +20,7 @@ import com.ctrip.framework.apollo.biz.entity.GrayReleaseRule;
 
 import org.springframework.data.repository.PagingAndSortingRepository;
 
+import java.util.Date;
 import java.util.List;
 
 
@@ -33,4 +34,8 @@ public interface GrayReleaseRuleRepository extends PagingAndSortingRepository<Gr
 
   List<GrayReleaseRule> findFirst500ByIdGreaterThanOrderByIdAsc(Long id);
 
+  List<GrayReleaseRule> findFirst500ByDataChangeLastModifiedTimeGreaterThanOrderByDataChangeLastModifiedTimeAsc(Date date);
+
+  List<GrayReleaseRule> findByDataChangeLastModifiedTime(Date date);
+
 }
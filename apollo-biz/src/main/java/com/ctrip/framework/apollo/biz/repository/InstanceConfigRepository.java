@@ -17,6 +17,7 @@
 package com.ctrip.framework.apollo.biz.repository;
 
 import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
+import com.ctrip.framework.apollo.biz.entity.NamespaceInstanceCount;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -25,6 +26,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
@@ -34,6 +36,15 @@ public interface InstanceConfigRepository extends PagingAndSortingRepository<Ins
   InstanceConfig findByInstanceIdAndConfigAppIdAndConfigNamespaceName(long instanceId, String
       configAppId, String configNamespaceName);
 
+  List<InstanceConfig> findByInstanceIdIn(Collection<Long> instanceIds);
+
+  List<InstanceConfig> findFirst500ByIdGreaterThanAndDataChangeLastModifiedTimeBeforeOrderByIdAsc(
+      long id, Date date);
+
+  @Modifying
+  @Query("delete from InstanceConfig where id in ?1 and dataChangeLastModifiedTime < ?2")
+  int batchDeleteModifiedBefore(Collection<Long> ids, Date date);
+
   Page<InstanceConfig> findByReleaseKeyAndDataChangeLastModifiedTimeAfter(String releaseKey, Date
       validDate, Pageable pageable);
 
@@ -43,6 +54,32 @@ public interface InstanceConfigRepository extends PagingAndSortingRepository<Ins
   List<InstanceConfig> findByConfigAppIdAndConfigClusterNameAndConfigNamespaceNameAndDataChangeLastModifiedTimeAfterAndReleaseKeyNotIn(
       String appId, String clusterName, String namespaceName, Date validDate, Set<String> releaseKey);
 
+  List<InstanceConfig> findByReleaseKeyAndDataChangeLastModifiedTimeAfterAndIdGreaterThanOrderByIdAsc(
+      String releaseKey, Date validDate, long id, Pageable pageable);
+
+  List<InstanceConfig> findByConfigAppIdAndConfigClusterNameAndConfigNamespaceNameAndDataChangeLastModifiedTimeAfterAndIdGreaterThanOrderByIdAsc(
+      String appId, String clusterName, String namespaceName, Date validDate, long id,
+      Pageable pageable);
+
+  List<InstanceConfig> findByConfigAppIdAndConfigClusterNameAndConfigNamespaceNameAndDataChangeLastModifiedTimeAfterAndReleaseKeyNotInAndIdGreaterThanOrderByIdAsc(
+      String appId, String clusterName, String namespaceName, Date validDate,
+      Set<String> releaseKey, long id, Pageable pageable);
+
+  @Query("select a from InstanceConfig a, Instance b where b.id = a.instanceId"
+      + " and a.configAppId = :configAppId and a.configClusterName = :clusterName"
+      + " and a.configNamespaceName = :namespaceName and a.dataChangeLastModifiedTime > :validDate"
+      + " and a.id > :id and b.appId = :instanceAppId order by a.id asc")
+  List<InstanceConfig> findByNamespaceAndInstanceAppIdAndIdGreaterThan(
+      @Param("instanceAppId") String instanceAppId, @Param("configAppId") String configAppId,
+      @Param("clusterName") String clusterName, @Param("namespaceName") String namespaceName,
+      @Param("validDate") Date validDate, @Param("id") long id, Pageable pageable);
+
+  @Query("select new com.ctrip.framework.apollo.biz.entity.NamespaceInstanceCount(a.configAppId,"
+      + " a.configClusterName, a.configNamespaceName, a.releaseKey, count(a)) from InstanceConfig a"
+      + " where a.dataChangeLastModifiedTime > ?1"
+      + " group by a.configAppId, a.configClusterName, a.configNamespaceName, a.releaseKey")
+  List<NamespaceInstanceCount> countByNamespaceAndReleaseKeyModifiedAfter(Date validDate);
+
   @Modifying
   @Query("delete from InstanceConfig  where ConfigAppId=?1 and ConfigClusterName=?2 and ConfigNamespaceName = ?3")
   int batchDelete(String appId, String clusterName, String namespaceName);
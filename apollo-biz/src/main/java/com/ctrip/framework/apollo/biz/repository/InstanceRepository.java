@@ -18,8 +18,23 @@ package com.ctrip.framework.apollo.biz.repository;
 
 import com.ctrip.framework.apollo.biz.entity.Instance;
 
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
 public interface InstanceRepository extends PagingAndSortingRepository<Instance, Long> {
   Instance findByAppIdAndClusterNameAndDataCenterAndIp(String appId, String clusterName, String dataCenter, String ip);
+
+  List<Instance> findByAppIdInAndIpIn(Collection<String> appIds, Collection<String> ips);
+
+  List<Instance> findFirst500ByIdGreaterThanAndDataChangeLastModifiedTimeBeforeOrderByIdAsc(long id, Date date);
+
+  @Modifying
+  @Query("delete from Instance where id in ?1 and dataChangeLastModifiedTime < ?2 and id not in "
+      + "(select instanceId from InstanceConfig where instanceId in ?1)")
+  int batchDeleteUnusedModifiedBefore(Collection<Long> ids, Date date);
 }
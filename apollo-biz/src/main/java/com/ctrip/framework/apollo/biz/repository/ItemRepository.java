@@ -23,18 +23,24 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import javax.persistence.QueryHint;
 
-public interface ItemRepository extends PagingAndSortingRepository<Item, Long> {
+public interface ItemRepository extends PagingAndSortingRepository<Item, Long>,
+    ItemRepositoryCustom {
 
   Item findByNamespaceIdAndKey(Long namespaceId, String key);
 
   List<Item> findByNamespaceIdOrderByLineNumAsc(Long namespaceId);
 
+  List<Item> findByNamespaceIdInOrderByLineNumAsc(Collection<Long> namespaceIds);
+
   List<Item> findByNamespaceId(Long namespaceId);
 
   List<Item> findByNamespaceIdAndDataChangeLastModifiedTimeGreaterThan(Long namespaceId, Date date);
@@ -45,6 +51,28 @@ public interface ItemRepository extends PagingAndSortingRepository<Item, Long> {
   
   Item findFirst1ByNamespaceIdOrderByLineNumDesc(Long namespaceId);
 
+  /**
+   * Find the items without flushing the persistence context first, so that loading many items in
+   * batches doesn't dirty check the loaded ones again and again
+   */
+  @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.FLUSH_MODE, value = "COMMIT"))
+  List<Item> findByIdIn(Collection<Long> ids);
+
+  List<Item> findFirst500ByIdGreaterThanOrderByIdAsc(long id);
+
+  /**
+   * Find the items changed after the time, including the deleted ones
+   */
+  @Query(value = "SELECT * FROM `Item` WHERE `DataChange_LastTime` > :lastModifiedTime " +
+      "ORDER BY `DataChange_LastTime` ASC LIMIT 500", nativeQuery = true)
+  List<Item> findFirst500ChangedItems(@Param("lastModifiedTime") Date lastModifiedTime);
+
+  /**
+   * Find the items changed at the time, including the deleted ones
+   */
+  @Query(value = "SELECT * FROM `Item` WHERE `DataChange_LastTime` = :lastModifiedTime", nativeQuery = true)
+  List<Item> findChangedItems(@Param("lastModifiedTime") Date lastModifiedTime);
+
   @Query("SELECT new com.ctrip.framework.apollo.common.dto.ItemInfoDTO(n.appId, n.clusterName, n.namespaceName, i.key, i.value) " +
           "FROM Item i RIGHT JOIN Namespace n ON i.namespaceId = n.id " +
           "WHERE i.key LIKE %:key% AND i.value LIKE %:value% AND i.isDeleted = 0")
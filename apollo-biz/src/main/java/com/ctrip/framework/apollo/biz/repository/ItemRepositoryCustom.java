@@ -0,0 +1,45 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.biz.repository;
+
+import com.ctrip.framework.apollo.biz.entity.Item;
+
+import java.util.List;
+
+/**
+ * Bulk writes of the items with jdbc batches, which bypass the persistence context.
+ * <p>
+ * The items passed in are detached from the persistence context, so that the later queries in the
+ * same transaction don't return the stale ones.
+ */
+public interface ItemRepositoryCustom {
+
+  /**
+   * Insert the items and set their generated ids
+   */
+  void batchInsert(List<Item> items);
+
+  /**
+   * Update the type, value, comment, line number and last modified info of the items
+   */
+  void batchUpdate(List<Item> items);
+
+  /**
+   * Soft delete the items
+   */
+  void batchDelete(List<Item> items);
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.biz.repository;
+
+import com.ctrip.framework.apollo.biz.entity.Item;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Date;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.Session;
+
+public class ItemRepositoryCustomImpl implements ItemRepositoryCustom {
+  private static final int BATCH_SIZE = 500;
+
+  private static final String INSERT_SQL = "INSERT INTO `Item` (`NamespaceId`, `Key`, `Type`,"
+      + " `Value`, `Comment`, `LineNum`, `IsDeleted`, `DeletedAt`, `DataChange_CreatedBy`,"
+      + " `DataChange_CreatedTime`, `DataChange_LastModifiedBy`, `DataChange_LastTime`)"
+      + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+  private static final String UPDATE_SQL = "UPDATE `Item` SET `Type` = ?, `Value` = ?,"
+      + " `Comment` = ?, `LineNum` = ?, `DataChange_LastModifiedBy` = ?,"
+      + " `DataChange_LastTime` = ? WHERE `Id` = ?";
+  private static final String DELETE_SQL = "UPDATE `Item` SET `IsDeleted` = ?, `DeletedAt` = ?,"
+      + " `DataChange_LastModifiedBy` = ?, `DataChange_LastTime` = ? WHERE `Id` = ?";
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Override
+  public void batchInsert(List<Item> items) {
+    Date now = new Date();
+    prepare(items);
+    entityManager.unwrap(Session.class).doWork(connection -> {
+      try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL,
+          Statement.RETURN_GENERATED_KEYS)) {
+        for (int from = 0; from < items.size(); from += BATCH_SIZE) {
+          List<Item> batch = items.subList(from, Math.min(from + BATCH_SIZE, items.size()));
+          for (Item item : batch) {
+            if (item.getDataChangeCreatedTime() == null) {
+              item.setDataChangeCreatedTime(now);
+            }
+            if (item.getDataChangeLastModifiedBy() == null) {
+              item.setDataChangeLastModifiedBy(item.getDataChangeCreatedBy());
+            }
+            item.setDataChangeLastModifiedTime(item.getDataChangeCreatedTime());
+            statement.setLong(1, item.getNamespaceId());
+            statement.setString(2, item.getKey());
+            statement.setInt(3, item.getType());
+            statement.setString(4, item.getValue());
+            statement.setString(5, item.getComment());
+            setLineNum(statement, 6, item.getLineNum());
+            statement.setBoolean(7, item.isDeleted());
+            statement.setLong(8, item.getDeletedAt());
+            statement.setString(9, item.getDataChangeCreatedBy());
+            statement.setTimestamp(10, new Timestamp(item.getDataChangeCreatedTime().getTime()));
+            statement.setString(11, item.getDataChangeLastModifiedBy());
+            statement.setTimestamp(12, new Timestamp(item.getDataChangeLastModifiedTime().getTime()));
+            statement.addBatch();
+          }
+          statement.executeBatch();
+          try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+            for (Item item : batch) {
+              if (!generatedKeys.next()) {
+                throw new IllegalStateException("Generated ids of the items are missing");
+              }
+              item.setId(generatedKeys.getLong(1));
+            }
+          }
+        }
+      }
+    });
+  }
+
+  @Override
+  public void batchUpdate(List<Item> items) {
+    Date now = new Date();
+    prepare(items);
+    entityManager.unwrap(Session.class).doWork(connection -> {
+      try (PreparedStatement statement = connection.prepareStatement(UPDATE_SQL)) {
+        for (int from = 0; from < items.size(); from += BATCH_SIZE) {
+          for (Item item : items.subList(from, Math.min(from + BATCH_SIZE, items.size()))) {
+            item.setDataChangeLastModifiedTime(now);
+            statement.setInt(1, item.getType());
+            statement.setString(2, item.getValue());
+            statement.setString(3, item.getComment());
+            setLineNum(statement, 4, item.getLineNum());
+            statement.setString(5, item.getDataChangeLastModifiedBy());
+            statement.setTimestamp(6, new Timestamp(now.getTime()));
+            statement.setLong(7, item.getId());
+            statement.addBatch();
+          }
+          statement.executeBatch();
+        }
+      }
+    });
+  }
+
+  @Override
+  public void batchDelete(List<Item> items) {
+    Date now = new Date();
+    prepare(items);
+    entityManager.unwrap(Session.class).doWork(connection -> {
+      try (PreparedStatement statement = connection.prepareStatement(DELETE_SQL)) {
+        for (int from = 0; from < items.size(); from += BATCH_SIZE) {
+          for (Item item : items.subList(from, Math.min(from + BATCH_SIZE, items.size()))) {
+            item.setDeleted(true);
+            item.setDataChangeLastModifiedTime(now);
+            statement.setBoolean(1, true);
+            statement.setLong(2, item.getDeletedAt());
+            statement.setString(3, item.getDataChangeLastModifiedBy());
+            statement.setTimestamp(4, new Timestamp(now.getTime()));
+            statement.setLong(5, item.getId());
+            statement.addBatch();
+          }
+          statement.executeBatch();
+        }
+      }
+    });
+  }
+
+  /**
+   * Detach the items and flush the pending changes, so that the batches are executed after them
+   */
+  private void prepare(List<Item> items) {
+    for (Item item : items) {
+      if (entityManager.contains(item)) {
+        entityManager.detach(item);
+      }
+    }
+    entityManager.flush();
+  }
+
+  private void setLineNum(PreparedStatement statement, int index, Integer lineNum)
+      throws SQLException {
+    if (lineNum == null) {
+      statement.setNull(index, Types.INTEGER);
+    } else {
+      statement.setInt(index, lineNum);
+    }
+  }
+}
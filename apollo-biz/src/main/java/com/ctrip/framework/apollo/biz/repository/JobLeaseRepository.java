@@ -0,0 +1,43 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.biz.repository;
+
+import com.ctrip.framework.apollo.biz.entity.JobLease;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.PagingAndSortingRepository;
+
+import java.util.Date;
+
+public interface JobLeaseRepository extends PagingAndSortingRepository<JobLease, Long> {
+
+  JobLease findByJobName(String jobName);
+
+  /**
+   * Take over the lease if it is held by the owner or expired
+   */
+  @Modifying
+  @Query("update JobLease set owner = ?2, expireTime = ?3, dataChangeLastModifiedTime = ?4"
+      + " where jobName = ?1 and (owner = ?2 or expireTime < ?4)")
+  int acquireLease(String jobName, String owner, Date expireTime, Date date);
+
+  @Modifying
+  @Query("update JobLease set expireTime = ?3, dataChangeLastModifiedTime = ?3"
+      + " where jobName = ?1 and owner = ?2")
+  int releaseLease(String jobName, String owner, Date date);
+}
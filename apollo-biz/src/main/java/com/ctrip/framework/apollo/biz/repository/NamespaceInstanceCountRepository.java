@@ -0,0 +1,57 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.biz.repository;
+
+import com.ctrip.framework.apollo.biz.entity.NamespaceInstanceCount;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.PagingAndSortingRepository;
+
+import java.util.Date;
+
+public interface NamespaceInstanceCountRepository extends
+    PagingAndSortingRepository<NamespaceInstanceCount, Long> {
+
+  @Query("select coalesce(sum(instanceCount), 0) from NamespaceInstanceCount where configAppId = ?1"
+      + " and configClusterName = ?2 and configNamespaceName = ?3")
+  long sumInstanceCount(String configAppId, String configClusterName, String configNamespaceName);
+
+  @Modifying
+  @Query("update NamespaceInstanceCount set instanceCount = instanceCount + ?5,"
+      + " dataChangeLastModifiedTime = ?6 where configAppId = ?1 and configClusterName = ?2"
+      + " and configNamespaceName = ?3 and releaseKey = ?4")
+  int increaseInstanceCount(String configAppId, String configClusterName,
+      String configNamespaceName, String releaseKey, long delta, Date date);
+
+  @Modifying
+  @Query("update NamespaceInstanceCount set instanceCount = ?5, dataChangeLastModifiedTime = ?6"
+      + " where configAppId = ?1 and configClusterName = ?2 and configNamespaceName = ?3"
+      + " and releaseKey = ?4 and dataChangeLastModifiedTime < ?7")
+  int resetInstanceCountIfNotModifiedSince(String configAppId, String configClusterName,
+      String configNamespaceName, String releaseKey, long instanceCount, Date date,
+      Date modifiedSince);
+
+  @Modifying
+  @Query("delete from NamespaceInstanceCount where instanceCount = 0 and dataChangeLastModifiedTime < ?1")
+  int deleteZeroCountsModifiedBefore(Date date);
+
+  @Modifying
+  @Query("delete from NamespaceInstanceCount where configAppId = ?1 and configClusterName = ?2"
+      + " and configNamespaceName = ?3")
+  int batchDelete(String configAppId, String configClusterName, String configNamespaceName);
+}
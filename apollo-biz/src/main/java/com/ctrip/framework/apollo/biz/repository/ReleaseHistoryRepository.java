@@ -17,6 +17,7 @@
 package com.ctrip.framework.apollo.biz.repository;
 
 import com.ctrip.framework.apollo.biz.entity.ReleaseHistory;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 import org.springframework.data.domain.Page;
@@ -44,6 +45,32 @@ public interface ReleaseHistoryRepository extends PagingAndSortingRepository<Rel
 
   Page<ReleaseHistory> findByAppIdAndClusterNameAndNamespaceNameAndBranchNameOrderByIdDesc(String appId, String clusterName, String namespaceName, String branchName, Pageable pageable);
 
-  List<ReleaseHistory> findFirst100ByAppIdAndClusterNameAndNamespaceNameAndBranchNameAndIdLessThanEqualOrderByIdAsc(String appId, String clusterName, String namespaceName, String branchName, long maxId);
+  List<ReleaseHistory> findFirst500ByAppIdAndClusterNameAndNamespaceNameAndBranchNameAndIdLessThanEqualOrderByIdAsc(String appId, String clusterName, String namespaceName, String branchName, long maxId);
+
+  /**
+   * @return appId, clusterName, namespaceName, branchName and the count of the namespace branches
+   * with more release histories than the count
+   */
+  @Query("select appId, clusterName, namespaceName, branchName, count(id) from ReleaseHistory"
+      + " group by appId, clusterName, namespaceName, branchName having count(id) > ?1")
+  List<Object[]> countReleaseHistoriesGroupByNamespaceHavingMoreThan(long count);
+
+  /**
+   * @return appId, clusterName, namespaceName and branchName of the namespace branches with
+   * release histories in the id range
+   */
+  @Query("select distinct appId, clusterName, namespaceName, branchName from ReleaseHistory"
+      + " where id > ?1 and id <= ?2")
+  List<Object[]> findNamespacesWithIdBetween(long fromId, long toId);
+
+  @Query("select max(id) from ReleaseHistory")
+  Long findMaxId();
+
+  @Query("select distinct releaseId from ReleaseHistory where releaseId in ?1")
+  List<Long> findReleaseIdsIn(Collection<Long> releaseIds);
+
+  @Modifying
+  @Query("update ReleaseHistory set isDeleted = true, deletedAt = ?2 where id in ?1")
+  int batchDeleteByIds(Collection<Long> ids, long deletedAt);
 
 }
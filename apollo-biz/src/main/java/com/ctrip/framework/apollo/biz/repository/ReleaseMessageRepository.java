@@ -18,6 +18,7 @@ package com.ctrip.framework.apollo.biz.repository;
 
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
@@ -35,8 +36,24 @@ public interface ReleaseMessageRepository extends PagingAndSortingRepository<Rel
 
   ReleaseMessage findTopByMessageInOrderByIdDesc(Collection<String> messages);
 
-  List<ReleaseMessage> findFirst100ByMessageAndIdLessThanOrderByIdAsc(String message, Long id);
-
   @Query("select message, max(id) as id from ReleaseMessage where message in :messages group by message")
   List<Object[]> findLatestReleaseMessagesGroupByMessages(@Param("messages") Collection<String> messages);
+
+  @Query("select min(id) from ReleaseMessage where id >= ?1")
+  Long findMinIdGreaterThanOrEqualTo(long id);
+
+  @Query("select max(id) from ReleaseMessage")
+  Long findMaxId();
+
+  /**
+   * @return ids of the release messages in [fromId, toId) which have newer ones of the same message
+   */
+  @Query("select rm.id from ReleaseMessage rm where rm.id >= ?1 and rm.id < ?2 and exists"
+      + " (select newer.id from ReleaseMessage newer where newer.message = rm.message"
+      + " and newer.id > rm.id)")
+  List<Long> findSupersededIds(long fromId, long toId);
+
+  @Modifying
+  @Query("delete from ReleaseMessage where id in ?1")
+  int batchDelete(Collection<Long> ids);
 }
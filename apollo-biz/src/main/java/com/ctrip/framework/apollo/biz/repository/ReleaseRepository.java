@@ -24,6 +24,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -37,6 +38,12 @@ public interface ReleaseRepository extends PagingAndSortingRepository<Release, L
 
   Release findByIdAndIsAbandonedFalse(long id);
 
+  @Query("select r from Release r where r.id in (select max(latest.id) from Release latest"
+      + " where latest.appId = ?1 and latest.clusterName = ?2 and latest.namespaceName in ?3"
+      + " and latest.isAbandoned = false and latest.isDeleted = false group by latest.namespaceName)")
+  List<Release> findLatestActiveReleases(String appId, String clusterName,
+      Collection<String> namespaceNames);
+
   List<Release> findByAppIdAndClusterNameAndNamespaceNameOrderByIdDesc(String appId, String clusterName, String namespaceName, Pageable page);
 
   List<Release> findByAppIdAndClusterNameAndNamespaceNameAndIsAbandonedFalseOrderByIdDesc(String appId, String clusterName, String namespaceName, Pageable page);
@@ -51,6 +58,10 @@ public interface ReleaseRepository extends PagingAndSortingRepository<Release, L
   @Query("update Release set IsDeleted = true, DeletedAt = ROUND(UNIX_TIMESTAMP(NOW(4))*1000), DataChange_LastModifiedBy = ?4 where AppId=?1 and ClusterName=?2 and NamespaceName = ?3 and IsDeleted = false")
   int batchDelete(String appId, String clusterName, String namespaceName, String operator);
 
+  @Modifying
+  @Query("update Release set isDeleted = true, deletedAt = ?2 where id in ?1")
+  int batchDeleteByIds(Collection<Long> ids, long deletedAt);
+
   // For release history conversion program, need to delete after conversion it done
   List<Release> findByAppIdAndClusterNameAndNamespaceNameOrderByIdAsc(String appId, String clusterName, String namespaceName);
 }
@@ -18,9 +18,12 @@ package com.ctrip.framework.apollo.biz.service;
 
 import com.ctrip.framework.apollo.biz.entity.Audit;
 import com.ctrip.framework.apollo.biz.repository.AuditRepository;
+import com.ctrip.framework.apollo.common.entity.BaseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 @Service
@@ -50,6 +53,25 @@ public class AuditService {
     auditRepository.save(audit);
   }
 
+  /**
+   * Audit the operation on the entities with jdbc batches, the owner of each audit is the last
+   * modifier of the entity.
+   */
+  @Transactional
+  public void audit(String entityName, Collection<? extends BaseEntity> entities, Audit.OP op) {
+    List<Audit> audits = new ArrayList<>(entities.size());
+    for (BaseEntity entity : entities) {
+      Audit audit = new Audit();
+      audit.setEntityName(entityName);
+      audit.setEntityId(entity.getId());
+      audit.setOpName(op.name());
+      audit.setDataChangeCreatedBy(op == Audit.OP.INSERT ? entity.getDataChangeCreatedBy()
+          : entity.getDataChangeLastModifiedBy());
+      audits.add(audit);
+    }
+    auditRepository.batchInsert(audits);
+  }
+
   @Transactional
   public void audit(Audit audit){
     auditRepository.save(audit);
@@ -18,6 +18,8 @@ package com.ctrip.framework.apollo.biz.service;
 
 import com.ctrip.framework.apollo.biz.entity.Commit;
 import com.ctrip.framework.apollo.biz.repository.CommitRepository;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -59,6 +61,25 @@ public class CommitService {
             appId, clusterName, namespaceName, lastModifiedTime, page);
   }
 
+  /**
+   * Find the commits of the namespaces with one query, ordered by id desc
+   *
+   * @param lastModifiedTime only the commits modified since then are returned if not null
+   */
+  public List<Commit> find(String appId, String clusterName, Collection<String> namespaceNames,
+      Date lastModifiedTime) {
+    if (namespaceNames.isEmpty()) {
+      return Collections.emptyList();
+    }
+    if (lastModifiedTime == null) {
+      return commitRepository.findByAppIdAndClusterNameAndNamespaceNameInOrderByIdDesc(appId,
+          clusterName, namespaceNames);
+    }
+    return commitRepository
+        .findByAppIdAndClusterNameAndNamespaceNameInAndDataChangeLastModifiedTimeGreaterThanEqualOrderByIdDesc(
+            appId, clusterName, namespaceNames, lastModifiedTime);
+  }
+
   public List<Commit> findByKey(String appId, String clusterName, String namespaceName, String key,Pageable page){
     String queryKey = "\"key\":\""+ key +"\"";
     return commitRepository.findByAppIdAndClusterNameAndNamespaceNameAndChangeSetsLikeOrderByIdDesc(appId, clusterName, namespaceName, "%"+ queryKey + "%", page);
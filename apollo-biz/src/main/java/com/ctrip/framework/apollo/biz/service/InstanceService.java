@@ -22,9 +22,11 @@ import com.ctrip.framework.apollo.biz.repository.InstanceConfigRepository;
 import com.ctrip.framework.apollo.biz.repository.InstanceRepository;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import java.util.Objects;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -32,9 +34,11 @@ import org.springframework.util.CollectionUtils;
 
 import java.math.BigInteger;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -58,6 +62,15 @@ public class InstanceService {
         dataCenter, ip);
   }
 
+  /**
+   * Find the instances of the app ids and ips with one query, e.g. to resolve the instances of a
+   * batch of audits, which are then matched by their cluster names and data centers as well
+   */
+  public List<Instance> findInstancesByAppIdsAndIps(Collection<String> appIds,
+      Collection<String> ips) {
+    return instanceRepository.findByAppIdInAndIpIn(appIds, ips);
+  }
+
   public List<Instance> findInstancesByIds(Set<Long> instanceIds) {
     Iterable<Instance> instances = instanceRepository.findAllById(instanceIds);
     return Lists.newArrayList(instances);
@@ -70,6 +83,13 @@ public class InstanceService {
     return instanceRepository.save(instance);
   }
 
+  @Transactional
+  public List<Instance> createInstances(List<Instance> instances) {
+    instances.forEach(instance -> instance.setId(0)); //protection
+
+    return Lists.newArrayList(instanceRepository.saveAll(instances));
+  }
+
   public InstanceConfig findInstanceConfig(long instanceId, String configAppId, String
       configNamespaceName) {
     return instanceConfigRepository
@@ -77,6 +97,13 @@ public class InstanceService {
             instanceId, configAppId, configNamespaceName);
   }
 
+  public List<InstanceConfig> findInstanceConfigsByInstanceIds(Set<Long> instanceIds) {
+    if (CollectionUtils.isEmpty(instanceIds)) {
+      return Collections.emptyList();
+    }
+    return instanceConfigRepository.findByInstanceIdIn(instanceIds);
+  }
+
   public Page<InstanceConfig> findActiveInstanceConfigsByReleaseKey(String releaseKey, Pageable
       pageable) {
     return instanceConfigRepository.findByReleaseKeyAndDataChangeLastModifiedTimeAfter(releaseKey,
@@ -152,11 +179,62 @@ public class InstanceService {
     return instanceConfigs;
   }
 
+  /**
+   * Keyset paginated version of {@link #findActiveInstanceConfigsByReleaseKey(String, Pageable)}
+   *
+   * @return at most size active instance configs with id greater than afterId, ordered by id
+   */
+  public List<InstanceConfig> findActiveInstanceConfigsByReleaseKey(String releaseKey, long afterId,
+      int size) {
+    return instanceConfigRepository
+        .findByReleaseKeyAndDataChangeLastModifiedTimeAfterAndIdGreaterThanOrderByIdAsc(releaseKey,
+            getValidInstanceConfigDate(), afterId, PageRequest.of(0, size));
+  }
+
+  /**
+   * @return at most size active instance configs of the namespace with id greater than afterId,
+   * ordered by id
+   */
+  public List<InstanceConfig> findActiveInstanceConfigsByNamespace(String appId, String clusterName,
+      String namespaceName, long afterId, int size) {
+    return instanceConfigRepository
+        .findByConfigAppIdAndConfigClusterNameAndConfigNamespaceNameAndDataChangeLastModifiedTimeAfterAndIdGreaterThanOrderByIdAsc(
+            appId, clusterName, namespaceName, getValidInstanceConfigDate(), afterId,
+            PageRequest.of(0, size));
+  }
+
+  /**
+   * @return at most size active instance configs of the namespace fetched by the instances of
+   * instanceAppId, with id greater than afterId and ordered by id
+   */
+  public List<InstanceConfig> findActiveInstanceConfigsByNamespaceAndInstanceAppId(
+      String instanceAppId, String appId, String clusterName, String namespaceName, long afterId,
+      int size) {
+    return instanceConfigRepository.findByNamespaceAndInstanceAppIdAndIdGreaterThan(instanceAppId,
+        appId, clusterName, namespaceName, getValidInstanceConfigDate(), afterId,
+        PageRequest.of(0, size));
+  }
+
+  /**
+   * Keyset paginated version of
+   * {@link #findInstanceConfigsByNamespaceWithReleaseKeysNotIn(String, String, String, Set)}
+   *
+   * @return at most size instance configs with id greater than afterId, ordered by id
+   */
+  public List<InstanceConfig> findInstanceConfigsByNamespaceWithReleaseKeysNotIn(String appId,
+      String clusterName, String namespaceName, Set<String> releaseKeysNotIn, long afterId,
+      int size) {
+    return instanceConfigRepository
+        .findByConfigAppIdAndConfigClusterNameAndConfigNamespaceNameAndDataChangeLastModifiedTimeAfterAndReleaseKeyNotInAndIdGreaterThanOrderByIdAsc(
+            appId, clusterName, namespaceName, getValidInstanceConfigDate(), releaseKeysNotIn,
+            afterId, PageRequest.of(0, size));
+  }
+
   /**
    * Currently the instance config is expired by 1 day, add one more hour to avoid possible time
    * difference
    */
-  private Date getValidInstanceConfigDate() {
+  public Date getValidInstanceConfigDate() {
     Calendar cal = Calendar.getInstance();
     cal.add(Calendar.DATE, -1);
     cal.add(Calendar.HOUR, -1);
@@ -185,8 +263,85 @@ public class InstanceService {
     return instanceConfigRepository.save(existedInstanceConfig);
   }
 
+  @Transactional
+  public List<InstanceConfig> createInstanceConfigs(List<InstanceConfig> instanceConfigs) {
+    instanceConfigs.forEach(instanceConfig -> instanceConfig.setId(0)); //protection
+
+    return Lists.newArrayList(instanceConfigRepository.saveAll(instanceConfigs));
+  }
+
+  /**
+   * Update the instance configs in one transaction, the ones deleted in the meantime, e.g. along
+   * with their namespaces, are skipped.
+   */
+  @Transactional
+  public List<InstanceConfig> updateInstanceConfigs(List<InstanceConfig> instanceConfigs) {
+    Map<Long, InstanceConfig> existedInstanceConfigs = Maps.newHashMap();
+    instanceConfigRepository.findAllById(instanceConfigs.stream().map(InstanceConfig::getId)
+        .collect(Collectors.toSet())).forEach(existedInstanceConfig -> existedInstanceConfigs
+        .put(existedInstanceConfig.getId(), existedInstanceConfig));
+
+    List<InstanceConfig> toUpdate = Lists.newArrayListWithCapacity(existedInstanceConfigs.size());
+    for (InstanceConfig instanceConfig : instanceConfigs) {
+      InstanceConfig existedInstanceConfig = existedInstanceConfigs.get(instanceConfig.getId());
+      if (existedInstanceConfig == null) {
+        continue;
+      }
+      existedInstanceConfig.setConfigClusterName(instanceConfig.getConfigClusterName());
+      existedInstanceConfig.setReleaseKey(instanceConfig.getReleaseKey());
+      existedInstanceConfig.setReleaseDeliveryTime(instanceConfig.getReleaseDeliveryTime());
+      existedInstanceConfig.setDataChangeLastModifiedTime(instanceConfig
+          .getDataChangeLastModifiedTime());
+      toUpdate.add(existedInstanceConfig);
+    }
+
+    return Lists.newArrayList(instanceConfigRepository.saveAll(toUpdate));
+  }
+
   @Transactional
   public int batchDeleteInstanceConfig(String configAppId, String configClusterName, String configNamespaceName){
     return instanceConfigRepository.batchDelete(configAppId, configClusterName, configNamespaceName);
   }
+
+  /**
+   * @return at most 500 instance configs with id greater than the given one and not modified since
+   * the given date, ordered by id
+   */
+  public List<InstanceConfig> findInstanceConfigsModifiedBefore(long idGreaterThan, Date date) {
+    return instanceConfigRepository
+        .findFirst500ByIdGreaterThanAndDataChangeLastModifiedTimeBeforeOrderByIdAsc(idGreaterThan,
+            date);
+  }
+
+  /**
+   * @return at most 500 instances with id greater than the given one and not modified since the
+   * given date, ordered by id
+   */
+  public List<Instance> findInstancesModifiedBefore(long idGreaterThan, Date date) {
+    return instanceRepository
+        .findFirst500ByIdGreaterThanAndDataChangeLastModifiedTimeBeforeOrderByIdAsc(idGreaterThan,
+            date);
+  }
+
+  /**
+   * Delete the instance configs which are still not modified since the given date
+   */
+  @Transactional
+  public int batchDeleteInstanceConfigsModifiedBefore(Collection<Long> ids, Date date) {
+    if (CollectionUtils.isEmpty(ids)) {
+      return 0;
+    }
+    return instanceConfigRepository.batchDeleteModifiedBefore(ids, date);
+  }
+
+  /**
+   * Delete the instances which are not modified since the given date and have no instance configs
+   */
+  @Transactional
+  public int batchDeleteUnusedInstancesModifiedBefore(Collection<Long> ids, Date date) {
+    if (CollectionUtils.isEmpty(ids)) {
+      return 0;
+    }
+    return instanceRepository.batchDeleteUnusedModifiedBefore(ids, date);
+  }
 }
@@ -99,6 +99,10 @@ public class ItemService {
     return itemRepository.findById(itemId).orElse(null);
   }
 
+  public List<Item> findByIds(Collection<Long> itemIds) {
+    return itemRepository.findByIdIn(itemIds);
+  }
+
   public List<Item> findItemsWithoutOrdered(Long namespaceId) {
     List<Item> items = itemRepository.findByNamespaceId(namespaceId);
     if (items == null) {
@@ -123,6 +127,16 @@ public class ItemService {
     return items;
   }
 
+  /**
+   * Find the items of the namespaces with one query, ordered by their line numbers
+   */
+  public List<Item> findItemsWithOrdered(Collection<Long> namespaceIds) {
+    if (namespaceIds.isEmpty()) {
+      return Collections.emptyList();
+    }
+    return itemRepository.findByNamespaceIdInOrderByLineNumAsc(namespaceIds);
+  }
+
   public List<Item> findItemsWithOrdered(String appId, String clusterName, String namespaceName) {
     Namespace namespace = namespaceService.findOne(appId, clusterName, namespaceName);
     if (namespace != null) {
@@ -216,7 +230,82 @@ public class ItemService {
     return managedItem;
   }
 
+  /**
+   * Create the items of the namespace with jdbc batches, the same as {@link #save(Item)} one by one.
+   */
+  @Transactional
+  public List<Item> batchSave(long namespaceId, List<Item> items) {
+    int valueLengthLimit = findItemValueLengthLimit(namespaceId);
+    Item lastItem = findLastOne(namespaceId);
+    int lastLineNum = lastItem == null ? 0 : lastItem.getLineNum();
+    for (Item item : items) {
+      checkItemKeyLength(item.getKey());
+      checkItemType(item.getType());
+      checkItemValueLength(valueLengthLimit, item.getValue());
+
+      item.setId(0);//protection
+      if (item.getLineNum() == 0) {
+        item.setLineNum(++lastLineNum);
+      } else {
+        lastLineNum = Math.max(lastLineNum, item.getLineNum());
+      }
+    }
+
+    itemRepository.batchInsert(items);
+
+    auditService.audit(Item.class.getSimpleName(), items, Audit.OP.INSERT);
+
+    return items;
+  }
+
+  /**
+   * Update the items of the namespace with jdbc batches, the same as {@link #update(Item)} one by
+   * one. The items are detached, and only the type, value, comment, line number and last modified
+   * info are updated.
+   */
+  @Transactional
+  public List<Item> batchUpdate(long namespaceId, List<Item> items) {
+    int valueLengthLimit = findItemValueLengthLimit(namespaceId);
+    for (Item item : items) {
+      checkItemType(item.getType());
+      checkItemValueLength(valueLengthLimit, item.getValue());
+    }
+
+    itemRepository.batchUpdate(items);
+
+    auditService.audit(Item.class.getSimpleName(), items, Audit.OP.UPDATE);
+
+    return items;
+  }
+
+  /**
+   * Delete the items with jdbc batches, the same as {@link #delete(long, String)} one by one.
+   */
+  @Transactional
+  public List<Item> batchDelete(List<Item> items, String operator) {
+    for (Item item : items) {
+      item.setDataChangeLastModifiedBy(operator);
+    }
+
+    itemRepository.batchDelete(items);
+
+    auditService.audit(Item.class.getSimpleName(), items, Audit.OP.DELETE);
+
+    return items;
+  }
+
   private boolean checkItemValueLength(long namespaceId, String value) {
+    return checkItemValueLength(findItemValueLengthLimit(namespaceId), value);
+  }
+
+  private boolean checkItemValueLength(int limit, String value) {
+    if (!StringUtils.isEmpty(value) && value.length() > limit) {
+      throw new BadRequestException("value too long. length limit:" + limit);
+    }
+    return true;
+  }
+
+  private int findItemValueLengthLimit(long namespaceId) {
     Namespace currentNamespace = namespaceService.findOne(namespaceId);
     int limit = getItemValueLengthLimit(currentNamespace);
     if(currentNamespace != null) {
@@ -226,10 +315,7 @@ public class ItemService {
         limit = getGrayNamespaceItemValueLengthLimit(currentNamespace, limit);
       }
     }
-    if (!StringUtils.isEmpty(value) && value.length() > limit) {
-      throw new BadRequestException("value too long. length limit:" + limit);
-    }
-    return true;
+    return limit;
   }
 
   private int getGrayNamespaceItemValueLengthLimit(Namespace grayNamespace, int grayNamespaceLimit) {
@@ -23,11 +23,22 @@ import com.ctrip.framework.apollo.biz.entity.Namespace;
 import com.ctrip.framework.apollo.biz.utils.ConfigChangeContentBuilder;
 import com.ctrip.framework.apollo.common.dto.ItemChangeSets;
 import com.ctrip.framework.apollo.common.dto.ItemDTO;
+import com.ctrip.framework.apollo.common.dto.NamespaceDTO;
+import com.ctrip.framework.apollo.common.dto.NamespaceImportDTO;
+import com.ctrip.framework.apollo.common.dto.NamespaceImportResultDTO;
 import com.ctrip.framework.apollo.common.exception.BadRequestException;
 import com.ctrip.framework.apollo.common.exception.NotFoundException;
 import com.ctrip.framework.apollo.common.utils.BeanUtils;
 import com.ctrip.framework.apollo.core.utils.StringUtils;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
@@ -35,6 +46,7 @@ import org.springframework.util.CollectionUtils;
 
 @Service
 public class ItemSetService {
+  private static final int FIND_ITEMS_BATCH_SIZE = 1000;
 
   private final AuditService auditService;
   private final CommitService commitService;
@@ -105,33 +117,112 @@ public class ItemSetService {
     return changeSet;
   }
 
+  /**
+   * Import the items of a namespace in one transaction, the namespace is created if not existed.
+   * The items are matched with the existing ones by keys, the new ones are created and the changed
+   * ones are updated in batches, with one commit for all of them. The existing items not imported
+   * are kept.
+   */
+  @Transactional
+  public NamespaceImportResultDTO importNamespace(String appId, String clusterName,
+      String namespaceName, NamespaceImportDTO namespaceImport) {
+    String operator = namespaceImport.getDataChangeLastModifiedBy();
+    NamespaceImportResultDTO result = new NamespaceImportResultDTO();
+
+    Namespace namespace = namespaceService.findOne(appId, clusterName, namespaceName);
+    List<Item> managedItems;
+    if (namespace == null) {
+      namespace = new Namespace(appId, clusterName, namespaceName);
+      namespace.setDataChangeCreatedBy(operator);
+      namespace.setDataChangeLastModifiedBy(operator);
+      namespace = namespaceService.save(namespace);
+      result.setNamespaceCreated(true);
+      managedItems = Collections.emptyList();
+    } else {
+      managedItems = itemService.findItemsWithoutOrdered(namespace.getId());
+    }
+    result.setNamespace(BeanUtils.transform(NamespaceDTO.class, namespace));
+
+    if (!managedItems.isEmpty() && namespaceImport.isIgnoreConflictNamespace()) {
+      result.setSkipped(true);
+      return result;
+    }
+
+    Map<String, Item> managedItemsByKey = Maps.newHashMapWithExpectedSize(managedItems.size());
+    for (Item item : managedItems) {
+      if (!StringUtils.isEmpty(item.getKey())) {
+        managedItemsByKey.put(item.getKey(), item);
+      }
+    }
+    //the later items of the same key win, as if they are imported one by one
+    Map<String, ItemDTO> toImportItemsByKey = new LinkedHashMap<>();
+    ItemChangeSets changeSets = new ItemChangeSets();
+    for (ItemDTO item : namespaceImport.getItems()) {
+      if (!StringUtils.isEmpty(item.getKey())) {
+        toImportItemsByKey.put(item.getKey(), item);
+      } else if (!StringUtils.isEmpty(item.getComment())) {
+        changeSets.addCreateItem(toCreateItem(namespace, item));
+      }
+    }
+
+    for (ItemDTO item : toImportItemsByKey.values()) {
+      Item managedItem = managedItemsByKey.get(item.getKey());
+      if (managedItem == null) {
+        changeSets.addCreateItem(toCreateItem(namespace, item));
+      } else if (!Objects.equals(managedItem.getValue(), item.getValue())
+          || !Objects.equals(managedItem.getComment(), item.getComment())
+          || managedItem.getType() != item.getType()) {
+        ItemDTO updateItem = BeanUtils.transform(ItemDTO.class, managedItem);
+        updateItem.setValue(item.getValue());
+        updateItem.setComment(item.getComment());
+        updateItem.setType(item.getType());
+        changeSets.addUpdateItem(updateItem);
+      }
+    }
+
+    if (!changeSets.isEmpty()) {
+      changeSets.setDataChangeLastModifiedBy(operator);
+      updateSet(namespace, changeSets);
+    }
+    result.setCreatedItems(changeSets.getCreateItems().size());
+    result.setUpdatedItems(changeSets.getUpdateItems().size());
+    return result;
+  }
+
+  private ItemDTO toCreateItem(Namespace namespace, ItemDTO item) {
+    ItemDTO createItem = new ItemDTO(item.getKey(), item.getValue(), item.getComment(),
+        item.getLineNum());
+    createItem.setNamespaceId(namespace.getId());
+    createItem.setType(item.getType());
+    return createItem;
+  }
+
   private void doDeleteItems(List<ItemDTO> toDeleteItems, Namespace namespace, String operator,
                              ConfigChangeContentBuilder configChangeContentBuilder) {
 
-    for (ItemDTO item : toDeleteItems) {
-      Item deletedItem = itemService.delete(item.getId(), operator);
+    List<Item> deletedItems = findManagedItems(toDeleteItems);
+    for (Item deletedItem : deletedItems) {
       if (deletedItem.getNamespaceId() != namespace.getId()) {
         throw BadRequestException.namespaceNotMatch();
       }
-
-      configChangeContentBuilder.deleteItem(deletedItem);
     }
+
+    itemService.batchDelete(deletedItems, operator);
+    deletedItems.forEach(configChangeContentBuilder::deleteItem);
   }
 
   private void doUpdateItems(List<ItemDTO> toUpdateItems, Namespace namespace, String operator,
                              ConfigChangeContentBuilder configChangeContentBuilder) {
 
-    for (ItemDTO item : toUpdateItems) {
-      Item entity = BeanUtils.transform(Item.class, item);
-
-      Item managedItem = itemService.findOne(entity.getId());
-      if (managedItem == null) {
-        throw NotFoundException.itemNotFound(entity.getKey());
-      }
+    List<Item> managedItems = findManagedItems(toUpdateItems);
+    List<Item> beforeUpdateItems = Lists.newArrayListWithCapacity(managedItems.size());
+    for (int i = 0; i < toUpdateItems.size(); i++) {
+      Item entity = BeanUtils.transform(Item.class, toUpdateItems.get(i));
+      Item managedItem = managedItems.get(i);
       if (managedItem.getNamespaceId() != namespace.getId()) {
         throw BadRequestException.namespaceNotMatch();
       }
-      Item beforeUpdateItem = BeanUtils.transform(Item.class, managedItem);
+      beforeUpdateItems.add(BeanUtils.transform(Item.class, managedItem));
 
       //protect. only value,type,comment,lastModifiedBy can be modified
       managedItem.setType(entity.getType());
@@ -139,15 +230,18 @@ public class ItemSetService {
       managedItem.setComment(entity.getComment());
       managedItem.setLineNum(entity.getLineNum());
       managedItem.setDataChangeLastModifiedBy(operator);
+    }
 
-      Item updatedItem = itemService.update(managedItem);
-      configChangeContentBuilder.updateItem(beforeUpdateItem, updatedItem);
+    itemService.batchUpdate(namespace.getId(), managedItems);
+    for (int i = 0; i < managedItems.size(); i++) {
+      configChangeContentBuilder.updateItem(beforeUpdateItems.get(i), managedItems.get(i));
     }
   }
 
   private void doCreateItems(List<ItemDTO> toCreateItems, Namespace namespace, String operator,
                              ConfigChangeContentBuilder configChangeContentBuilder) {
 
+    List<Item> entities = Lists.newArrayListWithCapacity(toCreateItems.size());
     for (ItemDTO item : toCreateItems) {
       if (item.getNamespaceId() != namespace.getId()) {
         throw BadRequestException.namespaceNotMatch();
@@ -156,9 +250,34 @@ public class ItemSetService {
       Item entity = BeanUtils.transform(Item.class, item);
       entity.setDataChangeCreatedBy(operator);
       entity.setDataChangeLastModifiedBy(operator);
-      Item createdItem = itemService.save(entity);
-      configChangeContentBuilder.createItem(createdItem);
+      entities.add(entity);
+    }
+
+    itemService.batchSave(namespace.getId(), entities);
+    entities.forEach(configChangeContentBuilder::createItem);
+  }
+
+  /**
+   * @return the managed items in the same order as the item dtos, loaded in batches
+   */
+  private List<Item> findManagedItems(List<ItemDTO> items) {
+    Map<Long, Item> managedItems = Maps.newHashMapWithExpectedSize(items.size());
+    for (List<ItemDTO> batch : Lists.partition(items, FIND_ITEMS_BATCH_SIZE)) {
+      Set<Long> ids = batch.stream().map(ItemDTO::getId).collect(Collectors.toSet());
+      for (Item item : itemService.findByIds(ids)) {
+        managedItems.put(item.getId(), item);
+      }
+    }
+
+    List<Item> result = Lists.newArrayListWithCapacity(items.size());
+    for (ItemDTO item : items) {
+      Item managedItem = managedItems.get(item.getId());
+      if (managedItem == null) {
+        throw NotFoundException.itemNotFound(item.getKey());
+      }
+      result.add(managedItem);
     }
+    return result;
   }
 
 }
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.biz.service;
+
+import com.ctrip.framework.apollo.biz.entity.JobLease;
+import com.ctrip.framework.apollo.biz.repository.JobLeaseRepository;
+import com.ctrip.framework.foundation.Foundation;
+import java.util.Date;
+import java.util.UUID;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * The leases of the background jobs in ApolloConfigDB, so that each job runs on one of the admin
+ * services sharing the database at a time.
+ * <p>
+ * The lease is taken over with one conditional update when it is held by this admin service or
+ * expired, and created on the first run of the job. The expire times are compared with the clocks
+ * of the admin services, so the lease durations should be much longer than their clock skews.
+ */
+@Service
+public class JobLeaseService {
+
+  private final JobLeaseRepository jobLeaseRepository;
+  private final TransactionTemplate transactionTemplate;
+  private final String owner;
+
+  public JobLeaseService(
+      final JobLeaseRepository jobLeaseRepository,
+      final TransactionTemplate transactionTemplate) {
+    this.jobLeaseRepository = jobLeaseRepository;
+    this.transactionTemplate = transactionTemplate;
+    this.owner = String.format("%s-%s", Foundation.net().getHostAddress(), UUID.randomUUID());
+  }
+
+  /**
+   * Acquire or renew the lease of the job
+   *
+   * @return whether this admin service holds the lease
+   */
+  public boolean tryAcquireLease(String jobName, long leaseInMilli) {
+    Date now = new Date();
+    Date expireTime = new Date(now.getTime() + leaseInMilli);
+    Integer acquired = transactionTemplate.execute(
+        status -> jobLeaseRepository.acquireLease(jobName, owner, expireTime, now));
+    if (acquired != null && acquired > 0) {
+      return true;
+    }
+    if (jobLeaseRepository.findByJobName(jobName) != null) {
+      return false;
+    }
+    try {
+      jobLeaseRepository.save(new JobLease(jobName, owner, expireTime));
+      return true;
+    } catch (DataIntegrityViolationException ex) {
+      //created by others in the meantime
+      return false;
+    }
+  }
+
+  /**
+   * Release the lease of the job if held by this admin service, so that others take over at once
+   */
+  public void releaseLease(String jobName) {
+    transactionTemplate.execute(
+        status -> jobLeaseRepository.releaseLease(jobName, owner, new Date()));
+  }
+}
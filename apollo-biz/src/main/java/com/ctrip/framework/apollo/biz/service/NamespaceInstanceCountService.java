@@ -0,0 +1,236 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.biz.service;
+
+import com.ctrip.framework.apollo.biz.entity.NamespaceInstanceCount;
+import com.ctrip.framework.apollo.biz.repository.InstanceConfigRepository;
+import com.ctrip.framework.apollo.biz.repository.NamespaceInstanceCountRepository;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.commons.lang3.time.DateUtils;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Materialized instance counts of the namespaces, so that counting the instances of a namespace
+ * doesn't need to scan its instance configs.
+ * <p>
+ * The counts are increased by the instance config audits of the config services, and reconciled
+ * periodically with the active instance configs, e.g. for the instance configs expired or deleted.
+ */
+@Service
+public class NamespaceInstanceCountService {
+  private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
+  private static final Comparator<NamespaceInstanceCount> KEY_COMPARATOR = Comparator
+      .comparing(NamespaceInstanceCount::getConfigAppId)
+      .thenComparing(NamespaceInstanceCount::getConfigClusterName)
+      .thenComparing(NamespaceInstanceCount::getConfigNamespaceName)
+      .thenComparing(NamespaceInstanceCount::getReleaseKey);
+
+  private final NamespaceInstanceCountRepository namespaceInstanceCountRepository;
+  private final InstanceConfigRepository instanceConfigRepository;
+  private final InstanceService instanceService;
+  private final TransactionTemplate transactionTemplate;
+
+  public NamespaceInstanceCountService(
+      final NamespaceInstanceCountRepository namespaceInstanceCountRepository,
+      final InstanceConfigRepository instanceConfigRepository,
+      final InstanceService instanceService,
+      final TransactionTemplate transactionTemplate) {
+    this.namespaceInstanceCountRepository = namespaceInstanceCountRepository;
+    this.instanceConfigRepository = instanceConfigRepository;
+    this.instanceService = instanceService;
+    this.transactionTemplate = transactionTemplate;
+  }
+
+  public long countInstances(String appId, String clusterName, String namespaceName) {
+    //the count could be transiently negative when the increases race with the reconciliation
+    return Math.max(0, namespaceInstanceCountRepository.sumInstanceCount(appId, clusterName,
+        namespaceName));
+  }
+
+  /**
+   * Add the instance counts of the deltas to the counters. The counters are updated in one
+   * transaction and in the same order among the config services to avoid deadlocks, and the
+   * missing ones are created afterwards.
+   */
+  public void increaseInstanceCounts(Collection<NamespaceInstanceCount> deltas) {
+    List<NamespaceInstanceCount> toIncrease = deltas.stream()
+        .filter(delta -> delta.getInstanceCount() != 0).sorted(KEY_COMPARATOR)
+        .collect(Collectors.toList());
+    if (toIncrease.isEmpty()) {
+      return;
+    }
+
+    List<NamespaceInstanceCount> missingCounters = transactionTemplate.execute(
+        status -> doIncreaseInstanceCounts(toIncrease));
+
+    for (NamespaceInstanceCount delta : missingCounters) {
+      try {
+        namespaceInstanceCountRepository.save(new NamespaceInstanceCount(delta.getConfigAppId(),
+            delta.getConfigClusterName(), delta.getConfigNamespaceName(), delta.getReleaseKey(),
+            delta.getInstanceCount()));
+      } catch (DataIntegrityViolationException ex) {
+        //created by others in the meantime
+        transactionTemplate.execute(
+            status -> doIncreaseInstanceCounts(Collections.singletonList(delta)));
+      }
+    }
+  }
+
+  /**
+   * Recount the active instance configs and set the counters to the recounts. The recounting
+   * doesn't lock the counters, so the increases go on meanwhile. The recounts are then set
+   * namespace by namespace in small transactions, and only to the counters not modified since the
+   * reconciliation started, the others are left to the next reconciliation as their increases may
+   * be counted or not by the recounts.
+   *
+   * @return the number of corrected counters
+   */
+  public int reconcileInstanceCounts() {
+    //truncated as the modified time of the counters may be stored in seconds
+    Date reconcileTime = DateUtils.truncate(new Date(), Calendar.SECOND);
+
+    Map<String, Map<String, NamespaceInstanceCount>> recounts = groupByNamespace(
+        instanceConfigRepository.countByNamespaceAndReleaseKeyModifiedAfter(
+            instanceService.getValidInstanceConfigDate()));
+    Map<String, Map<String, NamespaceInstanceCount>> counters = groupByNamespace(
+        namespaceInstanceCountRepository.findAll());
+
+    Set<String> namespaces = Sets.newHashSet(recounts.keySet());
+    namespaces.addAll(counters.keySet());
+
+    int corrected = 0;
+    for (String namespace : namespaces) {
+      Map<String, NamespaceInstanceCount> namespaceRecounts = recounts.getOrDefault(namespace,
+          Collections.emptyMap());
+      Map<String, NamespaceInstanceCount> namespaceCounters = counters.getOrDefault(namespace,
+          Collections.emptyMap());
+      List<NamespaceInstanceCount> missingCounters = Lists.newArrayList();
+
+      Integer namespaceCorrected = transactionTemplate.execute(
+          status -> doReconcileInstanceCounts(namespaceRecounts, namespaceCounters, reconcileTime,
+              missingCounters));
+      corrected += namespaceCorrected == null ? 0 : namespaceCorrected;
+
+      for (NamespaceInstanceCount recount : missingCounters) {
+        try {
+          namespaceInstanceCountRepository.save(new NamespaceInstanceCount(
+              recount.getConfigAppId(), recount.getConfigClusterName(),
+              recount.getConfigNamespaceName(), recount.getReleaseKey(),
+              recount.getInstanceCount()));
+          corrected++;
+        } catch (DataIntegrityViolationException ex) {
+          //created by the increases in the meantime, left to the next reconciliation
+        }
+      }
+    }
+
+    //counters of the release keys no longer fetched
+    transactionTemplate.execute(
+        status -> namespaceInstanceCountRepository.deleteZeroCountsModifiedBefore(reconcileTime));
+
+    return corrected;
+  }
+
+  @Transactional
+  public int batchDelete(String appId, String clusterName, String namespaceName) {
+    return namespaceInstanceCountRepository.batchDelete(appId, clusterName, namespaceName);
+  }
+
+  /**
+   * @return the deltas whose counters don't exist
+   */
+  private List<NamespaceInstanceCount> doIncreaseInstanceCounts(
+      List<NamespaceInstanceCount> deltas) {
+    Date now = new Date();
+    List<NamespaceInstanceCount> missingCounters = Lists.newArrayList();
+    for (NamespaceInstanceCount delta : deltas) {
+      int updated = namespaceInstanceCountRepository.increaseInstanceCount(delta.getConfigAppId(),
+          delta.getConfigClusterName(), delta.getConfigNamespaceName(), delta.getReleaseKey(),
+          delta.getInstanceCount(), now);
+      if (updated == 0) {
+        missingCounters.add(delta);
+      }
+    }
+    return missingCounters;
+  }
+
+  /**
+   * @param missingCounters filled with the recounts whose counters don't exist
+   */
+  private int doReconcileInstanceCounts(Map<String, NamespaceInstanceCount> recounts,
+      Map<String, NamespaceInstanceCount> counters, Date reconcileTime,
+      List<NamespaceInstanceCount> missingCounters) {
+    Date now = new Date();
+    int corrected = 0;
+    for (NamespaceInstanceCount recount : recounts.values()) {
+      NamespaceInstanceCount counter = counters.get(recount.getReleaseKey());
+      if (counter == null) {
+        missingCounters.add(recount);
+      } else if (counter.getInstanceCount() != recount.getInstanceCount()) {
+        corrected += resetInstanceCount(counter, recount.getInstanceCount(), now, reconcileTime);
+      }
+    }
+
+    //no active instance configs counted
+    for (NamespaceInstanceCount counter : counters.values()) {
+      if (!recounts.containsKey(counter.getReleaseKey()) && counter.getInstanceCount() != 0) {
+        corrected += resetInstanceCount(counter, 0, now, reconcileTime);
+      }
+    }
+    return corrected;
+  }
+
+  private int resetInstanceCount(NamespaceInstanceCount counter, long instanceCount, Date now,
+      Date reconcileTime) {
+    return namespaceInstanceCountRepository.resetInstanceCountIfNotModifiedSince(
+        counter.getConfigAppId(), counter.getConfigClusterName(),
+        counter.getConfigNamespaceName(), counter.getReleaseKey(), instanceCount, now,
+        reconcileTime);
+  }
+
+  private Map<String, Map<String, NamespaceInstanceCount>> groupByNamespace(
+      Iterable<NamespaceInstanceCount> counts) {
+    Map<String, Map<String, NamespaceInstanceCount>> grouped = Maps.newHashMap();
+    for (NamespaceInstanceCount count : counts) {
+      grouped.computeIfAbsent(assembleNamespaceKey(count), key -> Maps.newHashMap())
+          .put(count.getReleaseKey(), count);
+    }
+    return grouped;
+  }
+
+  private String assembleNamespaceKey(NamespaceInstanceCount count) {
+    return STRING_JOINER.join(count.getConfigAppId(), count.getConfigClusterName(),
+        count.getConfigNamespaceName());
+  }
+}
@@ -68,6 +68,7 @@ public class NamespaceService {
   private final ReleaseHistoryService releaseHistoryService;
   private final NamespaceLockService namespaceLockService;
   private final InstanceService instanceService;
+  private final NamespaceInstanceCountService namespaceInstanceCountService;
   private final MessageSender messageSender;
   private final BizConfig bizConfig;
 
@@ -84,6 +85,7 @@ public class NamespaceService {
       final @Lazy NamespaceBranchService namespaceBranchService,
       final NamespaceLockService namespaceLockService,
       final InstanceService instanceService,
+      final NamespaceInstanceCountService namespaceInstanceCountService,
       final BizConfig bizConfig) {
     this.releaseHistoryService = releaseHistoryService;
     this.namespaceRepository = namespaceRepository;
@@ -97,6 +99,7 @@ public class NamespaceService {
     this.namespaceBranchService = namespaceBranchService;
     this.namespaceLockService = namespaceLockService;
     this.instanceService = instanceService;
+    this.namespaceInstanceCountService = namespaceInstanceCountService;
     this.bizConfig = bizConfig;
   }
 
@@ -331,6 +334,7 @@ public class NamespaceService {
     releaseHistoryService.batchDelete(appId, clusterName, namespaceName, operator);
 
     instanceService.batchDeleteInstanceConfig(appId, clusterName, namespaceName);
+    namespaceInstanceCountService.batchDelete(appId, clusterName, namespaceName);
 
     namespaceLockService.unlock(namespace.getId());
 
@@ -23,84 +23,43 @@ import com.ctrip.framework.apollo.biz.entity.Audit;
 import com.ctrip.framework.apollo.biz.entity.ReleaseHistory;
 import com.ctrip.framework.apollo.biz.repository.ReleaseHistoryRepository;
 import com.ctrip.framework.apollo.biz.repository.ReleaseRepository;
-import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
-import com.ctrip.framework.apollo.tracer.Tracer;
-import com.google.common.collect.Queues;
+import com.google.common.collect.Lists;
 import com.google.gson.Gson;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
-import javax.annotation.PostConstruct;
-import javax.annotation.PreDestroy;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Date;
 import java.util.Map;
 import java.util.Set;
-import org.springframework.transaction.support.TransactionCallbackWithoutResult;
-import org.springframework.transaction.support.TransactionTemplate;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
 @Service
 public class ReleaseHistoryService {
-  private static final Logger logger = LoggerFactory.getLogger(ReleaseHistoryService.class);
   private static final Gson GSON = new Gson();
-  private static final int CLEAN_QUEUE_MAX_SIZE = 100;
-  private final BlockingQueue<ReleaseHistory> releaseClearQueue = Queues.newLinkedBlockingQueue(CLEAN_QUEUE_MAX_SIZE);
-  private final ExecutorService cleanExecutorService = Executors.newSingleThreadExecutor(
-      ApolloThreadFactory.create("ReleaseHistoryService", true));
-  private final AtomicBoolean cleanStopped = new AtomicBoolean(false);
 
   private final ReleaseHistoryRepository releaseHistoryRepository;
   private final ReleaseRepository releaseRepository;
   private final AuditService auditService;
   private final BizConfig bizConfig;
-  private final TransactionTemplate transactionManager;
 
   public ReleaseHistoryService(
       final ReleaseHistoryRepository releaseHistoryRepository,
       final ReleaseRepository releaseRepository,
       final AuditService auditService,
-      final BizConfig bizConfig,
-      final TransactionTemplate transactionManager) {
+      final BizConfig bizConfig) {
     this.releaseHistoryRepository = releaseHistoryRepository;
     this.releaseRepository = releaseRepository;
     this.auditService = auditService;
     this.bizConfig = bizConfig;
-    this.transactionManager = transactionManager;
-  }
-
-  @PostConstruct
-  private void initialize() {
-    cleanExecutorService.submit(() -> {
-      while (!cleanStopped.get() && !Thread.currentThread().isInterrupted()) {
-        try {
-          ReleaseHistory releaseHistory = releaseClearQueue.poll(1, TimeUnit.SECONDS);
-          if (releaseHistory != null) {
-            this.cleanReleaseHistory(releaseHistory);
-          } else {
-            TimeUnit.MINUTES.sleep(1);
-          }
-        } catch (Throwable ex) {
-          logger.error("Clean releaseHistory failed", ex);
-          Tracer.logError(ex);
-        }
-      }
-    });
   }
 
   public Page<ReleaseHistory> findReleaseHistoriesByNamespace(String appId, String clusterName,
@@ -148,13 +107,6 @@ public class ReleaseHistoryService {
     auditService.audit(ReleaseHistory.class.getSimpleName(), releaseHistory.getId(),
                        Audit.OP.INSERT, releaseHistory.getDataChangeCreatedBy());
 
-    int releaseHistoryRetentionLimit = this.getReleaseHistoryRetentionLimit(releaseHistory);
-    if (releaseHistoryRetentionLimit != DEFAULT_RELEASE_HISTORY_RETENTION_SIZE) {
-      if (!releaseClearQueue.offer(releaseHistory)) {
-        logger.warn("releaseClearQueue is full, failed to add task to clean queue, " +
-            "clean queue max size:{}", CLEAN_QUEUE_MAX_SIZE);
-      }
-    }
     return releaseHistory;
   }
 
@@ -163,6 +115,120 @@ public class ReleaseHistoryService {
     return releaseHistoryRepository.batchDelete(appId, clusterName, namespaceName, operator);
   }
 
+  /**
+   * Find the namespace branches with more release histories than their retention limits with one
+   * grouped query over all the release histories.
+   *
+   * @return the latest release history beyond the retention limit of each namespace branch, it and
+   * the older ones are to be purged
+   */
+  public List<ReleaseHistory> findLatestReleaseHistoriesOutOfRetention() {
+    int retentionSize = bizConfig.releaseHistoryRetentionSize();
+    Map<String, Integer> overrideMap = bizConfig.releaseHistoryRetentionSizeOverride();
+    int minRetentionLimit = minRetentionLimit(retentionSize, overrideMap);
+    if (minRetentionLimit == Integer.MAX_VALUE) {
+      return Collections.emptyList();
+    }
+    return findLatestReleaseHistoriesOutOfRetention(
+        releaseHistoryRepository.countReleaseHistoriesGroupByNamespaceHavingMoreThan(
+            minRetentionLimit), retentionSize, overrideMap);
+  }
+
+  /**
+   * Find the namespace branches beyond their retention limits among the ones with release
+   * histories in the id range, e.g. the ones released since the last purge, without scanning all
+   * the release histories.
+   *
+   * @return the latest release history beyond the retention limit of each namespace branch, it and
+   * the older ones are to be purged
+   */
+  public List<ReleaseHistory> findLatestReleaseHistoriesOutOfRetention(long fromId, long toId) {
+    int retentionSize = bizConfig.releaseHistoryRetentionSize();
+    Map<String, Integer> overrideMap = bizConfig.releaseHistoryRetentionSizeOverride();
+    if (minRetentionLimit(retentionSize, overrideMap) == Integer.MAX_VALUE) {
+      return Collections.emptyList();
+    }
+    return findLatestReleaseHistoriesOutOfRetention(
+        releaseHistoryRepository.findNamespacesWithIdBetween(fromId, toId), retentionSize,
+        overrideMap);
+  }
+
+  /**
+   * @return the max id of the release histories, null if there is none
+   */
+  public Long findMaxReleaseHistoryId() {
+    return releaseHistoryRepository.findMaxId();
+  }
+
+  /**
+   * @return the first 500 release histories of the namespace branch not newer than the latest
+   * release history out of retention
+   */
+  public List<ReleaseHistory> findReleaseHistoriesToPurge(ReleaseHistory latestOutOfRetention) {
+    return releaseHistoryRepository
+        .findFirst500ByAppIdAndClusterNameAndNamespaceNameAndBranchNameAndIdLessThanEqualOrderByIdAsc(
+            latestOutOfRetention.getAppId(), latestOutOfRetention.getClusterName(),
+            latestOutOfRetention.getNamespaceName(), latestOutOfRetention.getBranchName(),
+            latestOutOfRetention.getId());
+  }
+
+  /**
+   * Delete the release histories, and their releases not referenced by other release histories,
+   * with one statement each.
+   *
+   * @return the number of deleted releases
+   */
+  @Transactional
+  public int purgeReleaseHistories(List<ReleaseHistory> releaseHistories) {
+    if (releaseHistories.isEmpty()) {
+      return 0;
+    }
+    long deletedAt = System.currentTimeMillis();
+    releaseHistoryRepository.batchDeleteByIds(releaseHistories.stream()
+        .map(ReleaseHistory::getId).collect(Collectors.toList()), deletedAt);
+
+    Set<Long> releaseIds = releaseHistories.stream().map(ReleaseHistory::getReleaseId)
+        .collect(Collectors.toSet());
+    //e.g. the releases rolled back to are referenced by the rollback histories as well
+    releaseIds.removeAll(releaseHistoryRepository.findReleaseIdsIn(releaseIds));
+    if (releaseIds.isEmpty()) {
+      return 0;
+    }
+    return releaseRepository.batchDeleteByIds(releaseIds, deletedAt);
+  }
+
+  /**
+   * @param namespaces appId, clusterName, namespaceName, branchName and optionally the count of
+   * the release histories of the namespace branches
+   */
+  private List<ReleaseHistory> findLatestReleaseHistoriesOutOfRetention(List<Object[]> namespaces,
+      int retentionSize, Map<String, Integer> overrideMap) {
+    List<ReleaseHistory> releaseHistories = Lists.newArrayList();
+    for (Object[] o : namespaces) {
+      ReleaseHistory namespace = new ReleaseHistory();
+      namespace.setAppId((String) o[0]);
+      namespace.setClusterName((String) o[1]);
+      namespace.setNamespaceName((String) o[2]);
+      namespace.setBranchName((String) o[3]);
+      int retentionLimit = getReleaseHistoryRetentionLimit(namespace, overrideMap, retentionSize);
+      if (retentionLimit == DEFAULT_RELEASE_HISTORY_RETENTION_SIZE
+          || (o.length > 4 && (Long) o[4] <= retentionLimit)) {
+        continue;
+      }
+      releaseHistoryRetentionMaxId(namespace, retentionLimit).ifPresent(maxId -> {
+        namespace.setId(maxId);
+        releaseHistories.add(namespace);
+      });
+    }
+    return releaseHistories;
+  }
+
+  private int minRetentionLimit(int retentionSize, Map<String, Integer> overrideMap) {
+    return overrideMap.values().stream().reduce(
+        retentionSize == DEFAULT_RELEASE_HISTORY_RETENTION_SIZE ? Integer.MAX_VALUE : retentionSize,
+        Math::min);
+  }
+
   private Optional<Long> releaseHistoryRetentionMaxId(ReleaseHistory releaseHistory, int releaseHistoryRetentionSize) {
     Page<ReleaseHistory> releaseHistoryPage = releaseHistoryRepository.findByAppIdAndClusterNameAndNamespaceNameAndBranchNameOrderByIdDesc(
         releaseHistory.getAppId(),
@@ -182,52 +248,11 @@ public class ReleaseHistoryService {
     );
   }
 
-  private void cleanReleaseHistory(ReleaseHistory cleanRelease) {
-    String appId = cleanRelease.getAppId();
-    String clusterName = cleanRelease.getClusterName();
-    String namespaceName = cleanRelease.getNamespaceName();
-    String branchName = cleanRelease.getBranchName();
-
-    int retentionLimit = this.getReleaseHistoryRetentionLimit(cleanRelease);
-    //Second check, if retentionLimit is default value, do not clean
-    if (retentionLimit == DEFAULT_RELEASE_HISTORY_RETENTION_SIZE) {
-      return;
-    }
-
-    Optional<Long> maxId = this.releaseHistoryRetentionMaxId(cleanRelease, retentionLimit);
-    if (!maxId.isPresent()) {
-      return;
-    }
-
-    boolean hasMore = true;
-    while (hasMore && !Thread.currentThread().isInterrupted()) {
-      List<ReleaseHistory> cleanReleaseHistoryList = releaseHistoryRepository.findFirst100ByAppIdAndClusterNameAndNamespaceNameAndBranchNameAndIdLessThanEqualOrderByIdAsc(
-          appId, clusterName, namespaceName, branchName, maxId.get());
-      Set<Long> releaseIds = cleanReleaseHistoryList.stream()
-          .map(ReleaseHistory::getReleaseId)
-          .collect(Collectors.toSet());
-
-      transactionManager.execute(new TransactionCallbackWithoutResult() {
-        @Override
-        protected void doInTransactionWithoutResult(TransactionStatus status) {
-          releaseHistoryRepository.deleteAll(cleanReleaseHistoryList);
-          releaseRepository.deleteAllById(releaseIds);
-        }
-      });
-      hasMore = cleanReleaseHistoryList.size() == 100;
-    }
-  }
-
-  private int getReleaseHistoryRetentionLimit(ReleaseHistory releaseHistory) {
+  private int getReleaseHistoryRetentionLimit(ReleaseHistory releaseHistory,
+      Map<String, Integer> overrideMap, int retentionSize) {
     String overrideKey = String.format("%s+%s+%s+%s", releaseHistory.getAppId(),
         releaseHistory.getClusterName(), releaseHistory.getNamespaceName(), releaseHistory.getBranchName());
 
-    Map<String, Integer> overrideMap = bizConfig.releaseHistoryRetentionSizeOverride();
-    return overrideMap.getOrDefault(overrideKey, bizConfig.releaseHistoryRetentionSize());
-  }
-
-  @PreDestroy
-  void stopClean() {
-    cleanStopped.set(true);
+    return overrideMap.getOrDefault(overrideKey, retentionSize);
   }
 }
@@ -21,6 +21,7 @@ import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.google.common.collect.Lists;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
 
 import java.util.Collection;
@@ -63,4 +64,34 @@ public class ReleaseMessageService {
     }
     return releaseMessages;
   }
+
+  /**
+   * @return the first id not less than the given one, null if there are no such release messages
+   */
+  public Long findFirstIdFrom(long id) {
+    return releaseMessageRepository.findMinIdGreaterThanOrEqualTo(id);
+  }
+
+  public Long findMaxId() {
+    return releaseMessageRepository.findMaxId();
+  }
+
+  public long countReleaseMessages() {
+    return releaseMessageRepository.count();
+  }
+
+  /**
+   * Delete the release messages in [fromId, toId) which are superseded by newer ones of the same
+   * message, they are never needed since the config services only notify the latest ones.
+   *
+   * @return the number of deleted release messages
+   */
+  @Transactional
+  public int deleteSupersededReleaseMessages(long fromId, long toId) {
+    List<Long> ids = releaseMessageRepository.findSupersededIds(fromId, toId);
+    if (ids.isEmpty()) {
+      return 0;
+    }
+    return releaseMessageRepository.batchDelete(ids);
+  }
 }
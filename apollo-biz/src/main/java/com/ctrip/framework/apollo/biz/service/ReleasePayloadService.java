@@ -0,0 +1,156 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.biz.service;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.biz.entity.ReleasePayload;
+import com.ctrip.framework.apollo.biz.repository.ReleasePayloadRepository;
+import com.ctrip.framework.apollo.biz.utils.ReleaseConfigurationsCodec;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Content addressed storage of the release configurations.
+ * <p>
+ * When enabled, the configurations are stored once per sha256 hash in the ReleasePayload table and
+ * releases store the reference, so that rollback then republish, branch auto releases etc. don't
+ * copy the same configurations again. The decoded payloads are cached by hash, so the releases
+ * with the same content share the same configurations in memory as well.
+ */
+@Service
+public class ReleasePayloadService {
+
+  private final ReleasePayloadRepository releasePayloadRepository;
+  private final BizConfig bizConfig;
+  private final TransactionTemplate requiresNewTransactionTemplate;
+  //payload hash -> decoded configurations
+  private final Cache<String, String> payloadCache;
+
+  public ReleasePayloadService(
+      final ReleasePayloadRepository releasePayloadRepository,
+      final BizConfig bizConfig,
+      final PlatformTransactionManager transactionManager) {
+    this.releasePayloadRepository = releasePayloadRepository;
+    this.bizConfig = bizConfig;
+    this.requiresNewTransactionTemplate = new TransactionTemplate(transactionManager);
+    this.requiresNewTransactionTemplate.setPropagationBehavior(
+        TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    this.payloadCache = CacheBuilder.newBuilder()
+        .maximumSize(bizConfig.releasePayloadCacheSize()).build();
+  }
+
+  /**
+   * @return the configurations to store in the release, i.e. the payload reference if dedup is
+   * enabled, otherwise the configurations compressed if enabled
+   */
+  public String encode(String configurations) {
+    if (bizConfig.isReleasePayloadDedupEnabled()) {
+      return ReleaseConfigurationsCodec.toPayloadReference(store(configurations));
+    }
+    return compress(configurations);
+  }
+
+  /**
+   * Store the configurations if no payload has the same hash.
+   *
+   * @return the hash of the payload
+   */
+  public String store(String configurations) {
+    String hash = Hashing.sha256().hashString(configurations, StandardCharsets.UTF_8).toString();
+    if (payloadCache.getIfPresent(hash) == null
+        && releasePayloadRepository.findByHash(hash) == null) {
+      //in a separate transaction, so that the concurrent insertion doesn't fail the release
+      try {
+        requiresNewTransactionTemplate.executeWithoutResult(status -> releasePayloadRepository
+            .save(new ReleasePayload(hash, compress(configurations))));
+      } catch (DataIntegrityViolationException ex) {
+        //stored by others in the meantime
+      }
+    }
+    payloadCache.put(hash, configurations);
+    return hash;
+  }
+
+  public Release resolve(Release release) {
+    if (release != null) {
+      resolve(Collections.singletonList(release));
+    }
+    return release;
+  }
+
+  /**
+   * Resolve the configurations of the releases referencing payloads, the payloads not cached are
+   * loaded in one query.
+   */
+  public <T extends Collection<Release>> T resolve(T releases) {
+    Map<Release, String> references = Maps.newHashMap();
+    Set<String> missingHashes = Sets.newHashSet();
+    for (Release release : releases) {
+      String stored = release.getStoredConfigurations();
+      if (!ReleaseConfigurationsCodec.isPayloadReference(stored)) {
+        continue;
+      }
+      String hash = ReleaseConfigurationsCodec.toPayloadHash(stored);
+      String configurations = payloadCache.getIfPresent(hash);
+      if (configurations != null) {
+        release.resolveConfigurations(configurations);
+      } else {
+        references.put(release, hash);
+        missingHashes.add(hash);
+      }
+    }
+    if (missingHashes.isEmpty()) {
+      return releases;
+    }
+
+    for (ReleasePayload payload : releasePayloadRepository.findByHashIn(missingHashes)) {
+      payloadCache.put(payload.getHash(),
+          ReleaseConfigurationsCodec.decode(payload.getConfigurations()));
+    }
+    for (Map.Entry<Release, String> reference : references.entrySet()) {
+      String configurations = payloadCache.getIfPresent(reference.getValue());
+      if (configurations == null) {
+        throw new IllegalStateException(String.format("Payload %s of release %d not found",
+            reference.getValue(), reference.getKey().getId()));
+      }
+      reference.getKey().resolveConfigurations(configurations);
+    }
+    return releases;
+  }
+
+  private String compress(String configurations) {
+    if (!bizConfig.isReleaseConfigurationsCompressionEnabled()) {
+      return configurations;
+    }
+    return ReleaseConfigurationsCodec.encode(configurations,
+        bizConfig.releaseConfigurationsCompressionThreshold());
+  }
+}
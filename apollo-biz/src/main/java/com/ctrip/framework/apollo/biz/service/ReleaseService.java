@@ -78,6 +78,7 @@ public class ReleaseService {
   private final NamespaceBranchService namespaceBranchService;
   private final ReleaseHistoryService releaseHistoryService;
   private final ItemSetService itemSetService;
+  private final ReleasePayloadService releasePayloadService;
 
   public ReleaseService(
       final ReleaseRepository releaseRepository,
@@ -87,7 +88,8 @@ public class ReleaseService {
       final NamespaceService namespaceService,
       final NamespaceBranchService namespaceBranchService,
       final ReleaseHistoryService releaseHistoryService,
-      final ItemSetService itemSetService) {
+      final ItemSetService itemSetService,
+      final ReleasePayloadService releasePayloadService) {
     this.releaseRepository = releaseRepository;
     this.itemService = itemService;
     this.auditService = auditService;
@@ -96,15 +98,16 @@ public class ReleaseService {
     this.namespaceBranchService = namespaceBranchService;
     this.releaseHistoryService = releaseHistoryService;
     this.itemSetService = itemSetService;
+    this.releasePayloadService = releasePayloadService;
   }
 
   public Release findOne(long releaseId) {
-    return releaseRepository.findById(releaseId).orElse(null);
+    return releasePayloadService.resolve(releaseRepository.findById(releaseId).orElse(null));
   }
 
 
   public Release findActiveOne(long releaseId) {
-    return releaseRepository.findByIdAndIsAbandonedFalse(releaseId);
+    return releasePayloadService.resolve(releaseRepository.findByIdAndIsAbandonedFalse(releaseId));
   }
 
   public List<Release> findByReleaseIds(Set<Long> releaseIds) {
@@ -112,11 +115,11 @@ public class ReleaseService {
     if (releases == null) {
       return Collections.emptyList();
     }
-    return Lists.newArrayList(releases);
+    return releasePayloadService.resolve(Lists.newArrayList(releases));
   }
 
   public List<Release> findByReleaseKeys(Set<String> releaseKeys) {
-    return releaseRepository.findByReleaseKeyIn(releaseKeys);
+    return releasePayloadService.resolve(releaseRepository.findByReleaseKeyIn(releaseKeys));
   }
 
   public Release findLatestActiveRelease(Namespace namespace) {
@@ -126,9 +129,23 @@ public class ReleaseService {
   }
 
   public Release findLatestActiveRelease(String appId, String clusterName, String namespaceName) {
-    return releaseRepository.findFirstByAppIdAndClusterNameAndNamespaceNameAndIsAbandonedFalseOrderByIdDesc(appId,
-                                                                                                            clusterName,
-                                                                                                            namespaceName);
+    return releasePayloadService.resolve(
+        releaseRepository.findFirstByAppIdAndClusterNameAndNamespaceNameAndIsAbandonedFalseOrderByIdDesc(appId,
+                                                                                                         clusterName,
+                                                                                                         namespaceName));
+  }
+
+  /**
+   * Find the latest active releases of the namespaces with one query, namespaces never released
+   * are absent from the result
+   */
+  public List<Release> findLatestActiveReleases(String appId, String clusterName,
+      Collection<String> namespaceNames) {
+    if (namespaceNames.isEmpty()) {
+      return Collections.emptyList();
+    }
+    return releasePayloadService.resolve(
+        releaseRepository.findLatestActiveReleases(appId, clusterName, namespaceNames));
   }
 
   public List<Release> findAllReleases(String appId, String clusterName, String namespaceName, Pageable page) {
@@ -139,7 +156,7 @@ public class ReleaseService {
     if (releases == null) {
       return Collections.emptyList();
     }
-    return releases;
+    return releasePayloadService.resolve(releases);
   }
 
   public List<Release> findActiveReleases(String appId, String clusterName, String namespaceName, Pageable page) {
@@ -151,7 +168,7 @@ public class ReleaseService {
     if (releases == null) {
       return Collections.emptyList();
     }
-    return releases;
+    return releasePayloadService.resolve(releases);
   }
 
   private List<Release> findActiveReleasesBetween(String appId, String clusterName, String namespaceName,
@@ -166,7 +183,7 @@ public class ReleaseService {
     if (releases == null) {
       return Collections.emptyList();
     }
-    return releases;
+    return releasePayloadService.resolve(releases);
   }
 
   @Transactional
@@ -446,7 +463,9 @@ public class ReleaseService {
     release.setAppId(namespace.getAppId());
     release.setClusterName(namespace.getClusterName());
     release.setNamespaceName(namespace.getNamespaceName());
-    release.setConfigurations(GSON.toJson(configurations));
+    String json = GSON.toJson(configurations);
+    release.setConfigurations(releasePayloadService.encode(json));
+    release.resolveConfigurations(json);
     release = releaseRepository.save(release);
 
     namespaceLockService.unlock(namespace.getId());
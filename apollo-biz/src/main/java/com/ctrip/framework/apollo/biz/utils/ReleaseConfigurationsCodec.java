@@ -0,0 +1,108 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.biz.utils;
+
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Storage format of the release configurations.
+ * <p>
+ * The configurations are stored either as the plain json, or gzip compressed and base64 encoded
+ * with the {@link #GZIP_MARKER} prefix. The json always starts with '{', so both formats can be
+ * mixed in the same table and are told apart by the prefix when decoding.
+ * <p>
+ * A release may also store a reference to a shared payload instead, i.e. the
+ * {@link #PAYLOAD_REFERENCE_MARKER} prefix followed by the hash of the payload, which has to be
+ * resolved with the ReleasePayload table.
+ */
+public class ReleaseConfigurationsCodec {
+
+  public static final String GZIP_MARKER = "gzip:";
+  public static final String PAYLOAD_REFERENCE_MARKER = "sha256:";
+
+  /**
+   * Compress the configurations if they are not shorter than the threshold and the compressed ones
+   * are shorter, otherwise keep them as they are.
+   */
+  public static String encode(String configurations, int compressionThreshold) {
+    if (configurations == null || configurations.length() < compressionThreshold
+        || isCompressed(configurations) || isPayloadReference(configurations)) {
+      return configurations;
+    }
+    String compressed = GZIP_MARKER + Base64.getEncoder().encodeToString(
+        gzip(configurations.getBytes(StandardCharsets.UTF_8)));
+    return compressed.length() < configurations.length() ? compressed : configurations;
+  }
+
+  public static String decode(String storedConfigurations) {
+    if (isPayloadReference(storedConfigurations)) {
+      throw new IllegalStateException(
+          "Release payload is not resolved: " + storedConfigurations);
+    }
+    if (!isCompressed(storedConfigurations)) {
+      return storedConfigurations;
+    }
+    byte[] compressed = Base64.getDecoder().decode(
+        storedConfigurations.substring(GZIP_MARKER.length()));
+    return new String(gunzip(compressed), StandardCharsets.UTF_8);
+  }
+
+  public static boolean isCompressed(String storedConfigurations) {
+    return storedConfigurations != null && storedConfigurations.startsWith(GZIP_MARKER);
+  }
+
+  public static boolean isPayloadReference(String storedConfigurations) {
+    return storedConfigurations != null
+        && storedConfigurations.startsWith(PAYLOAD_REFERENCE_MARKER);
+  }
+
+  public static String toPayloadReference(String payloadHash) {
+    return PAYLOAD_REFERENCE_MARKER + payloadHash;
+  }
+
+  public static String toPayloadHash(String payloadReference) {
+    return payloadReference.substring(PAYLOAD_REFERENCE_MARKER.length());
+  }
+
+  private static byte[] gzip(byte[] bytes) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+    try (OutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(bytes);
+    } catch (IOException ex) {
+      //not expected for in-memory streams
+      throw new IllegalStateException("Compress release configurations failed", ex);
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] gunzip(byte[] bytes) {
+    try (InputStream gzip = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+      return ByteStreams.toByteArray(gzip);
+    } catch (IOException ex) {
+      throw new IllegalStateException("Decompress release configurations failed", ex);
+    }
+  }
+}
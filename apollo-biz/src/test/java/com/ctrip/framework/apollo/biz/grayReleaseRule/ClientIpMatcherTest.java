@@ -0,0 +1,118 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.biz.grayReleaseRule;
+
+import com.ctrip.framework.apollo.common.dto.GrayReleaseRuleItemDTO;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClientIpMatcherTest {
+
+  @Test
+  public void testExactIps() {
+    ClientIpMatcher matcher = new ClientIpMatcher(Sets.newHashSet("1.1.1.1", "2001:db8::1",
+        "some-host"));
+
+    assertTrue(matcher.matches("1.1.1.1"));
+    assertTrue(matcher.matches("2001:db8::1"));
+    assertTrue(matcher.matches("2001:db8:0:0::1"));
+    assertTrue(matcher.matches("some-host"));
+    assertFalse(matcher.matches("1.1.1.2"));
+    assertFalse(matcher.matches("1.1.1"));
+    assertFalse(matcher.matches("01.1.1.1"));
+    assertFalse(matcher.matches("2001:db8::2"));
+    assertFalse(matcher.matches("another-host"));
+    assertFalse(matcher.matches(null));
+  }
+
+  @Test
+  public void testAllIps() {
+    ClientIpMatcher matcher = new ClientIpMatcher(Sets.newHashSet(GrayReleaseRuleItemDTO.ALL_IP));
+
+    assertTrue(matcher.matches("1.1.1.1"));
+    assertTrue(matcher.matches("2001:db8::1"));
+  }
+
+  @Test
+  public void testCidr() {
+    ClientIpMatcher matcher = new ClientIpMatcher(Sets.newHashSet("10.1.0.0/16", "192.168.1.1/32",
+        "2001:db8::/32"));
+
+    assertTrue(matcher.matches("10.1.0.0"));
+    assertTrue(matcher.matches("10.1.255.255"));
+    assertTrue(matcher.matches("192.168.1.1"));
+    assertTrue(matcher.matches("2001:db8:ffff::1"));
+    assertFalse(matcher.matches("10.2.0.0"));
+    assertFalse(matcher.matches("10.0.255.255"));
+    assertFalse(matcher.matches("192.168.1.2"));
+    assertFalse(matcher.matches("2001:db9::1"));
+  }
+
+  @Test
+  public void testCoveredCidrs() {
+    ClientIpMatcher matcher = new ClientIpMatcher(Sets.newLinkedHashSet(Lists.newArrayList(
+        "10.1.1.1", "10.1.2.0/24", "10.1.0.0/16", "10.1.3.3")));
+
+    assertTrue(matcher.matches("10.1.1.1"));
+    assertTrue(matcher.matches("10.1.200.1"));
+    assertFalse(matcher.matches("10.2.1.1"));
+  }
+
+  @Test
+  public void testRanges() {
+    ClientIpMatcher matcher = new ClientIpMatcher(Sets.newHashSet("10.1.1.5-10.1.2.10",
+        "2001:db8::ff-2001:db8::1:0"));
+
+    assertTrue(matcher.matches("10.1.1.5"));
+    assertTrue(matcher.matches("10.1.1.255"));
+    assertTrue(matcher.matches("10.1.2.10"));
+    assertTrue(matcher.matches("2001:db8::ff"));
+    assertTrue(matcher.matches("2001:db8::1:0"));
+    assertFalse(matcher.matches("10.1.1.4"));
+    assertFalse(matcher.matches("10.1.2.11"));
+    assertFalse(matcher.matches("2001:db8::fe"));
+    assertFalse(matcher.matches("2001:db8::1:1"));
+  }
+
+  @Test
+  public void testInvalidEntriesAreMatchedAsStrings() {
+    ClientIpMatcher matcher = new ClientIpMatcher(Sets.newHashSet("10.1.0.0/33",
+        "10.1.1.9-10.1.1.1", "host-a"));
+
+    assertTrue(matcher.matches("10.1.0.0/33"));
+    assertTrue(matcher.matches("10.1.1.9-10.1.1.1"));
+    assertTrue(matcher.matches("host-a"));
+    assertFalse(matcher.matches("10.1.0.0"));
+    assertFalse(matcher.matches("10.1.1.5"));
+  }
+
+  @Test
+  public void testLargeSubnetRange() {
+    ClientIpMatcher matcher = new ClientIpMatcher(Sets.newHashSet("0.0.0.1-255.255.255.254"));
+
+    assertTrue(matcher.matches("0.0.0.1"));
+    assertTrue(matcher.matches("128.0.0.0"));
+    assertTrue(matcher.matches("255.255.255.254"));
+    assertFalse(matcher.matches("0.0.0.0"));
+    assertFalse(matcher.matches("255.255.255.255"));
+  }
+}
@@ -35,9 +35,12 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.Assert.assertEquals;
@@ -45,6 +48,8 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -89,6 +94,7 @@ public class GrayReleaseRulesHolderTest {
             (someClientIp), Sets.newHashSet(someClientLabel))), someReleaseId, activeBranchStatus);
 
     when(bizConfig.grayReleaseRuleScanInterval()).thenReturn(30);
+    when(bizConfig.grayReleaseRuleRebuildInterval()).thenReturn(3600);
     when(grayReleaseRuleRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(Lists
         .newArrayList(someRule));
 
@@ -157,6 +163,105 @@ public class GrayReleaseRulesHolderTest {
         anotherNamespaceName));
   }
 
+  @Test
+  public void testInactiveBranchRuleIsRemovedFromLookups() throws Exception {
+    String someAppId = "someAppId";
+    String someClusterName = "someClusterName";
+    String someNamespaceName = "someNamespaceName";
+    String someClientAppId = "clientAppId1";
+    String someClientIp = "1.1.1.1";
+    String someClientLabel = "myLabel";
+    Long someReleaseId = 1L;
+
+    GrayReleaseRule someRule = assembleGrayReleaseRule(someAppId, someClusterName,
+        someNamespaceName, Lists.newArrayList(assembleRuleItem(someClientAppId, Sets.newHashSet
+            (GrayReleaseRuleItemDTO.ALL_IP), Sets.newHashSet())), someReleaseId,
+        NamespaceBranchStatus.ACTIVE);
+
+    when(bizConfig.grayReleaseRuleScanInterval()).thenReturn(30);
+    when(bizConfig.grayReleaseRuleRebuildInterval()).thenReturn(3600);
+    when(grayReleaseRuleRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(Lists
+        .newArrayList(someRule));
+
+    grayReleaseRulesHolder.afterPropertiesSet();
+
+    assertEquals(someReleaseId, grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule
+        (someClientAppId, someClientIp, someClientLabel, someAppId, someClusterName, someNamespaceName));
+    assertTrue(grayReleaseRulesHolder.hasGrayReleaseRule(someClientAppId, someClientIp,
+        someNamespaceName));
+
+    GrayReleaseRule deletedRule = assembleGrayReleaseRule(someAppId, someClusterName,
+        someNamespaceName, Lists.newArrayList(assembleRuleItem(someClientAppId, Sets.newHashSet
+            (GrayReleaseRuleItemDTO.ALL_IP), Sets.newHashSet())), someReleaseId,
+        NamespaceBranchStatus.DELETED);
+
+    when(grayReleaseRuleRepository.findByAppIdAndClusterNameAndNamespaceName(someAppId,
+        someClusterName, someNamespaceName)).thenReturn(Lists.newArrayList(deletedRule));
+
+    grayReleaseRulesHolder.handleMessage(assembleReleaseMessage(someAppId, someClusterName,
+        someNamespaceName), Topics.APOLLO_RELEASE_TOPIC);
+
+    assertNull(grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule
+        (someClientAppId, someClientIp, someClientLabel, someAppId, someClusterName, someNamespaceName));
+    assertFalse(grayReleaseRulesHolder.hasGrayReleaseRule(someClientAppId, someClientIp,
+        someNamespaceName));
+  }
+
+  @Test
+  public void testScanModifiedGrayReleaseRules() throws Exception {
+    String someAppId = "someAppId";
+    String someClusterName = "someClusterName";
+    String someNamespaceName = "someNamespaceName";
+    String someClientAppId = "clientAppId1";
+    String someClientIp = "1.1.1.1";
+    String anotherClientIp = "2.2.2.2";
+    String someClientLabel = "myLabel";
+    Long someReleaseId = 1L;
+    Long anotherReleaseId = 2L;
+    Date someModifiedTime = new Date(System.currentTimeMillis() - 10000);
+    Date anotherModifiedTime = new Date();
+
+    GrayReleaseRule someRule = assembleGrayReleaseRule(someAppId, someClusterName,
+        someNamespaceName, Lists.newArrayList(assembleRuleItem(someClientAppId, Sets.newHashSet
+            (someClientIp), Sets.newHashSet())), someReleaseId, NamespaceBranchStatus.ACTIVE);
+    someRule.setDataChangeLastModifiedTime(someModifiedTime);
+
+    when(bizConfig.grayReleaseRuleScanInterval()).thenReturn(30);
+    when(bizConfig.grayReleaseRuleRebuildInterval()).thenReturn(3600);
+    when(grayReleaseRuleRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(Lists
+        .newArrayList(someRule));
+
+    grayReleaseRulesHolder.afterPropertiesSet();
+
+    GrayReleaseRule anotherRule = assembleGrayReleaseRule(someAppId, someClusterName,
+        someNamespaceName, Lists.newArrayList(assembleRuleItem(someClientAppId, Sets.newHashSet
+            (anotherClientIp), Sets.newHashSet())), anotherReleaseId, NamespaceBranchStatus.ACTIVE);
+    anotherRule.setDataChangeLastModifiedTime(anotherModifiedTime);
+
+    Date expectedScanFrom = new Date(someModifiedTime.getTime() - TimeUnit.MINUTES.toMillis(1));
+    when(grayReleaseRuleRepository
+        .findFirst500ByDataChangeLastModifiedTimeGreaterThanOrderByDataChangeLastModifiedTimeAsc(
+            expectedScanFrom)).thenReturn(Lists.newArrayList(someRule, anotherRule));
+
+    ReflectionTestUtils.invokeMethod(grayReleaseRulesHolder, "scanModifiedGrayReleaseRules");
+
+    assertNull(grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(someClientAppId,
+        someClientIp, someClientLabel, someAppId, someClusterName, someNamespaceName));
+    assertEquals(anotherReleaseId, grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(
+        someClientAppId, anotherClientIp, someClientLabel, someAppId, someClusterName,
+        someNamespaceName));
+    verify(grayReleaseRuleRepository, times(1)).findFirst500ByIdGreaterThanOrderByIdAsc(0L);
+
+    //the next scan starts from the latest modified time scanned
+    Date expectedNextScanFrom = new Date(anotherModifiedTime.getTime()
+        - TimeUnit.MINUTES.toMillis(1));
+    ReflectionTestUtils.invokeMethod(grayReleaseRulesHolder, "scanModifiedGrayReleaseRules");
+
+    verify(grayReleaseRuleRepository, times(1))
+        .findFirst500ByDataChangeLastModifiedTimeGreaterThanOrderByDataChangeLastModifiedTimeAsc(
+            expectedNextScanFrom);
+  }
+
   private GrayReleaseRule assembleGrayReleaseRule(String appId, String clusterName, String
       namespaceName, List<GrayReleaseRuleItemDTO> ruleItems, long releaseId, int branchStatus) {
     GrayReleaseRule rule = new GrayReleaseRule();
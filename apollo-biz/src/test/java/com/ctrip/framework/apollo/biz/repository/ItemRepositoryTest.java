@@ -0,0 +1,81 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.biz.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ctrip.framework.apollo.biz.AbstractIntegrationTest;
+import com.ctrip.framework.apollo.biz.entity.Item;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.jdbc.Sql.ExecutionPhase;
+
+public class ItemRepositoryTest extends AbstractIntegrationTest {
+
+  @Autowired
+  private ItemRepository itemRepository;
+
+  @Test
+  @Sql(scripts = "/sql/clean.sql", executionPhase = ExecutionPhase.AFTER_TEST_METHOD)
+  public void testFindChangedItems() {
+    Date someTime = new Date(System.currentTimeMillis() - 60000);
+    Date anotherTime = new Date(someTime.getTime() + 1000);
+    Item someItem = save("someKey", someTime);
+    Item anotherItem = save("anotherKey", anotherTime);
+    Item deletedItem = save("deletedKey", anotherTime);
+    deletedItem.setDeleted(true);
+    deletedItem = itemRepository.save(deletedItem);
+
+    //the deleted items are found as well
+    List<Item> changedItems = itemRepository.findFirst500ChangedItems(
+        new Date(someTime.getTime() - 1000));
+    assertThat(changedItems).extracting(Item::getId)
+        .containsExactly(someItem.getId(), anotherItem.getId(), deletedItem.getId());
+    assertThat(changedItems.get(2).isDeleted()).isTrue();
+
+    assertThat(itemRepository.findFirst500ChangedItems(someTime)).extracting(Item::getId)
+        .containsExactly(anotherItem.getId(), deletedItem.getId());
+    assertThat(itemRepository.findChangedItems(anotherTime)).extracting(Item::getId)
+        .containsExactly(anotherItem.getId());
+  }
+
+  @Test
+  @Sql(scripts = "/sql/clean.sql", executionPhase = ExecutionPhase.AFTER_TEST_METHOD)
+  public void testFindFirst500ByIdGreaterThan() {
+    Item someItem = save("someKey", new Date());
+    Item anotherItem = save("anotherKey", new Date());
+
+    List<Long> ids = itemRepository.findFirst500ByIdGreaterThanOrderByIdAsc(someItem.getId())
+        .stream().map(Item::getId).collect(Collectors.toList());
+
+    assertThat(ids).containsExactly(anotherItem.getId());
+  }
+
+  private Item save(String key, Date lastModifiedTime) {
+    Item item = new Item();
+    item.setNamespaceId(1);
+    item.setKey(key);
+    item.setValue("someValue");
+    item.setDataChangeCreatedBy("someUser");
+    item.setDataChangeLastModifiedTime(lastModifiedTime);
+    return itemRepository.save(item);
+  }
+}
@@ -16,6 +16,7 @@
  */
 package com.ctrip.framework.apollo.biz.repository;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -59,20 +60,31 @@ public class ReleaseHistoryRepositoryTest extends AbstractIntegrationTest {
   @Test
   @Sql(scripts = "/sql/release-history-test.sql", executionPhase = ExecutionPhase.BEFORE_TEST_METHOD)
   @Sql(scripts = "/sql/clean.sql", executionPhase = ExecutionPhase.AFTER_TEST_METHOD)
-  public void testFindFirst100ByAppIdAndClusterNameAndNamespaceNameAndBranchNameAndIdLessThanEqualOrderByIdAsc() {
+  public void testFindFirst500ByAppIdAndClusterNameAndNamespaceNameAndBranchNameAndIdLessThanEqualOrderByIdAsc() {
 
     int releaseHistoryRetentionSize = 2;
     Page<ReleaseHistory> releaseHistoryPage = releaseHistoryRepository.findByAppIdAndClusterNameAndNamespaceNameAndBranchNameOrderByIdDesc(APP_ID, CLUSTER_NAME, NAMESPACE_NAME, BRANCH_NAME, PageRequest.of(releaseHistoryRetentionSize, 1));
     long releaseMaxId = releaseHistoryPage.getContent().get(0).getId();
-    List<ReleaseHistory> releaseHistories = releaseHistoryRepository.findFirst100ByAppIdAndClusterNameAndNamespaceNameAndBranchNameAndIdLessThanEqualOrderByIdAsc(
+    List<ReleaseHistory> releaseHistories = releaseHistoryRepository.findFirst500ByAppIdAndClusterNameAndNamespaceNameAndBranchNameAndIdLessThanEqualOrderByIdAsc(
         APP_ID, CLUSTER_NAME, NAMESPACE_NAME, BRANCH_NAME, releaseMaxId);
     assertEquals(4, releaseHistories.size());
 
     releaseHistoryRetentionSize = 1;
     releaseHistoryPage = releaseHistoryRepository.findByAppIdAndClusterNameAndNamespaceNameAndBranchNameOrderByIdDesc(APP_ID, CLUSTER_NAME, NAMESPACE_NAME, BRANCH_NAME, PageRequest.of(releaseHistoryRetentionSize, 1));
     releaseMaxId = releaseHistoryPage.getContent().get(0).getId();
-    releaseHistories = releaseHistoryRepository.findFirst100ByAppIdAndClusterNameAndNamespaceNameAndBranchNameAndIdLessThanEqualOrderByIdAsc(
+    releaseHistories = releaseHistoryRepository.findFirst500ByAppIdAndClusterNameAndNamespaceNameAndBranchNameAndIdLessThanEqualOrderByIdAsc(
         APP_ID, CLUSTER_NAME, NAMESPACE_NAME, BRANCH_NAME, releaseMaxId);
     assertEquals(5, releaseHistories.size());
   }
+
+  @Test
+  @Sql(scripts = "/sql/release-history-test.sql", executionPhase = ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/sql/clean.sql", executionPhase = ExecutionPhase.AFTER_TEST_METHOD)
+  public void testCountReleaseHistoriesGroupByNamespaceHavingMoreThan() {
+    List<Object[]> namespaces = releaseHistoryRepository.countReleaseHistoriesGroupByNamespaceHavingMoreThan(5);
+    assertEquals(1, namespaces.size());
+    assertArrayEquals(new Object[]{APP_ID, CLUSTER_NAME, NAMESPACE_NAME, BRANCH_NAME, 6L}, namespaces.get(0));
+
+    assertTrue(releaseHistoryRepository.countReleaseHistoriesGroupByNamespaceHavingMoreThan(6).isEmpty());
+  }
 }
@@ -31,6 +31,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.test.annotation.Rollback;
 
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
@@ -91,6 +92,29 @@ public class InstanceServiceTest extends AbstractIntegrationTest {
     assertEquals(Sets.newHashSet(someIp, anotherIp), ips);
   }
 
+  @Test
+  @Rollback
+  public void testCreateAndFindInstancesByAppIdsAndIps() throws Exception {
+    String someAppId = "someAppId";
+    String anotherAppId = "anotherAppId";
+    String someClusterName = "someClusterName";
+    String someDataCenter = "someDataCenter";
+    String someIp = "someIp";
+    String anotherIp = "anotherIp";
+
+    List<Instance> created = instanceService.createInstances(Lists.newArrayList(
+        assembleInstance(someAppId, someClusterName, someDataCenter, someIp),
+        assembleInstance(someAppId, someClusterName, someDataCenter, anotherIp),
+        assembleInstance(anotherAppId, someClusterName, someDataCenter, someIp)));
+
+    List<Instance> instances = instanceService.findInstancesByAppIdsAndIps(
+        Sets.newHashSet(someAppId), Sets.newHashSet(someIp, anotherIp));
+
+    assertEquals(3, created.size());
+    assertEquals(Sets.newHashSet(created.get(0).getId(), created.get(1).getId()),
+        instances.stream().map(Instance::getId).collect(Collectors.toSet()));
+  }
+
   @Test
   @Rollback
   public void testCreateAndFindInstanceConfig() throws Exception {
@@ -253,6 +277,166 @@ public class InstanceServiceTest extends AbstractIntegrationTest {
     assertEquals(Lists.newArrayList(someInstanceConfig, anotherInstanceConfig), instanceConfigs);
   }
 
+  @Test
+  @Rollback
+  public void testFindInstanceConfigsAfterId() throws Exception {
+    String someConfigAppId = "someConfigAppId";
+    String someConfigClusterName = "someConfigClusterName";
+    String someConfigNamespaceName = "someConfigNamespaceName";
+    String someReleaseKey = "someReleaseKey";
+    String anotherReleaseKey = "anotherReleaseKey";
+    Date someValidDate = new Date();
+    String someAppId = "someAppId";
+    String anotherAppId = "anotherAppId";
+
+    List<InstanceConfig> someAppInstanceConfigs = Lists.newArrayList();
+    for (int i = 0; i < 3; i++) {
+      Instance instance = instanceService.createInstance(assembleInstance(someAppId,
+          "someClusterName", "someDataCenter", "someIp" + i));
+      someAppInstanceConfigs.add(prepareInstanceConfigForInstance(instance.getId(),
+          someConfigAppId, someConfigClusterName, someConfigNamespaceName, someReleaseKey,
+          someValidDate));
+    }
+    Instance anotherInstance = instanceService.createInstance(assembleInstance(anotherAppId,
+        "someClusterName", "someDataCenter", "someIp"));
+    InstanceConfig anotherAppInstanceConfig = prepareInstanceConfigForInstance(
+        anotherInstance.getId(), someConfigAppId, someConfigClusterName, someConfigNamespaceName,
+        anotherReleaseKey, someValidDate);
+
+    List<InstanceConfig> firstPage = instanceService.findActiveInstanceConfigsByNamespace(
+        someConfigAppId, someConfigClusterName, someConfigNamespaceName, 0, 2);
+    List<InstanceConfig> secondPage = instanceService.findActiveInstanceConfigsByNamespace(
+        someConfigAppId, someConfigClusterName, someConfigNamespaceName,
+        firstPage.get(1).getId(), 2);
+
+    assertEquals(someAppInstanceConfigs.subList(0, 2), firstPage);
+    assertEquals(Lists.newArrayList(someAppInstanceConfigs.get(2), anotherAppInstanceConfig),
+        secondPage);
+
+    assertEquals(someAppInstanceConfigs.subList(1, 3), instanceService
+        .findActiveInstanceConfigsByReleaseKey(someReleaseKey,
+            someAppInstanceConfigs.get(0).getId(), 10));
+    assertEquals(someAppInstanceConfigs.subList(1, 3), instanceService
+        .findActiveInstanceConfigsByNamespaceAndInstanceAppId(someAppId, someConfigAppId,
+            someConfigClusterName, someConfigNamespaceName, someAppInstanceConfigs.get(0).getId(),
+            10));
+    assertEquals(Lists.newArrayList(anotherAppInstanceConfig), instanceService
+        .findActiveInstanceConfigsByNamespaceAndInstanceAppId(anotherAppId, someConfigAppId,
+            someConfigClusterName, someConfigNamespaceName, 0, 10));
+    assertEquals(Lists.newArrayList(anotherAppInstanceConfig), instanceService
+        .findInstanceConfigsByNamespaceWithReleaseKeysNotIn(someConfigAppId,
+            someConfigClusterName, someConfigNamespaceName, Sets.newHashSet(someReleaseKey), 0,
+            10));
+    assertEquals(0, instanceService.findInstanceConfigsByNamespaceWithReleaseKeysNotIn(
+        someConfigAppId, someConfigClusterName, someConfigNamespaceName,
+        Sets.newHashSet(someReleaseKey), anotherAppInstanceConfig.getId(), 10).size());
+  }
+
+  @Test
+  @Rollback
+  public void testCreateAndUpdateInstanceConfigsInBatch() throws Exception {
+    long someInstanceId = 1;
+    long anotherInstanceId = 2;
+    String someConfigAppId = "someConfigAppId";
+    String someConfigClusterName = "someConfigClusterName";
+    String someConfigNamespaceName = "someConfigNamespaceName";
+    String anotherConfigNamespaceName = "anotherConfigNamespaceName";
+    String someReleaseKey = "someReleaseKey";
+    String anotherReleaseKey = "anotherReleaseKey";
+
+    instanceService.createInstanceConfigs(Lists.newArrayList(
+        assembleInstanceConfig(someInstanceId, someConfigAppId, someConfigClusterName,
+            someConfigNamespaceName, someReleaseKey),
+        assembleInstanceConfig(someInstanceId, someConfigAppId, someConfigClusterName,
+            anotherConfigNamespaceName, someReleaseKey),
+        assembleInstanceConfig(anotherInstanceId, someConfigAppId, someConfigClusterName,
+            someConfigNamespaceName, someReleaseKey)));
+
+    List<InstanceConfig> instanceConfigs = instanceService
+        .findInstanceConfigsByInstanceIds(Sets.newHashSet(someInstanceId));
+
+    assertEquals(2, instanceConfigs.size());
+
+    InstanceConfig deletedInstanceConfig = assembleInstanceConfig(someInstanceId,
+        someConfigAppId, someConfigClusterName, someConfigNamespaceName, anotherReleaseKey);
+    deletedInstanceConfig.setId(-1);
+    List<InstanceConfig> toUpdate = Lists.newArrayList(deletedInstanceConfig);
+    for (InstanceConfig instanceConfig : instanceConfigs) {
+      instanceConfig.setReleaseKey(anotherReleaseKey);
+      toUpdate.add(instanceConfig);
+    }
+
+    List<InstanceConfig> updated = instanceService.updateInstanceConfigs(toUpdate);
+
+    assertEquals(2, updated.size());
+    assertEquals(anotherReleaseKey, instanceService.findInstanceConfig(someInstanceId,
+        someConfigAppId, someConfigNamespaceName).getReleaseKey());
+    assertEquals(anotherReleaseKey, instanceService.findInstanceConfig(someInstanceId,
+        someConfigAppId, anotherConfigNamespaceName).getReleaseKey());
+    assertEquals(someReleaseKey, instanceService.findInstanceConfig(anotherInstanceId,
+        someConfigAppId, someConfigNamespaceName).getReleaseKey());
+  }
+
+  @Test
+  @Rollback
+  public void testPurgeInstancesAndInstanceConfigsModifiedBefore() throws Exception {
+    String someConfigAppId = "someConfigAppId";
+    String someConfigClusterName = "someConfigClusterName";
+    String someConfigNamespaceName = "someConfigNamespaceName";
+    String anotherConfigNamespaceName = "anotherConfigNamespaceName";
+    String someReleaseKey = "someReleaseKey";
+    Date expireDate = new Date();
+    Date beforeExpireDate = new Date(expireDate.getTime() - 1000);
+
+    Instance expiredInstance = assembleInstance("someAppId", "someClusterName",
+        "someDataCenter", "someIp");
+    expiredInstance.setDataChangeCreatedTime(beforeExpireDate);
+    expiredInstance = instanceService.createInstance(expiredInstance);
+    Instance stillUsedInstance = assembleInstance("someAppId", "someClusterName",
+        "someDataCenter", "anotherIp");
+    stillUsedInstance.setDataChangeCreatedTime(beforeExpireDate);
+    stillUsedInstance = instanceService.createInstance(stillUsedInstance);
+    Instance newInstance = instanceService.createInstance(assembleInstance("someAppId",
+        "someClusterName", "someDataCenter", "yetAnotherIp"));
+
+    InstanceConfig expiredInstanceConfig = prepareInstanceConfigForInstance(
+        expiredInstance.getId(), someConfigAppId, someConfigClusterName, someConfigNamespaceName,
+        someReleaseKey, beforeExpireDate);
+    prepareInstanceConfigForInstance(stillUsedInstance.getId(), someConfigAppId,
+        someConfigClusterName, someConfigNamespaceName, someReleaseKey, beforeExpireDate);
+    InstanceConfig activeInstanceConfig = prepareInstanceConfigForInstance(
+        stillUsedInstance.getId(), someConfigAppId, someConfigClusterName,
+        anotherConfigNamespaceName, someReleaseKey, new Date(expireDate.getTime() + 1000));
+
+    List<InstanceConfig> expiredInstanceConfigs = instanceService
+        .findInstanceConfigsModifiedBefore(0, expireDate);
+
+    assertEquals(2, expiredInstanceConfigs.size());
+    assertEquals(expiredInstanceConfig.getId(), expiredInstanceConfigs.get(0).getId());
+    assertEquals(0, instanceService.findInstanceConfigsModifiedBefore(
+        expiredInstanceConfigs.get(1).getId(), expireDate).size());
+
+    assertEquals(2, instanceService.batchDeleteInstanceConfigsModifiedBefore(
+        expiredInstanceConfigs.stream().map(InstanceConfig::getId).collect(Collectors.toList()),
+        expireDate));
+
+    List<Instance> expiredInstances = instanceService.findInstancesModifiedBefore(0, expireDate);
+
+    assertEquals(2, expiredInstances.size());
+    assertEquals(1, instanceService.batchDeleteUnusedInstancesModifiedBefore(
+        expiredInstances.stream().map(Instance::getId).collect(Collectors.toList()), expireDate));
+    assertNull(instanceService.findInstance("someAppId", "someClusterName", "someDataCenter",
+        "someIp"));
+    assertEquals(stillUsedInstance.getId(), instanceService.findInstance("someAppId",
+        "someClusterName", "someDataCenter", "anotherIp").getId());
+    assertEquals(newInstance.getId(), instanceService.findInstance("someAppId",
+        "someClusterName", "someDataCenter", "yetAnotherIp").getId());
+    assertEquals(activeInstanceConfig.getId(), instanceService.findInstanceConfig(
+        stillUsedInstance.getId(), someConfigAppId, anotherConfigNamespaceName).getId());
+    assertEquals(0, instanceService.batchDeleteUnusedInstancesModifiedBefore(
+        Collections.emptyList(), expireDate));
+  }
+
   private InstanceConfig prepareInstanceConfigForInstance(long instanceId, String configAppId,
                                                           String configClusterName, String
                                                               configNamespace, String releaseKey,
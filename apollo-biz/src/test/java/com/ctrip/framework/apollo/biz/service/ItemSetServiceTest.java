@@ -20,15 +20,20 @@ import static org.mockito.Mockito.when;
 
 import com.ctrip.framework.apollo.biz.AbstractIntegrationTest;
 import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.Audit;
 import com.ctrip.framework.apollo.biz.entity.Item;
 import com.ctrip.framework.apollo.biz.entity.Namespace;
 import com.ctrip.framework.apollo.common.dto.ItemChangeSets;
 import com.ctrip.framework.apollo.common.dto.ItemDTO;
+import com.ctrip.framework.apollo.common.dto.NamespaceImportDTO;
+import com.ctrip.framework.apollo.common.dto.NamespaceImportResultDTO;
 import com.ctrip.framework.apollo.common.exception.BadRequestException;
+import com.google.common.collect.Lists;
 import org.junit.Assert;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.jdbc.Sql;
 
 public class ItemSetServiceTest extends AbstractIntegrationTest {
@@ -43,6 +48,10 @@ public class ItemSetServiceTest extends AbstractIntegrationTest {
 
   @Autowired
   private ItemSetService itemSetService;
+  @Autowired
+  private CommitService commitService;
+  @Autowired
+  private AuditService auditService;
 
   @Test
   @Sql(scripts = "/sql/itemset-test.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
@@ -137,6 +146,129 @@ public class ItemSetServiceTest extends AbstractIntegrationTest {
   }
 
 
+  @Test
+  @Sql(scripts = "/sql/itemset-test.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/sql/clean.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+  public void testUpdateSetInBatches() {
+
+    when(bizConfig.itemKeyLengthLimit()).thenReturn(128);
+    when(bizConfig.itemValueLengthLimit()).thenReturn(20000);
+
+    Namespace namespace = namespaceService.findOne(1L);
+    Item item9901 = itemService.findOne(9901);
+    Item item9902 = itemService.findOne(9902);
+
+    ItemChangeSets changeSets = new ItemChangeSets();
+    changeSets.setDataChangeLastModifiedBy("someOperator");
+    changeSets.addUpdateItem(buildNormalItem(item9901.getId(), item9901.getNamespaceId(), item9901.getKey(), "v1 update", item9901.getComment(), item9901.getLineNum()));
+    changeSets.addDeleteItem(buildNormalItem(item9902.getId(), item9902.getNamespaceId(), item9902.getKey(), item9902.getValue(), item9902.getComment(), item9902.getLineNum()));
+    changeSets.addCreateItem(buildNormalItem(0L, namespace.getId(), "k6", "v6", "", 0));
+    changeSets.addCreateItem(buildNormalItem(0L, namespace.getId(), "k7", "v7", "", 0));
+
+    itemSetService.updateSet(namespace, changeSets);
+
+    //the items written by jdbc batches are visible in the same transaction
+    Assert.assertEquals("v1 update", itemService.findOne(9901).getValue());
+    Assert.assertNull(itemService.findOne(9902));
+    Item item6 = itemService.findOne("testApp", "default", "application", "k6");
+    Item item7 = itemService.findOne("testApp", "default", "application", "k7");
+    Assert.assertEquals("v6", item6.getValue());
+    Assert.assertEquals(6, item6.getLineNum().intValue());
+    Assert.assertEquals(7, item7.getLineNum().intValue());
+    Assert.assertEquals("someOperator", item7.getDataChangeCreatedBy());
+
+    Assert.assertEquals(1, commitService.find("testApp", "default", "application",
+        PageRequest.of(0, 10)).size());
+    Assert.assertEquals(2, auditService.find("someOperator", Item.class.getSimpleName(),
+        Audit.OP.INSERT.name()).size());
+    Assert.assertEquals(1, auditService.find("someOperator", Item.class.getSimpleName(),
+        Audit.OP.UPDATE.name()).size());
+    Assert.assertEquals(1, auditService.find("someOperator", Item.class.getSimpleName(),
+        Audit.OP.DELETE.name()).size());
+  }
+
+  @Test(expected = BadRequestException.class)
+  @Sql(scripts = "/sql/itemset-test.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/sql/clean.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+  public void testUpdateSetWithItemOfAnotherNamespace() {
+    Namespace namespace = namespaceService.findOne(1L);
+
+    ItemChangeSets changeSets = new ItemChangeSets();
+    changeSets.addDeleteItem(buildNormalItem(9901L, namespace.getId(), "k1", "v1", "", 1));
+    changeSets.addCreateItem(buildNormalItem(0L, namespace.getId() + 1, "k6", "v6", "", 6));
+
+    itemSetService.updateSet(namespace, changeSets);
+  }
+
+  @Test
+  @Sql(scripts = "/sql/itemset-test.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/sql/clean.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+  public void testImportNamespace() {
+    when(bizConfig.itemKeyLengthLimit()).thenReturn(128);
+    when(bizConfig.itemValueLengthLimit()).thenReturn(20000);
+
+    NamespaceImportDTO namespaceImport = new NamespaceImportDTO();
+    namespaceImport.setDataChangeLastModifiedBy("someOperator");
+    namespaceImport.setItems(Lists.newArrayList(
+        new ItemDTO("k1", "v1", "", 1),
+        new ItemDTO("k2", "v2 update", "", 2),
+        new ItemDTO("k6", "v6", "", 6),
+        new ItemDTO("k6", "v6 update", "", 7)));
+
+    NamespaceImportResultDTO result = itemSetService.importNamespace("testApp", "default",
+        "application", namespaceImport);
+
+    Assert.assertFalse(result.isNamespaceCreated());
+    Assert.assertFalse(result.isSkipped());
+    Assert.assertEquals(1, result.getCreatedItems());
+    Assert.assertEquals(1, result.getUpdatedItems());
+    Assert.assertEquals("v2 update", itemService.findOne(9902).getValue());
+    Assert.assertEquals("v6 update",
+        itemService.findOne("testApp", "default", "application", "k6").getValue());
+    //the existing items not imported are kept
+    Assert.assertEquals(6, itemService.findNonEmptyItemCount(1L));
+    Assert.assertEquals(1, commitService.find("testApp", "default", "application",
+        PageRequest.of(0, 10)).size());
+  }
+
+  @Test
+  @Sql(scripts = "/sql/clean.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+  public void testImportNewNamespace() {
+    when(bizConfig.itemKeyLengthLimit()).thenReturn(128);
+    when(bizConfig.itemValueLengthLimit()).thenReturn(20000);
+
+    NamespaceImportDTO namespaceImport = new NamespaceImportDTO();
+    namespaceImport.setDataChangeLastModifiedBy("someOperator");
+    namespaceImport.setItems(Lists.newArrayList(new ItemDTO("", "", "#some comment", 1),
+        new ItemDTO("k1", "v1", "", 2)));
+
+    NamespaceImportResultDTO result = itemSetService.importNamespace("someApp", "default",
+        "someNamespace", namespaceImport);
+
+    Namespace namespace = namespaceService.findOne("someApp", "default", "someNamespace");
+    Assert.assertTrue(result.isNamespaceCreated());
+    Assert.assertEquals(namespace.getId(), result.getNamespace().getId());
+    Assert.assertEquals("someOperator", namespace.getDataChangeCreatedBy());
+    Assert.assertEquals(2, result.getCreatedItems());
+    Assert.assertEquals(2, itemService.findItemsWithoutOrdered(namespace.getId()).size());
+  }
+
+  @Test
+  @Sql(scripts = "/sql/itemset-test.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/sql/clean.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+  public void testImportConflictNamespaceIgnored() {
+    NamespaceImportDTO namespaceImport = new NamespaceImportDTO();
+    namespaceImport.setDataChangeLastModifiedBy("someOperator");
+    namespaceImport.setIgnoreConflictNamespace(true);
+    namespaceImport.setItems(Lists.newArrayList(new ItemDTO("k1", "v1 update", "", 1)));
+
+    NamespaceImportResultDTO result = itemSetService.importNamespace("testApp", "default",
+        "application", namespaceImport);
+
+    Assert.assertTrue(result.isSkipped());
+    Assert.assertEquals("v1", itemService.findOne(9901).getValue());
+  }
+
   private ItemDTO buildNormalItem(Long id, Long namespaceId, String key, String value, String comment, int lineNum) {
     ItemDTO item = new ItemDTO(key, value, comment, lineNum);
     item.setId(id);
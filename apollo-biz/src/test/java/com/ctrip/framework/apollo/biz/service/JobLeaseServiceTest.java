@@ -0,0 +1,81 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.biz.service;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.ctrip.framework.apollo.biz.AbstractIntegrationTest;
+import com.ctrip.framework.apollo.biz.repository.JobLeaseRepository;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionTemplate;
+
+public class JobLeaseServiceTest extends AbstractIntegrationTest {
+  private static final String SOME_JOB = "someJob";
+  private static final long SOME_LEASE_IN_MILLI = TimeUnit.MINUTES.toMillis(1);
+
+  @Autowired
+  private JobLeaseService jobLeaseService;
+  @Autowired
+  private JobLeaseRepository jobLeaseRepository;
+  @Autowired
+  private TransactionTemplate transactionTemplate;
+  //another admin service sharing the database
+  private JobLeaseService anotherJobLeaseService;
+
+  @Before
+  public void setUp() throws Exception {
+    anotherJobLeaseService = new JobLeaseService(jobLeaseRepository, transactionTemplate);
+  }
+
+  @Test
+  public void testAcquireLease() {
+    assertTrue(jobLeaseService.tryAcquireLease(SOME_JOB, SOME_LEASE_IN_MILLI));
+    assertFalse(anotherJobLeaseService.tryAcquireLease(SOME_JOB, SOME_LEASE_IN_MILLI));
+    //renewed by the owner
+    assertTrue(jobLeaseService.tryAcquireLease(SOME_JOB, SOME_LEASE_IN_MILLI));
+    //the leases of other jobs are independent
+    assertTrue(anotherJobLeaseService.tryAcquireLease("anotherJob", SOME_LEASE_IN_MILLI));
+  }
+
+  @Test
+  public void testAcquireExpiredLease() throws Exception {
+    assertTrue(jobLeaseService.tryAcquireLease(SOME_JOB, 1));
+
+    TimeUnit.MILLISECONDS.sleep(10);
+
+    assertTrue(anotherJobLeaseService.tryAcquireLease(SOME_JOB, SOME_LEASE_IN_MILLI));
+    assertFalse(jobLeaseService.tryAcquireLease(SOME_JOB, SOME_LEASE_IN_MILLI));
+  }
+
+  @Test
+  public void testReleaseLease() throws Exception {
+    assertTrue(jobLeaseService.tryAcquireLease(SOME_JOB, SOME_LEASE_IN_MILLI));
+
+    //released only by the owner
+    anotherJobLeaseService.releaseLease(SOME_JOB);
+    assertFalse(anotherJobLeaseService.tryAcquireLease(SOME_JOB, SOME_LEASE_IN_MILLI));
+
+    jobLeaseService.releaseLease(SOME_JOB);
+    TimeUnit.MILLISECONDS.sleep(10);
+
+    assertTrue(anotherJobLeaseService.tryAcquireLease(SOME_JOB, SOME_LEASE_IN_MILLI));
+  }
+}
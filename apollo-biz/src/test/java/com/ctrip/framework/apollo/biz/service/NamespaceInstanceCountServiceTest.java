@@ -0,0 +1,171 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.biz.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.biz.AbstractIntegrationTest;
+import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
+import com.ctrip.framework.apollo.biz.entity.NamespaceInstanceCount;
+import com.ctrip.framework.apollo.biz.repository.InstanceConfigRepository;
+import com.ctrip.framework.apollo.biz.repository.NamespaceInstanceCountRepository;
+import com.google.common.collect.Lists;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.Rollback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+public class NamespaceInstanceCountServiceTest extends AbstractIntegrationTest {
+  private static final String someConfigAppId = "someConfigAppId";
+  private static final String someConfigClusterName = "someConfigClusterName";
+  private static final String someConfigNamespaceName = "someConfigNamespaceName";
+  private static final String someReleaseKey = "someReleaseKey";
+  private static final String anotherReleaseKey = "anotherReleaseKey";
+
+  @Autowired
+  private NamespaceInstanceCountService namespaceInstanceCountService;
+  @Autowired
+  private NamespaceInstanceCountRepository namespaceInstanceCountRepository;
+  @Autowired
+  private InstanceService instanceService;
+  @Autowired
+  private InstanceConfigRepository instanceConfigRepository;
+  @Autowired
+  private TransactionTemplate transactionTemplate;
+
+  @Test
+  @Rollback
+  public void testIncreaseInstanceCounts() {
+    assertEquals(0, namespaceInstanceCountService.countInstances(someConfigAppId,
+        someConfigClusterName, someConfigNamespaceName));
+
+    //the missing counters are created
+    namespaceInstanceCountService.increaseInstanceCounts(Lists.newArrayList(
+        assembleDelta(someReleaseKey, 3), assembleDelta(anotherReleaseKey, 2)));
+
+    assertEquals(5, namespaceInstanceCountService.countInstances(someConfigAppId,
+        someConfigClusterName, someConfigNamespaceName));
+
+    namespaceInstanceCountService.increaseInstanceCounts(Lists.newArrayList(
+        assembleDelta(someReleaseKey, -1), assembleDelta(anotherReleaseKey, 1),
+        assembleDelta("yetAnotherReleaseKey", 0)));
+
+    assertEquals(5, namespaceInstanceCountService.countInstances(someConfigAppId,
+        someConfigClusterName, someConfigNamespaceName));
+    assertEquals(2, namespaceInstanceCountRepository.count());
+  }
+
+  @Test
+  @Rollback
+  public void testReconcileInstanceCounts() {
+    Date now = new Date();
+    Date expired = new Date(now.getTime() - TimeUnit.DAYS.toMillis(2));
+    createInstanceConfig(1, someReleaseKey, now);
+    createInstanceConfig(2, someReleaseKey, now);
+    createInstanceConfig(3, anotherReleaseKey, expired);
+
+    //drifted counters, the expired instance config is still counted
+    namespaceInstanceCountService.increaseInstanceCounts(Lists.newArrayList(
+        assembleDelta(someReleaseKey, 1), assembleDelta(anotherReleaseKey, 1)));
+    backdateCounters(someReleaseKey, anotherReleaseKey);
+
+    int corrected = namespaceInstanceCountService.reconcileInstanceCounts();
+
+    assertEquals(2, corrected);
+    assertEquals(2, namespaceInstanceCountService.countInstances(someConfigAppId,
+        someConfigClusterName, someConfigNamespaceName));
+    //nothing to correct the second time
+    assertEquals(0, namespaceInstanceCountService.reconcileInstanceCounts());
+  }
+
+  @Test
+  @Rollback
+  public void testReconcileWithIncreaseDuringRecount() {
+    Date now = new Date();
+    createInstanceConfig(1, someReleaseKey, now);
+    namespaceInstanceCountService.increaseInstanceCounts(Lists.newArrayList(
+        assembleDelta(someReleaseKey, 1)));
+    backdateCounters(someReleaseKey);
+
+    InstanceConfigRepository recountingRepository = mock(InstanceConfigRepository.class);
+    when(recountingRepository.countByNamespaceAndReleaseKeyModifiedAfter(any()))
+        .thenAnswer(invocation -> {
+          //an instance config audited while recounting, so the counter is modified after the
+          //reconciliation started and is not set to the recount
+          createInstanceConfig(2, someReleaseKey, now);
+          namespaceInstanceCountService.increaseInstanceCounts(Lists.newArrayList(
+              assembleDelta(someReleaseKey, 1)));
+          return instanceConfigRepository.countByNamespaceAndReleaseKeyModifiedAfter(
+              invocation.getArgument(0));
+        });
+    NamespaceInstanceCountService reconcilingService = new NamespaceInstanceCountService(
+        namespaceInstanceCountRepository, recountingRepository, instanceService,
+        transactionTemplate);
+
+    reconcilingService.reconcileInstanceCounts();
+
+    //the increase is not counted twice
+    assertEquals(2, namespaceInstanceCountService.countInstances(someConfigAppId,
+        someConfigClusterName, someConfigNamespaceName));
+  }
+
+  @Test
+  @Rollback
+  public void testBatchDelete() {
+    namespaceInstanceCountService.increaseInstanceCounts(Lists.newArrayList(
+        assembleDelta(someReleaseKey, 1), assembleDelta(anotherReleaseKey, 1)));
+
+    int deleted = namespaceInstanceCountService.batchDelete(someConfigAppId,
+        someConfigClusterName, someConfigNamespaceName);
+
+    assertEquals(2, deleted);
+    assertEquals(0, namespaceInstanceCountService.countInstances(someConfigAppId,
+        someConfigClusterName, someConfigNamespaceName));
+  }
+
+  private void createInstanceConfig(long instanceId, String releaseKey, Date lastModifiedTime) {
+    InstanceConfig instanceConfig = new InstanceConfig();
+    instanceConfig.setInstanceId(instanceId);
+    instanceConfig.setConfigAppId(someConfigAppId);
+    instanceConfig.setConfigClusterName(someConfigClusterName);
+    instanceConfig.setConfigNamespaceName(someConfigNamespaceName);
+    instanceConfig.setReleaseKey(releaseKey);
+    instanceConfig.setDataChangeCreatedTime(lastModifiedTime);
+    instanceConfig.setDataChangeLastModifiedTime(lastModifiedTime);
+    instanceService.createInstanceConfig(instanceConfig);
+  }
+
+  private void backdateCounters(String... releaseKeys) {
+    //the counters modified in the same second as the reconciliation are not reconciled
+    Date backdated = new Date(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(1));
+    for (String releaseKey : releaseKeys) {
+      namespaceInstanceCountRepository.increaseInstanceCount(someConfigAppId,
+          someConfigClusterName, someConfigNamespaceName, releaseKey, 0, backdated);
+    }
+  }
+
+  private NamespaceInstanceCount assembleDelta(String releaseKey, long delta) {
+    return new NamespaceInstanceCount(someConfigAppId, someConfigClusterName,
+        someConfigNamespaceName, releaseKey, delta);
+  }
+}
@@ -17,8 +17,8 @@
 package com.ctrip.framework.apollo.biz.service;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.doThrow;
-import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
 
 import com.ctrip.framework.apollo.biz.BizTestConfiguration;
@@ -28,16 +28,16 @@ import com.ctrip.framework.apollo.biz.entity.ReleaseHistory;
 import com.ctrip.framework.apollo.biz.repository.ReleaseHistoryRepository;
 import com.ctrip.framework.apollo.biz.repository.ReleaseRepository;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import java.lang.reflect.Method;
 import java.sql.SQLException;
+import java.util.List;
 import org.hibernate.exception.JDBCConnectionException;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
-import org.springframework.aop.framework.AopProxyUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
@@ -47,7 +47,6 @@ import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.context.jdbc.Sql.ExecutionPhase;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.util.ReflectionTestUtils;
-import org.springframework.util.ReflectionUtils;
 
 /**
  * @author kl (http://kailing.pub)
@@ -66,7 +65,6 @@ public class ReleaseHistoryServiceTest {
   @Mock
   private ReleaseRepository mockReleaseRepository;
 
-  private ReleaseHistory mockReleaseHistory;
   private static final String APP_ID = "kl-app";
   private static final String CLUSTER_NAME = "default";
   private static final String NAMESPACE_NAME = "application";
@@ -82,39 +80,28 @@ public class ReleaseHistoryServiceTest {
   @Before
   public void setUp() throws Exception {
     ReflectionTestUtils.setField(releaseHistoryService, "bizConfig", bizConfig);
-    mockReleaseHistory = spy(ReleaseHistory.class);
-    mockReleaseHistory.setBranchName(BRANCH_NAME);
-    mockReleaseHistory.setNamespaceName(NAMESPACE_NAME);
-    mockReleaseHistory.setClusterName(CLUSTER_NAME);
-    mockReleaseHistory.setAppId(APP_ID);
   }
 
   @Test
   @Sql(scripts = "/sql/release-history-test.sql", executionPhase = ExecutionPhase.BEFORE_TEST_METHOD)
   @Sql(scripts = "/sql/clean.sql", executionPhase = ExecutionPhase.AFTER_TEST_METHOD)
   public void testCleanReleaseHistory() {
-    ReleaseHistoryService service = (ReleaseHistoryService) AopProxyUtils.getSingletonTarget(releaseHistoryService);
-    assert service != null;
-    Method method = ReflectionUtils.findMethod(service.getClass(), "cleanReleaseHistory", ReleaseHistory.class);
-    assert method != null;
-    ReflectionUtils.makeAccessible(method);
-
     when(bizConfig.releaseHistoryRetentionSize()).thenReturn(-1);
     when(bizConfig.releaseHistoryRetentionSizeOverride()).thenReturn(Maps.newHashMap());
-    ReflectionUtils.invokeMethod(method, service, mockReleaseHistory);
+    purgeReleaseHistories();
     Assert.assertEquals(6, releaseHistoryRepository.count());
     Assert.assertEquals(6, releaseRepository.count());
 
     when(bizConfig.releaseHistoryRetentionSize()).thenReturn(2);
     when(bizConfig.releaseHistoryRetentionSizeOverride()).thenReturn(Maps.newHashMap());
-    ReflectionUtils.invokeMethod(method, service, mockReleaseHistory);
+    purgeReleaseHistories();
     Assert.assertEquals(2, releaseHistoryRepository.count());
     Assert.assertEquals(2, releaseRepository.count());
 
     when(bizConfig.releaseHistoryRetentionSize()).thenReturn(2);
     when(bizConfig.releaseHistoryRetentionSizeOverride()).thenReturn(
         ImmutableMap.of("kl-app+default+application+default", 1));
-    ReflectionUtils.invokeMethod(method, service, mockReleaseHistory);
+    purgeReleaseHistories();
     Assert.assertEquals(1, releaseHistoryRepository.count());
     Assert.assertEquals(1, releaseRepository.count());
 
@@ -129,27 +116,100 @@ public class ReleaseHistoryServiceTest {
   @Sql(scripts = "/sql/release-history-test.sql", executionPhase = ExecutionPhase.BEFORE_TEST_METHOD)
   @Sql(scripts = "/sql/clean.sql", executionPhase = ExecutionPhase.AFTER_TEST_METHOD)
   public void testCleanReleaseHistoryTransactionalRollBack() {
-    ReleaseHistoryService service = (ReleaseHistoryService) AopProxyUtils.getSingletonTarget(releaseHistoryService);
-    assert service != null;
-    Method method = ReflectionUtils.findMethod(service.getClass(), "cleanReleaseHistory", ReleaseHistory.class);
-    assert method != null;
-    ReflectionUtils.makeAccessible(method);
-
     when(bizConfig.releaseHistoryRetentionSize()).thenReturn(1);
     when(bizConfig.releaseHistoryRetentionSizeOverride()).thenReturn(Maps.newHashMap());
     ReflectionTestUtils.setField(releaseHistoryService, "releaseRepository", mockReleaseRepository);
-    doThrow(new JDBCConnectionException("error", new SQLException("sql"))).when(mockReleaseRepository).deleteAllById(any());
-    Assert.assertThrows(JDBCConnectionException.class, () ->
-        ReflectionUtils.invokeMethod(method, service, mockReleaseHistory));
+    doThrow(new JDBCConnectionException("error", new SQLException("sql"))).when(mockReleaseRepository)
+        .batchDeleteByIds(any(), anyLong());
+    Assert.assertThrows(JDBCConnectionException.class, this::purgeReleaseHistories);
 
     Assert.assertEquals(6, releaseHistoryRepository.count());
 
     ReflectionTestUtils.setField(releaseHistoryService, "releaseRepository", releaseRepository);
     Assert.assertEquals(6, releaseRepository.count());
 
-    ReflectionUtils.invokeMethod(method, service, mockReleaseHistory);
+    purgeReleaseHistories();
     Assert.assertEquals(1, releaseHistoryRepository.count());
     Assert.assertEquals(1, releaseRepository.count());
   }
 
+  @Test
+  @Sql(scripts = "/sql/release-history-test.sql", executionPhase = ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/sql/clean.sql", executionPhase = ExecutionPhase.AFTER_TEST_METHOD)
+  public void testFindLatestReleaseHistoriesOutOfRetention() {
+    ReleaseHistory branchHistory = releaseHistoryService.createReleaseHistory(APP_ID, CLUSTER_NAME,
+        NAMESPACE_NAME, "some-branch", 7, 0, 0, null, "apollo");
+    releaseHistoryService.createReleaseHistory(APP_ID, CLUSTER_NAME, NAMESPACE_NAME, "some-branch",
+        8, 0, 0, null, "apollo");
+
+    when(bizConfig.releaseHistoryRetentionSize()).thenReturn(-1);
+    when(bizConfig.releaseHistoryRetentionSizeOverride()).thenReturn(
+        ImmutableMap.of("kl-app+default+application+some-branch", 1));
+    List<ReleaseHistory> latestOutOfRetention = releaseHistoryService
+        .findLatestReleaseHistoriesOutOfRetention();
+    Assert.assertEquals(1, latestOutOfRetention.size());
+    Assert.assertEquals("some-branch", latestOutOfRetention.get(0).getBranchName());
+    Assert.assertEquals(branchHistory.getId(), latestOutOfRetention.get(0).getId());
+
+    when(bizConfig.releaseHistoryRetentionSize()).thenReturn(3);
+    latestOutOfRetention = releaseHistoryService.findLatestReleaseHistoriesOutOfRetention();
+    Assert.assertEquals(2, latestOutOfRetention.size());
+    ReleaseHistory defaultBranch = latestOutOfRetention.stream()
+        .filter(history -> BRANCH_NAME.equals(history.getBranchName())).findFirst().orElse(null);
+    Assert.assertNotNull(defaultBranch);
+    Assert.assertEquals(3, defaultBranch.getId());
+  }
+
+  @Test
+  @Sql(scripts = "/sql/release-history-test.sql", executionPhase = ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/sql/clean.sql", executionPhase = ExecutionPhase.AFTER_TEST_METHOD)
+  public void testFindLatestReleaseHistoriesOutOfRetentionInIdRange() {
+    long maxId = releaseHistoryService.findMaxReleaseHistoryId();
+    ReleaseHistory branchHistory = releaseHistoryService.createReleaseHistory(APP_ID, CLUSTER_NAME,
+        NAMESPACE_NAME, "some-branch", 7, 0, 0, null, "apollo");
+    ReleaseHistory latestBranchHistory = releaseHistoryService.createReleaseHistory(APP_ID,
+        CLUSTER_NAME, NAMESPACE_NAME, "some-branch", 8, 0, 0, null, "apollo");
+
+    when(bizConfig.releaseHistoryRetentionSize()).thenReturn(1);
+    when(bizConfig.releaseHistoryRetentionSizeOverride()).thenReturn(Maps.newHashMap());
+    //the default branch beyond the retention size has no release histories in the range
+    List<ReleaseHistory> latestOutOfRetention = releaseHistoryService
+        .findLatestReleaseHistoriesOutOfRetention(maxId, latestBranchHistory.getId());
+    Assert.assertEquals(1, latestOutOfRetention.size());
+    Assert.assertEquals("some-branch", latestOutOfRetention.get(0).getBranchName());
+    Assert.assertEquals(branchHistory.getId(), latestOutOfRetention.get(0).getId());
+
+    Assert.assertEquals(latestBranchHistory.getId(),
+        (long) releaseHistoryService.findMaxReleaseHistoryId());
+    Assert.assertTrue(releaseHistoryService.findLatestReleaseHistoriesOutOfRetention(
+        latestBranchHistory.getId(), latestBranchHistory.getId()).isEmpty());
+  }
+
+  @Test
+  @Sql(scripts = "/sql/release-history-test.sql", executionPhase = ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/sql/clean.sql", executionPhase = ExecutionPhase.AFTER_TEST_METHOD)
+  public void testPurgeReleaseHistoriesKeepReferencedReleases() {
+    //rolled back to release 2, which is still referenced by the rollback history
+    releaseHistoryService.createReleaseHistory(APP_ID, CLUSTER_NAME, NAMESPACE_NAME, BRANCH_NAME, 2,
+        6, 0, null, "apollo");
+
+    int purgedReleases = releaseHistoryService.purgeReleaseHistories(
+        Lists.newArrayList(releaseHistoryRepository.findAllById(Lists.newArrayList(1L, 2L))));
+
+    Assert.assertEquals(1, purgedReleases);
+    Assert.assertEquals(5, releaseHistoryRepository.count());
+    Assert.assertFalse(releaseRepository.findById(1L).isPresent());
+    Assert.assertTrue(releaseRepository.findById(2L).isPresent());
+  }
+
+  private void purgeReleaseHistories() {
+    for (ReleaseHistory latestOutOfRetention : releaseHistoryService
+        .findLatestReleaseHistoriesOutOfRetention()) {
+      List<ReleaseHistory> releaseHistories;
+      do {
+        releaseHistories = releaseHistoryService.findReleaseHistoriesToPurge(latestOutOfRetention);
+        releaseHistoryService.purgeReleaseHistories(releaseHistories);
+      } while (!releaseHistories.isEmpty());
+    }
+  }
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.biz.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.ctrip.framework.apollo.biz.AbstractIntegrationTest;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+public class ReleaseMessageServiceTest extends AbstractIntegrationTest {
+  @Autowired
+  private ReleaseMessageService releaseMessageService;
+  @Autowired
+  private ReleaseMessageRepository releaseMessageRepository;
+
+  @Test
+  public void testDeleteSupersededReleaseMessages() {
+    String someMessage = "someAppId+default+application";
+    String anotherMessage = "someAppId+default+anotherNamespace";
+    ReleaseMessage first = save(someMessage);
+    save(anotherMessage);
+    save(someMessage);
+    ReleaseMessage fourth = save(anotherMessage);
+    ReleaseMessage fifth = save(someMessage);
+
+    int deleted = releaseMessageService.deleteSupersededReleaseMessages(first.getId(),
+        fifth.getId() + 1);
+
+    assertEquals(3, deleted);
+    assertEquals(Lists.newArrayList(fourth.getId(), fifth.getId()), findAllIds());
+    assertEquals(2, releaseMessageService.countReleaseMessages());
+  }
+
+  @Test
+  public void testDeleteSupersededReleaseMessagesInRange() {
+    String someMessage = "someAppId+default+application";
+    ReleaseMessage first = save(someMessage);
+    ReleaseMessage second = save(someMessage);
+    ReleaseMessage third = save(someMessage);
+
+    //the newer release messages out of the range still supersede the ones in the range
+    int deleted = releaseMessageService.deleteSupersededReleaseMessages(second.getId(),
+        third.getId());
+
+    assertEquals(1, deleted);
+    assertEquals(Lists.newArrayList(first.getId(), third.getId()), findAllIds());
+    assertEquals(third.getId(), (long) releaseMessageService.findFirstIdFrom(second.getId()));
+    assertEquals(third.getId(), (long) releaseMessageService.findMaxId());
+  }
+
+  @Test
+  public void testFindIdsWithoutReleaseMessages() {
+    assertNull(releaseMessageService.findFirstIdFrom(0));
+    assertNull(releaseMessageService.findMaxId());
+    assertEquals(0, releaseMessageService.deleteSupersededReleaseMessages(0, Long.MAX_VALUE));
+  }
+
+  private ReleaseMessage save(String message) {
+    return releaseMessageRepository.save(new ReleaseMessage(message));
+  }
+
+  private List<Long> findAllIds() {
+    return StreamSupport.stream(releaseMessageRepository.findAll().spliterator(), false)
+        .map(ReleaseMessage::getId).sorted().collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.biz.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+import com.ctrip.framework.apollo.biz.AbstractIntegrationTest;
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.biz.repository.ReleasePayloadRepository;
+import com.ctrip.framework.apollo.biz.repository.ReleaseRepository;
+import com.ctrip.framework.apollo.biz.utils.ReleaseConfigurationsCodec;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import java.util.List;
+import java.util.UUID;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.Rollback;
+
+public class ReleasePayloadServiceTest extends AbstractIntegrationTest {
+  @Autowired
+  private ReleasePayloadService releasePayloadService;
+  @Autowired
+  private ReleasePayloadRepository releasePayloadRepository;
+  @Autowired
+  private ReleaseRepository releaseRepository;
+  @Autowired
+  private ReleaseService releaseService;
+
+  @After
+  public void tearDown() throws Exception {
+    //payloads are stored in separate transactions, so they are not rolled back
+    releasePayloadRepository.deleteAll();
+  }
+
+  @Test
+  @Rollback
+  public void testStoreIdenticalPayloadsOnce() {
+    String configurations = assembleConfigurations();
+
+    String hash = releasePayloadService.store(configurations);
+    String anotherHash = releasePayloadService.store(configurations);
+    String yetAnotherHash = releasePayloadService.store(assembleConfigurations());
+
+    assertEquals(hash, anotherHash);
+    assertNotEquals(hash, yetAnotherHash);
+    assertEquals(configurations, releasePayloadRepository.findByHash(hash).getConfigurations());
+    assertEquals(2, releasePayloadRepository.count());
+  }
+
+  @Test
+  @Rollback
+  public void testResolveReleases() {
+    String configurations = assembleConfigurations();
+    String reference = ReleaseConfigurationsCodec.toPayloadReference(
+        releasePayloadService.store(configurations));
+    Release someRelease = releaseRepository.save(assembleRelease("someReleaseKey", reference));
+    Release anotherRelease = releaseRepository.save(assembleRelease("anotherReleaseKey",
+        reference));
+
+    List<Release> releases = releaseService.findByReleaseKeys(
+        Sets.newHashSet("someReleaseKey", "anotherReleaseKey"));
+
+    assertEquals(2, releases.size());
+    assertEquals(reference, releases.get(0).getStoredConfigurations());
+    assertEquals(configurations, releases.get(0).getConfigurations());
+    //the releases share the same payload
+    assertSame(releases.get(0).getConfigurations(), releases.get(1).getConfigurations());
+    assertEquals(configurations, releaseService.findOne(someRelease.getId()).getConfigurations());
+    assertEquals(configurations,
+        releaseService.findActiveOne(anotherRelease.getId()).getConfigurations());
+  }
+
+  @Test
+  @Rollback
+  public void testResolvePlainReleases() {
+    String configurations = assembleConfigurations();
+    Release release = assembleRelease("someReleaseKey", configurations);
+
+    releasePayloadService.resolve(Lists.newArrayList(release));
+
+    assertSame(configurations, release.getConfigurations());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  @Rollback
+  public void testResolveMissingPayload() {
+    Release release = assembleRelease("someReleaseKey",
+        ReleaseConfigurationsCodec.toPayloadReference("someMissingHash"));
+
+    releasePayloadService.resolve(release);
+  }
+
+  private Release assembleRelease(String releaseKey, String configurations) {
+    Release release = new Release();
+    release.setReleaseKey(releaseKey);
+    release.setName("someName");
+    release.setComment("someComment");
+    release.setAppId("someAppId");
+    release.setClusterName("someClusterName");
+    release.setNamespaceName("someNamespaceName");
+    release.setConfigurations(configurations);
+    release.setDataChangeCreatedBy("someOperator");
+    release.setDataChangeLastModifiedBy("someOperator");
+    return release;
+  }
+
+  private String assembleConfigurations() {
+    return "{\"someKey\":\"" + UUID.randomUUID() + "\"}";
+  }
+}
@@ -21,7 +21,9 @@ import com.google.common.collect.Sets;
 
 import com.ctrip.framework.apollo.biz.AbstractUnitTest;
 import com.ctrip.framework.apollo.biz.MockBeanFactory;
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.biz.repository.ReleasePayloadRepository;
 import com.ctrip.framework.apollo.biz.repository.ReleaseRepository;
 import com.ctrip.framework.apollo.common.exception.BadRequestException;
 
@@ -32,7 +34,9 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.util.Arrays;
 import java.util.List;
@@ -55,6 +59,10 @@ public class ReleaseServiceTest extends AbstractUnitTest {
   private ReleaseHistoryService releaseHistoryService;
   @Mock
   private ItemSetService itemSetService;
+  @Spy
+  private ReleasePayloadService releasePayloadService = new ReleasePayloadService(
+      mock(ReleasePayloadRepository.class), mock(BizConfig.class),
+      mock(PlatformTransactionManager.class));
   @InjectMocks
   private ReleaseService releaseService;
 
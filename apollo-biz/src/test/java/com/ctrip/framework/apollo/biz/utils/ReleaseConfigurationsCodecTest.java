@@ -0,0 +1,128 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.biz.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.google.common.collect.Maps;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import org.junit.Test;
+
+public class ReleaseConfigurationsCodecTest {
+  private static final Gson GSON = new Gson();
+
+  @Test
+  public void testEncodeAndDecode() {
+    String configurations = assembleConfigurations(100);
+
+    String encoded = ReleaseConfigurationsCodec.encode(configurations, 1024);
+
+    assertTrue(ReleaseConfigurationsCodec.isCompressed(encoded));
+    assertTrue(encoded.length() < configurations.length());
+    assertEquals(configurations, ReleaseConfigurationsCodec.decode(encoded));
+    //encoded ones are not encoded again
+    assertSame(encoded, ReleaseConfigurationsCodec.encode(encoded, 0));
+  }
+
+  @Test
+  public void testCompressionRatio() {
+    //dotted keys with common prefixes, and values mixed with urls, numbers and switches
+    Random random = new Random(1000);
+    Map<String, String> configurations = Maps.newLinkedHashMap();
+    for (int i = 0; i < 1000; i++) {
+      String key = "app.module" + (i % 20) + ".feature" + (i % 7) + ".key" + i;
+      switch (i % 3) {
+        case 0:
+          configurations.put(key, "http://service" + random.nextInt(100) + ".example.com/api");
+          break;
+        case 1:
+          configurations.put(key, String.valueOf(random.nextInt(100000)));
+          break;
+        default:
+          configurations.put(key, String.valueOf(random.nextBoolean()));
+      }
+    }
+    String json = GSON.toJson(configurations);
+
+    String encoded = ReleaseConfigurationsCodec.encode(json, 1024);
+
+    //about 6x smaller even after base64
+    assertTrue(encoded.length() * 4 < json.length());
+    assertEquals(configurations, GSON.fromJson(ReleaseConfigurationsCodec.decode(encoded),
+        new TypeToken<Map<String, String>>() {
+        }.getType()));
+  }
+
+  @Test
+  public void testEncodeBelowThreshold() {
+    String configurations = assembleConfigurations(1);
+
+    assertSame(configurations, ReleaseConfigurationsCodec.encode(configurations, 1024));
+    assertNull(ReleaseConfigurationsCodec.encode(null, 0));
+  }
+
+  @Test
+  public void testEncodeIncompressible() {
+    Map<String, String> configurations = Maps.newHashMap();
+    configurations.put("k", UUID.randomUUID().toString());
+    String json = GSON.toJson(configurations);
+
+    assertSame(json, ReleaseConfigurationsCodec.encode(json, 0));
+  }
+
+  @Test
+  public void testDecodePlain() {
+    String configurations = assembleConfigurations(10);
+
+    assertFalse(ReleaseConfigurationsCodec.isCompressed(configurations));
+    assertSame(configurations, ReleaseConfigurationsCodec.decode(configurations));
+    assertNull(ReleaseConfigurationsCodec.decode(null));
+  }
+
+  @Test
+  public void testReleaseDecodesLazily() {
+    String configurations = assembleConfigurations(100);
+    Release release = new Release();
+
+    release.setConfigurations(ReleaseConfigurationsCodec.encode(configurations, 0));
+
+    assertEquals(configurations, release.getConfigurations());
+    assertSame(release.getConfigurations(), release.getConfigurations());
+
+    String plainConfigurations = assembleConfigurations(1);
+    release.setConfigurations(plainConfigurations);
+
+    assertSame(plainConfigurations, release.getConfigurations());
+  }
+
+  private String assembleConfigurations(int size) {
+    Map<String, String> configurations = Maps.newLinkedHashMap();
+    for (int i = 0; i < size; i++) {
+      configurations.put("some.config.key." + i, "someValue" + i);
+    }
+    return GSON.toJson(configurations);
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.common.dto;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A page of a keyset paginated query. Unlike {@link PageDTO} it carries no total, the next page is
+ * queried with {@link #getNextCursor()} instead of a page number.
+ */
+public class CursorPageDTO<T> {
+  private final List<T> content;
+  private final int size;
+  //null if there are no more pages
+  private final Long nextCursor;
+
+  public CursorPageDTO(List<T> content, int size, Long nextCursor) {
+    this.content = content;
+    this.size = size;
+    this.nextCursor = nextCursor;
+  }
+
+  public List<T> getContent() {
+    return Collections.unmodifiableList(content);
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  public Long getNextCursor() {
+    return nextCursor;
+  }
+
+  public boolean hasContent() {
+    return content != null && content.size() > 0;
+  }
+
+  public boolean hasNext() {
+    return nextCursor != null;
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.common.dto;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A whole namespace to import, the namespace is created if not existed, then the items are created
+ * or updated by their keys with one request
+ */
+public class NamespaceImportDTO extends BaseDTO {
+
+  private List<ItemDTO> items = new LinkedList<>();
+
+  /**
+   * skip the import if the namespace already has items
+   */
+  private boolean ignoreConflictNamespace;
+
+  public List<ItemDTO> getItems() {
+    return items;
+  }
+
+  public void setItems(List<ItemDTO> items) {
+    this.items = items;
+  }
+
+  public boolean isIgnoreConflictNamespace() {
+    return ignoreConflictNamespace;
+  }
+
+  public void setIgnoreConflictNamespace(boolean ignoreConflictNamespace) {
+    this.ignoreConflictNamespace = ignoreConflictNamespace;
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.common.dto;
+
+public class NamespaceImportResultDTO {
+
+  private NamespaceDTO namespace;
+
+  private boolean namespaceCreated;
+
+  /**
+   * true if the import is skipped as the namespace already has items
+   */
+  private boolean skipped;
+
+  private int createdItems;
+
+  private int updatedItems;
+
+  public NamespaceDTO getNamespace() {
+    return namespace;
+  }
+
+  public void setNamespace(NamespaceDTO namespace) {
+    this.namespace = namespace;
+  }
+
+  public boolean isNamespaceCreated() {
+    return namespaceCreated;
+  }
+
+  public void setNamespaceCreated(boolean namespaceCreated) {
+    this.namespaceCreated = namespaceCreated;
+  }
+
+  public boolean isSkipped() {
+    return skipped;
+  }
+
+  public void setSkipped(boolean skipped) {
+    this.skipped = skipped;
+  }
+
+  public int getCreatedItems() {
+    return createdItems;
+  }
+
+  public void setCreatedItems(int createdItems) {
+    this.createdItems = createdItems;
+  }
+
+  public int getUpdatedItems() {
+    return updatedItems;
+  }
+
+  public void setUpdatedItems(int updatedItems) {
+    this.updatedItems = updatedItems;
+  }
+}
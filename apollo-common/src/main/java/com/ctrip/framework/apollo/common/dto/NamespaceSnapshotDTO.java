@@ -0,0 +1,72 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.common.dto;
+
+import java.util.List;
+
+/**
+ * A namespace together with its items, deleted items and latest active release, so that all the
+ * namespaces of a cluster could be loaded with one request
+ */
+public class NamespaceSnapshotDTO {
+
+  private NamespaceDTO namespace;
+
+  private List<ItemDTO> items;
+
+  /**
+   * the items deleted since the latest active release, empty if not requested
+   */
+  private List<ItemDTO> deletedItems;
+
+  /**
+   * null if the namespace is never released
+   */
+  private ReleaseDTO latestRelease;
+
+  public NamespaceDTO getNamespace() {
+    return namespace;
+  }
+
+  public void setNamespace(NamespaceDTO namespace) {
+    this.namespace = namespace;
+  }
+
+  public List<ItemDTO> getItems() {
+    return items;
+  }
+
+  public void setItems(List<ItemDTO> items) {
+    this.items = items;
+  }
+
+  public List<ItemDTO> getDeletedItems() {
+    return deletedItems;
+  }
+
+  public void setDeletedItems(List<ItemDTO> deletedItems) {
+    this.deletedItems = deletedItems;
+  }
+
+  public ReleaseDTO getLatestRelease() {
+    return latestRelease;
+  }
+
+  public void setLatestRelease(ReleaseDTO latestRelease) {
+    this.latestRelease = latestRelease;
+  }
+}
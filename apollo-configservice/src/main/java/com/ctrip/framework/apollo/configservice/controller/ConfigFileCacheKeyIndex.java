@@ -0,0 +1,91 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.controller;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Bidirectional index between the watched keys and the cache keys of {@link ConfigFileController}.
+ * <p>
+ * Both directions are concurrent maps, so registering and removing cache keys only lock the hash
+ * bins of the keys involved. The cache keys returned for a watched key are a live, weakly
+ * consistent view which could be iterated while the cache keys are being removed.
+ */
+class ConfigFileCacheKeyIndex {
+  private final ConcurrentMap<String, Set<String>> watchedKey2CacheKeys =
+      new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Set<String>> cacheKey2WatchedKeys =
+      new ConcurrentHashMap<>();
+
+  void register(String cacheKey, Set<String> watchedKeys) {
+    Set<String> previousWatchedKeys = cacheKey2WatchedKeys.put(cacheKey,
+        ImmutableSet.copyOf(watchedKeys));
+    if (previousWatchedKeys != null) {
+      for (String watchedKey : previousWatchedKeys) {
+        if (!watchedKeys.contains(watchedKey)) {
+          removeCacheKey(watchedKey, cacheKey);
+        }
+      }
+    }
+    for (String watchedKey : watchedKeys) {
+      //compute under the bin lock, so that a concurrent removal won't drop an empty set we add to
+      watchedKey2CacheKeys.compute(watchedKey, (key, cacheKeys) -> {
+        if (cacheKeys == null) {
+          cacheKeys = ConcurrentHashMap.newKeySet();
+        }
+        cacheKeys.add(cacheKey);
+        return cacheKeys;
+      });
+    }
+  }
+
+  void unregister(String cacheKey) {
+    Set<String> watchedKeys = cacheKey2WatchedKeys.remove(cacheKey);
+    if (watchedKeys == null) {
+      return;
+    }
+    for (String watchedKey : watchedKeys) {
+      removeCacheKey(watchedKey, cacheKey);
+    }
+  }
+
+  Set<String> getCacheKeys(String watchedKey) {
+    Set<String> cacheKeys = watchedKey2CacheKeys.get(watchedKey);
+    return cacheKeys == null ? Collections.emptySet() : Collections.unmodifiableSet(cacheKeys);
+  }
+
+  Set<String> getWatchedKeys(String cacheKey) {
+    Set<String> watchedKeys = cacheKey2WatchedKeys.get(cacheKey);
+    return watchedKeys == null ? Collections.emptySet() : watchedKeys;
+  }
+
+  boolean isEmpty() {
+    return watchedKey2CacheKeys.isEmpty() && cacheKey2WatchedKeys.isEmpty();
+  }
+
+  private void removeCacheKey(String watchedKey, String cacheKey) {
+    watchedKey2CacheKeys.computeIfPresent(watchedKey, (key, cacheKeys) -> {
+      cacheKeys.remove(cacheKey);
+      return cacheKeys.isEmpty() ? null : cacheKeys;
+    });
+  }
+}
@@ -16,10 +16,12 @@
  */
 package com.ctrip.framework.apollo.configservice.controller;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.grayReleaseRule.GrayReleaseRulesHolder;
 import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
 import com.ctrip.framework.apollo.biz.message.Topics;
+import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
 import com.ctrip.framework.apollo.common.utils.WebUtils;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
@@ -31,12 +33,13 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
 import com.google.common.cache.Weigher;
-import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
+import com.google.common.collect.Sets;
 import com.google.gson.Gson;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpHeaders;
@@ -51,7 +54,6 @@ import org.springframework.web.bind.annotation.RestController;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
@@ -65,16 +67,15 @@ import java.util.concurrent.TimeUnit;
 public class ConfigFileController implements ReleaseMessageListener {
   private static final Logger logger = LoggerFactory.getLogger(ConfigFileController.class);
   private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
+  private static final Joiner GRAY_RELEASE_ID_JOINER = Joiner.on(",");
+  private static final String GRAY_RELEASE_CACHE_KEY_PREFIX = "gray:";
   private static final long MAX_CACHE_SIZE = 50 * 1024 * 1024; // 50MB
   private static final long EXPIRE_AFTER_WRITE = 30;
   private final HttpHeaders propertiesResponseHeaders;
   private final HttpHeaders jsonResponseHeaders;
   private final ResponseEntity<String> NOT_FOUND_RESPONSE;
   private Cache<String, String> localCache;
-  private final Multimap<String, String>
-      watchedKeys2CacheKey = Multimaps.synchronizedSetMultimap(HashMultimap.create());
-  private final Multimap<String, String>
-      cacheKey2WatchedKeys = Multimaps.synchronizedSetMultimap(HashMultimap.create());
+  private final ConfigFileCacheKeyIndex cacheKeyIndex = new ConfigFileCacheKeyIndex();
   private static final Gson GSON = new Gson();
 
   private final ConfigController configController;
@@ -86,26 +87,30 @@ public class ConfigFileController implements ReleaseMessageListener {
       final ConfigController configController,
       final NamespaceUtil namespaceUtil,
       final WatchKeysUtil watchKeysUtil,
-      final GrayReleaseRulesHolder grayReleaseRulesHolder) {
-    localCache = CacheBuilder.newBuilder()
+      final GrayReleaseRulesHolder grayReleaseRulesHolder,
+      final BizConfig bizConfig,
+      final MeterRegistry meterRegistry) {
+    CacheBuilder<String, String> localCacheBuilder = CacheBuilder.newBuilder()
         .expireAfterWrite(EXPIRE_AFTER_WRITE, TimeUnit.MINUTES)
         .weigher((Weigher<String, String>) (key, value) -> value == null ? 0 : value.length())
         .maximumWeight(MAX_CACHE_SIZE)
         .removalListener(notification -> {
-          String cacheKey = notification.getKey();
-          logger.debug("removing cache key: {}", cacheKey);
-          if (!cacheKey2WatchedKeys.containsKey(cacheKey)) {
+          //the cache key is still cached with the new value, so it should be kept in the index
+          if (notification.getCause() == RemovalCause.REPLACED) {
             return;
           }
-          //create a new list to avoid ConcurrentModificationException
-          List<String> watchedKeys = new ArrayList<>(cacheKey2WatchedKeys.get(cacheKey));
-          for (String watchedKey : watchedKeys) {
-            watchedKeys2CacheKey.remove(watchedKey, cacheKey);
-          }
-          cacheKey2WatchedKeys.removeAll(cacheKey);
+          String cacheKey = notification.getKey();
+          logger.debug("removing cache key: {}", cacheKey);
+          cacheKeyIndex.unregister(cacheKey);
           logger.debug("removed cache key: {}", cacheKey);
-        })
-        .build();
+        });
+    if (bizConfig.isConfigServiceCacheStatsEnabled()) {
+      localCacheBuilder.recordStats();
+    }
+    localCache = localCacheBuilder.build();
+    if (bizConfig.isConfigServiceCacheStatsEnabled()) {
+      GuavaCacheMetrics.monitor(meterRegistry, localCache, "config_file_cache");
+    }
     propertiesResponseHeaders = new HttpHeaders();
     propertiesResponseHeaders.add("Content-Type", "text/plain;charset=UTF-8");
     jsonResponseHeaders = new HttpHeaders();
@@ -178,15 +183,19 @@ public class ConfigFileController implements ReleaseMessageListener {
         namespace);
 
     String cacheKey = assembleCacheKey(outputFormat, appId, clusterName, namespace, dataCenter);
+    Set<String> watchedKeys = null;
+    String grayReleaseIds = null;
 
-    //2. try to load gray release and return
+    //2. if so, cache by the gray releases this client resolves to, so that clients sharing the same
+    //gray releases also share the same cache entry
     if (hasGrayReleaseRule) {
+      watchedKeys = watchKeysUtil.assembleAllWatchKeys(appId, clusterName, namespace, dataCenter);
+      grayReleaseIds = findGrayReleaseIds(appId, clientIp, clientLabel, watchedKeys);
+      cacheKey = assembleGrayReleaseCacheKey(cacheKey, grayReleaseIds);
       Tracer.logEvent("ConfigFile.Cache.GrayRelease", cacheKey);
-      return loadConfig(outputFormat, appId, clusterName, namespace, dataCenter, clientIp, clientLabel,
-          request, response);
     }
 
-    //3. if not gray release, check weather cache exists, if exists, return
+    //3. check weather cache exists, if exists, return
     String result = localCache.getIfPresent(cacheKey);
 
     //4. if not exists, load from ConfigController
@@ -198,9 +207,10 @@ public class ConfigFileController implements ReleaseMessageListener {
       if (result == null) {
         return null;
       }
-      //5. Double check if this client needs to load gray release, if yes, load from db again
+      //5. Double check if the gray releases of this client changed, if yes, load from db again
       //This step is mainly to avoid cache pollution
-      if (grayReleaseRulesHolder.hasGrayReleaseRule(appId, clientIp, namespace)) {
+      if (isGrayReleaseChanged(appId, clientIp, clientLabel, namespace, watchedKeys,
+          grayReleaseIds)) {
         Tracer.logEvent("ConfigFile.Cache.GrayReleaseConflict", cacheKey);
         return loadConfig(outputFormat, appId, clusterName, namespace, dataCenter, clientIp, clientLabel,
             request, response);
@@ -209,14 +219,11 @@ public class ConfigFileController implements ReleaseMessageListener {
       localCache.put(cacheKey, result);
       logger.debug("adding cache for key: {}", cacheKey);
 
-      Set<String> watchedKeys =
-          watchKeysUtil.assembleAllWatchKeys(appId, clusterName, namespace, dataCenter);
-
-      for (String watchedKey : watchedKeys) {
-        watchedKeys2CacheKey.put(watchedKey, cacheKey);
+      if (watchedKeys == null) {
+        watchedKeys = watchKeysUtil.assembleAllWatchKeys(appId, clusterName, namespace, dataCenter);
       }
 
-      cacheKey2WatchedKeys.putAll(cacheKey, watchedKeys);
+      cacheKeyIndex.register(cacheKey, watchedKeys);
       logger.debug("added cache for key: {}", cacheKey);
     } else {
       Tracer.logEvent("ConfigFile.Cache.Hit", cacheKey);
@@ -225,6 +232,50 @@ public class ConfigFileController implements ReleaseMessageListener {
     return result;
   }
 
+  /**
+   * Resolve the gray release ids of the client, the watched keys cover all the appId+cluster+namespace
+   * combinations the config is loaded from, i.e. the specified cluster, data center and default
+   * cluster, of both the app and the public namespace.
+   *
+   * @return the sorted gray release ids joined by comma, or empty string if there is none
+   */
+  private String findGrayReleaseIds(String appId, String clientIp, String clientLabel,
+                                    Set<String> watchedKeys) {
+    Set<Long> grayReleaseIds = Sets.newTreeSet();
+    for (String watchedKey : watchedKeys) {
+      List<String> keys = ReleaseMessageKeyGenerator.messageToList(watchedKey);
+      if (keys == null) {
+        continue;
+      }
+      Long grayReleaseId = grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(appId,
+          clientIp, clientLabel, keys.get(0), keys.get(1), keys.get(2));
+      if (grayReleaseId != null) {
+        grayReleaseIds.add(grayReleaseId);
+      }
+    }
+    return GRAY_RELEASE_ID_JOINER.join(grayReleaseIds);
+  }
+
+  private boolean isGrayReleaseChanged(String appId, String clientIp, String clientLabel,
+                                       String namespace, Set<String> watchedKeys,
+                                       String grayReleaseIds) {
+    if (grayReleaseIds == null) {
+      return grayReleaseRulesHolder.hasGrayReleaseRule(appId, clientIp, namespace);
+    }
+    return !grayReleaseIds.equals(findGrayReleaseIds(appId, clientIp, clientLabel, watchedKeys));
+  }
+
+  /**
+   * Clients with gray release rules which don't resolve to any gray release load the same config as
+   * other clients, so they share the normal cache key.
+   */
+  String assembleGrayReleaseCacheKey(String cacheKey, String grayReleaseIds) {
+    if (grayReleaseIds.isEmpty()) {
+      return cacheKey;
+    }
+    return STRING_JOINER.join(cacheKey, GRAY_RELEASE_CACHE_KEY_PREFIX + grayReleaseIds);
+  }
+
   private String loadConfig(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
                             String namespace, String dataCenter, String clientIp, String clientLabel,
                             HttpServletRequest request,
@@ -272,14 +323,8 @@ public class ConfigFileController implements ReleaseMessageListener {
       return;
     }
 
-    if (!watchedKeys2CacheKey.containsKey(content)) {
-      return;
-    }
-
-    //create a new list to avoid ConcurrentModificationException
-    List<String> cacheKeys = new ArrayList<>(watchedKeys2CacheKey.get(content));
-
-    for (String cacheKey : cacheKeys) {
+    //the cache keys are removed from the index while being iterated, which is safe for the index
+    for (String cacheKey : cacheKeyIndex.getCacheKeys(content)) {
       logger.debug("invalidate cache key: {}", cacheKey);
       localCache.invalidate(cacheKey);
     }
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Fixed capacity cache of long keys to long values, backed by three primitive arrays so that
+ * millions of entries cost about 20 bytes each and no garbage at all.
+ * <p>
+ * The cache is set associative: a key can only be stored in one of the {@value #WAYS} slots of its
+ * set, and when the set is full the least recently used slot is replaced. Expiration is tracked in
+ * seconds, either after write or after access.
+ */
+final class CompactLongCache {
+  private static final int WAYS = 8;
+  private static final int LOCK_STRIPES = 64;
+  //stamp 0 marks an empty slot
+  private static final int EMPTY = 0;
+
+  private final long[] keys;
+  private final long[] values;
+  private final int[] stamps;
+  private final int setMask;
+  private final Object[] locks;
+  private final int expireAfterSeconds;
+  private final boolean expireAfterAccess;
+  private final LongSupplier clock;
+  private final long startTimeInMillis;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  CompactLongCache(int capacity, long expireAfter, TimeUnit timeUnit, boolean expireAfterAccess) {
+    this(capacity, expireAfter, timeUnit, expireAfterAccess, System::currentTimeMillis);
+  }
+
+  CompactLongCache(int capacity, long expireAfter, TimeUnit timeUnit, boolean expireAfterAccess,
+      LongSupplier clock) {
+    int sets = 1;
+    while ((long) sets * WAYS < capacity) {
+      sets <<= 1;
+    }
+    keys = new long[sets * WAYS];
+    values = new long[sets * WAYS];
+    stamps = new int[sets * WAYS];
+    setMask = sets - 1;
+    locks = new Object[LOCK_STRIPES];
+    for (int i = 0; i < LOCK_STRIPES; i++) {
+      locks[i] = new Object();
+    }
+    this.expireAfterSeconds = (int) Math.min(Integer.MAX_VALUE / 2, timeUnit.toSeconds(expireAfter));
+    this.expireAfterAccess = expireAfterAccess;
+    this.clock = clock;
+    this.startTimeInMillis = clock.getAsLong();
+  }
+
+  /**
+   * @return the value of the key, or defaultValue if the key is absent or expired
+   */
+  long get(long key, long defaultValue) {
+    int set = set(key);
+    int now = now();
+    synchronized (locks[set & (LOCK_STRIPES - 1)]) {
+      int start = set * WAYS;
+      for (int slot = start; slot < start + WAYS; slot++) {
+        if (stamps[slot] != EMPTY && keys[slot] == key) {
+          if (isExpired(stamps[slot], now)) {
+            stamps[slot] = EMPTY;
+            break;
+          }
+          if (expireAfterAccess) {
+            stamps[slot] = now;
+          }
+          hits.increment();
+          return values[slot];
+        }
+      }
+    }
+    misses.increment();
+    return defaultValue;
+  }
+
+  void put(long key, long value) {
+    int set = set(key);
+    int now = now();
+    synchronized (locks[set & (LOCK_STRIPES - 1)]) {
+      int start = set * WAYS;
+      int victim = -1;
+      for (int slot = start; slot < start + WAYS; slot++) {
+        int stamp = stamps[slot];
+        if (stamp != EMPTY && keys[slot] == key) {
+          victim = slot;
+          break;
+        }
+        if (stamp == EMPTY || isExpired(stamp, now)) {
+          if (victim < 0 || stamps[victim] != EMPTY) {
+            victim = slot;
+            stamps[slot] = EMPTY;
+          }
+        } else if (victim < 0 || (stamps[victim] != EMPTY && stamp < stamps[victim])) {
+          victim = slot;
+        }
+      }
+      if (stamps[victim] != EMPTY && keys[victim] != key) {
+        evictions.increment();
+      }
+      keys[victim] = key;
+      values[victim] = value;
+      stamps[victim] = now;
+    }
+  }
+
+  long hitCount() {
+    return hits.sum();
+  }
+
+  long missCount() {
+    return misses.sum();
+  }
+
+  long evictionCount() {
+    return evictions.sum();
+  }
+
+  int capacity() {
+    return keys.length;
+  }
+
+  private boolean isExpired(int stamp, int now) {
+    return now - stamp >= expireAfterSeconds;
+  }
+
+  /**
+   * Seconds since the cache is created, starting from 1 so that it never equals {@link #EMPTY}.
+   */
+  private int now() {
+    return (int) ((clock.getAsLong() - startTimeInMillis) / 1000) + 1;
+  }
+
+  private int set(long key) {
+    long hash = key * 0x9E3779B97F4A7C15L;
+    return (int) (hash ^ (hash >>> 32)) & setMask;
+  }
+}
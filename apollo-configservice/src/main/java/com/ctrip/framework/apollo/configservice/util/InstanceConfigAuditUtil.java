@@ -18,178 +18,472 @@ package com.ctrip.framework.apollo.configservice.util;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Queues;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Instance;
 import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
+import com.ctrip.framework.apollo.biz.entity.NamespaceInstanceCount;
 import com.ctrip.framework.apollo.biz.service.InstanceService;
+import com.ctrip.framework.apollo.biz.service.NamespaceInstanceCountService;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * Audits are aggregated per instance, config app id and namespace within a flush window and then
+ * written in batches, so a burst of polls after a fleet restart results in a few bulk statements
+ * instead of several queries per poll. Audits are sharded by instance, each shard has its own
+ * bounded queue and writer thread.
+ *
  * @author Jason Song(song_s@ctrip.com)
  */
 @Service
 public class InstanceConfigAuditUtil implements InitializingBean {
-  private static final int INSTANCE_CONFIG_AUDIT_MAX_SIZE = 10000;
-  private static final int INSTANCE_CACHE_MAX_SIZE = 50000;
-  private static final int INSTANCE_CONFIG_CACHE_MAX_SIZE = 50000;
+  private static final int INSTANCE_CONFIG_AUDIT_BATCH_SIZE = 500;
+  private static final long NO_INSTANCE_ID = -1;
+  private static final HashFunction KEY_HASH_FUNCTION = Hashing.murmur3_128();
   private static final long OFFER_TIME_LAST_MODIFIED_TIME_THRESHOLD_IN_MILLI = TimeUnit.MINUTES.toMillis(10);//10 minutes
   private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
   private final ExecutorService auditExecutorService;
   private final AtomicBoolean auditStopped;
-  private BlockingQueue<InstanceConfigAuditModel> audits = Queues.newLinkedBlockingQueue
-      (INSTANCE_CONFIG_AUDIT_MAX_SIZE);
-  private Cache<String, Long> instanceCache;
-  private Cache<String, String> instanceConfigReleaseKeyCache;
+  private final List<BlockingQueue<InstanceConfigAuditModel>> auditShards;
+  private final long flushIntervalInNanos;
+  private final AtomicLong droppedAudits = new AtomicLong();
+  private final AtomicLong flushedAudits = new AtomicLong();
+  //hash of appId+cluster+ip+dataCenter -> instance id
+  private final CompactLongCache instanceCache;
+  //hash of instanceId+configAppId+configNamespace -> hash of release key
+  private final CompactLongCache instanceConfigReleaseKeyCache;
 
   private final InstanceService instanceService;
+  private final NamespaceInstanceCountService namespaceInstanceCountService;
 
-  public InstanceConfigAuditUtil(final InstanceService instanceService) {
+  public InstanceConfigAuditUtil(final InstanceService instanceService,
+      final NamespaceInstanceCountService namespaceInstanceCountService,
+      final BizConfig bizConfig, final MeterRegistry meterRegistry) {
     this.instanceService = instanceService;
-    auditExecutorService = Executors.newSingleThreadExecutor(
+    this.namespaceInstanceCountService = namespaceInstanceCountService;
+    int shards = bizConfig.instanceConfigAuditShards();
+    int queueSize = bizConfig.instanceConfigAuditQueueSize();
+    auditShards = Lists.newArrayListWithCapacity(shards);
+    for (int i = 0; i < shards; i++) {
+      auditShards.add(Queues.newArrayBlockingQueue(queueSize));
+    }
+    flushIntervalInNanos = TimeUnit.MILLISECONDS.toNanos(
+        bizConfig.instanceConfigAuditFlushIntervalInMilli());
+    auditExecutorService = Executors.newFixedThreadPool(shards,
         ApolloThreadFactory.create("InstanceConfigAuditUtil", true));
     auditStopped = new AtomicBoolean(false);
-    instanceCache = CacheBuilder.newBuilder().expireAfterAccess(1, TimeUnit.HOURS)
-        .maximumSize(INSTANCE_CACHE_MAX_SIZE).build();
-    instanceConfigReleaseKeyCache = CacheBuilder.newBuilder().expireAfterWrite(1, TimeUnit.DAYS)
-        .maximumSize(INSTANCE_CONFIG_CACHE_MAX_SIZE).build();
+    instanceCache = new CompactLongCache(bizConfig.instanceConfigAuditInstanceCacheSize(), 1,
+        TimeUnit.HOURS, true);
+    instanceConfigReleaseKeyCache = new CompactLongCache(
+        bizConfig.instanceConfigAuditReleaseKeyCacheSize(), 1, TimeUnit.DAYS, false);
+
+    Gauge.builder("instance.config.audit.queued", auditShards,
+        queues -> queues.stream().mapToInt(BlockingQueue::size).sum()).register(meterRegistry);
+    FunctionCounter.builder("instance.config.audit.dropped", droppedAudits, AtomicLong::get)
+        .register(meterRegistry);
+    FunctionCounter.builder("instance.config.audit.flushed", flushedAudits, AtomicLong::get)
+        .register(meterRegistry);
+    monitor(meterRegistry, instanceCache, "instance_cache");
+    monitor(meterRegistry, instanceConfigReleaseKeyCache, "instance_config_release_key_cache");
+  }
+
+  /**
+   * Export the cache metrics with the same names as the other caches, which are monitored by
+   * {@link io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics}.
+   */
+  private static void monitor(MeterRegistry meterRegistry, CompactLongCache cache,
+      String cacheName) {
+    FunctionCounter.builder("cache.gets", cache, CompactLongCache::hitCount)
+        .tags("cache", cacheName, "result", "hit").register(meterRegistry);
+    FunctionCounter.builder("cache.gets", cache, CompactLongCache::missCount)
+        .tags("cache", cacheName, "result", "miss").register(meterRegistry);
+    FunctionCounter.builder("cache.evictions", cache, CompactLongCache::evictionCount)
+        .tags("cache", cacheName).register(meterRegistry);
   }
 
   public boolean audit(String appId, String clusterName, String dataCenter, String
       ip, String configAppId, String configClusterName, String configNamespace, String releaseKey) {
-    return this.audits.offer(new InstanceConfigAuditModel(appId, clusterName, dataCenter, ip,
-        configAppId, configClusterName, configNamespace, releaseKey));
+    InstanceConfigAuditModel auditModel = new InstanceConfigAuditModel(appId, clusterName,
+        dataCenter, ip, configAppId, configClusterName, configNamespace, releaseKey);
+    //audits of the same instance always go to the same shard
+    int shard = Math.floorMod(Objects.hash(appId, clusterName, ip, auditModel.getDataCenter()),
+        auditShards.size());
+    if (!auditShards.get(shard).offer(auditModel)) {
+      droppedAudits.incrementAndGet();
+      return false;
+    }
+    return true;
   }
 
-  void doAudit(InstanceConfigAuditModel auditModel) {
-    String instanceCacheKey = assembleInstanceKey(auditModel.getAppId(), auditModel
-        .getClusterName(), auditModel.getIp(), auditModel.getDataCenter());
-    Long instanceId = instanceCache.getIfPresent(instanceCacheKey);
-    if (instanceId == null) {
-      instanceId = prepareInstanceId(auditModel);
-      instanceCache.put(instanceCacheKey, instanceId);
-    }
+  void doAudits(Collection<InstanceConfigAuditModel> auditModels) {
+    Map<String, Long> instanceIds = prepareInstanceIds(auditModels);
+    Map<InstanceConfigAuditModel, Long> toAudit = Maps.newLinkedHashMap();
+    for (InstanceConfigAuditModel auditModel : auditModels) {
+      long instanceId = instanceIds.get(assembleInstanceKey(auditModel));
+
+      //load instance config release key from cache, and check if release key is the same
+      long instanceConfigCacheKey = hashInstanceConfigKey(instanceId, auditModel);
+      long releaseKeyHash = hashString(auditModel.getReleaseKey());
+      //the complement is returned if absent, which never equals the release key hash
+      long cacheReleaseKeyHash = instanceConfigReleaseKeyCache.get(instanceConfigCacheKey,
+          ~releaseKeyHash);
+
+      //if release key is the same, then skip audit
+      if (cacheReleaseKeyHash == releaseKeyHash) {
+        continue;
+      }
 
-    //load instance config release key from cache, and check if release key is the same
-    String instanceConfigCacheKey = assembleInstanceConfigKey(instanceId, auditModel
-        .getConfigAppId(), auditModel.getConfigNamespace());
-    String cacheReleaseKey = instanceConfigReleaseKeyCache.getIfPresent(instanceConfigCacheKey);
+      instanceConfigReleaseKeyCache.put(instanceConfigCacheKey, releaseKeyHash);
+      toAudit.put(auditModel, instanceId);
+    }
 
-    //if release key is the same, then skip audit
-    if (cacheReleaseKey != null && Objects.equals(cacheReleaseKey, auditModel.getReleaseKey())) {
+    if (toAudit.isEmpty()) {
       return;
     }
 
-    instanceConfigReleaseKeyCache.put(instanceConfigCacheKey, auditModel.getReleaseKey());
-
     //if release key is not the same or cannot find in cache, then do audit
-    InstanceConfig instanceConfig = instanceService.findInstanceConfig(instanceId, auditModel
-        .getConfigAppId(), auditModel.getConfigNamespace());
-
-    if (instanceConfig != null) {
-      if (!Objects.equals(instanceConfig.getReleaseKey(), auditModel.getReleaseKey())) {
-        instanceConfig.setConfigClusterName(auditModel.getConfigClusterName());
-        instanceConfig.setReleaseKey(auditModel.getReleaseKey());
-        instanceConfig.setReleaseDeliveryTime(auditModel.getOfferTime());
-      } else if (offerTimeAndLastModifiedTimeCloseEnough(auditModel.getOfferTime(),
-          instanceConfig.getDataChangeLastModifiedTime())) {
-        //when releaseKey is the same, optimize to reduce writes if the record was updated not long ago
-        return;
+    Map<String, InstanceConfig> instanceConfigs = Maps.newHashMap();
+    for (InstanceConfig instanceConfig : instanceService
+        .findInstanceConfigsByInstanceIds(Sets.newHashSet(toAudit.values()))) {
+      instanceConfigs.put(assembleInstanceConfigKey(instanceConfig.getInstanceId(),
+          instanceConfig.getConfigAppId(), instanceConfig.getConfigNamespaceName()), instanceConfig);
+    }
+
+    List<InstanceConfig> toUpdate = Lists.newArrayList();
+    List<InstanceConfig> toCreate = Lists.newArrayList();
+    //instance config id -> the counted instance config before update
+    Map<Long, NamespaceInstanceCount> countedBeforeUpdate = Maps.newHashMap();
+    Date validDate = instanceService.getValidInstanceConfigDate();
+    for (Map.Entry<InstanceConfigAuditModel, Long> entry : toAudit.entrySet()) {
+      InstanceConfigAuditModel auditModel = entry.getKey();
+      long instanceId = entry.getValue();
+      InstanceConfig instanceConfig = instanceConfigs.get(assembleInstanceConfigKey(instanceId,
+          auditModel.getConfigAppId(), auditModel.getConfigNamespace()));
+
+      if (instanceConfig != null) {
+        if (instanceConfig.getDataChangeLastModifiedTime().after(validDate)) {
+          countedBeforeUpdate.put(instanceConfig.getId(), assembleCountDelta(instanceConfig, -1));
+        }
+        if (!Objects.equals(instanceConfig.getReleaseKey(), auditModel.getReleaseKey())) {
+          instanceConfig.setConfigClusterName(auditModel.getConfigClusterName());
+          instanceConfig.setReleaseKey(auditModel.getReleaseKey());
+          instanceConfig.setReleaseDeliveryTime(auditModel.getOfferTime());
+        } else if (offerTimeAndLastModifiedTimeCloseEnough(auditModel.getOfferTime(),
+            instanceConfig.getDataChangeLastModifiedTime())) {
+          //when releaseKey is the same, optimize to reduce writes if the record was updated not long ago
+          continue;
+        }
+        //we need to update no matter the release key is the same or not, to ensure the
+        //last modified time is updated each day
+        instanceConfig.setDataChangeLastModifiedTime(auditModel.getOfferTime());
+        toUpdate.add(instanceConfig);
+        continue;
       }
-      //we need to update no matter the release key is the same or not, to ensure the
-      //last modified time is updated each day
-      instanceConfig.setDataChangeLastModifiedTime(auditModel.getOfferTime());
-      instanceService.updateInstanceConfig(instanceConfig);
-      return;
+
+      instanceConfig = new InstanceConfig();
+      instanceConfig.setInstanceId(instanceId);
+      instanceConfig.setConfigAppId(auditModel.getConfigAppId());
+      instanceConfig.setConfigClusterName(auditModel.getConfigClusterName());
+      instanceConfig.setConfigNamespaceName(auditModel.getConfigNamespace());
+      instanceConfig.setReleaseKey(auditModel.getReleaseKey());
+      instanceConfig.setReleaseDeliveryTime(auditModel.getOfferTime());
+      instanceConfig.setDataChangeCreatedTime(auditModel.getOfferTime());
+      toCreate.add(instanceConfig);
     }
 
-    instanceConfig = new InstanceConfig();
-    instanceConfig.setInstanceId(instanceId);
-    instanceConfig.setConfigAppId(auditModel.getConfigAppId());
-    instanceConfig.setConfigClusterName(auditModel.getConfigClusterName());
-    instanceConfig.setConfigNamespaceName(auditModel.getConfigNamespace());
-    instanceConfig.setReleaseKey(auditModel.getReleaseKey());
-    instanceConfig.setReleaseDeliveryTime(auditModel.getOfferTime());
-    instanceConfig.setDataChangeCreatedTime(auditModel.getOfferTime());
+    //the instance configs counted before are moved to their new release keys, the others are added
+    List<NamespaceInstanceCount> countDeltas = Lists.newArrayList();
+    if (!toUpdate.isEmpty()) {
+      for (InstanceConfig updated : instanceService.updateInstanceConfigs(toUpdate)) {
+        NamespaceInstanceCount counted = countedBeforeUpdate.get(updated.getId());
+        if (counted != null) {
+          countDeltas.add(counted);
+        }
+        countDeltas.add(assembleCountDelta(updated, 1));
+      }
+    }
+    if (!toCreate.isEmpty()) {
+      for (InstanceConfig created : createInstanceConfigs(toCreate)) {
+        countDeltas.add(assembleCountDelta(created, 1));
+      }
+    }
+    increaseInstanceCounts(countDeltas);
+  }
 
+  /**
+   * @return the instance configs created, excluding the ones created by others concurrently
+   */
+  private List<InstanceConfig> createInstanceConfigs(List<InstanceConfig> instanceConfigs) {
     try {
-      instanceService.createInstanceConfig(instanceConfig);
+      return instanceService.createInstanceConfigs(instanceConfigs);
     } catch (DataIntegrityViolationException ex) {
-      //concurrent insertion, safe to ignore
+      //concurrent insertion by other config services, fall back to insert one by one
+      List<InstanceConfig> created = Lists.newArrayList();
+      for (InstanceConfig instanceConfig : instanceConfigs) {
+        try {
+          created.add(instanceService.createInstanceConfig(instanceConfig));
+        } catch (DataIntegrityViolationException e) {
+          //concurrent insertion, safe to ignore
+        }
+      }
+      return created;
+    }
+  }
+
+  /**
+   * Merge the deltas of the same counter, so that refreshing an instance config without changing
+   * its release key doesn't touch the counter at all.
+   */
+  private void increaseInstanceCounts(List<NamespaceInstanceCount> countDeltas) {
+    if (countDeltas.isEmpty()) {
+      return;
+    }
+    Map<String, NamespaceInstanceCount> mergedDeltas = Maps.newHashMap();
+    for (NamespaceInstanceCount delta : countDeltas) {
+      NamespaceInstanceCount merged = mergedDeltas.putIfAbsent(STRING_JOINER.join(
+          delta.getConfigAppId(), delta.getConfigClusterName(), delta.getConfigNamespaceName(),
+          delta.getReleaseKey()), delta);
+      if (merged != null) {
+        merged.setInstanceCount(merged.getInstanceCount() + delta.getInstanceCount());
+      }
+    }
+    try {
+      namespaceInstanceCountService.increaseInstanceCounts(mergedDeltas.values());
+    } catch (Throwable ex) {
+      //the counts will be corrected by the reconciliation
+      Tracer.logError(ex);
     }
   }
 
+  private NamespaceInstanceCount assembleCountDelta(InstanceConfig instanceConfig, int delta) {
+    return new NamespaceInstanceCount(instanceConfig.getConfigAppId(),
+        instanceConfig.getConfigClusterName(), instanceConfig.getConfigNamespaceName(),
+        instanceConfig.getReleaseKey(), delta);
+  }
+
   private boolean offerTimeAndLastModifiedTimeCloseEnough(Date offerTime, Date lastModifiedTime) {
     return (offerTime.getTime() - lastModifiedTime.getTime()) <
         OFFER_TIME_LAST_MODIFIED_TIME_THRESHOLD_IN_MILLI;
   }
 
-  private long prepareInstanceId(InstanceConfigAuditModel auditModel) {
-    Instance instance = instanceService.findInstance(auditModel.getAppId(), auditModel
-        .getClusterName(), auditModel.getDataCenter(), auditModel.getIp());
-    if (instance != null) {
-      return instance.getId();
+  /**
+   * Resolve the instance ids of the audits, the instances not cached are found with one query and
+   * the missing ones are created in one transaction.
+   *
+   * @return instance key -> instance id
+   */
+  private Map<String, Long> prepareInstanceIds(Collection<InstanceConfigAuditModel> auditModels) {
+    Map<String, Long> instanceIds = Maps.newHashMap();
+    //instance key -> one of the audits of the instance
+    Map<String, InstanceConfigAuditModel> uncached = Maps.newLinkedHashMap();
+    for (InstanceConfigAuditModel auditModel : auditModels) {
+      String instanceKey = assembleInstanceKey(auditModel);
+      if (instanceIds.containsKey(instanceKey) || uncached.containsKey(instanceKey)) {
+        continue;
+      }
+      long instanceId = instanceCache.get(hashInstanceKey(auditModel), NO_INSTANCE_ID);
+      if (instanceId == NO_INSTANCE_ID) {
+        uncached.put(instanceKey, auditModel);
+      } else {
+        instanceIds.put(instanceKey, instanceId);
+      }
     }
-    instance = new Instance();
-    instance.setAppId(auditModel.getAppId());
-    instance.setClusterName(auditModel.getClusterName());
-    instance.setDataCenter(auditModel.getDataCenter());
-    instance.setIp(auditModel.getIp());
+    if (uncached.isEmpty()) {
+      return instanceIds;
+    }
+
+    Set<String> appIds = Sets.newHashSet();
+    Set<String> ips = Sets.newHashSet();
+    for (InstanceConfigAuditModel auditModel : uncached.values()) {
+      appIds.add(auditModel.getAppId());
+      ips.add(auditModel.getIp());
+    }
+    Map<String, Instance> instances = Maps.newHashMap();
+    for (Instance instance : instanceService.findInstancesByAppIdsAndIps(appIds, ips)) {
+      instances.put(STRING_JOINER.join(instance.getAppId(), instance.getClusterName(),
+          instance.getIp(), instance.getDataCenter()), instance);
+    }
+
+    Map<String, Instance> toCreate = Maps.newLinkedHashMap();
+    for (Map.Entry<String, InstanceConfigAuditModel> entry : uncached.entrySet()) {
+      if (!instances.containsKey(entry.getKey())) {
+        toCreate.put(entry.getKey(), assembleInstance(entry.getValue()));
+      }
+    }
+    instances.putAll(createInstances(toCreate));
+
+    for (Map.Entry<String, InstanceConfigAuditModel> entry : uncached.entrySet()) {
+      long instanceId = instances.get(entry.getKey()).getId();
+      instanceCache.put(hashInstanceKey(entry.getValue()), instanceId);
+      instanceIds.put(entry.getKey(), instanceId);
+    }
+    return instanceIds;
+  }
 
+  /**
+   * @return instance key -> the instance created, or the one created by others concurrently
+   */
+  private Map<String, Instance> createInstances(Map<String, Instance> instances) {
+    if (instances.isEmpty()) {
+      return instances;
+    }
+    try {
+      List<Instance> created = instanceService.createInstances(
+          Lists.newArrayList(instances.values()));
+      Map<String, Instance> createdInstances = Maps.newHashMap();
+      int i = 0;
+      for (String instanceKey : instances.keySet()) {
+        createdInstances.put(instanceKey, created.get(i++));
+      }
+      return createdInstances;
+    } catch (DataIntegrityViolationException ex) {
+      //concurrent insertion by other config services, fall back to insert one by one
+      Map<String, Instance> createdInstances = Maps.newHashMap();
+      for (Map.Entry<String, Instance> entry : instances.entrySet()) {
+        createdInstances.put(entry.getKey(), createInstance(entry.getValue()));
+      }
+      return createdInstances;
+    }
+  }
 
+  private Instance createInstance(Instance instance) {
     try {
-      return instanceService.createInstance(instance).getId();
+      return instanceService.createInstance(instance);
     } catch (DataIntegrityViolationException ex) {
       //return the one exists
       return instanceService.findInstance(instance.getAppId(), instance.getClusterName(),
-          instance.getDataCenter(), instance.getIp()).getId();
+          instance.getDataCenter(), instance.getIp());
     }
   }
 
+  private Instance assembleInstance(InstanceConfigAuditModel auditModel) {
+    Instance instance = new Instance();
+    instance.setAppId(auditModel.getAppId());
+    instance.setClusterName(auditModel.getClusterName());
+    instance.setDataCenter(auditModel.getDataCenter());
+    instance.setIp(auditModel.getIp());
+    return instance;
+  }
+
   @Override
   public void afterPropertiesSet() throws Exception {
-    auditExecutorService.submit(() -> {
-      while (!auditStopped.get() && !Thread.currentThread().isInterrupted()) {
-        try {
-          InstanceConfigAuditModel model = audits.take();
-          doAudit(model);
-        } catch (Throwable ex) {
-          Tracer.logError(ex);
+    for (BlockingQueue<InstanceConfigAuditModel> auditShard : auditShards) {
+      auditExecutorService.submit(() -> {
+        while (!auditStopped.get() && !Thread.currentThread().isInterrupted()) {
+          try {
+            Collection<InstanceConfigAuditModel> auditModels = aggregateAudits(auditShard);
+            if (!auditModels.isEmpty()) {
+              doAudits(auditModels);
+              flushedAudits.addAndGet(auditModels.size());
+            }
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          } catch (Throwable ex) {
+            Tracer.logError(ex);
+          }
         }
+      });
+    }
+  }
+
+  /**
+   * Wait for the first audit, then keep draining the shard until the flush window elapses or the
+   * batch is full. Only the latest audit of the same instance, config app id and namespace is kept.
+   */
+  Collection<InstanceConfigAuditModel> aggregateAudits(
+      BlockingQueue<InstanceConfigAuditModel> auditShard) throws InterruptedException {
+    Map<String, InstanceConfigAuditModel> auditModels = Maps.newLinkedHashMap();
+    InstanceConfigAuditModel auditModel = auditShard.take();
+    long flushDeadline = System.nanoTime() + flushIntervalInNanos;
+    while (auditModel != null) {
+      auditModels.put(assembleAuditKey(auditModel), auditModel);
+      long remainingNanos = flushDeadline - System.nanoTime();
+      if (auditModels.size() >= INSTANCE_CONFIG_AUDIT_BATCH_SIZE || remainingNanos <= 0) {
+        break;
       }
-    });
+      auditModel = auditShard.poll(remainingNanos, TimeUnit.NANOSECONDS);
+    }
+    return auditModels.values();
+  }
+
+  private long hashInstanceKey(InstanceConfigAuditModel auditModel) {
+    Hasher hasher = KEY_HASH_FUNCTION.newHasher();
+    putString(hasher, auditModel.getAppId());
+    putString(hasher, auditModel.getClusterName());
+    putString(hasher, auditModel.getIp());
+    putString(hasher, auditModel.getDataCenter());
+    return hasher.hash().asLong();
+  }
+
+  private long hashInstanceConfigKey(long instanceId, InstanceConfigAuditModel auditModel) {
+    Hasher hasher = KEY_HASH_FUNCTION.newHasher().putLong(instanceId);
+    putString(hasher, auditModel.getConfigAppId());
+    putString(hasher, auditModel.getConfigNamespace());
+    return hasher.hash().asLong();
+  }
+
+  private long hashString(String value) {
+    Hasher hasher = KEY_HASH_FUNCTION.newHasher();
+    putString(hasher, value);
+    return hasher.hash().asLong();
   }
 
-  private String assembleInstanceKey(String appId, String cluster, String ip, String datacenter) {
-    List<String> keyParts = Lists.newArrayList(appId, cluster, ip);
-    if (!Strings.isNullOrEmpty(datacenter)) {
-      keyParts.add(datacenter);
+  /**
+   * Length prefixed, so that the boundaries of the key parts are kept.
+   */
+  private static void putString(Hasher hasher, String value) {
+    if (value == null) {
+      hasher.putInt(-1);
+      return;
     }
-    return STRING_JOINER.join(keyParts);
+    hasher.putInt(value.length()).putUnencodedChars(value);
   }
 
   private String assembleInstanceConfigKey(long instanceId, String configAppId, String configNamespace) {
     return STRING_JOINER.join(instanceId, configAppId, configNamespace);
   }
 
+  private String assembleInstanceKey(InstanceConfigAuditModel auditModel) {
+    return STRING_JOINER.join(auditModel.getAppId(), auditModel.getClusterName(),
+        auditModel.getIp(), auditModel.getDataCenter());
+  }
+
+  private String assembleAuditKey(InstanceConfigAuditModel auditModel) {
+    return STRING_JOINER.join(auditModel.getAppId(), auditModel.getClusterName(),
+        auditModel.getIp(), auditModel.getDataCenter(), auditModel.getConfigAppId(),
+        auditModel.getConfigNamespace());
+  }
+
   public static class InstanceConfigAuditModel {
     private String appId;
     private String clusterName;
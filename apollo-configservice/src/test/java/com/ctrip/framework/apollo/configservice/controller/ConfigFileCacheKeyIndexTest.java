@@ -0,0 +1,89 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.controller;
+
+import com.google.common.collect.Sets;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigFileCacheKeyIndexTest {
+  private ConfigFileCacheKeyIndex cacheKeyIndex;
+  private String someCacheKey;
+  private String anotherCacheKey;
+  private String someWatchKey;
+  private String anotherWatchKey;
+
+  @Before
+  public void setUp() throws Exception {
+    cacheKeyIndex = new ConfigFileCacheKeyIndex();
+    someCacheKey = "someCacheKey";
+    anotherCacheKey = "anotherCacheKey";
+    someWatchKey = "someWatchKey";
+    anotherWatchKey = "anotherWatchKey";
+  }
+
+  @Test
+  public void testRegisterAndUnregister() throws Exception {
+    cacheKeyIndex.register(someCacheKey, Sets.newHashSet(someWatchKey, anotherWatchKey));
+    cacheKeyIndex.register(anotherCacheKey, Sets.newHashSet(someWatchKey));
+
+    assertEquals(Sets.newHashSet(someCacheKey, anotherCacheKey),
+        cacheKeyIndex.getCacheKeys(someWatchKey));
+    assertEquals(Sets.newHashSet(someCacheKey), cacheKeyIndex.getCacheKeys(anotherWatchKey));
+    assertEquals(Sets.newHashSet(someWatchKey, anotherWatchKey),
+        cacheKeyIndex.getWatchedKeys(someCacheKey));
+
+    cacheKeyIndex.unregister(someCacheKey);
+
+    assertEquals(Sets.newHashSet(anotherCacheKey), cacheKeyIndex.getCacheKeys(someWatchKey));
+    assertTrue(cacheKeyIndex.getCacheKeys(anotherWatchKey).isEmpty());
+    assertTrue(cacheKeyIndex.getWatchedKeys(someCacheKey).isEmpty());
+
+    cacheKeyIndex.unregister(anotherCacheKey);
+
+    assertTrue(cacheKeyIndex.isEmpty());
+  }
+
+  @Test
+  public void testRegisterAgainWithOtherWatchedKeys() throws Exception {
+    cacheKeyIndex.register(someCacheKey, Sets.newHashSet(someWatchKey, anotherWatchKey));
+    cacheKeyIndex.register(someCacheKey, Sets.newHashSet(anotherWatchKey));
+
+    assertTrue(cacheKeyIndex.getCacheKeys(someWatchKey).isEmpty());
+    assertEquals(Sets.newHashSet(someCacheKey), cacheKeyIndex.getCacheKeys(anotherWatchKey));
+    assertEquals(Sets.newHashSet(anotherWatchKey), cacheKeyIndex.getWatchedKeys(someCacheKey));
+  }
+
+  @Test
+  public void testUnregisterWhileIterating() throws Exception {
+    cacheKeyIndex.register(someCacheKey, Sets.newHashSet(someWatchKey));
+    cacheKeyIndex.register(anotherCacheKey, Sets.newHashSet(someWatchKey));
+
+    int iterated = 0;
+    for (String cacheKey : cacheKeyIndex.getCacheKeys(someWatchKey)) {
+      cacheKeyIndex.unregister(cacheKey);
+      iterated++;
+    }
+
+    assertEquals(2, iterated);
+    assertTrue(cacheKeyIndex.isEmpty());
+  }
+}
@@ -16,19 +16,21 @@
  */
 package com.ctrip.framework.apollo.configservice.controller;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.grayReleaseRule.GrayReleaseRulesHolder;
 import com.ctrip.framework.apollo.biz.message.Topics;
+import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
 import com.ctrip.framework.apollo.core.dto.ApolloConfig;
 import com.google.common.cache.Cache;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.lang.reflect.Type;
 import java.util.Map;
 import java.util.Set;
@@ -44,6 +46,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
@@ -64,6 +67,10 @@ public class ConfigFileControllerTest {
   private NamespaceUtil namespaceUtil;
   @Mock
   private GrayReleaseRulesHolder grayReleaseRulesHolder;
+  @Mock
+  private BizConfig bizConfig;
+  @Mock
+  private MeterRegistry meterRegistry;
   private ConfigFileController configFileController;
   private String someAppId;
   private String someClusterName;
@@ -75,15 +82,15 @@ public class ConfigFileControllerTest {
   private HttpServletResponse someResponse;
   @Mock
   private HttpServletRequest someRequest;
-  Multimap<String, String> watchedKeys2CacheKey;
-  Multimap<String, String> cacheKey2WatchedKeys;
+  private ConfigFileCacheKeyIndex cacheKeyIndex;
 
   private static final Gson GSON = new Gson();
 
   @Before
   public void setUp() throws Exception {
     configFileController = new ConfigFileController(
-        configController, namespaceUtil, watchKeysUtil, grayReleaseRulesHolder
+        configController, namespaceUtil, watchKeysUtil, grayReleaseRulesHolder, bizConfig,
+        meterRegistry
     );
 
     someAppId = "someAppId";
@@ -98,12 +105,8 @@ public class ConfigFileControllerTest {
     when(grayReleaseRulesHolder.hasGrayReleaseRule(anyString(), anyString(), anyString()))
         .thenReturn(false);
 
-    watchedKeys2CacheKey =
-        (Multimap<String, String>) ReflectionTestUtils
-            .getField(configFileController, "watchedKeys2CacheKey");
-    cacheKey2WatchedKeys =
-        (Multimap<String, String>) ReflectionTestUtils
-            .getField(configFileController, "cacheKey2WatchedKeys");
+    cacheKeyIndex = (ConfigFileCacheKeyIndex) ReflectionTestUtils
+        .getField(configFileController, "cacheKeyIndex");
   }
 
   @Test
@@ -137,12 +140,9 @@ public class ConfigFileControllerTest {
             .queryConfigAsProperties(someAppId, someClusterName, someNamespace, someDataCenter,
                 someClientIp, someClientLabel, someRequest, someResponse);
 
-    assertEquals(2, watchedKeys2CacheKey.size());
-    assertEquals(2, cacheKey2WatchedKeys.size());
-    assertTrue(watchedKeys2CacheKey.containsEntry(someWatchKey, cacheKey));
-    assertTrue(watchedKeys2CacheKey.containsEntry(anotherWatchKey, cacheKey));
-    assertTrue(cacheKey2WatchedKeys.containsEntry(cacheKey, someWatchKey));
-    assertTrue(cacheKey2WatchedKeys.containsEntry(cacheKey, anotherWatchKey));
+    assertEquals(Sets.newHashSet(cacheKey), cacheKeyIndex.getCacheKeys(someWatchKey));
+    assertEquals(Sets.newHashSet(cacheKey), cacheKeyIndex.getCacheKeys(anotherWatchKey));
+    assertEquals(watchKeys, cacheKeyIndex.getWatchedKeys(cacheKey));
 
     assertEquals(HttpStatus.OK, response.getStatusCode());
     assertTrue(response.getBody().contains(String.format("%s=%s", someKey, someValue)));
@@ -195,12 +195,21 @@ public class ConfigFileControllerTest {
     String someKey = "someKey";
     String someValue = "someValue";
     Type responseType = new TypeToken<Map<String, String>>(){}.getType();
+    long someGrayReleaseId = 1;
 
     Map<String, String> configurations =
         ImmutableMap.of(someKey, someValue);
+    String someWatchKey = ReleaseMessageKeyGenerator.generate(someAppId, someClusterName,
+        someNamespace);
+    Set<String> watchKeys = Sets.newHashSet(someWatchKey);
 
     when(grayReleaseRulesHolder.hasGrayReleaseRule(someAppId, someClientIp, someNamespace))
         .thenReturn(true);
+    when(grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(someAppId, someClientIp,
+        someClientLabel, someAppId, someClusterName, someNamespace)).thenReturn(someGrayReleaseId);
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someClusterName, someNamespace, someDataCenter))
+        .thenReturn(watchKeys);
 
     ApolloConfig someApolloConfig = mock(ApolloConfig.class);
     when(someApolloConfig.getConfigurations()).thenReturn(configurations);
@@ -218,14 +227,70 @@ public class ConfigFileControllerTest {
             .queryConfigAsJson(someAppId, someClusterName, someNamespace, someDataCenter,
                 someClientIp, someClientLabel, someRequest, someResponse);
 
-    verify(configController, times(2))
+    verify(configController, times(1))
         .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, someClientLabel, null,
             someRequest, someResponse);
 
+    String cacheKey = configFileController.assembleCacheKey(
+        ConfigFileController.ConfigFileOutputFormat.JSON, someAppId, someClusterName,
+        someNamespace, someDataCenter);
+    String grayReleaseCacheKey = configFileController.assembleGrayReleaseCacheKey(cacheKey,
+        String.valueOf(someGrayReleaseId));
+
     assertEquals(HttpStatus.OK, response.getStatusCode());
     assertEquals(configurations, GSON.fromJson(response.getBody(), responseType));
-    assertTrue(watchedKeys2CacheKey.isEmpty());
-    assertTrue(cacheKey2WatchedKeys.isEmpty());
+    assertEquals(response, anotherResponse);
+    assertNotEquals(cacheKey, grayReleaseCacheKey);
+    assertEquals(Sets.newHashSet(grayReleaseCacheKey), cacheKeyIndex.getCacheKeys(someWatchKey));
+    assertEquals(watchKeys, cacheKeyIndex.getWatchedKeys(grayReleaseCacheKey));
+    assertTrue(cacheKeyIndex.getWatchedKeys(cacheKey).isEmpty());
+
+    ReleaseMessage someReleaseMessage = mock(ReleaseMessage.class);
+    when(someReleaseMessage.getMessage()).thenReturn(someWatchKey);
+
+    configFileController.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    assertTrue(cacheKeyIndex.isEmpty());
+  }
+
+  @Test
+  public void testQueryConfigWithGrayReleaseChanged() throws Exception {
+    String someKey = "someKey";
+    String someValue = "someValue";
+    long someGrayReleaseId = 1;
+    long anotherGrayReleaseId = 2;
+
+    Map<String, String> configurations =
+        ImmutableMap.of(someKey, someValue);
+    String someWatchKey = ReleaseMessageKeyGenerator.generate(someAppId, someClusterName,
+        someNamespace);
+
+    when(grayReleaseRulesHolder.hasGrayReleaseRule(someAppId, someClientIp, someNamespace))
+        .thenReturn(true);
+    when(grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(someAppId, someClientIp,
+        someClientLabel, someAppId, someClusterName, someNamespace))
+        .thenReturn(someGrayReleaseId, anotherGrayReleaseId);
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someClusterName, someNamespace, someDataCenter))
+        .thenReturn(Sets.newHashSet(someWatchKey));
+
+    ApolloConfig someApolloConfig = mock(ApolloConfig.class);
+    when(someApolloConfig.getConfigurations()).thenReturn(configurations);
+    when(configController
+        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, someClientLabel, null,
+            someRequest, someResponse)).thenReturn(someApolloConfig);
+
+    ResponseEntity<String> response =
+        configFileController
+            .queryConfigAsJson(someAppId, someClusterName, someNamespace, someDataCenter,
+                someClientIp, someClientLabel, someRequest, someResponse);
+
+    verify(configController, times(2))
+        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, someClientLabel, null,
+            someRequest, someResponse);
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertTrue(cacheKeyIndex.isEmpty());
   }
 
   @Test
@@ -244,15 +309,42 @@ public class ConfigFileControllerTest {
     cache.put(someCacheKey, someValue);
     cache.put(anotherCacheKey, someValue);
 
-    watchedKeys2CacheKey.putAll(someWatchKey, Lists.newArrayList(someCacheKey, anotherCacheKey));
-    watchedKeys2CacheKey.putAll(anotherWatchKey, Lists.newArrayList(someCacheKey, anotherCacheKey));
-
-    cacheKey2WatchedKeys.putAll(someCacheKey, Lists.newArrayList(someWatchKey, anotherWatchKey));
-    cacheKey2WatchedKeys.putAll(anotherCacheKey, Lists.newArrayList(someWatchKey, anotherWatchKey));
+    cacheKeyIndex.register(someCacheKey, Sets.newHashSet(someWatchKey, anotherWatchKey));
+    cacheKeyIndex.register(anotherCacheKey, Sets.newHashSet(someWatchKey, anotherWatchKey));
 
     configFileController.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
 
-    assertTrue(watchedKeys2CacheKey.isEmpty());
-    assertTrue(cacheKey2WatchedKeys.isEmpty());
+    assertTrue(cacheKeyIndex.isEmpty());
+  }
+
+  @Test
+  public void testLocalCacheMetrics() throws Exception {
+    SimpleMeterRegistry simpleMeterRegistry = new SimpleMeterRegistry();
+    when(bizConfig.isConfigServiceCacheStatsEnabled()).thenReturn(true);
+    configFileController = new ConfigFileController(
+        configController, namespaceUtil, watchKeysUtil, grayReleaseRulesHolder, bizConfig,
+        simpleMeterRegistry
+    );
+
+    ApolloConfig someApolloConfig = mock(ApolloConfig.class);
+    when(someApolloConfig.getConfigurations()).thenReturn(ImmutableMap.of("someKey", "someValue"));
+    when(configController
+        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, someClientLabel, null,
+            someRequest, someResponse)).thenReturn(someApolloConfig);
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someClusterName, someNamespace, someDataCenter))
+        .thenReturn(Sets.newHashSet("someWatchKey"));
+
+    for (int i = 0; i < 3; i++) {
+      configFileController.queryConfigAsJson(someAppId, someClusterName, someNamespace,
+          someDataCenter, someClientIp, someClientLabel, someRequest, someResponse);
+    }
+
+    assertEquals(2, simpleMeterRegistry.get("cache.gets").tag("cache", "config_file_cache")
+        .tag("result", "hit").functionCounter().count(), 0);
+    assertEquals(1, simpleMeterRegistry.get("cache.gets").tag("cache", "config_file_cache")
+        .tag("result", "miss").functionCounter().count(), 0);
+    assertEquals(0, simpleMeterRegistry.get("cache.evictions").tag("cache", "config_file_cache")
+        .functionCounter().count(), 0);
   }
 }
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class CompactLongCacheTest {
+  private static final long ABSENT = -1;
+  private AtomicLong clock;
+
+  @Before
+  public void setUp() throws Exception {
+    clock = new AtomicLong(1000);
+  }
+
+  @Test
+  public void testGetAndPut() throws Exception {
+    CompactLongCache cache = new CompactLongCache(100, 1, TimeUnit.HOURS, false, clock::get);
+
+    assertEquals(ABSENT, cache.get(1, ABSENT));
+
+    cache.put(1, 10);
+    cache.put(0, 20);
+    cache.put(1, 11);
+
+    assertEquals(11, cache.get(1, ABSENT));
+    assertEquals(20, cache.get(0, ABSENT));
+    assertEquals(2, cache.hitCount());
+    assertEquals(1, cache.missCount());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedIsEvicted() throws Exception {
+    CompactLongCache cache = new CompactLongCache(1, 1, TimeUnit.HOURS, true, clock::get);
+    int capacity = cache.capacity();
+
+    for (long key = 0; key < capacity; key++) {
+      cache.put(key, key);
+      clock.addAndGet(1000);
+    }
+    //access the first key, so the second one becomes the least recently used
+    assertEquals(0, cache.get(0, ABSENT));
+    clock.addAndGet(1000);
+
+    cache.put(capacity, capacity);
+
+    assertEquals(0, cache.get(0, ABSENT));
+    assertEquals(ABSENT, cache.get(1, ABSENT));
+    assertEquals(capacity, cache.get(capacity, ABSENT));
+    assertEquals(1, cache.evictionCount());
+  }
+
+  @Test
+  public void testExpireAfterWrite() throws Exception {
+    CompactLongCache cache = new CompactLongCache(100, 10, TimeUnit.SECONDS, false, clock::get);
+
+    cache.put(1, 10);
+    clock.addAndGet(9000);
+
+    assertEquals(10, cache.get(1, ABSENT));
+
+    clock.addAndGet(1000);
+
+    assertEquals(ABSENT, cache.get(1, ABSENT));
+  }
+
+  @Test
+  public void testExpireAfterAccess() throws Exception {
+    CompactLongCache cache = new CompactLongCache(100, 10, TimeUnit.SECONDS, true, clock::get);
+
+    cache.put(1, 10);
+    clock.addAndGet(9000);
+
+    assertEquals(10, cache.get(1, ABSENT));
+
+    clock.addAndGet(9000);
+
+    assertEquals(10, cache.get(1, ABSENT));
+
+    clock.addAndGet(10000);
+
+    assertEquals(ABSENT, cache.get(1, ABSENT));
+  }
+}
@@ -16,19 +16,35 @@
  */
 package com.ctrip.framework.apollo.configservice.util;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Instance;
 import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
+import com.ctrip.framework.apollo.biz.entity.NamespaceInstanceCount;
 import com.ctrip.framework.apollo.biz.service.InstanceService;
+import com.ctrip.framework.apollo.biz.service.NamespaceInstanceCountService;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Queues;
+import com.google.common.collect.Sets;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.Objects;
 import java.util.concurrent.BlockingQueue;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 
@@ -41,7 +57,12 @@ public class InstanceConfigAuditUtilTest {
 
   @Mock
   private InstanceService instanceService;
-  private BlockingQueue<InstanceConfigAuditUtil.InstanceConfigAuditModel> audits;
+  @Mock
+  private NamespaceInstanceCountService namespaceInstanceCountService;
+  @Mock
+  private BizConfig bizConfig;
+  private SimpleMeterRegistry meterRegistry;
+  private List<BlockingQueue<InstanceConfigAuditUtil.InstanceConfigAuditModel>> auditShards;
 
   private String someAppId;
   private String someConfigClusterName;
@@ -56,10 +77,17 @@ public class InstanceConfigAuditUtilTest {
 
   @Before
   public void setUp() throws Exception {
-    instanceConfigAuditUtil = new InstanceConfigAuditUtil(instanceService);
+    when(bizConfig.instanceConfigAuditShards()).thenReturn(1);
+    when(bizConfig.instanceConfigAuditQueueSize()).thenReturn(2);
+    when(bizConfig.instanceConfigAuditFlushIntervalInMilli()).thenReturn(10);
+    when(bizConfig.instanceConfigAuditInstanceCacheSize()).thenReturn(100);
+    when(bizConfig.instanceConfigAuditReleaseKeyCacheSize()).thenReturn(100);
+    meterRegistry = new SimpleMeterRegistry();
+    instanceConfigAuditUtil = new InstanceConfigAuditUtil(instanceService,
+        namespaceInstanceCountService, bizConfig, meterRegistry);
 
-    audits = (BlockingQueue<InstanceConfigAuditUtil.InstanceConfigAuditModel>)
-        ReflectionTestUtils.getField(instanceConfigAuditUtil, "audits");
+    auditShards = (List<BlockingQueue<InstanceConfigAuditUtil.InstanceConfigAuditModel>>)
+        ReflectionTestUtils.getField(instanceConfigAuditUtil, "auditShards");
 
     someAppId = "someAppId";
     someClusterName = "someClusterName";
@@ -80,29 +108,190 @@ public class InstanceConfigAuditUtilTest {
     boolean result = instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
         someIp, someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey);
 
-    InstanceConfigAuditUtil.InstanceConfigAuditModel audit = audits.poll();
+    InstanceConfigAuditUtil.InstanceConfigAuditModel audit = auditShards.get(0).poll();
 
     assertTrue(result);
     assertTrue(Objects.equals(someAuditModel, audit));
   }
 
+  @Test
+  public void testAuditDroppedWhenQueueIsFull() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter, someIp,
+          someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey);
+    }
+
+    assertEquals(2, auditShards.get(0).size());
+    assertEquals(2, meterRegistry.get("instance.config.audit.queued").gauge().value(), 0);
+    assertEquals(1, meterRegistry.get("instance.config.audit.dropped").functionCounter().count(),
+        0);
+  }
+
+  @Test
+  public void testAggregateAudits() throws Exception {
+    String anotherReleaseKey = "anotherReleaseKey";
+    String anotherConfigNamespace = "anotherConfigNamespace";
+    InstanceConfigAuditUtil.InstanceConfigAuditModel anotherAuditModel =
+        new InstanceConfigAuditUtil.InstanceConfigAuditModel(someAppId, someClusterName,
+            someDataCenter, someIp, someConfigAppId, someConfigClusterName, someConfigNamespace,
+            anotherReleaseKey);
+    InstanceConfigAuditUtil.InstanceConfigAuditModel yetAnotherAuditModel =
+        new InstanceConfigAuditUtil.InstanceConfigAuditModel(someAppId, someClusterName,
+            someDataCenter, someIp, someConfigAppId, someConfigClusterName, anotherConfigNamespace,
+            someReleaseKey);
+    BlockingQueue<InstanceConfigAuditUtil.InstanceConfigAuditModel> auditShard =
+        Queues.newLinkedBlockingQueue(Lists.newArrayList(someAuditModel, anotherAuditModel,
+            yetAnotherAuditModel));
+
+    Collection<InstanceConfigAuditUtil.InstanceConfigAuditModel> audits =
+        instanceConfigAuditUtil.aggregateAudits(auditShard);
+
+    assertEquals(Lists.newArrayList(anotherAuditModel, yetAnotherAuditModel),
+        Lists.newArrayList(audits));
+    assertTrue(auditShard.isEmpty());
+  }
+
   @Test
   public void testDoAudit() throws Exception {
     long someInstanceId = 1;
     Instance someInstance = mock(Instance.class);
 
     when(someInstance.getId()).thenReturn(someInstanceId);
-    when(instanceService.createInstance(any(Instance.class))).thenReturn(someInstance);
+    when(instanceService.createInstances(anyList()))
+        .thenReturn(Lists.newArrayList(someInstance));
+
+    instanceConfigAuditUtil.doAudits(Lists.newArrayList(someAuditModel));
+
+    verify(instanceService, times(1)).findInstancesByAppIdsAndIps(Sets.newHashSet(someAppId),
+        Sets.newHashSet(someIp));
+    verify(instanceService, times(1)).createInstances(anyList());
+    verify(instanceService, times(1)).findInstanceConfigsByInstanceIds(
+        Sets.newHashSet(someInstanceId));
+    verify(instanceService, times(1)).createInstanceConfigs(anyList());
+  }
+
+  @Test
+  public void testDoAuditsOfInstancesInBatch() throws Exception {
+    String anotherIp = "anotherIp";
+    String yetAnotherIp = "yetAnotherIp";
+    Instance someInstance = assembleInstance(1, someIp);
+    InstanceConfigAuditUtil.InstanceConfigAuditModel anotherAuditModel =
+        new InstanceConfigAuditUtil.InstanceConfigAuditModel(someAppId, someClusterName,
+            someDataCenter, anotherIp, someConfigAppId, someConfigClusterName,
+            someConfigNamespace, someReleaseKey);
+    InstanceConfigAuditUtil.InstanceConfigAuditModel yetAnotherAuditModel =
+        new InstanceConfigAuditUtil.InstanceConfigAuditModel(someAppId, someClusterName,
+            someDataCenter, yetAnotherIp, someConfigAppId, someConfigClusterName,
+            someConfigNamespace, someReleaseKey);
+
+    when(instanceService.findInstancesByAppIdsAndIps(Sets.newHashSet(someAppId),
+        Sets.newHashSet(someIp, anotherIp, yetAnotherIp)))
+        .thenReturn(Lists.newArrayList(someInstance));
+    //one of the missing instances is created by others concurrently
+    when(instanceService.createInstances(anyList()))
+        .thenThrow(new DataIntegrityViolationException("duplicate"));
+    when(instanceService.createInstance(any(Instance.class))).thenAnswer(invocation -> {
+      Instance instance = invocation.getArgument(0);
+      if (anotherIp.equals(instance.getIp())) {
+        throw new DataIntegrityViolationException("duplicate");
+      }
+      instance.setId(3);
+      return instance;
+    });
+    when(instanceService.findInstance(someAppId, someClusterName, someDataCenter, anotherIp))
+        .thenReturn(assembleInstance(2, anotherIp));
+
+    instanceConfigAuditUtil.doAudits(Lists.newArrayList(someAuditModel, anotherAuditModel,
+        yetAnotherAuditModel));
+
+    ArgumentCaptor<List<Instance>> created = ArgumentCaptor.forClass(List.class);
+    verify(instanceService, times(1)).createInstances(created.capture());
+    assertEquals(2, created.getValue().size());
+    verify(instanceService, times(1)).findInstanceConfigsByInstanceIds(
+        Sets.newHashSet(1L, 2L, 3L));
 
-    instanceConfigAuditUtil.doAudit(someAuditModel);
+    //the instance ids are cached
+    instanceConfigAuditUtil.doAudits(Lists.newArrayList(someAuditModel, anotherAuditModel,
+        yetAnotherAuditModel));
 
-    verify(instanceService, times(1)).findInstance(someAppId, someClusterName, someDataCenter,
-        someIp);
-    verify(instanceService, times(1)).createInstance(any(Instance.class));
-    verify(instanceService, times(1)).findInstanceConfig(someInstanceId, someConfigAppId,
-        someConfigNamespace);
-    verify(instanceService, times(1)).createInstanceConfig(any(InstanceConfig.class));
+    verify(instanceService, times(1)).findInstancesByAppIdsAndIps(any(), any());
   }
 
+  @Test
+  public void testDoAuditsInBatch() throws Exception {
+    long someInstanceId = 1;
+    String anotherConfigNamespace = "anotherConfigNamespace";
+    String anotherReleaseKey = "anotherReleaseKey";
+    Instance someInstance = assembleInstance(someInstanceId, someIp);
+    InstanceConfig someInstanceConfig = new InstanceConfig();
+    someInstanceConfig.setId(2);
+    someInstanceConfig.setInstanceId(someInstanceId);
+    someInstanceConfig.setConfigAppId(someConfigAppId);
+    someInstanceConfig.setConfigClusterName(someConfigClusterName);
+    someInstanceConfig.setConfigNamespaceName(someConfigNamespace);
+    someInstanceConfig.setReleaseKey(anotherReleaseKey);
+    someInstanceConfig.setDataChangeLastModifiedTime(new Date());
+    InstanceConfigAuditUtil.InstanceConfigAuditModel anotherAuditModel =
+        new InstanceConfigAuditUtil.InstanceConfigAuditModel(someAppId, someClusterName,
+            someDataCenter, someIp, someConfigAppId, someConfigClusterName, anotherConfigNamespace,
+            someReleaseKey);
+
+    when(instanceService.findInstancesByAppIdsAndIps(Sets.newHashSet(someAppId),
+        Sets.newHashSet(someIp))).thenReturn(Lists.newArrayList(someInstance));
+    when(instanceService.findInstanceConfigsByInstanceIds(Sets.newHashSet(someInstanceId)))
+        .thenReturn(Lists.newArrayList(someInstanceConfig));
+    when(instanceService.getValidInstanceConfigDate())
+        .thenReturn(new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1)));
+    when(instanceService.updateInstanceConfigs(anyList()))
+        .thenAnswer(invocation -> invocation.getArgument(0));
+    when(instanceService.createInstanceConfigs(anyList()))
+        .thenAnswer(invocation -> invocation.getArgument(0));
+
+    instanceConfigAuditUtil.doAudits(Lists.newArrayList(someAuditModel, anotherAuditModel));
 
+    ArgumentCaptor<List<InstanceConfig>> updated = ArgumentCaptor.forClass(List.class);
+    ArgumentCaptor<List<InstanceConfig>> created = ArgumentCaptor.forClass(List.class);
+    verify(instanceService, times(1)).findInstancesByAppIdsAndIps(any(), any());
+    verify(instanceService, never()).createInstances(anyList());
+    verify(instanceService, times(1)).updateInstanceConfigs(updated.capture());
+    verify(instanceService, times(1)).createInstanceConfigs(created.capture());
+
+    assertEquals(1, updated.getValue().size());
+    assertEquals(someReleaseKey, updated.getValue().get(0).getReleaseKey());
+    assertEquals(1, created.getValue().size());
+    assertEquals(anotherConfigNamespace, created.getValue().get(0).getConfigNamespaceName());
+
+    //the updated instance config is moved from the old release key to the new one
+    ArgumentCaptor<Collection<NamespaceInstanceCount>> countDeltas =
+        ArgumentCaptor.forClass(Collection.class);
+    verify(namespaceInstanceCountService, times(1)).increaseInstanceCounts(countDeltas.capture());
+    Map<String, Long> deltas = countDeltas.getValue().stream().collect(Collectors.toMap(
+        delta -> delta.getConfigNamespaceName() + "+" + delta.getReleaseKey(),
+        NamespaceInstanceCount::getInstanceCount));
+    assertEquals(3, deltas.size());
+    assertEquals(-1, deltas.get(someConfigNamespace + "+" + anotherReleaseKey).longValue());
+    assertEquals(1, deltas.get(someConfigNamespace + "+" + someReleaseKey).longValue());
+    assertEquals(1, deltas.get(anotherConfigNamespace + "+" + someReleaseKey).longValue());
+
+    //the same release keys are skipped
+    instanceConfigAuditUtil.doAudits(Lists.newArrayList(someAuditModel, anotherAuditModel));
+
+    verify(instanceService, times(1)).findInstanceConfigsByInstanceIds(
+        Sets.newHashSet(someInstanceId));
+    verify(namespaceInstanceCountService, times(1)).increaseInstanceCounts(any());
+    assertEquals(2, meterRegistry.get("cache.gets").tag("cache", "instance_config_release_key_cache")
+        .tag("result", "hit").functionCounter().count(), 0);
+    assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "instance_cache")
+        .tag("result", "miss").functionCounter().count(), 0);
+  }
+
+  private Instance assembleInstance(long id, String ip) {
+    Instance instance = new Instance();
+    instance.setId(id);
+    instance.setAppId(someAppId);
+    instance.setClusterName(someClusterName);
+    instance.setDataCenter(someDataCenter);
+    instance.setIp(ip);
+    return instance;
+  }
 }
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.openapi.entity;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.PrePersist;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * Number of the permits of a consumer token leased by the portals in the current and the previous
+ * time windows, for the rate limit shared by all the portals. There is one row per token, which is
+ * rolled forward to the next window.
+ */
+@Entity
+@Table(name = "`ConsumerRateLimitWindow`", uniqueConstraints = @UniqueConstraint(
+    columnNames = {"`Token`"}))
+public class ConsumerRateLimitWindow {
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @Column(name = "`Id`")
+  private long id;
+
+  @Column(name = "`Token`", nullable = false)
+  private String token;
+
+  @Column(name = "`WindowStart`", nullable = false)
+  private long windowStart;
+
+  @Column(name = "`PermitCount`", nullable = false)
+  private int permitCount;
+
+  @Column(name = "`PreviousPermitCount`", nullable = false)
+  private int previousPermitCount;
+
+  @Column(name = "`DataChange_CreatedTime`")
+  private Date dataChangeCreatedTime;
+
+  @Column(name = "`DataChange_LastTime`")
+  private Date dataChangeLastModifiedTime;
+
+  public ConsumerRateLimitWindow() {
+  }
+
+  public ConsumerRateLimitWindow(String token, long windowStart, int permitCount,
+      int previousPermitCount) {
+    this.token = token;
+    this.windowStart = windowStart;
+    this.permitCount = permitCount;
+    this.previousPermitCount = previousPermitCount;
+  }
+
+  @PrePersist
+  protected void prePersist() {
+    if (this.dataChangeCreatedTime == null) {
+      this.dataChangeCreatedTime = new Date();
+    }
+    if (this.dataChangeLastModifiedTime == null) {
+      dataChangeLastModifiedTime = this.dataChangeCreatedTime;
+    }
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public void setId(long id) {
+    this.id = id;
+  }
+
+  public String getToken() {
+    return token;
+  }
+
+  public void setToken(String token) {
+    this.token = token;
+  }
+
+  public long getWindowStart() {
+    return windowStart;
+  }
+
+  public void setWindowStart(long windowStart) {
+    this.windowStart = windowStart;
+  }
+
+  public int getPermitCount() {
+    return permitCount;
+  }
+
+  public void setPermitCount(int permitCount) {
+    this.permitCount = permitCount;
+  }
+
+  public int getPreviousPermitCount() {
+    return previousPermitCount;
+  }
+
+  public void setPreviousPermitCount(int previousPermitCount) {
+    this.previousPermitCount = previousPermitCount;
+  }
+
+  public Date getDataChangeCreatedTime() {
+    return dataChangeCreatedTime;
+  }
+
+  public void setDataChangeCreatedTime(Date dataChangeCreatedTime) {
+    this.dataChangeCreatedTime = dataChangeCreatedTime;
+  }
+
+  public Date getDataChangeLastModifiedTime() {
+    return dataChangeLastModifiedTime;
+  }
+
+  public void setDataChangeLastModifiedTime(Date dataChangeLastModifiedTime) {
+    this.dataChangeLastModifiedTime = dataChangeLastModifiedTime;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .omitNullValues()
+        .add("id", id)
+        .add("windowStart", windowStart)
+        .add("permitCount", permitCount)
+        .add("previousPermitCount", previousPermitCount)
+        .toString();
+  }
+}
@@ -19,6 +19,7 @@ package com.ctrip.framework.apollo.openapi.filter;
 import com.ctrip.framework.apollo.openapi.entity.ConsumerToken;
 import com.ctrip.framework.apollo.openapi.util.ConsumerAuditUtil;
 import com.ctrip.framework.apollo.openapi.util.ConsumerAuthUtil;
+import com.ctrip.framework.apollo.openapi.util.ConsumerRateLimitUtil;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.RateLimiter;
@@ -47,6 +48,8 @@ public class ConsumerAuthenticationFilter implements Filter {
 
   private final ConsumerAuthUtil consumerAuthUtil;
   private final ConsumerAuditUtil consumerAuditUtil;
+  //null to apply the rate limits by each portal on its own
+  private final ConsumerRateLimitUtil consumerRateLimitUtil;
 
   private static final int WARMUP_MILLIS = 1000; // ms
   private static final int RATE_LIMITER_CACHE_MAX_SIZE = 20000;
@@ -58,8 +61,14 @@ public class ConsumerAuthenticationFilter implements Filter {
       .maximumSize(RATE_LIMITER_CACHE_MAX_SIZE).build();
 
   public ConsumerAuthenticationFilter(ConsumerAuthUtil consumerAuthUtil, ConsumerAuditUtil consumerAuditUtil) {
+    this(consumerAuthUtil, consumerAuditUtil, null);
+  }
+
+  public ConsumerAuthenticationFilter(ConsumerAuthUtil consumerAuthUtil,
+      ConsumerAuditUtil consumerAuditUtil, ConsumerRateLimitUtil consumerRateLimitUtil) {
     this.consumerAuthUtil = consumerAuthUtil;
     this.consumerAuditUtil = consumerAuditUtil;
+    this.consumerRateLimitUtil = consumerRateLimitUtil;
   }
 
   @Override
@@ -84,9 +93,7 @@ public class ConsumerAuthenticationFilter implements Filter {
     Integer rateLimit = consumerToken.getRateLimit();
     if (null != rateLimit && rateLimit > 0) {
       try {
-        ImmutablePair<Long, RateLimiter> rateLimiterPair = getOrCreateRateLimiterPair(consumerToken.getToken(), rateLimit);
-        long warmupToMillis = rateLimiterPair.getLeft() + WARMUP_MILLIS;
-        if (System.currentTimeMillis() > warmupToMillis && !rateLimiterPair.getRight().tryAcquire()) {
+        if (!tryAcquire(consumerToken.getToken(), rateLimit)) {
           response.sendError(TOO_MANY_REQUESTS, "Too Many Requests, the flow is limited");
           return;
         }
@@ -109,6 +116,15 @@ public class ConsumerAuthenticationFilter implements Filter {
     //nothing
   }
 
+  private boolean tryAcquire(String token, Integer rateLimit) {
+    if (consumerRateLimitUtil != null && consumerRateLimitUtil.isClusterRateLimitEnabled()) {
+      return consumerRateLimitUtil.tryAcquire(token, rateLimit);
+    }
+    ImmutablePair<Long, RateLimiter> rateLimiterPair = getOrCreateRateLimiterPair(token, rateLimit);
+    long warmupToMillis = rateLimiterPair.getLeft() + WARMUP_MILLIS;
+    return System.currentTimeMillis() <= warmupToMillis || rateLimiterPair.getRight().tryAcquire();
+  }
+
   private ImmutablePair<Long, RateLimiter> getOrCreateRateLimiterPair(String key, Integer limitCount) {
     try {
       return LIMITER.get(key, () ->
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.openapi.repository;
+
+import com.ctrip.framework.apollo.openapi.entity.ConsumerAudit;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.Session;
+
+public class ConsumerAuditRepositoryCustomImpl implements ConsumerAuditRepositoryCustom {
+  private static final int BATCH_SIZE = 500;
+  private static final String INSERT_SQL = "INSERT INTO `ConsumerAudit` (`ConsumerId`, `Uri`,"
+      + " `Method`, `DataChange_CreatedTime`, `DataChange_LastTime`) VALUES (?, ?, ?, ?, ?)";
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Override
+  public void batchInsert(List<ConsumerAudit> consumerAudits) {
+    Date now = new Date();
+    entityManager.unwrap(Session.class).doWork(connection -> {
+      try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+        for (int from = 0; from < consumerAudits.size(); from += BATCH_SIZE) {
+          for (ConsumerAudit consumerAudit : consumerAudits.subList(from,
+              Math.min(from + BATCH_SIZE, consumerAudits.size()))) {
+            Date createdTime = consumerAudit.getDataChangeCreatedTime() == null ? now
+                : consumerAudit.getDataChangeCreatedTime();
+            Date lastModifiedTime = consumerAudit.getDataChangeLastModifiedTime() == null
+                ? createdTime : consumerAudit.getDataChangeLastModifiedTime();
+            statement.setLong(1, consumerAudit.getConsumerId());
+            statement.setString(2, consumerAudit.getUri());
+            statement.setString(3, consumerAudit.getMethod());
+            statement.setTimestamp(4, new Timestamp(createdTime.getTime()));
+            statement.setTimestamp(5, new Timestamp(lastModifiedTime.getTime()));
+            statement.addBatch();
+          }
+          statement.executeBatch();
+        }
+      }
+    });
+  }
+}
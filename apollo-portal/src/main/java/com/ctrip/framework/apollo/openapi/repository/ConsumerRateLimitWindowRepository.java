@@ -0,0 +1,54 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.openapi.repository;
+
+import com.ctrip.framework.apollo.openapi.entity.ConsumerRateLimitWindow;
+
+import java.util.Date;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.PagingAndSortingRepository;
+
+public interface ConsumerRateLimitWindowRepository extends
+    PagingAndSortingRepository<ConsumerRateLimitWindow, Long> {
+
+  ConsumerRateLimitWindow findByToken(String token);
+
+  /**
+   * Lease the permits if the permits leased in the window would not exceed the max permits
+   *
+   * @return 1 if leased, 0 if the token is in another window or the permits are not enough
+   */
+  @Modifying
+  @Query("update ConsumerRateLimitWindow set permitCount = permitCount + ?3,"
+      + " dataChangeLastModifiedTime = ?5 where token = ?1 and windowStart = ?2"
+      + " and permitCount + ?3 <= ?4")
+  int leasePermits(String token, long windowStart, int permits, int maxPermits, Date date);
+
+  /**
+   * Roll the window of the token forward and lease the permits in the new window, if the window is
+   * not changed by others since it was read
+   *
+   * @return 1 if rolled, 0 if the window is changed by others
+   */
+  @Modifying
+  @Query("update ConsumerRateLimitWindow set windowStart = ?4, permitCount = ?5,"
+      + " previousPermitCount = ?6, dataChangeLastModifiedTime = ?7 where token = ?1"
+      + " and windowStart = ?2 and permitCount = ?3")
+  int rollWindow(String token, long windowStart, int permitCount, long newWindowStart,
+      int permits, int previousPermitCount, Date date);
+}
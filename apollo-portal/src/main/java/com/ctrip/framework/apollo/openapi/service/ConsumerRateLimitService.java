@@ -0,0 +1,128 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.openapi.service;
+
+import com.ctrip.framework.apollo.openapi.entity.ConsumerRateLimitWindow;
+import com.ctrip.framework.apollo.openapi.repository.ConsumerRateLimitWindowRepository;
+import java.util.Date;
+import java.util.function.Supplier;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * The sliding window counters of the consumer tokens in PortalDB, shared by all the portals.
+ * <p>
+ * The permits of a token are counted in windows of one second, as the rate limits are in permits
+ * per second. The permits leased in the current window plus the ones of the previous window
+ * weighted by its overlap with the sliding window of the last second must not exceed the rate
+ * limit. Each token has a single row keeping the counts of the current and the previous windows,
+ * which is rolled forward by a conditional update instead of inserting a row per window.
+ */
+@Service
+public class ConsumerRateLimitService {
+
+  public static final long WINDOW_IN_MILLI = 1000;
+  //the attempts to lease when the window is changed by other portals concurrently
+  private static final int MAX_LEASE_ATTEMPTS = 3;
+
+  private final ConsumerRateLimitWindowRepository consumerRateLimitWindowRepository;
+  private final TransactionTemplate transactionTemplate;
+
+  public ConsumerRateLimitService(
+      final ConsumerRateLimitWindowRepository consumerRateLimitWindowRepository,
+      final TransactionTemplate transactionTemplate) {
+    this.consumerRateLimitWindowRepository = consumerRateLimitWindowRepository;
+    this.transactionTemplate = transactionTemplate;
+  }
+
+  /**
+   * Lease at most the permits of the token in the window of the time
+   *
+   * @return the permits leased, 0 if the rate limit is reached
+   */
+  public int leasePermits(String token, int rateLimit, int permits, long timeInMilli) {
+    for (int i = 0; i < MAX_LEASE_ATTEMPTS; i++) {
+      ConsumerRateLimitWindow window = consumerRateLimitWindowRepository.findByToken(token);
+      long windowStart = windowStart(timeInMilli);
+      if (window == null) {
+        int leased = Math.min(permits, rateLimit);
+        try {
+          consumerRateLimitWindowRepository.save(
+              new ConsumerRateLimitWindow(token, windowStart, leased, 0));
+          return leased;
+        } catch (DataIntegrityViolationException ex) {
+          //created by others in the meantime
+          continue;
+        }
+      }
+
+      long time = timeInMilli;
+      if (window.getWindowStart() > windowStart) {
+        //rolled forward by a portal with its clock ahead, lease in its window
+        windowStart = window.getWindowStart();
+        time = windowStart;
+      }
+
+      if (window.getWindowStart() == windowStart) {
+        int maxPermits = maxPermits(rateLimit, window.getPreviousPermitCount(), windowStart,
+            time);
+        int leased = Math.min(permits, maxPermits - window.getPermitCount());
+        if (leased <= 0) {
+          return 0;
+        }
+        if (update(() -> consumerRateLimitWindowRepository.leasePermits(token,
+            window.getWindowStart(), leased, maxPermits, new Date()))) {
+          return leased;
+        }
+        continue;
+      }
+
+      //the current window becomes the previous one, unless it's older than that
+      int previousPermits = window.getWindowStart() == windowStart - WINDOW_IN_MILLI
+          ? window.getPermitCount() : 0;
+      int leased = Math.min(permits, maxPermits(rateLimit, previousPermits, windowStart, time));
+      if (leased <= 0) {
+        return 0;
+      }
+      long newWindowStart = windowStart;
+      if (update(() -> consumerRateLimitWindowRepository.rollWindow(token,
+          window.getWindowStart(), window.getPermitCount(), newWindowStart, leased,
+          previousPermits, new Date()))) {
+        return leased;
+      }
+    }
+    return 0;
+  }
+
+  public static long windowStart(long timeInMilli) {
+    return timeInMilli - timeInMilli % WINDOW_IN_MILLI;
+  }
+
+  /**
+   * @return the rate limit less the permits of the previous window in the sliding window
+   */
+  private int maxPermits(int rateLimit, int previousPermits, long windowStart, long timeInMilli) {
+    double previousWeight = 1 - (double) (timeInMilli - windowStart) / WINDOW_IN_MILLI;
+    return rateLimit - (int) Math.ceil(previousPermits * previousWeight);
+  }
+
+  private boolean update(Supplier<Integer> update) {
+    Integer updated = transactionTemplate.execute(status -> update.get());
+    return updated != null && updated > 0;
+  }
+}
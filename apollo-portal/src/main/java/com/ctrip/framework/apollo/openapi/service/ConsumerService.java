@@ -32,6 +32,7 @@ import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
 import com.ctrip.framework.apollo.portal.entity.bo.UserInfo;
 import com.ctrip.framework.apollo.portal.entity.po.Role;
 import com.ctrip.framework.apollo.portal.entity.vo.consumer.ConsumerInfo;
+import com.ctrip.framework.apollo.portal.listener.ConsumerTokenChangeEvent;
 import com.ctrip.framework.apollo.portal.repository.RoleRepository;
 import com.ctrip.framework.apollo.portal.service.RolePermissionService;
 import com.ctrip.framework.apollo.portal.spi.UserInfoHolder;
@@ -41,12 +42,14 @@ import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
 import com.google.common.hash.Hashing;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Objects;
 import org.apache.commons.lang3.time.FastDateFormat;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -77,6 +80,7 @@ public class ConsumerService {
   private final RolePermissionService rolePermissionService;
   private final UserService userService;
   private final RoleRepository roleRepository;
+  private final ApplicationEventPublisher publisher;
 
   public ConsumerService(
       final UserInfoHolder userInfoHolder,
@@ -87,7 +91,8 @@ public class ConsumerService {
       final PortalConfig portalConfig,
       final RolePermissionService rolePermissionService,
       final UserService userService,
-      final RoleRepository roleRepository) {
+      final RoleRepository roleRepository,
+      final ApplicationEventPublisher publisher) {
     this.userInfoHolder = userInfoHolder;
     this.consumerTokenRepository = consumerTokenRepository;
     this.consumerRepository = consumerRepository;
@@ -97,6 +102,7 @@ public class ConsumerService {
     this.rolePermissionService = rolePermissionService;
     this.userService = userService;
     this.roleRepository = roleRepository;
+    this.publisher = publisher;
   }
 
 
@@ -128,7 +134,9 @@ public class ConsumerService {
     ConsumerToken consumerToken = generateConsumerToken(consumer, rateLimit, expires);
     consumerToken.setId(0);
 
-    return consumerTokenRepository.save(consumerToken);
+    consumerToken = consumerTokenRepository.save(consumerToken);
+    publisher.publishEvent(new ConsumerTokenChangeEvent(this, consumerToken.getToken()));
+    return consumerToken;
   }
 
   public ConsumerToken getConsumerTokenByAppId(String appId) {
@@ -333,13 +341,15 @@ public class ConsumerService {
 
   @Transactional
   public void createConsumerAudits(Iterable<ConsumerAudit> consumerAudits) {
-    consumerAuditRepository.saveAll(consumerAudits);
+    consumerAuditRepository.batchInsert(Lists.newArrayList(consumerAudits));
   }
 
   @Transactional
   public ConsumerToken createConsumerToken(ConsumerToken entity) {
     entity.setId(0); //for protection
-    return consumerTokenRepository.save(entity);
+    ConsumerToken consumerToken = consumerTokenRepository.save(entity);
+    publisher.publishEvent(new ConsumerTokenChangeEvent(this, consumerToken.getToken()));
+    return consumerToken;
   }
 
   private ConsumerToken generateConsumerToken(Consumer consumer, Integer rateLimit, Date expires) {
@@ -461,6 +471,7 @@ public class ConsumerService {
 
     if (Objects.nonNull(consumerToken)) {
       consumerTokenRepository.delete(consumerToken);
+      publisher.publishEvent(new ConsumerTokenChangeEvent(this, consumerToken.getToken()));
     }
   }
 
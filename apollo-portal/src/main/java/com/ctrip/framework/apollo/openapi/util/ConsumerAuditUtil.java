@@ -23,6 +23,11 @@ import com.ctrip.framework.apollo.tracer.Tracer;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Queues;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import javax.annotation.PreDestroy;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.stereotype.Service;
 
@@ -36,6 +41,10 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
+ * Queue the audits of the open api requests, which are inserted in jdbc batches by a background
+ * thread. The audits are dropped if the queue is full or the insert fails, so that the requests are
+ * never blocked by the audits.
+ *
  * @author Jason Song(song_s@ctrip.com)
  */
 @Service
@@ -44,19 +53,29 @@ public class ConsumerAuditUtil implements InitializingBean {
   private final BlockingQueue<ConsumerAudit> audits = Queues.newLinkedBlockingQueue(CONSUMER_AUDIT_MAX_SIZE);
   private final ExecutorService auditExecutorService;
   private final AtomicBoolean auditStopped;
-  private static final int BATCH_SIZE = 100;
+  private static final int BATCH_SIZE = 500;
 
   // ConsumerAuditUtilTest used reflection to set BATCH_TIMEOUT and BATCH_TIMEUNIT, so without `final` now
   private static long BATCH_TIMEOUT = 5; 
   private static TimeUnit BATCH_TIMEUNIT = TimeUnit.SECONDS;
 
   private final ConsumerService consumerService;
+  private final Counter queueFullDropped;
+  private final Counter flushFailedDropped;
+  private final Counter flushed;
+  private final Timer flushLatency;
 
-  public ConsumerAuditUtil(final ConsumerService consumerService) {
+  public ConsumerAuditUtil(final ConsumerService consumerService, final MeterRegistry meterRegistry) {
     this.consumerService = consumerService;
     auditExecutorService = Executors.newSingleThreadExecutor(
         ApolloThreadFactory.create("ConsumerAuditUtil", true));
     auditStopped = new AtomicBoolean(false);
+    this.queueFullDropped = meterRegistry.counter("consumer.audit.dropped", "reason", "queueFull");
+    this.flushFailedDropped = meterRegistry.counter("consumer.audit.dropped", "reason",
+        "flushFailed");
+    this.flushed = meterRegistry.counter("consumer.audit.flushed");
+    this.flushLatency = meterRegistry.timer("consumer.audit.flush.latency");
+    meterRegistry.gaugeCollectionSize("consumer.audit.queue.size", Tags.empty(), audits);
   }
 
   public boolean audit(HttpServletRequest request, long consumerId) {
@@ -78,27 +97,57 @@ public class ConsumerAuditUtil implements InitializingBean {
     consumerAudit.setDataChangeLastModifiedTime(now);
 
     //throw away audits if exceeds the max size
-    return this.audits.offer(consumerAudit);
+    boolean queued = this.audits.offer(consumerAudit);
+    if (!queued) {
+      queueFullDropped.increment();
+    }
+    return queued;
   }
 
   @Override
   public void afterPropertiesSet() throws Exception {
     auditExecutorService.submit(() -> {
-      while (!auditStopped.get() && !Thread.currentThread().isInterrupted()) {
+      while (!auditStopped.get()) {
         List<ConsumerAudit> toAudit = Lists.newArrayList();
         try {
           Queues.drain(audits, toAudit, BATCH_SIZE, BATCH_TIMEOUT, BATCH_TIMEUNIT);
-          if (!toAudit.isEmpty()) {
-            consumerService.createConsumerAudits(toAudit);
-          }
-        } catch (Throwable ex) {
-          Tracer.logError(ex);
+        } catch (InterruptedException ex) {
+          //the audits left in the queue are inserted by stopAudit
+          Thread.currentThread().interrupt();
+          flush(toAudit);
+          return;
         }
+        flush(toAudit);
       }
     });
   }
 
+  private void flush(List<ConsumerAudit> toAudit) {
+    if (toAudit.isEmpty()) {
+      return;
+    }
+    long start = System.nanoTime();
+    try {
+      consumerService.createConsumerAudits(toAudit);
+      flushed.increment(toAudit.size());
+    } catch (Throwable ex) {
+      flushFailedDropped.increment(toAudit.size());
+      Tracer.logError(ex);
+    } finally {
+      flushLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  /**
+   * Stop the background thread and insert the audits left in the queue
+   */
+  @PreDestroy
   public void stopAudit() {
     auditStopped.set(true);
+    List<ConsumerAudit> toAudit = Lists.newArrayList();
+    while (audits.drainTo(toAudit, BATCH_SIZE) > 0) {
+      flush(toAudit);
+      toAudit = Lists.newArrayList();
+    }
   }
 }
@@ -18,9 +18,17 @@ package com.ctrip.framework.apollo.openapi.util;
 
 import com.ctrip.framework.apollo.openapi.entity.ConsumerToken;
 import com.ctrip.framework.apollo.openapi.service.ConsumerService;
+import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
+import com.ctrip.framework.apollo.portal.listener.ConsumerTokenChangeEvent;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import org.springframework.stereotype.Service;
 
 import javax.servlet.http.HttpServletRequest;
+import org.springframework.transaction.event.TransactionalEventListener;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -28,18 +36,68 @@ import javax.servlet.http.HttpServletRequest;
 @Service
 public class ConsumerAuthUtil {
   static final String CONSUMER_ID = "ApolloConsumerId";
+  private static final long MAX_CACHED_TOKENS = 10000;
+
   private final ConsumerService consumerService;
+  //the valid consumer tokens, null if the cache is disabled
+  private final Cache<String, ConsumerToken> consumerTokenCache;
+  //increased on each invalidation, so that the tokens loaded meanwhile are not cached
+  private final AtomicLong consumerTokenCacheVersion = new AtomicLong();
 
-  public ConsumerAuthUtil(final ConsumerService consumerService) {
+  public ConsumerAuthUtil(final ConsumerService consumerService, final PortalConfig portalConfig) {
     this.consumerService = consumerService;
+
+    int expireSecond = portalConfig.consumerTokenCacheExpireSecond();
+    this.consumerTokenCache = expireSecond > 0 ? CacheBuilder.newBuilder()
+        .maximumSize(MAX_CACHED_TOKENS)
+        .expireAfterWrite(expireSecond, TimeUnit.SECONDS)
+        .build() : null;
   }
 
   public Long getConsumerId(String token) {
     return consumerService.getConsumerIdByToken(token);
   }
 
+  /**
+   * Find the valid consumer token, the cached token is not used after it expires even if the cache
+   * entry is not expired yet. The invalid tokens are not cached.
+   */
   public ConsumerToken getConsumerToken(String token) {
-    return consumerService.getConsumerTokenByToken(token);
+    if (consumerTokenCache == null || Strings.isNullOrEmpty(token)) {
+      return consumerService.getConsumerTokenByToken(token);
+    }
+
+    ConsumerToken consumerToken = consumerTokenCache.getIfPresent(token);
+    if (consumerToken != null) {
+      if (consumerToken.getExpires().getTime() > System.currentTimeMillis()) {
+        return consumerToken;
+      }
+      consumerTokenCache.invalidate(token);
+    }
+
+    long version = consumerTokenCacheVersion.get();
+    consumerToken = consumerService.getConsumerTokenByToken(token);
+    if (consumerToken != null) {
+      consumerTokenCache.put(token, consumerToken);
+      //the token may have changed while being loaded
+      if (consumerTokenCacheVersion.get() != version) {
+        consumerTokenCache.invalidate(token);
+      }
+    }
+    return consumerToken;
+  }
+
+  /**
+   * Invalidate the cached token after the change is committed, so that it is not loaded again
+   * before the change is visible
+   */
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onConsumerTokenChange(ConsumerTokenChangeEvent event) {
+    if (consumerTokenCache == null || event.getToken() == null) {
+      return;
+    }
+    consumerTokenCacheVersion.incrementAndGet();
+    consumerTokenCache.invalidate(event.getToken());
   }
 
   public void storeConsumerId(HttpServletRequest request, Long consumerId) {
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.openapi.util;
+
+import com.ctrip.framework.apollo.openapi.service.ConsumerRateLimitService;
+import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.concurrent.TimeUnit;
+import org.springframework.stereotype.Service;
+
+/**
+ * The rate limits of the consumer tokens shared by all the portals.
+ * <p>
+ * Each portal leases the permits of a token from the counters in PortalDB in batches of a tenth of
+ * the rate limit, and acquires the leased permits locally, so most requests don't touch the
+ * database. The permits not acquired in their window are wasted, so a token may get fewer permits
+ * than its rate limit by at most a batch per portal, but never more than the sliding window allows.
+ */
+@Service
+public class ConsumerRateLimitUtil {
+  private static final int LEASES_PER_WINDOW = 10;
+  private static final int MAX_CACHED_LEASES = 20000;
+
+  private final ConsumerRateLimitService consumerRateLimitService;
+  private final PortalConfig portalConfig;
+  private final Cache<String, PermitLease> leases = CacheBuilder.newBuilder()
+      .expireAfterAccess(1, TimeUnit.HOURS)
+      .maximumSize(MAX_CACHED_LEASES).build();
+
+  public ConsumerRateLimitUtil(final ConsumerRateLimitService consumerRateLimitService,
+      final PortalConfig portalConfig) {
+    this.consumerRateLimitService = consumerRateLimitService;
+    this.portalConfig = portalConfig;
+  }
+
+  public boolean isClusterRateLimitEnabled() {
+    return portalConfig.isOpenApiClusterRateLimitEnabled();
+  }
+
+  /**
+   * Acquire a permit of the token, leasing a batch of permits from PortalDB if none is left
+   *
+   * @return false if the rate limit is reached
+   */
+  public boolean tryAcquire(String token, int rateLimit) {
+    PermitLease lease = leases.asMap().computeIfAbsent(token, key -> new PermitLease());
+    synchronized (lease) {
+      long now = System.currentTimeMillis();
+      long windowStart = ConsumerRateLimitService.windowStart(now);
+      if (lease.windowStart != windowStart) {
+        //the permits leased in the previous window expire
+        lease.windowStart = windowStart;
+        lease.permits = 0;
+        lease.retryAfter = 0;
+      }
+
+      if (lease.permits == 0) {
+        //not to query the database on each request beyond the rate limit
+        if (now < lease.retryAfter) {
+          return false;
+        }
+        lease.permits = consumerRateLimitService.leasePermits(token, rateLimit,
+            Math.max(1, rateLimit / LEASES_PER_WINDOW), now);
+        if (lease.permits == 0) {
+          lease.retryAfter = now + ConsumerRateLimitService.WINDOW_IN_MILLI / LEASES_PER_WINDOW;
+          return false;
+        }
+      }
+      lease.permits--;
+      return true;
+    }
+  }
+
+  private static class PermitLease {
+    private long windowStart;
+    private int permits;
+    private long retryAfter;
+  }
+}
@@ -22,7 +22,12 @@ import com.ctrip.framework.apollo.common.dto.*;
 import com.ctrip.framework.apollo.openapi.dto.OpenItemDTO;
 import com.ctrip.framework.apollo.portal.entity.po.ServerConfig;
 import com.ctrip.framework.apollo.portal.environment.Env;
+import com.ctrip.framework.apollo.common.controller.HttpMessageConverterConfiguration;
 import com.google.common.base.Joiner;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import org.springframework.boot.actuate.health.Health;
@@ -35,11 +40,13 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.ResponseExtractor;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 
 @Service
@@ -95,6 +102,14 @@ public class AdminServiceAPI {
       return Arrays.asList(namespaceDTOs);
     }
 
+    public List<NamespaceSnapshotDTO> findNamespaceSnapshots(String appId, Env env,
+        String clusterName, boolean includeDeletedItems) {
+      NamespaceSnapshotDTO[] snapshots = restTemplate.get(env,
+          "apps/{appId}/clusters/{clusterName}/namespace-snapshots?includeDeletedItems={includeDeletedItems}",
+          NamespaceSnapshotDTO[].class, appId, clusterName, includeDeletedItems);
+      return Arrays.asList(snapshots);
+    }
+
     public PageDTO<NamespaceDTO> findByItem(Env env, String itemKey, int page, int size) {
       ResponseEntity<PageDTO<NamespaceDTO>>
           entity =
@@ -232,6 +247,13 @@ public class AdminServiceAPI {
           changeSets, Void.class, appId, clusterName, namespace);
     }
 
+    public NamespaceImportResultDTO importNamespace(String appId, Env env, String clusterName,
+        String namespace, NamespaceImportDTO namespaceImport) {
+      return restTemplate.post(env,
+          "apps/{appId}/clusters/{clusterName}/namespaces/{namespaceName}/import", namespaceImport,
+          NamespaceImportResultDTO.class, appId, clusterName, namespace);
+    }
+
     public void updateItem(String appId, Env env, String clusterName, String namespace, long itemId, ItemDTO item) {
       restTemplate.put(env, "apps/{appId}/clusters/{clusterName}/namespaces/{namespaceName}/items/{itemId}",
           item, appId, clusterName, namespace, itemId);
@@ -477,12 +499,18 @@ public class AdminServiceAPI {
 
   @Service
   public static class InstanceAPI extends API {
+    private static final Gson GSON = new GsonBuilder()
+        .setDateFormat(HttpMessageConverterConfiguration.DATE_FORMAT).create();
 
     private Joiner joiner = Joiner.on(",");
     private ParameterizedTypeReference<PageDTO<InstanceDTO>>
         pageInstanceDtoType =
         new ParameterizedTypeReference<PageDTO<InstanceDTO>>() {
         };
+    private ParameterizedTypeReference<CursorPageDTO<InstanceDTO>>
+        cursorPageInstanceDtoType =
+        new ParameterizedTypeReference<CursorPageDTO<InstanceDTO>>() {
+        };
 
     public PageDTO<InstanceDTO> getByRelease(Env env, long releaseId, int page, int size) {
       ResponseEntity<PageDTO<InstanceDTO>>
@@ -506,6 +534,47 @@ public class AdminServiceAPI {
       return Arrays.asList(instanceDTOs);
     }
 
+    /**
+     * Same as {@link #getByReleasesNotIn(String, Env, String, String, Set)}, but the instances are
+     * streamed from the admin service and passed to the consumer one by one. The consumer may
+     * receive the same instances again if the request is retried with another admin server.
+     */
+    public void streamByReleasesNotIn(String appId, Env env, String clusterName,
+        String namespaceName, Set<Long> releaseIds, Consumer<InstanceDTO> consumer) {
+      restTemplate.get(env,
+          "/instances/by-namespace-and-releases-not-in/stream?appId={appId}&clusterName={clusterName}&namespaceName={namespaceName}&releaseIds={releaseIds}",
+          (ResponseExtractor<Void>) response -> {
+            try (JsonReader reader = new JsonReader(new InputStreamReader(response.getBody(),
+                StandardCharsets.UTF_8))) {
+              reader.beginArray();
+              while (reader.hasNext()) {
+                consumer.accept(GSON.fromJson(reader, InstanceDTO.class));
+              }
+              reader.endArray();
+            }
+            return null;
+          }, appId, clusterName, namespaceName, joiner.join(releaseIds));
+    }
+
+    public CursorPageDTO<InstanceDTO> getByReleaseAfter(Env env, long releaseId, long afterId,
+        int size) {
+      ResponseEntity<CursorPageDTO<InstanceDTO>> entity = restTemplate.get(env,
+          "/instances/by-release/cursor?releaseId={releaseId}&afterId={afterId}&size={size}",
+          cursorPageInstanceDtoType, releaseId, afterId, size);
+      return entity.getBody();
+    }
+
+    public CursorPageDTO<InstanceDTO> getByNamespaceAfter(String appId, Env env,
+        String clusterName, String namespaceName, String instanceAppId, long afterId, int size) {
+      ResponseEntity<CursorPageDTO<InstanceDTO>> entity = restTemplate.get(env,
+          "/instances/by-namespace/cursor?appId={appId}"
+              + "&clusterName={clusterName}&namespaceName={namespaceName}&instanceAppId={instanceAppId}"
+              + "&afterId={afterId}&size={size}",
+          cursorPageInstanceDtoType, appId, clusterName, namespaceName, instanceAppId, afterId,
+          size);
+      return entity.getBody();
+    }
+
     public PageDTO<InstanceDTO> getByNamespace(String appId, Env env, String clusterName, String namespaceName,
         String instanceAppId,
         int page, int size) {
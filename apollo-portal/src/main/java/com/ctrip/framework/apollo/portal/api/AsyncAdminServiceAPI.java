@@ -0,0 +1,156 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.portal.api;
+
+import com.ctrip.framework.apollo.common.exception.ServiceException;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
+import com.ctrip.framework.apollo.portal.constant.TracerEventType;
+import com.ctrip.framework.apollo.portal.environment.Env;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Call the {@link AdminServiceAPI}s asynchronously, so that the calls to multiple envs are sent at
+ * once and take as long as the slowest env instead of the sum of all the envs.
+ * <p>
+ * The calls still go through the {@link com.ctrip.framework.apollo.portal.component.RetryableRestTemplate},
+ * so they share its pooled keep-alive connections, failover, hedging and circuit breakers.
+ */
+@Component
+public class AsyncAdminServiceAPI {
+
+  private static final Logger logger = LoggerFactory.getLogger(AsyncAdminServiceAPI.class);
+  //the calls beyond the queue are run by the caller, which slows down the fan-out instead of failing
+  private static final int QUEUE_SIZE = 1000;
+
+  private final ThreadPoolExecutor executorService;
+
+  @Autowired
+  public AsyncAdminServiceAPI(final PortalConfig portalConfig) {
+    this(portalConfig.adminServiceAsyncMaxThreads());
+  }
+
+  public AsyncAdminServiceAPI(int maxThreads) {
+    executorService = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(QUEUE_SIZE), ApolloThreadFactory.create("AdminServiceAsync", true),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+    executorService.allowCoreThreadTimeOut(true);
+  }
+
+  @PreDestroy
+  void preDestroy() {
+    executorService.shutdownNow();
+  }
+
+  /**
+   * Call the admin service asynchronously, the call is skipped if the future is cancelled before it
+   * starts.
+   */
+  public <T> CompletableFuture<T> supplyAsync(Supplier<T> call) {
+    return CompletableFuture.supplyAsync(call, executorService);
+  }
+
+  /**
+   * Call the admin services of the envs at once and wait for them until the timeout.
+   *
+   * @return the results of the envs responding in time, in the order of the envs, together with the
+   * envs failed or timed out
+   */
+  public <T> EnvResults<T> fanOut(Collection<Env> envs, Function<Env, T> call,
+      long timeoutInMilli) {
+    Map<Env, CompletableFuture<T>> futures = new LinkedHashMap<>();
+    for (Env env : envs) {
+      futures.put(env, supplyAsync(() -> call.apply(env)));
+    }
+
+    EnvResults<T> envResults = new EnvResults<>();
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutInMilli);
+    try {
+      for (Map.Entry<Env, CompletableFuture<T>> entry : futures.entrySet()) {
+        Env env = entry.getKey();
+        try {
+          envResults.results.put(env,
+              entry.getValue().get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+        } catch (TimeoutException e) {
+          logger.warn("Admin service of env {} didn't respond in {} ms", env, timeoutInMilli);
+          Tracer.logEvent(TracerEventType.API_FAN_OUT_TIMEOUT, env.getName());
+          envResults.timeoutEnvs.add(env);
+        } catch (ExecutionException e) {
+          logger.warn("Call admin service of env {} failed", env, e.getCause());
+          envResults.failures.put(env, e.getCause());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ServiceException("Interrupted while calling admin services", e);
+    } finally {
+      futures.values().forEach(future -> future.cancel(false));
+    }
+    return envResults;
+  }
+
+  public static class EnvResults<T> {
+
+    private final Map<Env, T> results = new LinkedHashMap<>();
+    private final Map<Env, Throwable> failures = new LinkedHashMap<>();
+    private final List<Env> timeoutEnvs = new LinkedList<>();
+
+    public Map<Env, T> getResults() {
+      return Collections.unmodifiableMap(results);
+    }
+
+    public Map<Env, Throwable> getFailures() {
+      return Collections.unmodifiableMap(failures);
+    }
+
+    public List<Env> getTimeoutEnvs() {
+      return Collections.unmodifiableList(timeoutEnvs);
+    }
+
+    /**
+     * @return the envs failed or timed out
+     */
+    public List<Env> getIncompleteEnvs() {
+      List<Env> incompleteEnvs = new LinkedList<>(failures.keySet());
+      incompleteEnvs.addAll(timeoutEnvs);
+      return incompleteEnvs;
+    }
+
+    public boolean isComplete() {
+      return failures.isEmpty() && timeoutEnvs.isEmpty();
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.portal.component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * The http requests sent by a task, so that another thread can abort them, e.g. the losing one of
+ * a hedged request. Aborting a request closes its connection, so a blocking read fails at once
+ * instead of waiting for the response.
+ */
+public class AbortableHttpRequests {
+
+  private static final ThreadLocal<AbortableHttpRequests> CURRENT = new ThreadLocal<>();
+
+  private final List<HttpUriRequest> requests = new ArrayList<>();
+  private boolean aborted;
+
+  /**
+   * register the request sent by the current thread, it's aborted at once if the task running on
+   * the current thread is already aborted
+   */
+  public static void register(HttpUriRequest request) {
+    AbortableHttpRequests current = CURRENT.get();
+    if (current != null) {
+      current.add(request);
+    }
+  }
+
+  /**
+   * @return whether the task running on the current thread is aborted
+   */
+  public static boolean isCurrentAborted() {
+    AbortableHttpRequests current = CURRENT.get();
+    return current != null && current.isAborted();
+  }
+
+  public <T> T run(Supplier<T> task) {
+    CURRENT.set(this);
+    try {
+      return task.get();
+    } finally {
+      CURRENT.remove();
+    }
+  }
+
+  public synchronized void abort() {
+    if (aborted) {
+      return;
+    }
+    aborted = true;
+    requests.forEach(HttpUriRequest::abort);
+    requests.clear();
+  }
+
+  public synchronized boolean isAborted() {
+    return aborted;
+  }
+
+  private synchronized void add(HttpUriRequest request) {
+    if (aborted) {
+      request.abort();
+    } else {
+      requests.add(request);
+    }
+  }
+}
@@ -56,18 +56,21 @@ public class AdminServiceAddressLocator {
   private final RestTemplateFactory restTemplateFactory;
   private final PortalMetaDomainService portalMetaDomainService;
   private final PortalConfig portalConfig;
+  private final AdminServiceHealthTracker adminServiceHealthTracker;
 
   public AdminServiceAddressLocator(
       final HttpMessageConverters httpMessageConverters,
       final PortalSettings portalSettings,
       final RestTemplateFactory restTemplateFactory,
       final PortalMetaDomainService portalMetaDomainService,
-      final PortalConfig portalConfig
+      final PortalConfig portalConfig,
+      final AdminServiceHealthTracker adminServiceHealthTracker
   ) {
     this.portalSettings = portalSettings;
     this.restTemplateFactory = restTemplateFactory;
     this.portalMetaDomainService = portalMetaDomainService;
     this.portalConfig = portalConfig;
+    this.adminServiceHealthTracker = adminServiceHealthTracker;
   }
 
   @PostConstruct
@@ -83,6 +86,10 @@ public class AdminServiceAddressLocator {
     refreshServiceAddressService.schedule(new RefreshAdminServerAddressTask(), 1, TimeUnit.MILLISECONDS);
   }
 
+  /**
+   * @return the admin servers in random order to balance the load, except that the unhealthy ones
+   * are ordered last
+   */
   public List<ServiceDTO> getServiceList(Env env) {
     List<ServiceDTO> services = cache.get(env);
     if (CollectionUtils.isEmpty(services)) {
@@ -90,7 +97,7 @@ public class AdminServiceAddressLocator {
     }
     List<ServiceDTO> randomConfigServices = Lists.newArrayList(services);
     Collections.shuffle(randomConfigServices);
-    return randomConfigServices;
+    return adminServiceHealthTracker.sortByHealth(env, randomConfigServices);
   }
 
   //maintain admin server address
@@ -125,6 +132,7 @@ public class AdminServiceAddressLocator {
           continue;
         }
         cache.put(env, Arrays.asList(services));
+        adminServiceHealthTracker.retain(env, Arrays.asList(services));
         return true;
       } catch (Throwable e) {
         logger.error(String.format("Get admin server address from meta server failed. env: %s, meta server address:%s",
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.portal.component;
+
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
+import com.ctrip.framework.apollo.portal.environment.Env;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Track the health of each admin server, i.e. the EWMA of its latencies, the p95 latency of each of
+ * its endpoints and the state of its circuit breaker.
+ * <p>
+ * The circuit breaker of an admin server is opened after consecutive connection failures or
+ * timeouts, or when its latency becomes an outlier among the admin servers of the env. Admin servers
+ * with open circuit breakers are ordered last, so they are only tried after all the others failed.
+ * After the open duration the breaker becomes half open and the admin server takes requests again,
+ * the next success closes the breaker while the next failure opens it again.
+ */
+@Component
+public class AdminServiceHealthTracker {
+
+  private static final double EWMA_ALPHA = 0.3;
+  //the latencies of each endpoint kept to calculate its p95 latency
+  private static final int LATENCY_SAMPLE_SIZE = 128;
+  //the latencies required before hedging or latency outlier detection
+  private static final int MIN_LATENCY_SAMPLES = 20;
+  private static final long MIN_HEDGE_DELAY_IN_MILLI = 10;
+  //latencies below this are never outliers, however small the latencies of the other admin servers
+  private static final long MIN_OUTLIER_LATENCY_IN_MILLI = 100;
+
+  private final Map<Env, Map<String, InstanceHealth>> instanceHealths = new ConcurrentHashMap<>();
+  private final PortalConfig portalConfig;
+  private final MeterRegistry meterRegistry;
+  private final LongSupplier clock;
+
+  @Autowired
+  public AdminServiceHealthTracker(final PortalConfig portalConfig,
+      final MeterRegistry meterRegistry) {
+    this(portalConfig, meterRegistry, System::currentTimeMillis);
+  }
+
+  AdminServiceHealthTracker(PortalConfig portalConfig, MeterRegistry meterRegistry,
+      LongSupplier clock) {
+    this.portalConfig = portalConfig;
+    this.meterRegistry = meterRegistry;
+    this.clock = clock;
+  }
+
+  /**
+   * Order the admin servers by their health, the admin servers with open circuit breakers are
+   * ordered last while the others keep their order, e.g. a random one to balance the load
+   */
+  public List<ServiceDTO> sortByHealth(Env env, List<ServiceDTO> services) {
+    long now = clock.getAsLong();
+    return services.stream()
+        .sorted(Comparator.comparing(service -> getInstanceHealth(env, service).isOpen(now)))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * @param endpoint the method and path template of the request, e.g. "GET apps/{appId}", as the
+   *                 latencies of the endpoints differ a lot
+   * @return the delay before sending the request to the hedge admin server as well, i.e. the p95
+   * latency of the endpoint on the admin server, or 0 if the request shouldn't be hedged
+   */
+  public long getHedgeDelayInMilli(Env env, String endpoint, ServiceDTO service,
+      ServiceDTO hedgeService) {
+    if (!portalConfig.isAdminServiceHedgeEnabled()
+        || getInstanceHealth(env, hedgeService).getState(clock.getAsLong()) != State.CLOSED) {
+      return 0;
+    }
+    long p95Latency = getInstanceHealth(env, service).getP95Latency(endpoint);
+    if (p95Latency <= 0) {
+      return 0;
+    }
+    return Math.min(Math.max(p95Latency, MIN_HEDGE_DELAY_IN_MILLI), portalConfig.readTimeout());
+  }
+
+  public void recordHedge(Env env) {
+    meterRegistry.counter("admin.service.hedged.requests", "env", env.getName()).increment();
+  }
+
+  public void recordSuccess(Env env, ServiceDTO service, String endpoint, long latencyInMilli) {
+    InstanceHealth health = getInstanceHealth(env, service);
+    long now = clock.getAsLong();
+    health.recordSuccess(endpoint, latencyInMilli, now);
+
+    if (health.getSampleCount() >= MIN_LATENCY_SAMPLES && isLatencyOutlier(env, health, now)) {
+      health.open(now + openDurationInMilli());
+      Tracer.logEvent("AdminService.CircuitBreaker.LatencyOutlier", service.getHomepageUrl());
+    }
+  }
+
+  /**
+   * record a connection failure or timeout of the admin server
+   */
+  public void recordFailure(Env env, ServiceDTO service) {
+    InstanceHealth health = getInstanceHealth(env, service);
+    if (health.recordFailure(clock.getAsLong(), openDurationInMilli(),
+        portalConfig.adminServiceCircuitBreakerFailureThreshold())) {
+      Tracer.logEvent("AdminService.CircuitBreaker.Open", service.getHomepageUrl());
+    }
+  }
+
+  /**
+   * forget the admin servers no longer registered, together with their metrics
+   */
+  public void retain(Env env, Collection<ServiceDTO> services) {
+    Map<String, InstanceHealth> healths = instanceHealths.get(env);
+    if (healths == null) {
+      return;
+    }
+    Set<String> homepageUrls = services.stream().map(ServiceDTO::getHomepageUrl)
+        .collect(Collectors.toSet());
+    healths.entrySet().removeIf(entry -> {
+      if (homepageUrls.contains(entry.getKey())) {
+        return false;
+      }
+      entry.getValue().meters.forEach(meterRegistry::remove);
+      return true;
+    });
+  }
+
+  State getState(Env env, ServiceDTO service) {
+    return getInstanceHealth(env, service).getState(clock.getAsLong());
+  }
+
+  private boolean isLatencyOutlier(Env env, InstanceHealth health, long now) {
+    double latency = health.getEwmaLatency();
+    if (latency < MIN_OUTLIER_LATENCY_IN_MILLI) {
+      return false;
+    }
+    double[] otherLatencies = instanceHealths.get(env).values().stream()
+        .filter(other -> other != health && other.getSampleCount() > 0
+            && other.getState(now) == State.CLOSED)
+        .mapToDouble(InstanceHealth::getEwmaLatency).sorted().toArray();
+    if (otherLatencies.length == 0) {
+      return false;
+    }
+    double median = otherLatencies[otherLatencies.length / 2];
+    return latency > median * portalConfig.adminServiceLatencyOutlierRatio();
+  }
+
+  private long openDurationInMilli() {
+    return TimeUnit.SECONDS.toMillis(portalConfig.adminServiceCircuitBreakerOpenDurationSecond());
+  }
+
+  private InstanceHealth getInstanceHealth(Env env, ServiceDTO service) {
+    return instanceHealths.computeIfAbsent(env, k -> new ConcurrentHashMap<>())
+        .computeIfAbsent(service.getHomepageUrl(), homepageUrl -> {
+          InstanceHealth health = new InstanceHealth();
+          health.meters = Arrays.asList(
+              Gauge.builder("admin.service.latency.ewma", health, InstanceHealth::getEwmaLatency)
+                  .tags("env", env.getName(), "instance", homepageUrl)
+                  .baseUnit("milliseconds")
+                  .register(meterRegistry),
+              Gauge.builder("admin.service.circuit.breaker.state", health,
+                      h -> h.getState(clock.getAsLong()).ordinal())
+                  .tags("env", env.getName(), "instance", homepageUrl)
+                  .description("0: closed, 1: half open, 2: open")
+                  .register(meterRegistry));
+          return health;
+        });
+  }
+
+  enum State {
+    CLOSED, HALF_OPEN, OPEN
+  }
+
+  private static class InstanceHealth {
+
+    private final Map<String, EndpointLatencies> endpointLatencies = new HashMap<>();
+    private int sampleCount;
+    private double ewmaLatency;
+    private int consecutiveFailures;
+    private State state = State.CLOSED;
+    private long openUntil;
+    private List<Meter> meters;
+
+    synchronized void recordSuccess(String endpoint, long latencyInMilli, long now) {
+      if (getState(now) == State.HALF_OPEN) {
+        //start over, the latencies before the breaker opened are stale
+        state = State.CLOSED;
+        sampleCount = 0;
+        endpointLatencies.clear();
+      }
+      consecutiveFailures = 0;
+      ewmaLatency = sampleCount == 0 ? latencyInMilli
+          : EWMA_ALPHA * latencyInMilli + (1 - EWMA_ALPHA) * ewmaLatency;
+      sampleCount = Math.min(sampleCount + 1, LATENCY_SAMPLE_SIZE);
+      endpointLatencies.computeIfAbsent(endpoint, k -> new EndpointLatencies())
+          .record(latencyInMilli);
+    }
+
+    /**
+     * @return whether the breaker is opened by this failure
+     */
+    synchronized boolean recordFailure(long now, long openDurationInMilli, int failureThreshold) {
+      consecutiveFailures++;
+      State current = getState(now);
+      if (current == State.HALF_OPEN
+          || (current == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+        open(now + openDurationInMilli);
+        return true;
+      }
+      return false;
+    }
+
+    synchronized void open(long until) {
+      state = State.OPEN;
+      openUntil = until;
+    }
+
+    synchronized State getState(long now) {
+      if (state == State.OPEN && now >= openUntil) {
+        state = State.HALF_OPEN;
+      }
+      return state;
+    }
+
+    boolean isOpen(long now) {
+      return getState(now) == State.OPEN;
+    }
+
+    synchronized int getSampleCount() {
+      return sampleCount;
+    }
+
+    synchronized double getEwmaLatency() {
+      return ewmaLatency;
+    }
+
+    /**
+     * @return the p95 latency of the endpoint, or 0 without enough latencies
+     */
+    synchronized long getP95Latency(String endpoint) {
+      EndpointLatencies latencies = endpointLatencies.get(endpoint);
+      return latencies == null ? 0 : latencies.getP95Latency();
+    }
+  }
+
+  /**
+   * the latest latencies of an endpoint, guarded by the lock of its instance health
+   */
+  private static class EndpointLatencies {
+
+    private final long[] latencies = new long[LATENCY_SAMPLE_SIZE];
+    private int sampleCount;
+    private int nextSample;
+
+    void record(long latencyInMilli) {
+      latencies[nextSample] = latencyInMilli;
+      nextSample = (nextSample + 1) % LATENCY_SAMPLE_SIZE;
+      sampleCount = Math.min(sampleCount + 1, LATENCY_SAMPLE_SIZE);
+    }
+
+    long getP95Latency() {
+      if (sampleCount < MIN_LATENCY_SAMPLES) {
+        return 0;
+      }
+      long[] sorted = Arrays.copyOf(latencies, sampleCount);
+      Arrays.sort(sorted);
+      return sorted[(int) Math.ceil(sorted.length * 0.95) - 1];
+    }
+  }
+}
@@ -18,6 +18,7 @@ package com.ctrip.framework.apollo.portal.component;
 
 import com.ctrip.framework.apollo.audit.component.ApolloAuditHttpInterceptor;
 import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
@@ -72,7 +73,13 @@ public class RestTemplateFactory implements FactoryBean<RestTemplate>, Initializ
 
     restTemplate = new RestTemplate(httpMessageConverters.getConverters());
     HttpComponentsClientHttpRequestFactory requestFactory =
-        new HttpComponentsClientHttpRequestFactory(httpClient);
+        new HttpComponentsClientHttpRequestFactory(httpClient) {
+          @Override
+          protected void postProcessHttpRequest(HttpUriRequest request) {
+            //so that the losing request of a hedged request can be aborted
+            AbortableHttpRequests.register(request);
+          }
+        };
     requestFactory.setConnectTimeout(portalConfig.connectTimeout());
     requestFactory.setReadTimeout(portalConfig.readTimeout());
 
@@ -18,6 +18,7 @@ package com.ctrip.framework.apollo.portal.component;
 
 import com.ctrip.framework.apollo.common.exception.ServiceException;
 import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
 import com.ctrip.framework.apollo.portal.constant.TracerEventType;
 import com.ctrip.framework.apollo.portal.environment.Env;
@@ -25,15 +26,28 @@ import com.ctrip.framework.apollo.portal.environment.PortalMetaDomainService;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Maps;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import java.lang.reflect.Type;
 import java.net.SocketTimeoutException;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.conn.HttpHostConnectException;
 import org.slf4j.Logger;
@@ -43,9 +57,13 @@ import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.DefaultUriBuilderFactory;
@@ -53,6 +71,9 @@ import org.springframework.web.util.UriTemplateHandler;
 
 /**
  * 封装RestTemplate. admin server集群在某些机器宕机或者超时的情况下轮询重试
+ * <p>
+ * The admin servers are tried in the order of their health, and GET requests are hedged to the
+ * next admin server if the current one is slower than the p95 latency of the endpoint.
  */
 @Component
 public class RetryableRestTemplate {
@@ -73,6 +94,16 @@ public class RetryableRestTemplate {
   private final AdminServiceAddressLocator adminServiceAddressLocator;
   private final PortalMetaDomainService portalMetaDomainService;
   private final PortalConfig portalConfig;
+  private final AdminServiceHealthTracker adminServiceHealthTracker;
+  //the hedge requests in flight at most, no more hedge requests are sent when they are all busy
+  private static final int HEDGE_MAX_THREADS = 32;
+
+  //sends the hedge requests, while the first requests run on the calling threads
+  private final ExecutorService hedgeExecutorService = new ThreadPoolExecutor(0,
+      HEDGE_MAX_THREADS, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+      ApolloThreadFactory.create("AdminServiceHedge", true));
+  private final ScheduledThreadPoolExecutor hedgeScheduler = new ScheduledThreadPoolExecutor(1,
+      ApolloThreadFactory.create("AdminServiceHedgeScheduler", true));
   private volatile String lastAdminServiceAccessTokens;
   private volatile Map<Env, String> adminServiceAccessTokenMap;
 
@@ -80,12 +111,15 @@ public class RetryableRestTemplate {
       final @Lazy RestTemplateFactory restTemplateFactory,
       final @Lazy AdminServiceAddressLocator adminServiceAddressLocator,
       final PortalMetaDomainService portalMetaDomainService,
-      final PortalConfig portalConfig
+      final PortalConfig portalConfig,
+      final AdminServiceHealthTracker adminServiceHealthTracker
   ) {
     this.restTemplateFactory = restTemplateFactory;
     this.adminServiceAddressLocator = adminServiceAddressLocator;
     this.portalMetaDomainService = portalMetaDomainService;
     this.portalConfig = portalConfig;
+    this.adminServiceHealthTracker = adminServiceHealthTracker;
+    this.hedgeScheduler.setRemoveOnCancelPolicy(true);
   }
 
 
@@ -94,6 +128,12 @@ public class RetryableRestTemplate {
     restTemplate = restTemplateFactory.getObject();
   }
 
+  @PreDestroy
+  private void preDestroy() {
+    hedgeScheduler.shutdownNow();
+    hedgeExecutorService.shutdownNow();
+  }
+
   public <T> T get(Env env, String path, Class<T> responseType, Object... urlVariables)
       throws RestClientException {
     return execute(HttpMethod.GET, env, path, null, responseType, urlVariables);
@@ -106,6 +146,16 @@ public class RetryableRestTemplate {
     return exchangeGet(env, path, reference, uriVariables);
   }
 
+  /**
+   * Get and read the response body with the extractor, e.g. to consume a large response as a
+   * stream instead of loading it as a whole. The extractor may be invoked again with another admin
+   * server if the request fails while reading the response, so it should be idempotent.
+   */
+  public <T> T get(Env env, String path, ResponseExtractor<T> responseExtractor,
+                   Object... uriVariables) throws RestClientException {
+    return extractGet(env, path, responseExtractor, uriVariables);
+  }
+
   public <T> T post(Env env, String path, Object request, Class<T> responseType, Object... uriVariables)
       throws RestClientException {
     return execute(HttpMethod.POST, env, path, request, responseType, uriVariables);
@@ -121,22 +171,73 @@ public class RetryableRestTemplate {
 
   private <T> T execute(HttpMethod method, Env env, String path, Object request, Class<T> responseType,
                         Object... uriVariables) {
+    HttpHeaders extraHeaders = assembleExtraHeaders(env);
 
+    return executeWithFailover(method, env, path, method == HttpMethod.GET,
+        url -> doExecute(method, extraHeaders, url, request, responseType, uriVariables),
+        uriVariables);
+  }
+
+  private <T> ResponseEntity<T> exchangeGet(Env env, String path, ParameterizedTypeReference<T> reference,
+                                            Object... uriVariables) {
+    HttpEntity<Void> entity = new HttpEntity<>(assembleExtraHeaders(env));
+
+    return executeWithFailover(HttpMethod.GET, env, path, true,
+        url -> restTemplate.exchange(url, HttpMethod.GET, entity, reference, uriVariables),
+        uriVariables);
+  }
+
+  private <T> T extractGet(Env env, String path, ResponseExtractor<T> responseExtractor,
+                           Object... uriVariables) {
+    HttpHeaders extraHeaders = assembleExtraHeaders(env);
+    RequestCallback requestCallback = request -> {
+      request.getHeaders().setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+      if (!CollectionUtils.isEmpty(extraHeaders)) {
+        request.getHeaders().addAll(extraHeaders);
+      }
+    };
+
+    //not hedged, as the extractor may consume the response as a stream
+    return executeWithFailover(HttpMethod.GET, env, path, false,
+        url -> restTemplate.execute(url, HttpMethod.GET, requestCallback, responseExtractor,
+            uriVariables), uriVariables);
+  }
+
+  /**
+   * Try the admin servers in order until one of them responds. A hedgeable request is sent to the
+   * next admin server as well if the current one doesn't respond within its p95 latency, and the
+   * first response of them is taken.
+   */
+  private <T> T executeWithFailover(HttpMethod method, Env env, String path, boolean hedgeable,
+                                    Function<String, T> request, Object... uriVariables) {
     if (path.startsWith("/")) {
       path = path.substring(1);
     }
 
     String uri = uriTemplateHandler.expand(path, uriVariables).getPath();
+    //the latencies are tracked by the path template, as those of the endpoints differ a lot
+    String endpoint = method + " " + path;
     Transaction ct = Tracer.newTransaction("AdminAPI", uri);
     ct.addData("Env", env);
 
     List<ServiceDTO> services = getAdminServices(env, ct);
-    HttpHeaders extraHeaders = assembleExtraHeaders(env);
 
-    for (ServiceDTO serviceDTO : services) {
+    for (int i = 0; i < services.size(); i++) {
+      ServiceDTO serviceDTO = services.get(i);
+      ServiceDTO hedgeServiceDTO = hedgeable && i + 1 < services.size() ? services.get(i + 1) : null;
+      long hedgeDelay = hedgeServiceDTO == null ? 0 : adminServiceHealthTracker
+          .getHedgeDelayInMilli(env, endpoint, serviceDTO, hedgeServiceDTO);
       try {
 
-        T result = doExecute(method, extraHeaders, serviceDTO, path, request, responseType, uriVariables);
+        T result;
+        if (hedgeDelay > 0) {
+          //the hedge admin server is tried together with the current one
+          i++;
+          result = executeHedged(env, uri, endpoint, serviceDTO, hedgeServiceDTO, hedgeDelay, path,
+              request);
+        } else {
+          result = executeOn(env, serviceDTO, endpoint, path, request);
+        }
 
         ct.setStatus(Transaction.SUCCESS);
         ct.complete();
@@ -163,50 +264,103 @@ public class RetryableRestTemplate {
     throw e;
   }
 
-  private <T> ResponseEntity<T> exchangeGet(Env env, String path, ParameterizedTypeReference<T> reference,
-                                            Object... uriVariables) {
-    if (path.startsWith("/")) {
-      path = path.substring(1);
-    }
-
-    String uri = uriTemplateHandler.expand(path, uriVariables).getPath();
-    Transaction ct = Tracer.newTransaction("AdminAPI", uri);
-    ct.addData("Env", env);
-
-    List<ServiceDTO> services = getAdminServices(env, ct);
-    HttpEntity<Void> entity = new HttpEntity<>(assembleExtraHeaders(env));
-
-    for (ServiceDTO serviceDTO : services) {
+  /**
+   * Send the request to the admin server on the calling thread, and to the hedge admin server as
+   * well if there is no response within the hedge delay. The first response is taken and the other
+   * request is aborted. No hedge request is sent if all the hedge threads are busy.
+   */
+  private <T> T executeHedged(Env env, String uri, String endpoint, ServiceDTO serviceDTO,
+                              ServiceDTO hedgeServiceDTO, long hedgeDelay, String path,
+                              Function<String, T> request) {
+    AbortableHttpRequests requests = new AbortableHttpRequests();
+    AbortableHttpRequests hedgeRequests = new AbortableHttpRequests();
+    //completed with RejectedExecutionException if the hedge request isn't sent
+    CompletableFuture<T> hedgeResult = new CompletableFuture<>();
+    Runnable sendHedge = () -> {
       try {
+        hedgeExecutorService.execute(() -> {
+          try {
+            T result = hedgeRequests.run(
+                () -> executeOn(env, hedgeServiceDTO, endpoint, path, request));
+            if (hedgeResult.complete(result)) {
+              requests.abort();
+            }
+          } catch (Throwable ex) {
+            hedgeResult.completeExceptionally(ex);
+          }
+        });
+        adminServiceHealthTracker.recordHedge(env);
+        Tracer.logEvent(TracerEventType.API_HEDGE, uri);
+      } catch (RejectedExecutionException ex) {
+        hedgeResult.completeExceptionally(ex);
+      }
+    };
 
-        ResponseEntity<T> result =
-            restTemplate.exchange(parseHost(serviceDTO) + path, HttpMethod.GET, entity, reference, uriVariables);
-
-        ct.setStatus(Transaction.SUCCESS);
-        ct.complete();
-        return result;
-      } catch (Throwable t) {
-        logger.error("Http request failed, uri: {}, method: {}", uri, HttpMethod.GET, t);
-        Tracer.logError(t);
-        if (canRetry(t, HttpMethod.GET)) {
-          Tracer.logEvent(TracerEventType.API_RETRY, uri);
-        } else {// biz exception rethrow
-          ct.setStatus(t);
-          ct.complete();
-          throw t;
-        }
+    ScheduledFuture<?> hedge = hedgeScheduler.schedule(sendHedge, hedgeDelay,
+        TimeUnit.MILLISECONDS);
+    try {
+      return requests.run(() -> executeOn(env, serviceDTO, endpoint, path, request));
+    } catch (RuntimeException ex) {
+      if (requests.isAborted()) {
+        //the hedge request responded first
+        return hedgeResult.join();
+      }
+      if (!canRetry(ex, HttpMethod.GET)) {
+        throw ex;
+      }
+      logger.error("Http request failed, uri: {}, method: {}", uri, HttpMethod.GET, ex);
+      Tracer.logError(ex);
+      Tracer.logEvent(TracerEventType.API_RETRY, uri);
+      if (hedge.cancel(false)) {
+        //the admin server is down before the hedge delay, try the hedge admin server at once
+        return executeOn(env, hedgeServiceDTO, endpoint, path, request);
+      }
+      return awaitHedge(env, endpoint, hedgeServiceDTO, path, request, hedgeResult);
+    } finally {
+      hedge.cancel(false);
+      hedgeRequests.abort();
+    }
+  }
 
+  private <T> T awaitHedge(Env env, String endpoint, ServiceDTO hedgeServiceDTO, String path,
+                           Function<String, T> request, CompletableFuture<T> hedgeResult) {
+    try {
+      return hedgeResult.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RejectedExecutionException) {
+        //the hedge request isn't sent, so try the hedge admin server directly
+        return executeOn(env, hedgeServiceDTO, endpoint, path, request);
       }
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ServiceException("Interrupted while waiting for admin servers", e);
     }
+  }
 
-    //all admin server down
-    ServiceException e =
-        new ServiceException(String.format("Admin servers are unresponsive. meta server address: %s, admin servers: %s",
-                portalMetaDomainService.getDomain(env), services));
-    ct.setStatus(e);
-    ct.complete();
-    throw e;
+  private <T> T executeOn(Env env, ServiceDTO serviceDTO, String endpoint, String path,
+                          Function<String, T> request) {
+    long start = System.nanoTime();
+    try {
+      T result = request.apply(parseHost(serviceDTO) + path);
+      adminServiceHealthTracker.recordSuccess(env, serviceDTO, endpoint, elapsedInMilli(start));
+      return result;
+    } catch (ResourceAccessException e) {
+      //I/O errors, e.g. connection failures or timeouts, except for the aborted hedged requests
+      if (!AbortableHttpRequests.isCurrentAborted()) {
+        adminServiceHealthTracker.recordFailure(env, serviceDTO);
+      }
+      throw e;
+    } catch (RestClientException e) {
+      //the admin server responded, e.g. with an error status
+      adminServiceHealthTracker.recordSuccess(env, serviceDTO, endpoint, elapsedInMilli(start));
+      throw e;
+    }
+  }
 
+  private long elapsedInMilli(long startNanos) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
   }
 
   private HttpHeaders assembleExtraHeaders(Env env) {
@@ -270,7 +424,7 @@ public class RetryableRestTemplate {
     }
     return tokenMap;
   }
-  private <T> T doExecute(HttpMethod method, HttpHeaders extraHeaders, ServiceDTO service, String path, Object request,
+  private <T> T doExecute(HttpMethod method, HttpHeaders extraHeaders, String url, Object request,
                           Class<T> responseType, Object... uriVariables) {
     T result = null;
     switch (method) {
@@ -291,7 +445,7 @@ public class RetryableRestTemplate {
           entity = new HttpEntity<>(request, extraHeaders);
         }
         result = restTemplate
-            .exchange(parseHost(service) + path, method, entity, responseType, uriVariables)
+            .exchange(url, method, entity, responseType, uriVariables)
             .getBody();
         break;
       default:
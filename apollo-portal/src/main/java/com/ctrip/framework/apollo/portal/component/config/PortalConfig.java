@@ -45,6 +45,16 @@ public class PortalConfig extends RefreshableConfig {
 
   private static final int DEFAULT_REFRESH_ADMIN_SERVER_ADDRESS_TASK_NORMAL_INTERVAL_IN_SECOND = 5 * 60; //5min
   private static final int DEFAULT_REFRESH_ADMIN_SERVER_ADDRESS_TASK_OFFLINE_INTERVAL_IN_SECOND = 10; //10s
+  private static final int DEFAULT_ADMIN_SERVICE_CIRCUIT_BREAKER_FAILURE_THRESHOLD = 3;
+  private static final int DEFAULT_ADMIN_SERVICE_CIRCUIT_BREAKER_OPEN_DURATION_IN_SECOND = 30;
+  private static final int DEFAULT_ADMIN_SERVICE_LATENCY_OUTLIER_RATIO = 3;
+  private static final int DEFAULT_ADMIN_SERVICE_ASYNC_MAX_THREADS = 32;
+  private static final int DEFAULT_ADMIN_SERVICE_FAN_OUT_TIMEOUT_IN_MILLI = 15000;
+  private static final int DEFAULT_SEARCH_TIMEOUT_IN_MILLI = 10000;
+  private static final int DEFAULT_PERMISSION_CACHE_EXPIRE_IN_SECOND = 60;
+  private static final int DEFAULT_CONFIGS_EXPORT_FETCH_THREADS = 8;
+  private static final int DEFAULT_CONFIGS_IMPORT_THREADS = 8;
+  private static final int DEFAULT_CONSUMER_TOKEN_CACHE_EXPIRE_IN_SECOND = 5;
 
   private static final Gson GSON = new Gson();
   private static final Type ORGANIZATION = new TypeToken<List<Organization>>() {
@@ -91,6 +101,16 @@ public class PortalConfig extends RefreshableConfig {
 
   public int getPerEnvSearchMaxResults() {return getIntProperty("apollo.portal.search.perEnvMaxResults", 200);}
 
+  /**
+   * the max time to wait for the searches of all the envs, the items of the envs not responding in
+   * time are left out of the results
+   */
+  public int getSearchTimeoutInMilli() {
+    int timeout = getIntProperty("apollo.portal.search.timeoutInMilli",
+        DEFAULT_SEARCH_TIMEOUT_IN_MILLI);
+    return checkInt(timeout, 100, Integer.MAX_VALUE, DEFAULT_SEARCH_TIMEOUT_IN_MILLI);
+  }
+
   /**
    * @return the relationship between environment and its meta server. empty if meet exception
    */
@@ -206,6 +226,92 @@ public class PortalConfig extends RefreshableConfig {
     return checkInt(interval, 5, Integer.MAX_VALUE, DEFAULT_REFRESH_ADMIN_SERVER_ADDRESS_TASK_OFFLINE_INTERVAL_IN_SECOND);
   }
 
+  /**
+   * whether to send a GET request to a second admin server as well if the first one doesn't
+   * respond within the p95 latency of the endpoint, off by default as it adds load to the admin
+   * servers
+   */
+  public boolean isAdminServiceHedgeEnabled() {
+    return getBooleanProperty("admin-service.hedge.enabled", false);
+  }
+
+  /**
+   * the consecutive connection failures or timeouts of an admin server to open its circuit breaker
+   */
+  public int adminServiceCircuitBreakerFailureThreshold() {
+    int threshold = getIntProperty("admin-service.circuit-breaker.failure-threshold",
+        DEFAULT_ADMIN_SERVICE_CIRCUIT_BREAKER_FAILURE_THRESHOLD);
+    return checkInt(threshold, 1, Integer.MAX_VALUE,
+        DEFAULT_ADMIN_SERVICE_CIRCUIT_BREAKER_FAILURE_THRESHOLD);
+  }
+
+  public int adminServiceCircuitBreakerOpenDurationSecond() {
+    int duration = getIntProperty("admin-service.circuit-breaker.open-duration-second",
+        DEFAULT_ADMIN_SERVICE_CIRCUIT_BREAKER_OPEN_DURATION_IN_SECOND);
+    return checkInt(duration, 1, Integer.MAX_VALUE,
+        DEFAULT_ADMIN_SERVICE_CIRCUIT_BREAKER_OPEN_DURATION_IN_SECOND);
+  }
+
+  /**
+   * the circuit breaker of an admin server is opened if its latency is this many times the median
+   * latency of the other admin servers of the env
+   */
+  public int adminServiceLatencyOutlierRatio() {
+    int ratio = getIntProperty("admin-service.latency.outlier-ratio",
+        DEFAULT_ADMIN_SERVICE_LATENCY_OUTLIER_RATIO);
+    return checkInt(ratio, 2, Integer.MAX_VALUE, DEFAULT_ADMIN_SERVICE_LATENCY_OUTLIER_RATIO);
+  }
+
+  /**
+   * the max threads to call the admin services asynchronously, e.g. to call all the envs at once
+   */
+  public int adminServiceAsyncMaxThreads() {
+    int maxThreads = getIntProperty("admin-service.async.max-threads",
+        DEFAULT_ADMIN_SERVICE_ASYNC_MAX_THREADS);
+    return checkInt(maxThreads, 1, Integer.MAX_VALUE, DEFAULT_ADMIN_SERVICE_ASYNC_MAX_THREADS);
+  }
+
+  /**
+   * the max time to wait for the admin services of all the envs when calling them at once, the envs
+   * not responding in time are left out of the results
+   */
+  public int adminServiceFanOutTimeoutInMilli() {
+    int timeout = getIntProperty("admin-service.fan-out.timeout-in-milli",
+        DEFAULT_ADMIN_SERVICE_FAN_OUT_TIMEOUT_IN_MILLI);
+    return checkInt(timeout, 100, Integer.MAX_VALUE,
+        DEFAULT_ADMIN_SERVICE_FAN_OUT_TIMEOUT_IN_MILLI);
+  }
+
+  /**
+   * the seconds to cache the permissions of a user, 0 to disable the cache. The cache is invalidated
+   * at once on the portal changing the permissions, while the other portals see the change after
+   * their caches expire.
+   */
+  public int permissionCacheExpireSecond() {
+    int expire = getIntProperty("permission.cache.expire-second",
+        DEFAULT_PERMISSION_CACHE_EXPIRE_IN_SECOND);
+    return checkInt(expire, 0, Integer.MAX_VALUE, DEFAULT_PERMISSION_CACHE_EXPIRE_IN_SECOND);
+  }
+
+  /**
+   * the number of threads loading the configs of the apps from the admin services when exporting
+   * configs, each thread loads the configs of one app in one env at a time
+   */
+  public int configsExportFetchThreads() {
+    int threads = getIntProperty("configs.export.fetch.threads",
+        DEFAULT_CONFIGS_EXPORT_FETCH_THREADS);
+    return checkInt(threads, 1, Integer.MAX_VALUE, DEFAULT_CONFIGS_EXPORT_FETCH_THREADS);
+  }
+
+  /**
+   * the number of threads importing configs, each thread imports one app, cluster or namespace with
+   * its items at a time
+   */
+  public int configsImportThreads() {
+    int threads = getIntProperty("configs.import.threads", DEFAULT_CONFIGS_IMPORT_THREADS);
+    return checkInt(threads, 1, Integer.MAX_VALUE, DEFAULT_CONFIGS_IMPORT_THREADS);
+  }
+
   public boolean isEmergencyPublishAllowed(Env env) {
     String targetEnv = env.getName();
 
@@ -242,6 +348,25 @@ public class PortalConfig extends RefreshableConfig {
     return getValue("consumer.token.salt", "apollo-portal");
   }
 
+  /**
+   * the seconds to cache a consumer token for the open api, 0 to disable the cache. The cache is
+   * invalidated at once on the portal changing the token, while the other portals see the change
+   * after their caches expire, i.e. a deleted token keeps working on them for up to this long.
+   */
+  public int consumerTokenCacheExpireSecond() {
+    int expire = getIntProperty("consumer.token.cache.expire-second",
+        DEFAULT_CONSUMER_TOKEN_CACHE_EXPIRE_IN_SECOND);
+    return checkInt(expire, 0, Integer.MAX_VALUE, DEFAULT_CONSUMER_TOKEN_CACHE_EXPIRE_IN_SECOND);
+  }
+
+  /**
+   * whether the rate limits of the consumer tokens are shared by all the portals with the counters
+   * in PortalDB, instead of applied by each portal on its own
+   */
+  public boolean isOpenApiClusterRateLimitEnabled() {
+    return getBooleanProperty("open.api.rate.limit.cluster.enabled", false);
+  }
+
   public boolean isEmailEnabled() {
     return getBooleanProperty("email.enabled", false);
   }
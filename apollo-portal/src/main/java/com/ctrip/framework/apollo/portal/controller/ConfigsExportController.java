@@ -110,10 +110,13 @@ public class ConfigsExportController {
   /**
    * Export all configs in a compressed file. Just export namespace which current exists read permission. The permission
    * check in service.
+   *
+   * @param fromAppId resume an interrupted export from the last app in the downloaded file
    */
   @PreAuthorize(value = "@permissionValidator.isSuperAdmin()")
   @GetMapping("/configs/export")
   public void exportAll(@RequestParam(value = "envs") String envs,
+                        @RequestParam(value = "fromAppId", required = false) String fromAppId,
                         HttpServletRequest request, HttpServletResponse response) throws IOException {
     // filename must contain the information of time
     final String filename = "apollo_config_export_" + DateFormatUtils.format(new Date(), "yyyy_MMdd_HH_mm_ss") + ".zip";
@@ -128,7 +131,7 @@ public class ConfigsExportController {
         Splitter.on(ENV_SEPARATOR).splitToList(envs).stream().map(env -> Env.valueOf(env)).collect(Collectors.toList());
 
     try (OutputStream outputStream = response.getOutputStream()) {
-      configsExportService.exportData(outputStream, exportEnvs);
+      configsExportService.exportData(outputStream, exportEnvs, fromAppId);
     }
   }
 
@@ -16,6 +16,8 @@
  */
 package com.ctrip.framework.apollo.portal.controller;
 
+import com.ctrip.framework.apollo.common.controller.HttpMessageConverterConfiguration;
+import com.ctrip.framework.apollo.common.dto.CursorPageDTO;
 import com.ctrip.framework.apollo.common.dto.InstanceDTO;
 import com.ctrip.framework.apollo.common.dto.PageDTO;
 import com.ctrip.framework.apollo.common.exception.BadRequestException;
@@ -23,6 +25,10 @@ import com.ctrip.framework.apollo.portal.environment.Env;
 import com.ctrip.framework.apollo.portal.entity.vo.Number;
 import com.ctrip.framework.apollo.portal.service.InstanceService;
 import com.google.common.base.Splitter;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -30,16 +36,25 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+import javax.servlet.http.HttpServletResponse;
+
 @RestController
 public class InstanceController {
 
     private static final Splitter RELEASES_SPLITTER = Splitter.on(",").omitEmptyStrings()
         .trimResults();
 
+    private static final Gson GSON = new GsonBuilder()
+        .setDateFormat(HttpMessageConverterConfiguration.DATE_FORMAT).create();
+
     private final InstanceService instanceService;
 
     public InstanceController(final InstanceService instanceService) {
@@ -64,6 +79,25 @@ public class InstanceController {
         return instanceService.getByNamespace(Env.valueOf(env), appId, clusterName, namespaceName, instanceAppId, page, size);
     }
 
+    @GetMapping("/envs/{env}/instances/by-release/cursor")
+    public CursorPageDTO<InstanceDTO> getByReleaseAfter(@PathVariable String env, @RequestParam long releaseId,
+                                                        @RequestParam(defaultValue = "0") long afterId,
+                                                        @RequestParam(defaultValue = "20") int size) {
+
+        return instanceService.getByReleaseAfter(Env.valueOf(env), releaseId, afterId, size);
+    }
+
+    @GetMapping("/envs/{env}/instances/by-namespace/cursor")
+    public CursorPageDTO<InstanceDTO> getByNamespaceAfter(@PathVariable String env, @RequestParam String appId,
+                                                          @RequestParam String clusterName, @RequestParam String namespaceName,
+                                                          @RequestParam(required = false) String instanceAppId,
+                                                          @RequestParam(defaultValue = "0") long afterId,
+                                                          @RequestParam(defaultValue = "20") int size) {
+
+        return instanceService.getByNamespaceAfter(Env.valueOf(env), appId, clusterName, namespaceName, instanceAppId,
+            afterId, size);
+    }
+
     @GetMapping("/envs/{env}/instances/by-namespace/count")
     public ResponseEntity<Number> getInstanceCountByNamespace(@PathVariable String env, @RequestParam String appId,
                                                               @RequestParam String clusterName,
@@ -73,10 +107,15 @@ public class InstanceController {
         return ResponseEntity.ok(new Number(count));
     }
 
+    /**
+     * The instances are written to the response as a json array while they are streamed from the admin
+     * service, so the memory used doesn't grow with the number of instances
+     */
     @GetMapping("/envs/{env}/instances/by-namespace-and-releases-not-in")
-    public List<InstanceDTO> getByReleasesNotIn(@PathVariable String env, @RequestParam String appId,
-                                                @RequestParam String clusterName, @RequestParam String namespaceName,
-                                                @RequestParam String releaseIds) {
+    public void getByReleasesNotIn(@PathVariable String env, @RequestParam String appId,
+                                   @RequestParam String clusterName, @RequestParam String namespaceName,
+                                   @RequestParam String releaseIds, HttpServletResponse response)
+        throws IOException {
 
         Set<Long> releaseIdSet = RELEASES_SPLITTER.splitToList(releaseIds).stream().map(Long::parseLong)
             .collect(Collectors.toSet());
@@ -85,7 +124,51 @@ public class InstanceController {
             throw new BadRequestException("release ids can not be empty");
         }
 
-        return instanceService.getByReleasesNotIn(Env.valueOf(env), appId, clusterName, namespaceName, releaseIdSet);
+        InstanceArrayWriter writer = new InstanceArrayWriter(response);
+        instanceService.streamByReleasesNotIn(Env.valueOf(env), appId, clusterName, namespaceName, releaseIdSet,
+            writer);
+        writer.finish();
+    }
+
+    /**
+     * Nothing is written to the response until the first instance, so that the errors before it are
+     * responded as usual
+     */
+    private static class InstanceArrayWriter implements Consumer<InstanceDTO> {
+
+        private final HttpServletResponse response;
+        private JsonWriter writer;
+
+        private InstanceArrayWriter(HttpServletResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public void accept(InstanceDTO instance) {
+            try {
+                if (writer == null) {
+                    begin();
+                }
+                GSON.toJson(instance, InstanceDTO.class, writer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void finish() throws IOException {
+            if (writer == null) {
+                begin();
+            }
+            writer.endArray();
+            writer.flush();
+        }
+
+        private void begin() throws IOException {
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            writer = new JsonWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+            writer.beginArray();
+        }
     }
 
 
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.portal.listener;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when a consumer token is created or deleted, so that the cached token is invalidated.
+ */
+public class ConsumerTokenChangeEvent extends ApplicationEvent {
+
+  private final String token;
+
+  public ConsumerTokenChangeEvent(Object source, String token) {
+    super(source);
+    this.token = token;
+  }
+
+  public String getToken() {
+    return token;
+  }
+}
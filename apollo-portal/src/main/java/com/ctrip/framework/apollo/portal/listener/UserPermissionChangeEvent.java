@@ -0,0 +1,45 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.portal.listener;
+
+import java.util.Set;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when the permissions of some users, or of all the users, may have changed, e.g. when
+ * roles are assigned to or removed from users.
+ */
+public class UserPermissionChangeEvent extends ApplicationEvent {
+
+  private final Set<String> userIds;
+
+  /**
+   * @param userIds null if the permissions of all the users may have changed
+   */
+  public UserPermissionChangeEvent(Object source, Set<String> userIds) {
+    super(source);
+    this.userIds = userIds;
+  }
+
+  public boolean isAllUsers() {
+    return userIds == null;
+  }
+
+  public Set<String> getUserIds() {
+    return userIds;
+  }
+}
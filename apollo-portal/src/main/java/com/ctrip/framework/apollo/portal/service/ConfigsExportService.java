@@ -24,8 +24,10 @@ import com.ctrip.framework.apollo.common.entity.AppNamespace;
 import com.ctrip.framework.apollo.common.exception.BadRequestException;
 import com.ctrip.framework.apollo.common.exception.ServiceException;
 import com.ctrip.framework.apollo.core.enums.ConfigFileFormat;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.portal.component.PermissionValidator;
 import com.ctrip.framework.apollo.portal.component.PortalSettings;
+import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
 import com.ctrip.framework.apollo.portal.entity.bo.ConfigBO;
 import com.ctrip.framework.apollo.portal.entity.bo.NamespaceBO;
 import com.ctrip.framework.apollo.portal.environment.Env;
@@ -39,20 +41,38 @@ import org.springframework.util.CollectionUtils;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
+import javax.annotation.PreDestroy;
 
 @Service
 public class ConfigsExportService {
 
   private static final Logger logger = LoggerFactory.getLogger(ConfigsExportService.class);
+  //the apps loaded ahead of the zip writer per fetch thread, which bounds the configs held in memory
+  private static final int PENDING_APPS_PER_FETCH_THREAD = 4;
+  private static final int PROGRESS_LOG_INTERVAL = 500;
+  //the fetches beyond the queue are run by the exporting thread, which slows down the export
+  private static final int FETCH_QUEUE_SIZE = 1000;
 
   private final Gson gson = new Gson();
 
@@ -68,19 +88,33 @@ public class ConfigsExportService {
 
   private final PermissionValidator permissionValidator;
 
+  private final PortalConfig portalConfig;
+
+  //shared by all the exports, so that concurrent exports don't multiply the load on admin services
+  private volatile ThreadPoolExecutor fetchExecutorService;
+
   public ConfigsExportService(
       AppService appService,
       ClusterService clusterService,
       final @Lazy NamespaceService namespaceService,
       final AppNamespaceService appNamespaceService,
       PortalSettings portalSettings,
-      PermissionValidator permissionValidator) {
+      PermissionValidator permissionValidator,
+      final PortalConfig portalConfig) {
     this.appService = appService;
     this.clusterService = clusterService;
     this.namespaceService = namespaceService;
     this.appNamespaceService = appNamespaceService;
     this.portalSettings = portalSettings;
     this.permissionValidator = permissionValidator;
+    this.portalConfig = portalConfig;
+  }
+
+  @PreDestroy
+  void preDestroy() {
+    if (fetchExecutorService != null) {
+      fetchExecutorService.shutdownNow();
+    }
   }
 
   /**
@@ -97,42 +131,102 @@ public class ConfigsExportService {
    * @param outputStream network file download stream to user
    */
   public void exportData(OutputStream outputStream, List<Env> exportEnvs) {
+    exportData(outputStream, exportEnvs, null);
+  }
+
+  /**
+   * Export the applications in the order of app ids, the configs of each application are written
+   * together after they are loaded from all the envs. So an interrupted export contains all the
+   * configs of the applications before the last one, and can be resumed from the last one.
+   *
+   * @param fromAppId export the applications from it on, null to export all the applications
+   */
+  public void exportData(OutputStream outputStream, List<Env> exportEnvs, String fromAppId) {
     if (CollectionUtils.isEmpty(exportEnvs)) {
       exportEnvs = portalSettings.getActiveEnvs();
     }
 
-    exportApps(exportEnvs, outputStream);
+    exportApps(exportEnvs, fromAppId, outputStream);
   }
 
-  private void exportApps(final Collection<Env> exportEnvs, OutputStream outputStream) {
-    List<App> hasPermissionApps = findHasPermissionApps();
+  /**
+   * The configs of the apps are loaded by the shared pool of fetch threads, and written to the zip
+   * by the calling thread in the order of app ids. At most a few apps per fetch thread are loaded
+   * ahead of the writer, so a slow download slows down the loading instead of piling up configs.
+   */
+  private void exportApps(final Collection<Env> exportEnvs, String fromAppId,
+      OutputStream outputStream) {
+    List<App> hasPermissionApps = findHasPermissionApps(fromAppId);
 
     if (CollectionUtils.isEmpty(hasPermissionApps)) {
       return;
     }
 
-    try (final ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
-      //write app info to zip
-      writeAppInfoToZip(hasPermissionApps, zipOutputStream);
+    logger.info("to export app size = {}", hasPermissionApps.size());
+
+    ExecutorService fetchExecutorService = getFetchExecutorService();
+    int fetchThreads = this.fetchExecutorService.getMaximumPoolSize();
+    Deque<AppExport> pendingApps = new ArrayDeque<>();
+    Map<Env, EnvProgress> envProgresses = new LinkedHashMap<>();
+    exportEnvs.forEach(env -> envProgresses.put(env, new EnvProgress()));
 
+    try (final ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
       //export app namespace
       exportAppNamespaces(zipOutputStream);
 
-      //export app's clusters
-      exportEnvs.parallelStream().forEach(env -> {
-        try {
-          this.exportClusters(env, hasPermissionApps, zipOutputStream);
-        } catch (Exception e) {
-          logger.error("export cluster error. env = {}", env, e);
+      //export apps with their clusters
+      Iterator<App> toExportApps = hasPermissionApps.iterator();
+      int exportedApps = 0;
+      while (true) {
+        while (pendingApps.size() < fetchThreads * PENDING_APPS_PER_FETCH_THREAD
+            && toExportApps.hasNext()) {
+          pendingApps.add(fetchApp(toExportApps.next(), exportEnvs, fetchExecutorService));
+        }
+        AppExport appExport = pendingApps.poll();
+        if (appExport == null) {
+          break;
+        }
+        writeAppToZip(appExport, envProgresses, zipOutputStream);
+
+        if (++exportedApps % PROGRESS_LOG_INTERVAL == 0) {
+          logProgress(envProgresses, exportedApps, hasPermissionApps.size(),
+              appExport.app.getAppId());
         }
-      });
+      }
+      logProgress(envProgresses, exportedApps, hasPermissionApps.size(), null);
     } catch (IOException e) {
       logger.error("export config error", e);
       throw new ServiceException("export config error", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ServiceException("export config interrupted", e);
+    } finally {
+      pendingApps.forEach(appExport -> appExport.envConfigs.values()
+          .forEach(future -> future.cancel(true)));
     }
   }
 
-  private List<App> findHasPermissionApps() {
+  private ExecutorService getFetchExecutorService() {
+    if (fetchExecutorService == null) {
+      synchronized (this) {
+        if (fetchExecutorService == null) {
+          int fetchThreads = portalConfig.configsExportFetchThreads();
+          ThreadPoolExecutor executorService = new ThreadPoolExecutor(fetchThreads, fetchThreads,
+              60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(FETCH_QUEUE_SIZE),
+              ApolloThreadFactory.create("ConfigsExport", true),
+              new ThreadPoolExecutor.CallerRunsPolicy());
+          executorService.allowCoreThreadTimeOut(true);
+          fetchExecutorService = executorService;
+        }
+      }
+    }
+    return fetchExecutorService;
+  }
+
+  /**
+   * @return the apps sorted by app ids
+   */
+  private List<App> findHasPermissionApps(String fromAppId) {
     // get all apps
     final List<App> apps = appService.findAll();
 
@@ -152,28 +246,11 @@ public class ConfigsExportService {
         };
 
     // app admin permission filter
-    return apps.stream().filter(isAppAdmin).collect(Collectors.toList());
-  }
-
-  private void writeAppInfoToZip(List<App> apps, ZipOutputStream zipOutputStream) {
-    logger.info("to import app size = {}", apps.size());
-
-    final Consumer<App> appConsumer =
-        app -> {
-          try {
-            synchronized (zipOutputStream) {
-              String fileName = ConfigFileUtils.genAppInfoPath(app);
-              String content = gson.toJson(app);
-
-              writeToZip(fileName, content, zipOutputStream);
-            }
-          } catch (IOException e) {
-            logger.error("Write error. {}", app);
-            throw new ServiceException("Write app error. {}", e);
-          }
-        };
-
-    apps.forEach(appConsumer);
+    return apps.stream()
+        .filter(app -> fromAppId == null || app.getAppId().compareTo(fromAppId) >= 0)
+        .filter(isAppAdmin)
+        .sorted(Comparator.comparing(App::getAppId))
+        .collect(Collectors.toList());
   }
 
   private void exportAppNamespaces(ZipOutputStream zipOutputStream) {
@@ -183,12 +260,10 @@ public class ConfigsExportService {
 
     Consumer<AppNamespace> appNamespaceConsumer = appNamespace -> {
       try {
-        synchronized (zipOutputStream) {
-          String fileName = ConfigFileUtils.genAppNamespaceInfoPath(appNamespace);
-          String content = gson.toJson(appNamespace);
+        String fileName = ConfigFileUtils.genAppNamespaceInfoPath(appNamespace);
+        String content = gson.toJson(appNamespace);
 
-          writeToZip(fileName, content, zipOutputStream);
-        }
+        writeToZip(fileName, content, zipOutputStream);
       } catch (Exception e) {
         logger.error("Write appnamespace error. {}", appNamespace);
         throw new IllegalStateException(e);
@@ -199,40 +274,73 @@ public class ConfigsExportService {
 
   }
 
-  private void exportClusters(final Env env, final List<App> exportApps, ZipOutputStream zipOutputStream) {
-    exportApps.parallelStream().forEach(exportApp -> {
+  private AppExport fetchApp(App exportApp, Collection<Env> exportEnvs,
+      ExecutorService fetchExecutorService) {
+    AppExport appExport = new AppExport(exportApp);
+    for (Env env : exportEnvs) {
+      appExport.envConfigs.put(env,
+          fetchExecutorService.submit(() -> this.exportCluster(env, exportApp)));
+    }
+    return appExport;
+  }
+
+  private void writeAppToZip(AppExport appExport, Map<Env, EnvProgress> envProgresses,
+      ZipOutputStream zipOutputStream) throws IOException, InterruptedException {
+    App app = appExport.app;
+    //write app info to zip
+    writeToZip(ConfigFileUtils.genAppInfoPath(app), gson.toJson(app), zipOutputStream);
+
+    for (Map.Entry<Env, Future<List<ExportFile>>> entry : appExport.envConfigs.entrySet()) {
+      Env env = entry.getKey();
+      EnvProgress envProgress = envProgresses.get(env);
+      List<ExportFile> exportFiles;
       try {
-        this.exportCluster(env, exportApp, zipOutputStream);
-      } catch (Exception e) {
-        logger.error("export cluster error. appId = {}", exportApp.getAppId(), e);
+        exportFiles = entry.getValue().get();
+      } catch (ExecutionException e) {
+        logger.error("export cluster error. env = {}, appId = {}", env, app.getAppId(),
+            e.getCause());
+        envProgress.failedApps++;
+        continue;
+      }
+      for (ExportFile exportFile : exportFiles) {
+        writeToZip(exportFile.path, exportFile.content, zipOutputStream);
       }
-    });
+      envProgress.exportedApps++;
+    }
   }
 
-  private void exportCluster(final Env env, final App exportApp, ZipOutputStream zipOutputStream) {
+  /**
+   * @return the files of the clusters and namespaces of the app in the env
+   */
+  private List<ExportFile> exportCluster(final Env env, final App exportApp) {
     final List<ClusterDTO> exportClusters = clusterService.findClusters(env, exportApp.getAppId());
 
     if (CollectionUtils.isEmpty(exportClusters)) {
-      return;
+      return Collections.emptyList();
     }
 
-    //write cluster info to zip
-    writeClusterInfoToZip(env, exportApp, exportClusters, zipOutputStream);
+    List<ExportFile> exportFiles = new ArrayList<>();
+    //cluster info
+    for (ClusterDTO cluster : exportClusters) {
+      exportFiles.add(new ExportFile(ConfigFileUtils.genClusterInfoPath(exportApp, env, cluster),
+          gson.toJson(cluster)));
+    }
 
     //export namespaces
-    exportClusters.parallelStream().forEach(cluster -> {
+    for (ClusterDTO cluster : exportClusters) {
       try {
-        this.exportNamespaces(env, exportApp, cluster, zipOutputStream);
+        this.exportNamespaces(env, exportApp, cluster, exportFiles);
       } catch (BadRequestException badRequestException) {
         //ignore
       } catch (Exception e) {
         logger.error("export namespace error. appId = {}, cluster = {}", exportApp.getAppId(), cluster, e);
       }
-    });
+    }
+    return exportFiles;
   }
 
   private void exportNamespaces(final Env env, final App exportApp, final ClusterDTO exportCluster,
-                                ZipOutputStream zipOutputStream) {
+                                List<ExportFile> exportFiles) {
     String clusterName = exportCluster.getName();
 
     List<NamespaceBO> namespaceBOS = namespaceService.findNamespaceBOs(exportApp.getAppId(), env, clusterName, true, false);
@@ -241,59 +349,31 @@ public class ConfigsExportService {
       return;
     }
 
-    Stream<ConfigBO> configBOStream = namespaceBOS.stream()
-        .map(
-            namespaceBO -> new ConfigBO(env, exportApp.getOwnerName(), exportApp.getAppId(), clusterName, namespaceBO));
+    for (NamespaceBO namespaceBO : namespaceBOS) {
+      ConfigBO configBO = new ConfigBO(env, exportApp.getOwnerName(), exportApp.getAppId(), clusterName, namespaceBO);
+      String appId = configBO.getAppId();
+      String namespace = configBO.getNamespace();
+      ConfigFileFormat configFileFormat = configBO.getFormat();
 
-    writeNamespacesToZip(configBOStream, zipOutputStream);
-  }
+      String
+          configFileName =
+          ConfigFileUtils.toFilename(appId, clusterName, namespace, configFileFormat);
+      String filePath =
+          ConfigFileUtils.genNamespacePath(configBO.getOwnerName(), appId, configBO.getEnv(), configFileName);
 
-  private void writeNamespacesToZip(Stream<ConfigBO> configBOStream, ZipOutputStream zipOutputStream) {
-    final Consumer<ConfigBO> configBOConsumer =
-        configBO -> {
-          try {
-            synchronized (zipOutputStream) {
-              String appId = configBO.getAppId();
-              String clusterName = configBO.getClusterName();
-              String namespace = configBO.getNamespace();
-              String configFileContent = configBO.getConfigFileContent();
-              ConfigFileFormat configFileFormat = configBO.getFormat();
-
-              String
-                  configFileName =
-                  ConfigFileUtils.toFilename(appId, clusterName, namespace, configFileFormat);
-              String filePath =
-                  ConfigFileUtils.genNamespacePath(configBO.getOwnerName(), appId, configBO.getEnv(), configFileName);
-
-              writeToZip(filePath, configFileContent, zipOutputStream);
-            }
-          } catch (IOException e) {
-            logger.error("Write error. {}", configBO);
-            throw new ServiceException("Write namespace error. {}", e);
-          }
-        };
-
-    configBOStream.forEach(configBOConsumer);
+      exportFiles.add(new ExportFile(filePath, configBO.getConfigFileContent()));
+    }
   }
 
-  private void writeClusterInfoToZip(Env env, App app, List<ClusterDTO> exportClusters,
-                                     ZipOutputStream zipOutputStream) {
-    final Consumer<ClusterDTO> clusterConsumer =
-        cluster -> {
-          try {
-            synchronized (zipOutputStream) {
-              String fileName = ConfigFileUtils.genClusterInfoPath(app, env, cluster);
-              String content = gson.toJson(cluster);
-
-              writeToZip(fileName, content, zipOutputStream);
-            }
-          } catch (IOException e) {
-            logger.error("Write error. {}", cluster);
-            throw new ServiceException("Write error. {}", e);
-          }
-        };
-
-    exportClusters.forEach(clusterConsumer);
+  private void logProgress(Map<Env, EnvProgress> envProgresses, int exportedApps, int totalApps,
+      String lastAppId) {
+    envProgresses.forEach((env, envProgress) -> logger.info(
+        "export progress. env = {}, exported apps = {}, failed apps = {}, total apps = {}", env,
+        envProgress.exportedApps, envProgress.failedApps, totalApps));
+    if (lastAppId != null) {
+      logger.info("export checkpoint. {} of {} apps exported, the last app = {}", exportedApps,
+          totalApps, lastAppId);
+    }
   }
 
   private void writeToZip(String filePath, String content, ZipOutputStream zipOutputStream)
@@ -310,4 +390,31 @@ public class ConfigsExportService {
     }
   }
 
+  private static class AppExport {
+
+    private final App app;
+    private final Map<Env, Future<List<ExportFile>>> envConfigs = new LinkedHashMap<>();
+
+    private AppExport(App app) {
+      this.app = app;
+    }
+  }
+
+  private static class ExportFile {
+
+    private final String path;
+    private final String content;
+
+    private ExportFile(String path, String content) {
+      this.path = path;
+      this.content = content;
+    }
+  }
+
+  private static class EnvProgress {
+
+    private int exportedApps;
+    private int failedApps;
+  }
+
 }
@@ -23,13 +23,18 @@ import com.ctrip.framework.apollo.common.constants.GsonType;
 import com.ctrip.framework.apollo.common.dto.ClusterDTO;
 import com.ctrip.framework.apollo.common.dto.ItemDTO;
 import com.ctrip.framework.apollo.common.dto.NamespaceDTO;
+import com.ctrip.framework.apollo.common.dto.NamespaceImportDTO;
+import com.ctrip.framework.apollo.common.dto.NamespaceImportResultDTO;
 import com.ctrip.framework.apollo.common.entity.App;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
 import com.ctrip.framework.apollo.common.exception.ServiceException;
 import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
 import com.ctrip.framework.apollo.portal.environment.Env;
 import com.ctrip.framework.apollo.portal.listener.AppNamespaceCreationEvent;
 import com.ctrip.framework.apollo.portal.spi.UserInfoHolder;
+import com.ctrip.framework.apollo.portal.util.AdminServiceErrorUtils;
 import com.ctrip.framework.apollo.portal.util.ConfigFileUtils;
 import com.ctrip.framework.apollo.portal.util.ConfigToFileUtils;
 
@@ -41,6 +46,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpStatusCodeException;
 
 import java.io.ByteArrayOutputStream;
@@ -51,6 +57,11 @@ import java.util.Date;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -72,6 +83,7 @@ public class ConfigsImportService {
   private final ApplicationEventPublisher publisher;
   private final UserInfoHolder            userInfoHolder;
   private final RoleInitializationService roleInitializationService;
+  private final PortalConfig              portalConfig;
 
   public ConfigsImportService(
       final ItemService itemService,
@@ -81,7 +93,8 @@ public class ConfigsImportService {
       final AppNamespaceService appNamespaceService,
       final ApplicationEventPublisher publisher,
       final UserInfoHolder userInfoHolder,
-      final RoleInitializationService roleInitializationService) {
+      final RoleInitializationService roleInitializationService,
+      final PortalConfig portalConfig) {
     this.itemService = itemService;
     this.appService = appService;
     this.clusterService = clusterService;
@@ -90,6 +103,7 @@ public class ConfigsImportService {
     this.publisher = publisher;
     this.userInfoHolder = userInfoHolder;
     this.roleInitializationService = roleInitializationService;
+    this.portalConfig = portalConfig;
   }
 
   /**
@@ -173,76 +187,59 @@ public class ConfigsImportService {
     }
   }
 
+  /**
+   * The apps, app namespaces, clusters and namespaces are imported one kind after another, as each
+   * kind depends on the previous ones. The ones of the same kind are imported by a bounded pool of
+   * threads, each namespace with one request to the admin service.
+   */
   private void doImport(List<Env> importEnvs, List<String> toImportApps, List<String> toImportAppNSs,
                         List<ImportClusterData> toImportClusters, List<ImportNamespaceData> toImportNSs)
       throws InterruptedException {
-    LOGGER.info("Start to import app. size = {}", toImportApps.size());
-
     String operator = userInfoHolder.getUser().getUserId();
 
-    long startTime = System.currentTimeMillis();
-    CountDownLatch appLatch = new CountDownLatch(toImportApps.size());
-    toImportApps.parallelStream().forEach(app -> {
-      try {
-        importApp(app, importEnvs, operator);
-      } catch (Exception e) {
-        LOGGER.error("import app error. app = {}", app, e);
-      } finally {
-        appLatch.countDown();
-      }
-    });
-    appLatch.await();
-
-    LOGGER.info("Finish to import app. duration = {}", System.currentTimeMillis() - startTime);
-    LOGGER.info("Start to import appnamespace. size = {}", toImportAppNSs.size());
+    int importThreads = portalConfig.configsImportThreads();
+    ExecutorService importExecutorService = new ThreadPoolExecutor(importThreads, importThreads,
+        0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+        ApolloThreadFactory.create("ConfigsImport", true));
+    try {
+      importInParallel("app", toImportApps, app -> importApp(app, importEnvs, operator),
+          importExecutorService);
 
-    startTime = System.currentTimeMillis();
-    CountDownLatch appNSLatch = new CountDownLatch(toImportAppNSs.size());
-    toImportAppNSs.parallelStream().forEach(appNS -> {
-      try {
-        importAppNamespace(appNS, operator);
-      } catch (Exception e) {
-        LOGGER.error("import appnamespace error. appnamespace = {}", appNS, e);
-      } finally {
-        appNSLatch.countDown();
-      }
-    });
-    appNSLatch.await();
+      importInParallel("appnamespace", toImportAppNSs, appNS -> importAppNamespace(appNS, operator),
+          importExecutorService);
 
-    LOGGER.info("Finish to import appnamespace. duration = {}", System.currentTimeMillis() - startTime);
-    LOGGER.info("Start to import cluster. size = {}", toImportClusters.size());
+      importInParallel("cluster", toImportClusters, cluster -> importCluster(cluster, operator),
+          importExecutorService);
 
-    startTime = System.currentTimeMillis();
-    CountDownLatch clusterLatch = new CountDownLatch(toImportClusters.size());
-    toImportClusters.parallelStream().forEach(cluster -> {
-      try {
-        importCluster(cluster, operator);
-      } catch (Exception e) {
-        LOGGER.error("import cluster error. cluster = {}", cluster, e);
-      } finally {
-        clusterLatch.countDown();
-      }
-    });
-    clusterLatch.await();
+      importInParallel("namespace", toImportNSs,
+          namespace -> importNamespaceFromText(namespace.getEnv(), namespace.getFileName(),
+              namespace.getContent(), namespace.isIgnoreConflictNamespace(), operator),
+          importExecutorService);
+    } finally {
+      importExecutorService.shutdownNow();
+    }
+  }
 
-    LOGGER.info("Finish to import cluster. duration = {}", System.currentTimeMillis() - startTime);
-    LOGGER.info("Start to import namespace. size = {}", toImportNSs.size());
+  private <T> void importInParallel(String kind, List<T> toImports, Consumer<T> importer,
+      ExecutorService importExecutorService) throws InterruptedException {
+    LOGGER.info("Start to import {}. size = {}", kind, toImports.size());
 
-    startTime = System.currentTimeMillis();
-    CountDownLatch nsLatch = new CountDownLatch(toImportNSs.size());
-    toImportNSs.parallelStream().forEach(namespace -> {
-      try {
-        importNamespaceFromText(namespace.getEnv(), namespace.getFileName(), namespace.getContent(),
-                                namespace.isIgnoreConflictNamespace(), operator);
-      } catch (Exception e) {
-        LOGGER.error("import namespace error. namespace = {}", namespace, e);
-      } finally {
-        nsLatch.countDown();
-      }
-    });
-    nsLatch.await();
+    long startTime = System.currentTimeMillis();
+    CountDownLatch latch = new CountDownLatch(toImports.size());
+    for (T toImport : toImports) {
+      importExecutorService.submit(() -> {
+        try {
+          importer.accept(toImport);
+        } catch (Exception e) {
+          LOGGER.error("import {} error. {} = {}", kind, kind, toImport, e);
+        } finally {
+          latch.countDown();
+        }
+      });
+    }
+    latch.await();
 
-    LOGGER.info("Finish to import namespace. duration = {}", System.currentTimeMillis() - startTime);
+    LOGGER.info("Finish to import {}. duration = {}", kind, System.currentTimeMillis() - startTime);
   }
 
   private void importApp(String appInfo, List<Env> importEnvs, String operator) {
@@ -346,6 +343,37 @@ public class ConfigsImportService {
                                final String clusterName, final String namespaceName,
                                final String configText, final String format,
                                boolean ignoreConflictNamespace, String operator) {
+    NamespaceImportDTO namespaceImport = new NamespaceImportDTO();
+    namespaceImport.setItems(gson.fromJson(configText, GsonType.ITEM_DTOS));
+    namespaceImport.setIgnoreConflictNamespace(ignoreConflictNamespace);
+    namespaceImport.setDataChangeCreatedBy(operator);
+    namespaceImport.setDataChangeLastModifiedBy(operator);
+
+    NamespaceImportResultDTO result;
+    try {
+      result = itemService.importNamespace(appId, env, clusterName, namespaceName, namespaceImport);
+    } catch (HttpClientErrorException e) {
+      if (!AdminServiceErrorUtils.isEndpointMissing(e)) {
+        throw e;
+      }
+      LOGGER.warn("The admin service of env {} doesn't support the namespace import, import the "
+              + "items one by one instead. appId = {}, cluster = {}, namespace = {}", env, appId,
+          clusterName, namespaceName);
+      importNamespaceItemByItem(appId, env, clusterName, namespaceName, configText,
+          ignoreConflictNamespace, operator);
+      return;
+    }
+
+    if (result.isNamespaceCreated()) {
+      roleInitializationService.initNamespaceRoles(appId, namespaceName, operator);
+      roleInitializationService.initNamespaceEnvRoles(appId, namespaceName, operator);
+    }
+  }
+
+  private void importNamespaceItemByItem(final String appId, final Env env,
+                                         final String clusterName, final String namespaceName,
+                                         final String configText,
+                                         boolean ignoreConflictNamespace, String operator) {
     NamespaceDTO namespaceDTO;
     try {
       namespaceDTO = namespaceService.loadNamespaceBaseInfo(appId, env, clusterName, namespaceName);
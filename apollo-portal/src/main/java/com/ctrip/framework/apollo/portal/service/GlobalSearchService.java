@@ -20,58 +20,114 @@ import com.ctrip.framework.apollo.common.dto.ItemInfoDTO;
 import com.ctrip.framework.apollo.common.dto.PageDTO;
 import com.ctrip.framework.apollo.common.http.SearchResponseEntity;
 import com.ctrip.framework.apollo.portal.api.AdminServiceAPI;
+import com.ctrip.framework.apollo.portal.api.AsyncAdminServiceAPI;
+import com.ctrip.framework.apollo.portal.api.AsyncAdminServiceAPI.EnvResults;
 import com.ctrip.framework.apollo.portal.component.PortalSettings;
+import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
 import com.ctrip.framework.apollo.portal.entity.vo.ItemInfo;
 import com.ctrip.framework.apollo.portal.environment.Env;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
+/**
+ * Search the items of all the active envs at once, the search takes as long as the slowest env
+ * until the timeout instead of the sum of all the envs. The items of each env are converted as soon
+ * as the env responds, and the envs failed or not responding in time are reported in the message.
+ */
 @Service
 public class GlobalSearchService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(GlobalSearchService.class);
+    private static final String ENV_LATENCY_METRIC = "global.search.env.latency";
+    private static final String ENV_INCOMPLETE_METRIC = "global.search.env.incomplete";
     private final AdminServiceAPI.ItemAPI itemAPI;
     private final PortalSettings portalSettings;
+    private final PortalConfig portalConfig;
+    private final AsyncAdminServiceAPI asyncAdminServiceAPI;
+    private final MeterRegistry meterRegistry;
 
-    public GlobalSearchService(AdminServiceAPI.ItemAPI itemAPI, PortalSettings portalSettings) {
+    public GlobalSearchService(AdminServiceAPI.ItemAPI itemAPI, PortalSettings portalSettings,
+        PortalConfig portalConfig, AsyncAdminServiceAPI asyncAdminServiceAPI, MeterRegistry meterRegistry) {
         this.itemAPI = itemAPI;
         this.portalSettings = portalSettings;
+        this.portalConfig = portalConfig;
+        this.asyncAdminServiceAPI = asyncAdminServiceAPI;
+        this.meterRegistry = meterRegistry;
     }
 
     public SearchResponseEntity<List<ItemInfo>> getAllEnvItemInfoBySearch(String key, String value, int page, int size) {
         List<Env> activeEnvs = portalSettings.getActiveEnvs();
+        EnvResults<EnvSearchResult> envResults = asyncAdminServiceAPI.fanOut(activeEnvs,
+                env -> searchEnv(env, key, value, page, size), portalConfig.getSearchTimeoutInMilli());
+
         List<String> envBeyondLimit = new ArrayList<>();
-        AtomicBoolean hasMoreData = new AtomicBoolean(false);
         List<ItemInfo> allEnvItemInfos = new ArrayList<>();
-        activeEnvs.forEach(env -> {
-            PageDTO<ItemInfoDTO> perEnvItemInfoDTOs = itemAPI.getPerEnvItemInfoBySearch(env, key, value, page, size);
-            if (!perEnvItemInfoDTOs.hasContent()) {
-                return;
-            }
-            perEnvItemInfoDTOs.getContent().forEach(itemInfoDTO -> {
-                try {
-                    ItemInfo itemInfo = new ItemInfo(itemInfoDTO.getAppId(),env.getName(),itemInfoDTO.getClusterName(),itemInfoDTO.getNamespaceName(),itemInfoDTO.getKey(),itemInfoDTO.getValue());
-                    allEnvItemInfos.add(itemInfo);
-                } catch (Exception e) {
-                    LOGGER.error("Error converting ItemInfoDTO to ItemInfo for item: {}", itemInfoDTO, e);
-                }
-            });
-            if(perEnvItemInfoDTOs.getTotal() > size){
+        envResults.getResults().forEach((env, envSearchResult) -> {
+            allEnvItemInfos.addAll(envSearchResult.itemInfos);
+            if (envSearchResult.total > size) {
                 envBeyondLimit.add(env.getName());
-                hasMoreData.set(true);
             }
         });
-        if(hasMoreData.get()){
-            return SearchResponseEntity.okWithMessage(allEnvItemInfos,String.format(
+        envResults.getIncompleteEnvs().forEach(env ->
+                meterRegistry.counter(ENV_INCOMPLETE_METRIC, "env", env.getName()).increment());
+
+        List<String> messages = new ArrayList<>();
+        if (!envBeyondLimit.isEmpty()) {
+            messages.add(String.format(
                     "In %s , more than %d items found (Exceeded the maximum search quantity for a single environment). Please enter more precise criteria to narrow down the search scope.",
                     String.join(" , ", envBeyondLimit), size));
         }
+        if (!envResults.isComplete()) {
+            messages.add(String.format(
+                    "The search in %s failed or timed out, the items of them are not included. Please try again later.",
+                    envResults.getIncompleteEnvs().stream().map(Env::getName).collect(Collectors.joining(" , "))));
+        }
+        if (!messages.isEmpty()) {
+            return SearchResponseEntity.okWithMessage(allEnvItemInfos, String.join(" ", messages));
+        }
         return SearchResponseEntity.ok(allEnvItemInfos);
     }
 
+    private EnvSearchResult searchEnv(Env env, String key, String value, int page, int size) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "failure";
+        try {
+            PageDTO<ItemInfoDTO> perEnvItemInfoDTOs = itemAPI.getPerEnvItemInfoBySearch(env, key, value, page, size);
+            List<ItemInfo> itemInfos = new ArrayList<>();
+            if (perEnvItemInfoDTOs.hasContent()) {
+                perEnvItemInfoDTOs.getContent().forEach(itemInfoDTO -> {
+                    try {
+                        ItemInfo itemInfo = new ItemInfo(itemInfoDTO.getAppId(),env.getName(),itemInfoDTO.getClusterName(),itemInfoDTO.getNamespaceName(),itemInfoDTO.getKey(),itemInfoDTO.getValue());
+                        itemInfos.add(itemInfo);
+                    } catch (Exception e) {
+                        LOGGER.error("Error converting ItemInfoDTO to ItemInfo for item: {}", itemInfoDTO, e);
+                    }
+                });
+            }
+            outcome = "success";
+            return new EnvSearchResult(itemInfos, perEnvItemInfoDTOs.getTotal());
+        } finally {
+            //recorded when the env responds, even after the timeout, to show the real latency
+            sample.stop(meterRegistry.timer(ENV_LATENCY_METRIC, "env", env.getName(), "outcome", outcome));
+        }
+    }
+
+    private static class EnvSearchResult {
+
+        private final List<ItemInfo> itemInfos;
+        private final long total;
+
+        private EnvSearchResult(List<ItemInfo> itemInfos, long total) {
+            this.itemInfos = itemInfos;
+            this.total = total;
+        }
+    }
+
 }
@@ -16,18 +16,25 @@
  */
 package com.ctrip.framework.apollo.portal.service;
 
+import com.ctrip.framework.apollo.common.dto.CursorPageDTO;
 import com.ctrip.framework.apollo.common.dto.InstanceDTO;
 import com.ctrip.framework.apollo.common.dto.PageDTO;
 import com.ctrip.framework.apollo.portal.environment.Env;
 import com.ctrip.framework.apollo.portal.api.AdminServiceAPI;
+import com.ctrip.framework.apollo.portal.util.AdminServiceErrorUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
 
-import java.util.List;
+import java.util.HashSet;
 import java.util.Set;
+import java.util.function.Consumer;
 
 @Service
 public class InstanceService {
 
+  private static final Logger LOGGER = LoggerFactory.getLogger(InstanceService.class);
 
   private final AdminServiceAPI.InstanceAPI instanceAPI;
 
@@ -48,8 +55,40 @@ public class InstanceService {
     return instanceAPI.getInstanceCountByNamespace(appId, env, clusterName, namespaceName);
   }
 
-  public List<InstanceDTO> getByReleasesNotIn(Env env, String appId, String clusterName, String namespaceName, Set<Long> releaseIds){
-    return instanceAPI.getByReleasesNotIn(appId, env, clusterName, namespaceName, releaseIds);
+  public CursorPageDTO<InstanceDTO> getByReleaseAfter(Env env, long releaseId, long afterId, int size){
+    return instanceAPI.getByReleaseAfter(env, releaseId, afterId, size);
+  }
+
+  public CursorPageDTO<InstanceDTO> getByNamespaceAfter(Env env, String appId, String clusterName, String namespaceName,
+                                                        String instanceAppId, long afterId, int size){
+    return instanceAPI.getByNamespaceAfter(appId, env, clusterName, namespaceName, instanceAppId, afterId, size);
+  }
+
+  /**
+   * Pass the instances to the consumer one by one as they are streamed from the admin service, or
+   * all at once if the admin service is of an older version without the streaming endpoint
+   */
+  public void streamByReleasesNotIn(Env env, String appId, String clusterName,
+      String namespaceName, Set<Long> releaseIds, Consumer<InstanceDTO> consumer) {
+    //only the ids are kept, to skip the instances streamed again when the request is retried
+    Set<Long> streamedIds = new HashSet<>();
+    try {
+      instanceAPI.streamByReleasesNotIn(appId, env, clusterName, namespaceName, releaseIds,
+          instance -> {
+            if (streamedIds.add(instance.getId())) {
+              consumer.accept(instance);
+            }
+          });
+    } catch (HttpClientErrorException e) {
+      if (!AdminServiceErrorUtils.isEndpointMissing(e)) {
+        throw e;
+      }
+      LOGGER.warn("The admin service of env {} doesn't support streaming the instances, load them "
+          + "at once instead. appId = {}, cluster = {}, namespace = {}", env, appId, clusterName,
+          namespaceName);
+      instanceAPI.getByReleasesNotIn(appId, env, clusterName, namespaceName, releaseIds)
+          .forEach(consumer);
+    }
   }
 
 
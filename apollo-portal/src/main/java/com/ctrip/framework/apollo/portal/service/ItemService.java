@@ -130,6 +130,17 @@ public class ItemService {
   }
 
 
+  /**
+   * import the items of a namespace with one request, the namespace is created if not existed
+   */
+  public NamespaceImportResultDTO importNamespace(String appId, Env env, String clusterName,
+      String namespaceName, NamespaceImportDTO namespaceImport) {
+    NamespaceImportResultDTO result = itemAPI.importNamespace(appId, env, clusterName,
+        namespaceName, namespaceImport);
+    Tracer.logEvent(TracerEventType.MODIFY_NAMESPACE, String.format("%s+%s+%s+%s", appId, env, clusterName, namespaceName));
+    return result;
+  }
+
   public ItemDTO createItem(String appId, Env env, String clusterName, String namespaceName, ItemDTO item) {
     NamespaceDTO namespace = namespaceAPI.loadNamespace(appId, env, clusterName, namespaceName);
     if (namespace == null) {
@@ -20,16 +20,20 @@ import com.ctrip.framework.apollo.common.constants.GsonType;
 import com.ctrip.framework.apollo.common.dto.ClusterDTO;
 import com.ctrip.framework.apollo.common.dto.ItemDTO;
 import com.ctrip.framework.apollo.common.dto.NamespaceDTO;
+import com.ctrip.framework.apollo.common.dto.NamespaceSnapshotDTO;
 import com.ctrip.framework.apollo.common.dto.PageDTO;
 import com.ctrip.framework.apollo.common.dto.ReleaseDTO;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
 import com.ctrip.framework.apollo.common.exception.BadRequestException;
+import com.ctrip.framework.apollo.common.exception.ServiceException;
 import com.ctrip.framework.apollo.common.utils.BeanUtils;
 import com.ctrip.framework.apollo.core.enums.ConfigFileFormat;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.core.utils.StringUtils;
 import com.ctrip.framework.apollo.portal.api.AdminServiceAPI;
 import com.ctrip.framework.apollo.portal.api.AdminServiceAPI.NamespaceAPI;
+import com.ctrip.framework.apollo.portal.api.AsyncAdminServiceAPI;
+import com.ctrip.framework.apollo.portal.api.AsyncAdminServiceAPI.EnvResults;
 import com.ctrip.framework.apollo.portal.component.PortalSettings;
 import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
 import com.ctrip.framework.apollo.portal.constant.RoleType;
@@ -52,7 +56,6 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -61,8 +64,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.client.HttpClientErrorException;
 
 @Service
 public class NamespaceService {
@@ -85,6 +90,7 @@ public class NamespaceService {
   private final RolePermissionService rolePermissionService;
   private final AdditionalUserInfoEnrichService additionalUserInfoEnrichService;
   private final ClusterService clusterService;
+  private final AsyncAdminServiceAPI asyncAdminServiceAPI;
 
   public NamespaceService(
       final PortalConfig portalConfig,
@@ -98,7 +104,8 @@ public class NamespaceService {
       final @Lazy NamespaceBranchService branchService,
       final RolePermissionService rolePermissionService,
       final AdditionalUserInfoEnrichService additionalUserInfoEnrichService,
-      ClusterService clusterService) {
+      ClusterService clusterService,
+      final AsyncAdminServiceAPI asyncAdminServiceAPI) {
     this.portalConfig = portalConfig;
     this.portalSettings = portalSettings;
     this.userInfoHolder = userInfoHolder;
@@ -111,6 +118,7 @@ public class NamespaceService {
     this.rolePermissionService = rolePermissionService;
     this.additionalUserInfoEnrichService = additionalUserInfoEnrichService;
     this.clusterService = clusterService;
+    this.asyncAdminServiceAPI = asyncAdminServiceAPI;
   }
 
 
@@ -131,23 +139,44 @@ public class NamespaceService {
   }
 
 
+  /**
+   * The usages of all the envs are loaded at once, and the namespace is only safe to delete with
+   * the usages of all the envs, so it fails if any env fails or times out.
+   */
   public List<NamespaceUsage> getNamespaceUsageByAppId(String appId, String namespaceName) {
     List<Env> envs = portalSettings.getActiveEnvs();
     AppNamespace appNamespace = appNamespaceService.findByAppIdAndName(appId, namespaceName);
+    boolean isPublic = appNamespace != null && appNamespace.isPublic();
+
+    EnvResults<List<NamespaceUsage>> envUsages = asyncAdminServiceAPI.fanOut(envs,
+        env -> getNamespaceUsageByEnv(appId, namespaceName, env, isPublic),
+        portalConfig.adminServiceFanOutTimeoutInMilli());
+    if (!envUsages.isComplete()) {
+      throw new ServiceException("Failed to load the namespace usage of envs: %s",
+          envUsages.getIncompleteEnvs());
+    }
+
     List<NamespaceUsage> usages = new ArrayList<>();
-    for (Env env : envs) {
-      List<ClusterDTO> clusters = clusterService.findClusters(env, appId);
-      for (ClusterDTO cluster : clusters) {
-        String clusterName = cluster.getName();
-        NamespaceUsage usage = this.getNamespaceUsageByEnv(appId, namespaceName, env, clusterName);
-        if (appNamespace != null && appNamespace.isPublic()) {
-          int associatedNamespace = this.getPublicAppNamespaceHasAssociatedNamespace(namespaceName, env);
-          usage.setLinkedNamespaceCount(associatedNamespace);
-        }
+    envUsages.getResults().values().forEach(usages::addAll);
+    return usages;
+  }
 
-        if(usage.getLinkedNamespaceCount() > 0 || usage.getBranchInstanceCount() > 0 || usage.getInstanceCount() > 0) {
-          usages.add(usage);
-        }
+  private List<NamespaceUsage> getNamespaceUsageByEnv(String appId, String namespaceName, Env env,
+      boolean isPublic) {
+    List<ClusterDTO> clusters = clusterService.findClusters(env, appId);
+    //the same for all the clusters of the env
+    int associatedNamespace = isPublic && !clusters.isEmpty()
+        ? this.getPublicAppNamespaceHasAssociatedNamespace(namespaceName, env) : 0;
+
+    List<NamespaceUsage> usages = new ArrayList<>();
+    for (ClusterDTO cluster : clusters) {
+      NamespaceUsage usage = this.getNamespaceUsageByEnv(appId, namespaceName, env, cluster.getName());
+      if (isPublic) {
+        usage.setLinkedNamespaceCount(associatedNamespace);
+      }
+
+      if(usage.getLinkedNamespaceCount() > 0 || usage.getBranchInstanceCount() > 0 || usage.getInstanceCount() > 0) {
+        usages.add(usage);
       }
     }
     return usages;
@@ -187,6 +216,14 @@ public class NamespaceService {
    * load cluster all namespace info with items
    */
   public List<NamespaceBO> findNamespaceBOs(String appId, Env env, String clusterName, boolean fillItemDetail, boolean includeDeletedItems) {
+    if (fillItemDetail) {
+      List<NamespaceSnapshotDTO> snapshots = findNamespaceSnapshots(appId, env, clusterName,
+          includeDeletedItems);
+      if (snapshots != null) {
+        return transformNamespaceSnapshots2BOs(appId, env, clusterName, snapshots,
+            includeDeletedItems);
+      }
+    }
 
     List<NamespaceDTO> namespaces = namespaceAPI.findNamespaceByCluster(appId, env, clusterName);
     if (namespaces == null || namespaces.size() == 0) {
@@ -218,9 +255,62 @@ public class NamespaceService {
       //ignore
     }
 
-    if(namespaceBOs.size() != namespaces.size()){
+    return sortNamespaceBOs(namespaces.size(), namespaceBOs, exceptionNamespaces);
+  }
+
+  /**
+   * @return null if the admin service is of an older version without namespace snapshots
+   */
+  private List<NamespaceSnapshotDTO> findNamespaceSnapshots(String appId, Env env,
+      String clusterName, boolean includeDeletedItems) {
+    try {
+      return namespaceAPI.findNamespaceSnapshots(appId, env, clusterName, includeDeletedItems);
+    } catch (HttpClientErrorException e) {
+      if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
+        return null;
+      }
+      throw e;
+    }
+  }
+
+  private List<NamespaceBO> transformNamespaceSnapshots2BOs(String appId, Env env,
+      String clusterName, List<NamespaceSnapshotDTO> snapshots, boolean includeDeletedItems) {
+    if (snapshots.isEmpty()) {
+      throw BadRequestException.namespaceNotExists();
+    }
+
+    //enrich the user info of all the items at once
+    List<ItemDTO> items = snapshots.stream().flatMap(snapshot -> snapshot.getItems().stream())
+        .collect(Collectors.toList());
+    additionalUserInfoEnrichService
+        .enrichAdditionalUserInfo(items, BaseDtoUserInfoEnrichedAdapter::new);
+
+    List<NamespaceBO> namespaceBOs = new LinkedList<>();
+    List<String> exceptionNamespaces = new LinkedList<>();
+    for (NamespaceSnapshotDTO snapshot : snapshots) {
+      NamespaceDTO namespace = snapshot.getNamespace();
+      try {
+        NamespaceBO namespaceBO = new NamespaceBO();
+        namespaceBO.setBaseInfo(namespace);
+        fillAppNamespaceProperties(namespaceBO);
+        fillItems(namespaceBO, snapshot.getLatestRelease(), snapshot.getItems(),
+            includeDeletedItems ? snapshot.getDeletedItems() : null);
+        namespaceBOs.add(namespaceBO);
+      } catch (Exception e) {
+        LOGGER.error("parse namespace error. app id:{}, env:{}, clusterName:{}, namespace:{}",
+            appId, env, clusterName, namespace.getNamespaceName(), e);
+        exceptionNamespaces.add(namespace.getNamespaceName());
+      }
+    }
+
+    return sortNamespaceBOs(snapshots.size(), namespaceBOs, exceptionNamespaces);
+  }
+
+  private List<NamespaceBO> sortNamespaceBOs(int expectedSize, List<NamespaceBO> namespaceBOs,
+      List<String> exceptionNamespaces) {
+    if(namespaceBOs.size() != expectedSize){
        throw new RuntimeException(String
-           .format("Parse namespaces error, expected: %s, but actual: %s, cannot get those namespaces: %s", namespaces.size(), namespaceBOs.size(), exceptionNamespaces));
+           .format("Parse namespaces error, expected: %s, but actual: %s, cannot get those namespaces: %s", expectedSize, namespaceBOs.size(), exceptionNamespaces));
     }
 
     return namespaceBOs.stream()
@@ -280,15 +370,18 @@ public class NamespaceService {
     return transformNamespace2BO(env, namespace);
   }
 
+  /**
+   * The publish info of all the envs is loaded at once, the envs failed or timed out are left out.
+   */
   public Map<String, Map<String, Boolean>> getNamespacesPublishInfo(String appId) {
     Map<String, Map<String, Boolean>> result = Maps.newHashMap();
 
-    Set<Env> envs = portalConfig.publishTipsSupportedEnvs();
-    for (Env env : envs) {
-      if (portalSettings.isEnvActive(env)) {
-        result.put(env.toString(), namespaceAPI.getNamespacePublishInfo(env, appId));
-      }
-    }
+    List<Env> envs = portalConfig.publishTipsSupportedEnvs().stream()
+        .filter(portalSettings::isEnvActive).collect(Collectors.toList());
+    EnvResults<Map<String, Boolean>> envPublishInfos = asyncAdminServiceAPI.fanOut(envs,
+        env -> namespaceAPI.getNamespacePublishInfo(env, appId),
+        portalConfig.adminServiceFanOutTimeoutInMilli());
+    envPublishInfos.getResults().forEach((env, publishInfo) -> result.put(env.toString(), publishInfo));
 
     return result;
   }
@@ -303,25 +396,42 @@ public class NamespaceService {
 
     fillAppNamespaceProperties(namespaceBO);
 
-    List<ItemBO> itemBOs = new LinkedList<>();
-    namespaceBO.setItems(itemBOs);
-
     if (!fillItemDetail) {
+      namespaceBO.setItems(new LinkedList<>());
       return namespaceBO;
     }
 
     //latest Release
-    ReleaseDTO latestRelease;
-    Map<String, String> releaseItems = new HashMap<>();
-    latestRelease = releaseService.loadLatestRelease(appId, env, clusterName, namespaceName);
-    if (latestRelease != null) {
-      releaseItems = GSON.fromJson(latestRelease.getConfigurations(), GsonType.CONFIG);
-    }
+    ReleaseDTO latestRelease = releaseService.loadLatestRelease(appId, env, clusterName,
+        namespaceName);
 
     //not Release config items
     List<ItemDTO> items = itemService.findItems(appId, env, clusterName, namespaceName);
     additionalUserInfoEnrichService
         .enrichAdditionalUserInfo(items, BaseDtoUserInfoEnrichedAdapter::new);
+
+    //deleted items
+    List<ItemDTO> deletedItems = includeDeletedItems
+        ? itemService.findDeletedItems(appId, env, clusterName, namespaceName) : null;
+
+    fillItems(namespaceBO, latestRelease, items, deletedItems);
+
+    return namespaceBO;
+  }
+
+  /**
+   * @param deletedItemDTOList null if the deleted items are not included
+   */
+  private void fillItems(NamespaceBO namespaceBO, ReleaseDTO latestRelease, List<ItemDTO> items,
+      List<ItemDTO> deletedItemDTOList) {
+    List<ItemBO> itemBOs = new LinkedList<>();
+    namespaceBO.setItems(itemBOs);
+
+    Map<String, String> releaseItems = new HashMap<>();
+    if (latestRelease != null) {
+      releaseItems = GSON.fromJson(latestRelease.getConfigurations(), GsonType.CONFIG);
+    }
+
     int modifiedItemCnt = 0;
     for (ItemDTO itemDTO : items) {
 
@@ -334,9 +444,8 @@ public class NamespaceService {
       itemBOs.add(itemBO);
     }
 
-    if (includeDeletedItems) {
-      //deleted items
-      Map<String, ItemDTO> deletedItemDTOs = itemService.findDeletedItems(appId, env, clusterName, namespaceName).stream()
+    if (deletedItemDTOList != null) {
+      Map<String, ItemDTO> deletedItemDTOs = deletedItemDTOList.stream()
               .filter(itemDTO -> !StringUtils.isEmpty(itemDTO.getKey()))
               .collect(Collectors.toMap(itemDTO -> itemDTO.getKey(), v -> v, (v1, v2) -> v2));
 
@@ -346,8 +455,6 @@ public class NamespaceService {
     }
 
     namespaceBO.setItemModifiedCnt(modifiedItemCnt);
-
-    return namespaceBO;
   }
 
   private NamespaceBO transformNamespace2BO(Env env, NamespaceDTO namespace) {
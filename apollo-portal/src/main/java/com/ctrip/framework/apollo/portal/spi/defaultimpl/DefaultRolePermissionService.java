@@ -28,6 +28,7 @@ import com.ctrip.framework.apollo.portal.entity.po.Permission;
 import com.ctrip.framework.apollo.portal.entity.po.Role;
 import com.ctrip.framework.apollo.portal.entity.po.RolePermission;
 import com.ctrip.framework.apollo.portal.entity.po.UserRole;
+import com.ctrip.framework.apollo.portal.listener.UserPermissionChangeEvent;
 import com.ctrip.framework.apollo.portal.repository.PermissionRepository;
 import com.ctrip.framework.apollo.portal.repository.RolePermissionRepository;
 import com.ctrip.framework.apollo.portal.repository.RoleRepository;
@@ -35,14 +36,20 @@ import com.ctrip.framework.apollo.portal.repository.UserRoleRepository;
 import com.ctrip.framework.apollo.portal.service.RolePermissionService;
 import com.ctrip.framework.apollo.portal.spi.UserService;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import java.util.Comparator;
 import java.util.LinkedHashSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.jpa.repository.query.EscapeCharacter;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
 import org.springframework.util.CollectionUtils;
 
 import java.util.Collection;
@@ -58,6 +65,8 @@ import java.util.stream.StreamSupport;
  */
 public class DefaultRolePermissionService implements RolePermissionService {
 
+    private static final long MAX_CACHED_USERS = 10000;
+
     private final RoleRepository roleRepository;
     private final RolePermissionRepository rolePermissionRepository;
     private final UserRoleRepository userRoleRepository;
@@ -65,6 +74,11 @@ public class DefaultRolePermissionService implements RolePermissionService {
     private final PortalConfig portalConfig;
     private final ConsumerRoleRepository consumerRoleRepository;
     private final UserService userService;
+    private final ApplicationEventPublisher publisher;
+    //the permissions of each user, null if the cache is disabled
+    private final Cache<String, Set<String>> userPermissionCache;
+    //increased on each invalidation, so that the permissions loaded meanwhile are not cached
+    private final AtomicLong userPermissionCacheVersion = new AtomicLong();
 
     public DefaultRolePermissionService(final RoleRepository roleRepository,
         final RolePermissionRepository rolePermissionRepository,
@@ -72,7 +86,8 @@ public class DefaultRolePermissionService implements RolePermissionService {
         final PermissionRepository permissionRepository,
         final PortalConfig portalConfig,
         final ConsumerRoleRepository consumerRoleRepository,
-        final UserService userService) {
+        final UserService userService,
+        final ApplicationEventPublisher publisher) {
       this.roleRepository = roleRepository;
       this.rolePermissionRepository = rolePermissionRepository;
       this.userRoleRepository = userRoleRepository;
@@ -80,6 +95,13 @@ public class DefaultRolePermissionService implements RolePermissionService {
       this.portalConfig = portalConfig;
       this.consumerRoleRepository = consumerRoleRepository;
       this.userService = userService;
+      this.publisher = publisher;
+
+      int expireSecond = portalConfig.permissionCacheExpireSecond();
+      this.userPermissionCache = expireSecond > 0 ? CacheBuilder.newBuilder()
+          .maximumSize(MAX_CACHED_USERS)
+          .expireAfterWrite(expireSecond, TimeUnit.SECONDS)
+          .build() : null;
     }
 
     /**
@@ -136,6 +158,9 @@ public class DefaultRolePermissionService implements RolePermissionService {
         }).collect(Collectors.toList());
 
         userRoleRepository.saveAll(toCreate);
+        if (!toAssignUserIds.isEmpty()) {
+            publisher.publishEvent(new UserPermissionChangeEvent(this, Sets.newHashSet(toAssignUserIds)));
+        }
         return toAssignUserIds;
     }
 
@@ -164,6 +189,10 @@ public class DefaultRolePermissionService implements RolePermissionService {
         }
 
         userRoleRepository.saveAll(existedUserRoles);
+        if (!existedUserRoles.isEmpty()) {
+            publisher.publishEvent(new UserPermissionChangeEvent(this,
+                existedUserRoles.stream().map(UserRole::getUserId).collect(Collectors.toSet())));
+        }
     }
 
     /**
@@ -199,6 +228,15 @@ public class DefaultRolePermissionService implements RolePermissionService {
      * Check whether user has the permission
      */
     public boolean userHasPermission(String userId, String permissionType, String targetId) {
+        if (userPermissionCache == null || isSuperAdmin(userId)) {
+            return userHasPermissionWithoutCache(userId, permissionType, targetId);
+        }
+
+        return findUserPermissions(userId).contains(permissionKey(permissionType, targetId));
+    }
+
+    private boolean userHasPermissionWithoutCache(String userId, String permissionType,
+        String targetId) {
         Permission permission =
                 permissionRepository.findTopByPermissionTypeAndTargetId(permissionType, targetId);
         if (permission == null) {
@@ -230,6 +268,62 @@ public class DefaultRolePermissionService implements RolePermissionService {
         return false;
     }
 
+    private Set<String> findUserPermissions(String userId) {
+        Set<String> permissions = userPermissionCache.getIfPresent(userId);
+        if (permissions != null) {
+            return permissions;
+        }
+
+        long version = userPermissionCacheVersion.get();
+        permissions = loadUserPermissions(userId);
+        userPermissionCache.put(userId, permissions);
+        //the permissions may have changed while being loaded
+        if (userPermissionCacheVersion.get() != version) {
+            userPermissionCache.invalidate(userId);
+        }
+        return permissions;
+    }
+
+    private Set<String> loadUserPermissions(String userId) {
+        List<UserRole> userRoles = userRoleRepository.findByUserId(userId);
+        if (CollectionUtils.isEmpty(userRoles)) {
+            return Collections.emptySet();
+        }
+
+        Set<Long> roleIds =
+            userRoles.stream().map(UserRole::getRoleId).collect(Collectors.toSet());
+        Set<Long> permissionIds = rolePermissionRepository.findByRoleIdIn(roleIds).stream()
+            .map(RolePermission::getPermissionId).collect(Collectors.toSet());
+        if (permissionIds.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        return StreamSupport.stream(permissionRepository.findAllById(permissionIds).spliterator(), false)
+            .map(permission -> permissionKey(permission.getPermissionType(), permission.getTargetId()))
+            .collect(Collectors.toSet());
+    }
+
+    private String permissionKey(String permissionType, String targetId) {
+        return permissionType + "+" + targetId;
+    }
+
+    /**
+     * Invalidate the cached permissions after the change is committed, so that they are not loaded
+     * again before the change is visible
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserPermissionChange(UserPermissionChangeEvent event) {
+        if (userPermissionCache == null) {
+            return;
+        }
+        userPermissionCacheVersion.incrementAndGet();
+        if (event.isAllUsers()) {
+            userPermissionCache.invalidateAll();
+        } else {
+            userPermissionCache.invalidateAll(event.getUserIds());
+        }
+    }
+
     @Override
     public List<Role> findUserRoles(String userId) {
         List<UserRole> userRoles = userRoleRepository.findByUserId(userId);
@@ -310,6 +404,10 @@ public class DefaultRolePermissionService implements RolePermissionService {
             // 5. delete Consumer Role
             consumerRoleRepository.batchDeleteByRoleIds(roleIds, operator);
         }
+
+        if (!permissionIds.isEmpty() || !roleIds.isEmpty()) {
+            publisher.publishEvent(new UserPermissionChangeEvent(this, null));
+        }
     }
 
     @Transactional
@@ -338,5 +436,9 @@ public class DefaultRolePermissionService implements RolePermissionService {
             // 5. delete Consumer Role
             consumerRoleRepository.batchDeleteByRoleIds(roleIds, operator);
         }
+
+        if (!permissionIds.isEmpty() || !roleIds.isEmpty()) {
+            publisher.publishEvent(new UserPermissionChangeEvent(this, null));
+        }
     }
 }
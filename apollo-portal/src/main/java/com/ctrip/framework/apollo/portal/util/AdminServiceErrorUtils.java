@@ -0,0 +1,54 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.portal.util;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+
+/**
+ * Tools for the errors of the admin service apis
+ */
+public class AdminServiceErrorUtils {
+
+  private static final Gson GSON = new Gson();
+  private static final Type ERROR_ATTRIBUTES = new TypeToken<Map<String, Object>>() {}.getType();
+
+  /**
+   * @return whether the admin service is of an older version without the endpoint, i.e. the
+   * endpoint is not found, while the errors of the endpoint itself, e.g. a not found release, come
+   * with the exception thrown
+   */
+  public static boolean isEndpointMissing(HttpClientErrorException e) {
+    if (e.getStatusCode() != HttpStatus.NOT_FOUND) {
+      return false;
+    }
+    try {
+      Map<String, Object> errorAttributes = GSON.fromJson(e.getResponseBodyAsString(),
+          ERROR_ATTRIBUTES);
+      return errorAttributes == null || !errorAttributes.containsKey("exception");
+    } catch (JsonParseException ex) {
+      //not the error of the admin service, e.g. the not found page of a proxy
+      return true;
+    }
+  }
+}
@@ -19,6 +19,7 @@ package com.ctrip.framework.apollo.openapi.filter;
 import com.ctrip.framework.apollo.openapi.entity.ConsumerToken;
 import com.ctrip.framework.apollo.openapi.util.ConsumerAuditUtil;
 import com.ctrip.framework.apollo.openapi.util.ConsumerAuthUtil;
+import com.ctrip.framework.apollo.openapi.util.ConsumerRateLimitUtil;
 
 import java.io.IOException;
 import java.util.concurrent.ExecutorService;
@@ -60,6 +61,8 @@ public class ConsumerAuthenticationFilterTest {
   private ConsumerAuthUtil consumerAuthUtil;
   @Mock
   private ConsumerAuditUtil consumerAuditUtil;
+  @Mock
+  private ConsumerRateLimitUtil consumerRateLimitUtil;
 
   @Mock
   private HttpServletRequest request;
@@ -175,6 +178,27 @@ public class ConsumerAuthenticationFilterTest {
   }
 
 
+  @Test
+  public void testClusterRateLimit() throws Exception {
+    String someToken = "some-cluster-ratelimit-token";
+    Long someConsumerId = 1L;
+    int qps = 5;
+    authenticationFilter = new ConsumerAuthenticationFilter(consumerAuthUtil, consumerAuditUtil,
+        consumerRateLimitUtil);
+
+    setupRateLimitMocks(someToken, someConsumerId, qps);
+    when(consumerRateLimitUtil.isClusterRateLimitEnabled()).thenReturn(true);
+    when(consumerRateLimitUtil.tryAcquire(someToken, qps)).thenReturn(true, false);
+
+    authenticationFilter.doFilter(request, response, filterChain);
+    authenticationFilter.doFilter(request, response, filterChain);
+
+    verify(response, times(1)).sendError(eq(TOO_MANY_REQUESTS), anyString());
+    verify(consumerAuditUtil, times(1)).audit(request, someConsumerId);
+    verify(filterChain, times(1)).doFilter(request, response);
+  }
+
+
   private void setupRateLimitMocks(String someToken, Long someConsumerId, int qps) {
     ConsumerToken someConsumerToken = new ConsumerToken();
     someConsumerToken.setConsumerId(someConsumerId);
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.openapi.service;
+
+import static org.junit.Assert.assertEquals;
+
+import com.ctrip.framework.apollo.openapi.entity.ConsumerRateLimitWindow;
+import com.ctrip.framework.apollo.openapi.repository.ConsumerRateLimitWindowRepository;
+import com.ctrip.framework.apollo.portal.AbstractIntegrationTest;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.jdbc.Sql;
+
+public class ConsumerRateLimitServiceTest extends AbstractIntegrationTest {
+
+  private static final String SOME_TOKEN = "someToken";
+  private static final long SOME_WINDOW_START = 1700000000000L;
+
+  @Autowired
+  private ConsumerRateLimitService consumerRateLimitService;
+  @Autowired
+  private ConsumerRateLimitWindowRepository consumerRateLimitWindowRepository;
+
+  @Test
+  @Sql(scripts = "/sql/cleanup.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+  public void testLeasePermits() {
+    long someTime = SOME_WINDOW_START + 100;
+
+    assertEquals(3, consumerRateLimitService.leasePermits(SOME_TOKEN, 10, 3, someTime));
+    assertEquals(3, consumerRateLimitService.leasePermits(SOME_TOKEN, 10, 3, someTime + 1));
+    assertEquals(3, consumerRateLimitService.leasePermits(SOME_TOKEN, 10, 3, someTime + 2));
+    //the permits left are leased
+    assertEquals(1, consumerRateLimitService.leasePermits(SOME_TOKEN, 10, 3, someTime + 3));
+    assertEquals(0, consumerRateLimitService.leasePermits(SOME_TOKEN, 10, 3, someTime + 4));
+    //the windows of other tokens are not affected
+    assertEquals(3, consumerRateLimitService.leasePermits("anotherToken", 10, 3, someTime));
+
+    assertEquals(10, consumerRateLimitWindowRepository.findByToken(SOME_TOKEN).getPermitCount());
+  }
+
+  @Test
+  @Sql(scripts = "/sql/cleanup.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+  public void testLeasePermitsWithPreviousWindow() {
+    consumerRateLimitWindowRepository.save(new ConsumerRateLimitWindow(SOME_TOKEN,
+        SOME_WINDOW_START - ConsumerRateLimitService.WINDOW_IN_MILLI, 10, 0));
+
+    //at the start of the window, the sliding window is the previous window
+    assertEquals(0, consumerRateLimitService.leasePermits(SOME_TOKEN, 10, 3, SOME_WINDOW_START));
+
+    //half of the previous window is in the sliding window
+    long someTime = SOME_WINDOW_START + ConsumerRateLimitService.WINDOW_IN_MILLI / 2;
+    assertEquals(3, consumerRateLimitService.leasePermits(SOME_TOKEN, 10, 3, someTime));
+    assertEquals(2, consumerRateLimitService.leasePermits(SOME_TOKEN, 10, 3, someTime));
+    assertEquals(0, consumerRateLimitService.leasePermits(SOME_TOKEN, 10, 3, someTime));
+
+    //the window is rolled forward in place
+    ConsumerRateLimitWindow window = consumerRateLimitWindowRepository.findByToken(SOME_TOKEN);
+    assertEquals(SOME_WINDOW_START, window.getWindowStart());
+    assertEquals(5, window.getPermitCount());
+    assertEquals(10, window.getPreviousPermitCount());
+    assertEquals(1, consumerRateLimitWindowRepository.count());
+  }
+
+  @Test
+  @Sql(scripts = "/sql/cleanup.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+  public void testLeasePermitsAfterIdleWindows() {
+    assertEquals(3, consumerRateLimitService.leasePermits(SOME_TOKEN, 10, 3, SOME_WINDOW_START));
+
+    //the windows before the previous one are not in the sliding window
+    long someTime = SOME_WINDOW_START + 2 * ConsumerRateLimitService.WINDOW_IN_MILLI;
+    assertEquals(3, consumerRateLimitService.leasePermits(SOME_TOKEN, 10, 3, someTime));
+
+    ConsumerRateLimitWindow window = consumerRateLimitWindowRepository.findByToken(SOME_TOKEN);
+    assertEquals(someTime, window.getWindowStart());
+    assertEquals(3, window.getPermitCount());
+    assertEquals(0, window.getPreviousPermitCount());
+  }
+
+  @Test
+  @Sql(scripts = "/sql/cleanup.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+  public void testLeasePermitsInWindowRolledByClockAhead() {
+    long nextWindowStart = SOME_WINDOW_START + ConsumerRateLimitService.WINDOW_IN_MILLI;
+    consumerRateLimitWindowRepository.save(new ConsumerRateLimitWindow(SOME_TOKEN,
+        nextWindowStart, 2, 6));
+
+    //leased in the window of the row, with the whole previous window in the sliding window
+    assertEquals(2, consumerRateLimitService.leasePermits(SOME_TOKEN, 10, 3,
+        SOME_WINDOW_START + 900));
+
+    ConsumerRateLimitWindow window = consumerRateLimitWindowRepository.findByToken(SOME_TOKEN);
+    assertEquals(nextWindowStart, window.getWindowStart());
+    assertEquals(4, window.getPermitCount());
+  }
+}
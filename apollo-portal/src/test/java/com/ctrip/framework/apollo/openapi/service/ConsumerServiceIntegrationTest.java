@@ -18,10 +18,14 @@ package com.ctrip.framework.apollo.openapi.service;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 
 import com.ctrip.framework.apollo.common.exception.BadRequestException;
 import com.ctrip.framework.apollo.openapi.entity.Consumer;
+import com.ctrip.framework.apollo.openapi.entity.ConsumerAudit;
+import com.ctrip.framework.apollo.openapi.repository.ConsumerAuditRepository;
 import com.ctrip.framework.apollo.portal.AbstractIntegrationTest;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import java.util.List;
 import java.util.Set;
@@ -38,6 +42,8 @@ public class ConsumerServiceIntegrationTest extends AbstractIntegrationTest {
 
   @Autowired
   private ConsumerService consumerService;
+  @Autowired
+  private ConsumerAuditRepository consumerAuditRepository;
 
   @Test
   @Sql(scripts = "/sql/openapi/ConsumerServiceIntegrationTest.testFindAppIdsAuthorizedByConsumerId.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
@@ -75,4 +81,26 @@ public class ConsumerServiceIntegrationTest extends AbstractIntegrationTest {
     Assertions.assertThat(consumerService.getConsumerByConsumerId(consumerId))
         .isNull();
   }
+
+  @Test
+  @Sql(scripts = "/sql/cleanup.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+  public void testCreateConsumerAudits() {
+    List<ConsumerAudit> consumerAudits = Lists.newArrayList();
+    for (int i = 0; i < 600; i++) {
+      ConsumerAudit consumerAudit = new ConsumerAudit();
+      consumerAudit.setConsumerId(1000L);
+      consumerAudit.setUri("/openapi/v1/someUri" + i);
+      consumerAudit.setMethod("POST");
+      consumerAudits.add(consumerAudit);
+    }
+
+    consumerService.createConsumerAudits(consumerAudits);
+
+    List<ConsumerAudit> savedAudits = Lists.newArrayList(consumerAuditRepository.findAll());
+    assertEquals(600, savedAudits.size());
+    ConsumerAudit savedAudit = savedAudits.get(0);
+    assertEquals(1000L, savedAudit.getConsumerId());
+    assertEquals("POST", savedAudit.getMethod());
+    assertNotNull(savedAudit.getDataChangeCreatedTime());
+  }
 }
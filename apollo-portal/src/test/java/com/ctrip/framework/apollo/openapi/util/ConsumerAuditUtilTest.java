@@ -19,6 +19,7 @@ package com.ctrip.framework.apollo.openapi.util;
 import com.ctrip.framework.apollo.openapi.entity.ConsumerAudit;
 import com.ctrip.framework.apollo.openapi.service.ConsumerService;
 import com.google.common.util.concurrent.SettableFuture;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -30,11 +31,15 @@ import org.springframework.test.util.ReflectionTestUtils;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -49,10 +54,12 @@ public class ConsumerAuditUtilTest {
   private HttpServletRequest request;
   private long batchTimeout = 50;
   private TimeUnit batchTimeUnit = TimeUnit.MILLISECONDS;
+  private SimpleMeterRegistry meterRegistry;
 
   @Before
   public void setUp() throws Exception {
-    consumerAuditUtil = new ConsumerAuditUtil(consumerService);
+    meterRegistry = new SimpleMeterRegistry();
+    consumerAuditUtil = new ConsumerAuditUtil(consumerService, meterRegistry);
     ReflectionTestUtils.setField(consumerAuditUtil, "BATCH_TIMEOUT", batchTimeout);
     ReflectionTestUtils.setField(consumerAuditUtil, "BATCH_TIMEUNIT", batchTimeUnit);
     consumerAuditUtil.afterPropertiesSet();
@@ -96,4 +103,58 @@ public class ConsumerAuditUtilTest {
     assertEquals(someConsumerId, audit.getConsumerId());
   }
 
+  @Test
+  public void testAuditDroppedOnFlushFailure() throws Exception {
+    when(request.getRequestURI()).thenReturn("someUri");
+    when(request.getMethod()).thenReturn("POST");
+
+    SettableFuture<Void> result = SettableFuture.create();
+    doAnswer((Answer<Void>) invocation -> {
+      result.set(null);
+      throw new IllegalStateException("some failure");
+    }).when(consumerService).createConsumerAudits(anyCollection());
+
+    consumerAuditUtil.audit(request, 1);
+    result.get(batchTimeout * 5, batchTimeUnit);
+    consumerAuditUtil.stopAudit();
+
+    //the failed audits are counted after the failure is thrown
+    long deadline = System.currentTimeMillis() + batchTimeout * 5;
+    while (droppedCount("flushFailed") == 0 && System.currentTimeMillis() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(5);
+    }
+    assertEquals(1, droppedCount("flushFailed"), 0);
+    assertEquals(0, meterRegistry.get("consumer.audit.flushed").counter().count(), 0);
+  }
+
+  @Test
+  public void testAuditsLeftInQueueFlushedOnStop() throws Exception {
+    //without the background thread started
+    SimpleMeterRegistry anotherMeterRegistry = new SimpleMeterRegistry();
+    ConsumerAuditUtil anotherConsumerAuditUtil = new ConsumerAuditUtil(consumerService,
+        anotherMeterRegistry);
+    when(request.getRequestURI()).thenReturn("someUri");
+    when(request.getMethod()).thenReturn("POST");
+
+    anotherConsumerAuditUtil.audit(request, 1);
+    anotherConsumerAuditUtil.audit(request, 2);
+    anotherConsumerAuditUtil.stopAudit();
+
+    verify(consumerService, times(1)).createConsumerAudits(anyCollection());
+    assertEquals(2, anotherMeterRegistry.get("consumer.audit.flushed").counter().count(), 0);
+  }
+
+  @Test
+  public void testBackgroundThreadExitsOnInterrupt() throws Exception {
+    ExecutorService auditExecutorService = (ExecutorService) ReflectionTestUtils.getField(
+        consumerAuditUtil, "auditExecutorService");
+
+    auditExecutorService.shutdownNow();
+
+    assertTrue(auditExecutorService.awaitTermination(batchTimeout * 5, batchTimeUnit));
+  }
+
+  private double droppedCount(String reason) {
+    return meterRegistry.get("consumer.audit.dropped").tag("reason", reason).counter().count();
+  }
 }
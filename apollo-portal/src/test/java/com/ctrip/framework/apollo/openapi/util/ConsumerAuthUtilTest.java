@@ -16,7 +16,12 @@
  */
 package com.ctrip.framework.apollo.openapi.util;
 
+import com.ctrip.framework.apollo.openapi.entity.ConsumerToken;
 import com.ctrip.framework.apollo.openapi.service.ConsumerService;
+import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
+import com.ctrip.framework.apollo.portal.listener.ConsumerTokenChangeEvent;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -26,6 +31,8 @@ import org.mockito.junit.MockitoJUnitRunner;
 import javax.servlet.http.HttpServletRequest;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.*;
 
 /**
@@ -38,10 +45,13 @@ public class ConsumerAuthUtilTest {
   private ConsumerService consumerService;
   @Mock
   private HttpServletRequest request;
+  @Mock
+  private PortalConfig portalConfig;
 
   @Before
   public void setUp() throws Exception {
-    consumerAuthUtil = new ConsumerAuthUtil(consumerService);
+    when(portalConfig.consumerTokenCacheExpireSecond()).thenReturn(60);
+    consumerAuthUtil = new ConsumerAuthUtil(consumerService, portalConfig);
   }
 
   @Test
@@ -55,6 +65,76 @@ public class ConsumerAuthUtilTest {
     verify(consumerService, times(1)).getConsumerIdByToken(someToken);
   }
 
+  @Test
+  public void testGetConsumerTokenFromCache() throws Exception {
+    String someToken = "someToken";
+    ConsumerToken someConsumerToken = assembleConsumerToken(someToken,
+        System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+
+    when(consumerService.getConsumerTokenByToken(someToken)).thenReturn(someConsumerToken);
+
+    assertSame(someConsumerToken, consumerAuthUtil.getConsumerToken(someToken));
+    assertSame(someConsumerToken, consumerAuthUtil.getConsumerToken(someToken));
+    verify(consumerService, times(1)).getConsumerTokenByToken(someToken);
+  }
+
+  @Test
+  public void testGetConsumerTokenWithInvalidTokenNotCached() throws Exception {
+    String someToken = "someToken";
+
+    assertNull(consumerAuthUtil.getConsumerToken(someToken));
+    assertNull(consumerAuthUtil.getConsumerToken(someToken));
+    verify(consumerService, times(2)).getConsumerTokenByToken(someToken);
+  }
+
+  @Test
+  public void testGetConsumerTokenExpiredInCache() throws Exception {
+    String someToken = "someToken";
+    ConsumerToken someConsumerToken = assembleConsumerToken(someToken,
+        System.currentTimeMillis() + 50);
+
+    when(consumerService.getConsumerTokenByToken(someToken)).thenReturn(someConsumerToken,
+        (ConsumerToken) null);
+
+    assertSame(someConsumerToken, consumerAuthUtil.getConsumerToken(someToken));
+    TimeUnit.MILLISECONDS.sleep(100);
+
+    //the cached token is not used after it expires
+    assertNull(consumerAuthUtil.getConsumerToken(someToken));
+    verify(consumerService, times(2)).getConsumerTokenByToken(someToken);
+  }
+
+  @Test
+  public void testGetConsumerTokenAfterTokenChange() throws Exception {
+    String someToken = "someToken";
+    ConsumerToken someConsumerToken = assembleConsumerToken(someToken,
+        System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+
+    when(consumerService.getConsumerTokenByToken(someToken)).thenReturn(someConsumerToken,
+        (ConsumerToken) null);
+
+    assertSame(someConsumerToken, consumerAuthUtil.getConsumerToken(someToken));
+    consumerAuthUtil.onConsumerTokenChange(new ConsumerTokenChangeEvent(this, someToken));
+
+    assertNull(consumerAuthUtil.getConsumerToken(someToken));
+    verify(consumerService, times(2)).getConsumerTokenByToken(someToken);
+  }
+
+  @Test
+  public void testGetConsumerTokenWithCacheDisabled() throws Exception {
+    String someToken = "someToken";
+    ConsumerToken someConsumerToken = assembleConsumerToken(someToken,
+        System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+    when(portalConfig.consumerTokenCacheExpireSecond()).thenReturn(0);
+    consumerAuthUtil = new ConsumerAuthUtil(consumerService, portalConfig);
+
+    when(consumerService.getConsumerTokenByToken(someToken)).thenReturn(someConsumerToken);
+
+    consumerAuthUtil.getConsumerToken(someToken);
+    consumerAuthUtil.getConsumerToken(someToken);
+    verify(consumerService, times(2)).getConsumerTokenByToken(someToken);
+  }
+
   @Test
   public void testStoreConsumerId() throws Exception {
     long someConsumerId = 1L;
@@ -87,4 +167,11 @@ public class ConsumerAuthUtilTest {
     consumerAuthUtil.retrieveConsumerId(request);
   }
 
+  private ConsumerToken assembleConsumerToken(String token, long expires) {
+    ConsumerToken consumerToken = new ConsumerToken();
+    consumerToken.setToken(token);
+    consumerToken.setConsumerId(1);
+    consumerToken.setExpires(new Date(expires));
+    return consumerToken;
+  }
 }
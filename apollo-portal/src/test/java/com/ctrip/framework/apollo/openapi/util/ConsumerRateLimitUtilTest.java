@@ -0,0 +1,89 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.openapi.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.openapi.service.ConsumerRateLimitService;
+import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConsumerRateLimitUtilTest {
+  private static final String SOME_TOKEN = "someToken";
+
+  @Mock
+  private ConsumerRateLimitService consumerRateLimitService;
+  @Mock
+  private PortalConfig portalConfig;
+  private ConsumerRateLimitUtil consumerRateLimitUtil;
+
+  @Before
+  public void setUp() throws Exception {
+    consumerRateLimitUtil = new ConsumerRateLimitUtil(consumerRateLimitService, portalConfig);
+  }
+
+  @Test
+  public void testAcquireLeasedPermits() throws Exception {
+    when(consumerRateLimitService.leasePermits(eq(SOME_TOKEN), eq(100), eq(10), anyLong()))
+        .thenReturn(10);
+    awaitWindowStart();
+
+    for (int i = 0; i < 10; i++) {
+      assertTrue(consumerRateLimitUtil.tryAcquire(SOME_TOKEN, 100));
+    }
+
+    //the leased permits are acquired without leasing again
+    verify(consumerRateLimitService, times(1)).leasePermits(eq(SOME_TOKEN), eq(100), eq(10),
+        anyLong());
+  }
+
+  @Test
+  public void testAcquireBeyondRateLimit() throws Exception {
+    when(consumerRateLimitService.leasePermits(eq(SOME_TOKEN), eq(5), eq(1), anyLong()))
+        .thenReturn(1, 0);
+    awaitWindowStart();
+
+    assertTrue(consumerRateLimitUtil.tryAcquire(SOME_TOKEN, 5));
+    assertFalse(consumerRateLimitUtil.tryAcquire(SOME_TOKEN, 5));
+    assertFalse(consumerRateLimitUtil.tryAcquire(SOME_TOKEN, 5));
+
+    //not to lease again right after the rate limit is reached
+    verify(consumerRateLimitService, times(2)).leasePermits(eq(SOME_TOKEN), eq(5), eq(1),
+        anyLong());
+  }
+
+  /**
+   * Wait for the start of the next window, so that the test runs in one window
+   */
+  private void awaitWindowStart() throws InterruptedException {
+    long now = System.currentTimeMillis();
+    TimeUnit.MILLISECONDS.sleep(ConsumerRateLimitService.windowStart(now)
+        + ConsumerRateLimitService.WINDOW_IN_MILLI - now);
+  }
+}
@@ -21,8 +21,11 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -31,7 +34,9 @@ import static org.mockito.Mockito.when;
 
 import com.ctrip.framework.apollo.common.exception.ServiceException;
 import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.portal.component.AbortableHttpRequests;
 import com.ctrip.framework.apollo.portal.component.AdminServiceAddressLocator;
+import com.ctrip.framework.apollo.portal.component.AdminServiceHealthTracker;
 import com.ctrip.framework.apollo.portal.component.RetryableRestTemplate;
 import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
 import com.ctrip.framework.apollo.portal.environment.Env;
@@ -43,7 +48,10 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import org.apache.http.HttpHost;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.conn.HttpHostConnectException;
 import org.junit.Before;
@@ -55,8 +63,12 @@ import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.web.client.RequestCallback;
 import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 
 public class RetryableRestTemplateTest extends AbstractUnitTest {
@@ -69,6 +81,8 @@ public class RetryableRestTemplateTest extends AbstractUnitTest {
   private PortalMetaDomainService portalMetaDomainService;
   @Mock
   private PortalConfig portalConfig;
+  @Mock
+  private AdminServiceHealthTracker adminServiceHealthTracker;
   @InjectMocks
   private RetryableRestTemplate retryableRestTemplate;
 
@@ -164,6 +178,160 @@ public class RetryableRestTemplateTest extends AbstractUnitTest {
     assertEquals(result, actualResult);
   }
 
+  @Test
+  public void testRecordAdminServiceHealth() {
+    ResponseEntity someEntity = mock(ResponseEntity.class);
+
+    when(serviceAddressLocator.getServiceList(any()))
+        .thenReturn(Arrays.asList(mockService(serviceOne), mockService(serviceTwo)));
+    when(restTemplate
+        .exchange(eq(serviceOne + "/" + path), eq(HttpMethod.GET), any(HttpEntity.class),
+            eq(Object.class))).thenThrow(socketTimeoutException);
+    when(restTemplate
+        .exchange(eq(serviceTwo + "/" + path), eq(HttpMethod.GET), any(HttpEntity.class),
+            eq(Object.class))).thenReturn(someEntity);
+
+    retryableRestTemplate.get(Env.DEV, path, Object.class);
+
+    verify(adminServiceHealthTracker, times(1)).recordFailure(eq(Env.DEV), argThat(
+        service -> serviceOne.equals(service.getHomepageUrl())));
+    verify(adminServiceHealthTracker, times(1)).recordSuccess(eq(Env.DEV), argThat(
+        service -> serviceTwo.equals(service.getHomepageUrl())), eq("GET " + path), anyLong());
+  }
+
+  @Test
+  public void testGetHedgedToNextServer() {
+    ResponseEntity someEntity = mock(ResponseEntity.class);
+    when(someEntity.getBody()).thenReturn(result);
+    HttpUriRequest slowRequest = mock(HttpUriRequest.class);
+    CountDownLatch slowRequestAborted = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      slowRequestAborted.countDown();
+      return null;
+    }).when(slowRequest).abort();
+
+    when(serviceAddressLocator.getServiceList(any()))
+        .thenReturn(Arrays
+            .asList(mockService(serviceOne), mockService(serviceTwo), mockService(serviceThree)));
+    when(adminServiceHealthTracker.getHedgeDelayInMilli(eq(Env.DEV), eq("GET " + path), any(), any()))
+        .thenReturn(10L);
+    doAnswer(invocation -> {
+      //blocks until the request is aborted, like a blocking read
+      AbortableHttpRequests.register(slowRequest);
+      assertTrue(slowRequestAborted.await(5, TimeUnit.SECONDS));
+      throw socketTimeoutException;
+    }).when(restTemplate).exchange(eq(serviceOne + "/" + path), eq(HttpMethod.GET),
+        any(HttpEntity.class), eq(Object.class));
+    when(restTemplate
+        .exchange(eq(serviceTwo + "/" + path), eq(HttpMethod.GET), any(HttpEntity.class),
+            eq(Object.class))).thenReturn(someEntity);
+
+    Object actualResult = retryableRestTemplate.get(Env.DEV, path, Object.class);
+
+    assertEquals(result, actualResult);
+    verify(slowRequest, times(1)).abort();
+    verify(adminServiceHealthTracker, times(1)).recordHedge(Env.DEV);
+    //the aborted request isn't a failure of the admin server
+    verify(adminServiceHealthTracker, never()).recordFailure(any(), any());
+    verify(restTemplate, never())
+        .exchange(eq(serviceThree + "/" + path), eq(HttpMethod.GET), any(HttpEntity.class),
+            eq(Object.class));
+  }
+
+  @Test
+  public void testGetNotHedgedWithinHedgeDelay() {
+    ResponseEntity someEntity = mock(ResponseEntity.class);
+    when(someEntity.getBody()).thenReturn(result);
+
+    when(serviceAddressLocator.getServiceList(any()))
+        .thenReturn(Arrays.asList(mockService(serviceOne), mockService(serviceTwo)));
+    when(adminServiceHealthTracker.getHedgeDelayInMilli(eq(Env.DEV), eq("GET " + path), any(), any()))
+        .thenReturn(TimeUnit.SECONDS.toMillis(5));
+    when(restTemplate
+        .exchange(eq(serviceOne + "/" + path), eq(HttpMethod.GET), any(HttpEntity.class),
+            eq(Object.class))).thenReturn(someEntity);
+
+    Object actualResult = retryableRestTemplate.get(Env.DEV, path, Object.class);
+
+    assertEquals(result, actualResult);
+    verify(adminServiceHealthTracker, never()).recordHedge(any());
+    verify(restTemplate, never())
+        .exchange(eq(serviceTwo + "/" + path), eq(HttpMethod.GET), any(HttpEntity.class),
+            eq(Object.class));
+  }
+
+  @Test
+  public void testGetHedgedServerTriedAfterServerDown() {
+    ResponseEntity someEntity = mock(ResponseEntity.class);
+    when(someEntity.getBody()).thenReturn(result);
+
+    when(serviceAddressLocator.getServiceList(any()))
+        .thenReturn(Arrays
+            .asList(mockService(serviceOne), mockService(serviceTwo), mockService(serviceThree)));
+    when(adminServiceHealthTracker.getHedgeDelayInMilli(eq(Env.DEV), eq("GET " + path), any(), any()))
+        .thenReturn(TimeUnit.SECONDS.toMillis(5));
+    when(restTemplate
+        .exchange(eq(serviceOne + "/" + path), eq(HttpMethod.GET), any(HttpEntity.class),
+            eq(Object.class))).thenThrow(socketTimeoutException);
+    when(restTemplate
+        .exchange(eq(serviceTwo + "/" + path), eq(HttpMethod.GET), any(HttpEntity.class),
+            eq(Object.class))).thenReturn(someEntity);
+
+    Object actualResult = retryableRestTemplate.get(Env.DEV, path, Object.class);
+
+    //the hedge server is tried at once instead of after the hedge delay
+    assertEquals(result, actualResult);
+    verify(adminServiceHealthTracker, never()).recordHedge(any());
+    verify(restTemplate, never())
+        .exchange(eq(serviceThree + "/" + path), eq(HttpMethod.GET), any(HttpEntity.class),
+            eq(Object.class));
+  }
+
+  @Test
+  public void testPostNotHedged() {
+    when(serviceAddressLocator.getServiceList(any()))
+        .thenReturn(Arrays.asList(mockService(serviceOne), mockService(serviceTwo)));
+    when(restTemplate
+        .exchange(eq(serviceOne + "/" + path), eq(HttpMethod.POST), any(HttpEntity.class),
+            eq(Object.class))).thenReturn(mock(ResponseEntity.class));
+
+    retryableRestTemplate.post(Env.DEV, path, request, Object.class);
+
+    verify(adminServiceHealthTracker, never()).getHedgeDelayInMilli(any(), any(), any(), any());
+  }
+
+  @Test
+  public void testGetWithResponseExtractor() throws Exception {
+    Env someEnv = Env.DEV;
+    String someToken = "someToken";
+    ResponseExtractor<Object> responseExtractor = response -> result;
+
+    when(portalConfig.getAdminServiceAccessTokens())
+        .thenReturn(mockAdminServiceTokens(someEnv, someToken));
+    when(serviceAddressLocator.getServiceList(someEnv))
+        .thenReturn(Arrays.asList(mockService(serviceOne), mockService(serviceTwo)));
+    when(restTemplate.execute(eq(serviceOne + "/" + path), eq(HttpMethod.GET),
+        any(RequestCallback.class), eq(responseExtractor))).thenThrow(socketTimeoutException);
+    when(restTemplate.execute(eq(serviceTwo + "/" + path), eq(HttpMethod.GET),
+        any(RequestCallback.class), eq(responseExtractor))).thenReturn(result);
+
+    Object actualResult = retryableRestTemplate.get(someEnv, path, responseExtractor);
+
+    assertSame(result, actualResult);
+
+    ArgumentCaptor<RequestCallback> argumentCaptor = ArgumentCaptor.forClass(RequestCallback.class);
+    verify(restTemplate, times(1)).execute(eq(serviceTwo + "/" + path), eq(HttpMethod.GET),
+        argumentCaptor.capture(), eq(responseExtractor));
+
+    ClientHttpRequest request = mock(ClientHttpRequest.class);
+    HttpHeaders headers = new HttpHeaders();
+    when(request.getHeaders()).thenReturn(headers);
+    argumentCaptor.getValue().doWithRequest(request);
+
+    assertEquals(Collections.singletonList(someToken), headers.get(HttpHeaders.AUTHORIZATION));
+    assertEquals(Collections.singletonList(MediaType.APPLICATION_JSON), headers.getAccept());
+  }
+
   @Test
   public void testPostSocketTimeoutNotRetry() {
     ResponseEntity someEntity = mock(ResponseEntity.class);
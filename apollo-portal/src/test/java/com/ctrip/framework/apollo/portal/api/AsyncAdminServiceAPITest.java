@@ -0,0 +1,97 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.portal.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.ctrip.framework.apollo.portal.api.AsyncAdminServiceAPI.EnvResults;
+import com.ctrip.framework.apollo.portal.environment.Env;
+import com.google.common.collect.Lists;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncAdminServiceAPITest {
+
+  private AsyncAdminServiceAPI asyncAdminServiceAPI;
+  private CountDownLatch slowEnvLatch;
+
+  @Before
+  public void setUp() throws Exception {
+    asyncAdminServiceAPI = new AsyncAdminServiceAPI(4);
+    slowEnvLatch = new CountDownLatch(1);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    slowEnvLatch.countDown();
+    asyncAdminServiceAPI.preDestroy();
+  }
+
+  @Test
+  public void testFanOutConcurrently() {
+    CountDownLatch allEnvsCalled = new CountDownLatch(3);
+
+    EnvResults<String> envResults = asyncAdminServiceAPI.fanOut(
+        Lists.newArrayList(Env.DEV, Env.FAT, Env.UAT), env -> {
+          allEnvsCalled.countDown();
+          try {
+            //only returns if all the envs are called at once
+            allEnvsCalled.await(1, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          return env.getName();
+        }, 5000);
+
+    assertTrue(envResults.isComplete());
+    assertEquals(Lists.newArrayList(Env.DEV, Env.FAT, Env.UAT),
+        Lists.newArrayList(envResults.getResults().keySet()));
+    assertEquals(Env.FAT.getName(), envResults.getResults().get(Env.FAT));
+  }
+
+  @Test
+  public void testFanOutWithPartialResults() {
+    IllegalStateException failure = new IllegalStateException("some failure");
+
+    EnvResults<String> envResults = asyncAdminServiceAPI.fanOut(
+        Lists.newArrayList(Env.DEV, Env.FAT, Env.UAT), env -> {
+          if (env == Env.FAT) {
+            throw failure;
+          }
+          if (env == Env.UAT) {
+            try {
+              slowEnvLatch.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+          return env.getName();
+        }, 200);
+
+    assertFalse(envResults.isComplete());
+    assertEquals(Collections.singletonMap(Env.DEV, Env.DEV.getName()), envResults.getResults());
+    assertEquals(Collections.singletonMap(Env.FAT, failure), envResults.getFailures());
+    assertEquals(Collections.singletonList(Env.UAT), envResults.getTimeoutEnvs());
+    assertEquals(Lists.newArrayList(Env.FAT, Env.UAT), envResults.getIncompleteEnvs());
+  }
+}
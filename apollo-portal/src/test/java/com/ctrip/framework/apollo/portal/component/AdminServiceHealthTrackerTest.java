@@ -0,0 +1,189 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.portal.component;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.portal.AbstractUnitTest;
+import com.ctrip.framework.apollo.portal.component.AdminServiceHealthTracker.State;
+import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
+import com.ctrip.framework.apollo.portal.environment.Env;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+public class AdminServiceHealthTrackerTest extends AbstractUnitTest {
+
+  @Mock
+  private PortalConfig portalConfig;
+  private SimpleMeterRegistry meterRegistry;
+  private long now;
+  private AdminServiceHealthTracker adminServiceHealthTracker;
+
+  private final Env someEnv = Env.DEV;
+  private final String someEndpoint = "GET apps/{appId}";
+  private final ServiceDTO serviceOne = mockService("http://10.0.0.1");
+  private final ServiceDTO serviceTwo = mockService("http://10.0.0.2");
+  private final ServiceDTO serviceThree = mockService("http://10.0.0.3");
+
+  @Before
+  public void setUp() {
+    when(portalConfig.isAdminServiceHedgeEnabled()).thenReturn(true);
+    when(portalConfig.adminServiceCircuitBreakerFailureThreshold()).thenReturn(3);
+    when(portalConfig.adminServiceCircuitBreakerOpenDurationSecond()).thenReturn(30);
+    when(portalConfig.adminServiceLatencyOutlierRatio()).thenReturn(3);
+    when(portalConfig.readTimeout()).thenReturn(10000);
+    meterRegistry = new SimpleMeterRegistry();
+    now = 0;
+    adminServiceHealthTracker = new AdminServiceHealthTracker(portalConfig, meterRegistry,
+        () -> now);
+  }
+
+  @Test
+  public void testCircuitBreakerOpenAfterConsecutiveFailures() {
+    adminServiceHealthTracker.recordFailure(someEnv, serviceOne);
+    adminServiceHealthTracker.recordFailure(someEnv, serviceOne);
+    adminServiceHealthTracker.recordSuccess(someEnv, serviceOne, someEndpoint, 10);
+    adminServiceHealthTracker.recordFailure(someEnv, serviceOne);
+    adminServiceHealthTracker.recordFailure(someEnv, serviceOne);
+    assertEquals(State.CLOSED, adminServiceHealthTracker.getState(someEnv, serviceOne));
+
+    adminServiceHealthTracker.recordFailure(someEnv, serviceOne);
+    assertEquals(State.OPEN, adminServiceHealthTracker.getState(someEnv, serviceOne));
+    assertEquals(Arrays.asList(serviceTwo, serviceThree, serviceOne), adminServiceHealthTracker
+        .sortByHealth(someEnv, Arrays.asList(serviceOne, serviceTwo, serviceThree)));
+    assertEquals(2, breakerState(serviceOne), 0);
+
+    now += TimeUnit.SECONDS.toMillis(30);
+    assertEquals(State.HALF_OPEN, adminServiceHealthTracker.getState(someEnv, serviceOne));
+    assertEquals(Arrays.asList(serviceOne, serviceTwo), adminServiceHealthTracker
+        .sortByHealth(someEnv, Arrays.asList(serviceOne, serviceTwo)));
+
+    //a failure reopens the half open breaker at once
+    adminServiceHealthTracker.recordFailure(someEnv, serviceOne);
+    assertEquals(State.OPEN, adminServiceHealthTracker.getState(someEnv, serviceOne));
+
+    now += TimeUnit.SECONDS.toMillis(30);
+    adminServiceHealthTracker.recordSuccess(someEnv, serviceOne, someEndpoint, 10);
+    assertEquals(State.CLOSED, adminServiceHealthTracker.getState(someEnv, serviceOne));
+    assertEquals(0, breakerState(serviceOne), 0);
+  }
+
+  @Test
+  public void testCircuitBreakerOpenForLatencyOutlier() {
+    for (int i = 0; i < 20; i++) {
+      adminServiceHealthTracker.recordSuccess(someEnv, serviceOne, someEndpoint, 20);
+      adminServiceHealthTracker.recordSuccess(someEnv, serviceTwo, someEndpoint, 30);
+    }
+    for (int i = 0; i < 19; i++) {
+      adminServiceHealthTracker.recordSuccess(someEnv, serviceThree, someEndpoint, 500);
+    }
+    //not enough latencies yet
+    assertEquals(State.CLOSED, adminServiceHealthTracker.getState(someEnv, serviceThree));
+
+    adminServiceHealthTracker.recordSuccess(someEnv, serviceThree, someEndpoint, 500);
+
+    assertEquals(State.OPEN, adminServiceHealthTracker.getState(someEnv, serviceThree));
+    assertEquals(State.CLOSED, adminServiceHealthTracker.getState(someEnv, serviceOne));
+    assertEquals(500, meterRegistry.get("admin.service.latency.ewma")
+        .tag("instance", serviceThree.getHomepageUrl()).gauge().value(), 0.01);
+  }
+
+  @Test
+  public void testLatencyBelowMinimumNotOutlier() {
+    for (int i = 0; i < 20; i++) {
+      adminServiceHealthTracker.recordSuccess(someEnv, serviceOne, someEndpoint, 1);
+      adminServiceHealthTracker.recordSuccess(someEnv, serviceTwo, someEndpoint, 50);
+    }
+
+    assertEquals(State.CLOSED, adminServiceHealthTracker.getState(someEnv, serviceTwo));
+  }
+
+  @Test
+  public void testHedgeDelay() {
+    for (int i = 1; i < 20; i++) {
+      adminServiceHealthTracker.recordSuccess(someEnv, serviceOne, someEndpoint, i);
+    }
+    //not enough latencies yet
+    assertEquals(0, adminServiceHealthTracker.getHedgeDelayInMilli(someEnv, someEndpoint, serviceOne, serviceTwo));
+
+    for (int i = 20; i <= 100; i++) {
+      adminServiceHealthTracker.recordSuccess(someEnv, serviceOne, someEndpoint, i);
+    }
+    assertEquals(95, adminServiceHealthTracker.getHedgeDelayInMilli(someEnv, someEndpoint, serviceOne, serviceTwo));
+
+    when(portalConfig.readTimeout()).thenReturn(50);
+    assertEquals(50, adminServiceHealthTracker.getHedgeDelayInMilli(someEnv, someEndpoint, serviceOne, serviceTwo));
+
+    //no hedging to an unhealthy admin server
+    for (int i = 0; i < 3; i++) {
+      adminServiceHealthTracker.recordFailure(someEnv, serviceTwo);
+    }
+    assertEquals(0, adminServiceHealthTracker.getHedgeDelayInMilli(someEnv, someEndpoint, serviceOne, serviceTwo));
+
+    when(portalConfig.isAdminServiceHedgeEnabled()).thenReturn(false);
+    assertEquals(0, adminServiceHealthTracker.getHedgeDelayInMilli(someEnv, someEndpoint, serviceOne, serviceThree));
+  }
+
+  @Test
+  public void testHedgeDelayPerEndpoint() {
+    String slowEndpoint = "GET apps/{appId}/namespace-snapshots";
+    for (int i = 1; i <= 100; i++) {
+      adminServiceHealthTracker.recordSuccess(someEnv, serviceOne, someEndpoint, i);
+      adminServiceHealthTracker.recordSuccess(someEnv, serviceOne, slowEndpoint, i * 20);
+    }
+
+    assertEquals(95, adminServiceHealthTracker.getHedgeDelayInMilli(someEnv, someEndpoint, serviceOne, serviceTwo));
+    assertEquals(1900, adminServiceHealthTracker.getHedgeDelayInMilli(someEnv, slowEndpoint, serviceOne, serviceTwo));
+    //no latencies of the endpoint yet
+    assertEquals(0, adminServiceHealthTracker.getHedgeDelayInMilli(someEnv, "GET apps", serviceOne, serviceTwo));
+  }
+
+  @Test
+  public void testRetain() {
+    adminServiceHealthTracker.recordSuccess(someEnv, serviceOne, someEndpoint, 10);
+    adminServiceHealthTracker.recordSuccess(someEnv, serviceTwo, someEndpoint, 10);
+
+    adminServiceHealthTracker.retain(someEnv, Collections.singletonList(serviceTwo));
+
+    List<String> instances = meterRegistry.find("admin.service.latency.ewma").gauges().stream()
+        .map(gauge -> gauge.getId().getTag("instance")).collect(Collectors.toList());
+    assertEquals(Collections.singletonList(serviceTwo.getHomepageUrl()), instances);
+    assertNull(meterRegistry.find("admin.service.circuit.breaker.state")
+        .tag("instance", serviceOne.getHomepageUrl()).gauge());
+  }
+
+  private double breakerState(ServiceDTO service) {
+    return meterRegistry.get("admin.service.circuit.breaker.state")
+        .tag("instance", service.getHomepageUrl()).gauge().value();
+  }
+
+  private ServiceDTO mockService(String homepageUrl) {
+    ServiceDTO serviceDTO = new ServiceDTO();
+    serviceDTO.setHomepageUrl(homepageUrl);
+    return serviceDTO;
+  }
+}
@@ -19,11 +19,14 @@ package com.ctrip.framework.apollo.portal.service;
 import com.ctrip.framework.apollo.common.dto.ClusterDTO;
 import com.ctrip.framework.apollo.common.dto.ItemDTO;
 import com.ctrip.framework.apollo.common.dto.NamespaceDTO;
+import com.ctrip.framework.apollo.common.dto.NamespaceImportDTO;
+import com.ctrip.framework.apollo.common.dto.NamespaceImportResultDTO;
 import com.ctrip.framework.apollo.common.entity.App;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
 import com.ctrip.framework.apollo.core.enums.ConfigFileFormat;
 import com.ctrip.framework.apollo.portal.AbstractUnitTest;
 import com.ctrip.framework.apollo.portal.component.PermissionValidator;
+import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
 import com.ctrip.framework.apollo.portal.entity.bo.ItemBO;
 import com.ctrip.framework.apollo.portal.entity.bo.NamespaceBO;
 import com.ctrip.framework.apollo.portal.entity.bo.UserInfo;
@@ -33,22 +36,33 @@ import com.ctrip.framework.apollo.portal.spi.UserInfoHolder;
 import org.assertj.core.util.Files;
 import org.assertj.core.util.Lists;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpStatusCodeException;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -70,6 +84,8 @@ public class ConfigsExportServiceTest extends AbstractUnitTest {
   private UserInfoHolder            userInfoHolder;
   @Mock
   private AppNamespaceService       appNamespaceService;
+  @Mock
+  private PortalConfig              portalConfig;
   @InjectMocks
   private ConfigsExportService      configsExportService;
   @Mock
@@ -84,16 +100,23 @@ public class ConfigsExportServiceTest extends AbstractUnitTest {
   @Test
   public void testNamespaceExportImport() throws FileNotFoundException {
     // Test with fillItemDetail = true
-    testExportImportScenario(true);
+    testExportImportScenario(true, true);
   }
 
   @Test
   public void testNamespaceExportImportWithFillItemDetail() throws FileNotFoundException {
     // Test with fillItemDetail = false
-    testExportImportScenario(false);
+    testExportImportScenario(false, true);
   }
 
-  private void testExportImportScenario(boolean fillItemDetail) throws FileNotFoundException {
+  @Test
+  public void testNamespaceExportImportItemByItem() throws FileNotFoundException {
+    // Test with the admin service without the namespace import
+    testExportImportScenario(true, false);
+  }
+
+  private void testExportImportScenario(boolean fillItemDetail, boolean namespaceImportSupported)
+      throws FileNotFoundException {
 
     File temporaryFolder = Files.newTemporaryFolder();
     temporaryFolder.deleteOnExit();
@@ -156,6 +179,8 @@ public class ConfigsExportServiceTest extends AbstractUnitTest {
     when(appService.findAll()).thenReturn(exportApps);
     when(appNamespaceService.findAll()).thenReturn(appNamespaces);
     when(permissionValidator.isAppAdmin(any())).thenReturn(true);
+    when(portalConfig.configsExportFetchThreads()).thenReturn(2);
+    when(portalConfig.configsImportThreads()).thenReturn(2);
     when(clusterService.findClusters(env, appId1)).thenReturn(app1Clusters);
     when(clusterService.findClusters(env, appId2)).thenReturn(app2Clusters);
     when(namespaceService.findNamespaceBOs(appId1, Env.DEV, clusterName1, fillItemDetail, false)).thenReturn(app1Cluster1Namespace);
@@ -181,6 +206,19 @@ public class ConfigsExportServiceTest extends AbstractUnitTest {
     when(itemService.findItems(any(), any(), any(), any())).thenReturn(Lists.newArrayList());
     HttpStatusCodeException itemNotFoundException = new HttpClientErrorException(HttpStatus.NOT_FOUND);
     when(itemService.loadItem(any(), any(), any(), any(), anyString())).thenThrow(itemNotFoundException);
+    if (namespaceImportSupported) {
+      NamespaceImportResultDTO importResult = new NamespaceImportResultDTO();
+      importResult.setNamespaceCreated(true);
+      when(itemService.importNamespace(any(), any(), any(), any(), any())).thenReturn(importResult);
+    } else {
+      //the not found error of spring boot, instead of an exception of the endpoint
+      String errorBody = "{\"status\":404,\"error\":\"Not Found\",\"path\":"
+          + "\"/apps/app1/clusters/default/namespaces/application/import\"}";
+      when(itemService.importNamespace(any(), any(), any(), any(), any()))
+          .thenThrow(HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found",
+              new HttpHeaders(), errorBody.getBytes(StandardCharsets.UTF_8),
+              StandardCharsets.UTF_8));
+    }
 
     FileInputStream fileInputStream = new FileInputStream(filePath);
     ZipInputStream zipInputStream = new ZipInputStream(fileInputStream);
@@ -199,11 +237,87 @@ public class ConfigsExportServiceTest extends AbstractUnitTest {
     verify(clusterService, times(4)).createCluster(any(), any());
 
     if(fillItemDetail){
-      verify(namespaceService, times(6)).createNamespace(any(), any());
       verify(roleInitializationService,times(6)).initNamespaceRoles(any(), any(), anyString());
       verify(roleInitializationService,times(6)).initNamespaceEnvRoles(any(), any(), anyString());
-      verify(itemService, times(12)).createItem(any(), any(), any(), any(), any());
+      if (namespaceImportSupported) {
+        ArgumentCaptor<NamespaceImportDTO> namespaceImportCaptor = ArgumentCaptor.forClass(
+            NamespaceImportDTO.class);
+        verify(itemService, times(6)).importNamespace(any(), any(), any(), any(),
+            namespaceImportCaptor.capture());
+        for (NamespaceImportDTO namespaceImport : namespaceImportCaptor.getAllValues()) {
+          assertEquals(2, namespaceImport.getItems().size());
+          assertEquals(userInfo.getUserId(), namespaceImport.getDataChangeLastModifiedBy());
+        }
+        verify(namespaceService, never()).createNamespace(any(), any());
+        verify(itemService, never()).createItem(any(), any(), any(), any(), any());
+      } else {
+        verify(namespaceService, times(6)).createNamespace(any(), any());
+        verify(itemService, times(12)).createItem(any(), any(), any(), any(), any());
+      }
+    }
+  }
+
+  @Test
+  public void testImportNamespaceNotFallbackForErrorOfEndpoint() {
+    when(userInfoHolder.getUser()).thenReturn(genUser());
+    //e.g. an item deleted concurrently
+    String errorBody = "{\"status\":404,\"message\":\"item not found\","
+        + "\"exception\":\"com.ctrip.framework.apollo.common.exception.NotFoundException\"}";
+    HttpClientErrorException notFoundException = HttpClientErrorException.create(
+        HttpStatus.NOT_FOUND, "Not Found", new HttpHeaders(),
+        errorBody.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+    when(itemService.importNamespace(any(), any(), any(), any(), any()))
+        .thenThrow(notFoundException);
+
+    try {
+      configsImportService.forceImportNamespaceFromFile(Env.DEV,
+          "app1+default+application.properties",
+          new ByteArrayInputStream("[]".getBytes(StandardCharsets.UTF_8)));
+      fail();
+    } catch (HttpClientErrorException e) {
+      assertSame(notFoundException, e);
     }
+
+    verify(namespaceService, never()).loadNamespaceBaseInfo(any(), any(), any(), any());
+    verify(itemService, never()).createItem(any(), any(), any(), any(), any());
+  }
+
+  @Test
+  public void testExportAppsInOrderFromAppId() throws IOException {
+    App app1 = genApp("app1", "app1", "org1", "org2");
+    App app2 = genApp("app2", "app2", "org1", "org2");
+    App app3 = genApp("app3", "app3", "org1", "org2");
+    Lists.newArrayList(app1, app2, app3).forEach(app -> app.setOwnerName("someOwner"));
+    ClusterDTO app3Cluster = genCluster("c1", "app3");
+    NamespaceBO app3Namespace = genNamespace(app3, app3Cluster,
+        Lists.newArrayList(genItem("k1", "v1")), "namespace1");
+
+    when(appService.findAll()).thenReturn(Lists.newArrayList(app3, app1, app2));
+    when(appNamespaceService.findAll()).thenReturn(Lists.newArrayList());
+    when(permissionValidator.isAppAdmin(any())).thenReturn(true);
+    when(portalConfig.configsExportFetchThreads()).thenReturn(1);
+    //the apps failed to export are skipped
+    when(clusterService.findClusters(Env.DEV, "app2")).thenThrow(new RuntimeException());
+    when(clusterService.findClusters(Env.DEV, "app3")).thenReturn(Lists.newArrayList(app3Cluster));
+    when(namespaceService.findNamespaceBOs("app3", Env.DEV, "c1", true, false))
+        .thenReturn(Lists.newArrayList(app3Namespace));
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    configsExportService.exportData(outputStream, Lists.newArrayList(Env.DEV), "app2");
+
+    List<String> fileNames = Lists.newArrayList();
+    try (ZipInputStream zipInputStream = new ZipInputStream(
+        new ByteArrayInputStream(outputStream.toByteArray()))) {
+      ZipEntry entry;
+      while ((entry = zipInputStream.getNextEntry()) != null) {
+        fileNames.add(entry.getName().replace('\\', '/'));
+      }
+    }
+
+    assertEquals(Lists.newArrayList("someOwner/app2/app.metadata", "someOwner/app3/app.metadata",
+        "someOwner/app3/DEV/c1.cluster.metadata",
+        "someOwner/app3/DEV/app3+c1+namespace1.properties"), fileNames);
+    verify(clusterService, never()).findClusters(Env.DEV, "app1");
   }
 
   private App genApp(String name, String appId, String orgId, String orgName) {
@@ -24,22 +24,30 @@ import com.ctrip.framework.apollo.common.dto.ItemInfoDTO;
 import com.ctrip.framework.apollo.common.dto.PageDTO;
 import com.ctrip.framework.apollo.common.http.SearchResponseEntity;
 import com.ctrip.framework.apollo.portal.api.AdminServiceAPI;
+import com.ctrip.framework.apollo.portal.api.AsyncAdminServiceAPI;
 import com.ctrip.framework.apollo.portal.component.PortalSettings;
+import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
 import com.ctrip.framework.apollo.portal.entity.vo.ItemInfo;
 import com.ctrip.framework.apollo.portal.environment.Env;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.data.domain.PageRequest;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 import static org.mockito.Mockito.when;
@@ -53,6 +61,15 @@ public class GlobalSearchServiceTest {
     @Mock
     private PortalSettings portalSettings;
 
+    @Mock
+    private PortalConfig portalConfig;
+
+    @Spy
+    private AsyncAdminServiceAPI asyncAdminServiceAPI = new AsyncAdminServiceAPI(2);
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     @InjectMocks
     private GlobalSearchService globalSearchService;
 
@@ -61,6 +78,7 @@ public class GlobalSearchServiceTest {
     @Before
     public void setUp() {
         when(portalSettings.getActiveEnvs()).thenReturn(activeEnvs);
+        when(portalConfig.getSearchTimeoutInMilli()).thenReturn(500);
     }
 
     @Test
@@ -124,4 +142,38 @@ public class GlobalSearchServiceTest {
         assertEquals(message, mockItemInfos.getMessage());
     }
 
+    @Test
+    public void testGet_PerEnv_ItemInfo_BySearch_withSlowAndFailedEnvs_ReturnRespondedItemInfos() throws Exception {
+        activeEnvs.add(Env.DEV);
+        activeEnvs.add(Env.FAT);
+        activeEnvs.add(Env.PRO);
+
+        ItemInfoDTO itemInfoDTO = new ItemInfoDTO("TestApp","TestCluster","TestNamespace","TestKey","TestValue");
+        List<ItemInfoDTO> mockItemInfoDTOs = new ArrayList<>();
+        mockItemInfoDTOs.add(itemInfoDTO);
+        CountDownLatch proResponded = new CountDownLatch(1);
+        Mockito.when(itemAPI.getPerEnvItemInfoBySearch(eq(Env.DEV), eq("TestKey"), eq("TestValue"), eq(0), eq(1))).thenReturn(new PageDTO<>(mockItemInfoDTOs, PageRequest.of(0, 1), 1L));
+        Mockito.when(itemAPI.getPerEnvItemInfoBySearch(eq(Env.FAT), eq("TestKey"), eq("TestValue"), eq(0), eq(1))).thenThrow(new RuntimeException("some exception"));
+        Mockito.when(itemAPI.getPerEnvItemInfoBySearch(eq(Env.PRO), eq("TestKey"), eq("TestValue"), eq(0), eq(1))).thenAnswer(invocation -> {
+            proResponded.await(5, TimeUnit.SECONDS);
+            return new PageDTO<>(mockItemInfoDTOs, PageRequest.of(0, 1), 1L);
+        });
+
+        SearchResponseEntity<List<ItemInfo>> mockItemInfos;
+        try {
+            mockItemInfos = globalSearchService.getAllEnvItemInfoBySearch("TestKey", "TestValue", 0, 1);
+        } finally {
+            proResponded.countDown();
+        }
+
+        List<ItemInfo> allEnvMockItemInfos = new ArrayList<>();
+        allEnvMockItemInfos.add(new ItemInfo("TestApp", Env.DEV.getName(), "TestCluster", "TestNamespace", "TestKey", "TestValue"));
+        assertEquals(allEnvMockItemInfos.toString(), mockItemInfos.getBody().toString());
+        assertTrue(mockItemInfos.isHasMoreData());
+        assertEquals("The search in FAT , PRO failed or timed out, the items of them are not included. Please try again later.", mockItemInfos.getMessage());
+        assertEquals(1, meterRegistry.get("global.search.env.incomplete").tag("env", "PRO").counter().count(), 0);
+        assertEquals(1, meterRegistry.get("global.search.env.latency").tag("env", "DEV").tag("outcome", "success").timer().count());
+        assertEquals(1, meterRegistry.get("global.search.env.latency").tag("env", "FAT").tag("outcome", "failure").timer().count());
+    }
+
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.portal.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.common.dto.InstanceDTO;
+import com.ctrip.framework.apollo.portal.api.AdminServiceAPI;
+import com.ctrip.framework.apollo.portal.environment.Env;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+@RunWith(MockitoJUnitRunner.class)
+public class InstanceServiceTest {
+  private static final Env someEnv = Env.DEV;
+  private static final String someAppId = "someAppId";
+  private static final String someClusterName = "someClusterName";
+  private static final String someNamespaceName = "someNamespaceName";
+  private static final Set<Long> someReleaseIds = Sets.newHashSet(1L, 2L);
+
+  @Mock
+  private AdminServiceAPI.InstanceAPI instanceAPI;
+
+  @InjectMocks
+  private InstanceService instanceService;
+
+  @Test
+  public void testStreamByReleasesNotInSkipsInstancesStreamedAgain() {
+    doAnswer(invocation -> {
+      Consumer<InstanceDTO> consumer = invocation.getArgument(5);
+      consumer.accept(assembleInstance(1));
+      //streamed again by the retried request
+      consumer.accept(assembleInstance(1));
+      consumer.accept(assembleInstance(2));
+      return null;
+    }).when(instanceAPI).streamByReleasesNotIn(eq(someAppId), eq(someEnv), eq(someClusterName),
+        eq(someNamespaceName), eq(someReleaseIds), any());
+
+    List<InstanceDTO> instances = Lists.newArrayList();
+    instanceService.streamByReleasesNotIn(someEnv, someAppId, someClusterName, someNamespaceName,
+        someReleaseIds, instances::add);
+
+    assertEquals(2, instances.size());
+    assertEquals(1, instances.get(0).getId());
+    assertEquals(2, instances.get(1).getId());
+    verify(instanceAPI, never()).getByReleasesNotIn(any(), any(), any(), any(), any());
+  }
+
+  @Test
+  public void testStreamByReleasesNotInWithStreamingEndpointMissing() {
+    doThrow(notFound("{\"status\":404,\"error\":\"Not Found\"}")).when(instanceAPI)
+        .streamByReleasesNotIn(eq(someAppId), eq(someEnv), eq(someClusterName),
+            eq(someNamespaceName), eq(someReleaseIds), any());
+    when(instanceAPI.getByReleasesNotIn(someAppId, someEnv, someClusterName, someNamespaceName,
+        someReleaseIds)).thenReturn(Lists.newArrayList(assembleInstance(1), assembleInstance(2)));
+
+    List<InstanceDTO> instances = Lists.newArrayList();
+    instanceService.streamByReleasesNotIn(someEnv, someAppId, someClusterName, someNamespaceName,
+        someReleaseIds, instances::add);
+
+    assertEquals(2, instances.size());
+  }
+
+  @Test
+  public void testStreamByReleasesNotInWithReleaseNotFound() {
+    HttpClientErrorException releaseNotFound = notFound("{\"status\":404,\"exception\":"
+        + "\"com.ctrip.framework.apollo.common.exception.NotFoundException\"}");
+    doThrow(releaseNotFound).when(instanceAPI).streamByReleasesNotIn(eq(someAppId), eq(someEnv),
+        eq(someClusterName), eq(someNamespaceName), eq(someReleaseIds), any());
+
+    try {
+      instanceService.streamByReleasesNotIn(someEnv, someAppId, someClusterName,
+          someNamespaceName, someReleaseIds, instance -> {
+          });
+      fail();
+    } catch (HttpClientErrorException e) {
+      assertTrue(e == releaseNotFound);
+    }
+    verify(instanceAPI, never()).getByReleasesNotIn(any(), any(), any(), any(), any());
+  }
+
+  private HttpClientErrorException notFound(String body) {
+    return HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", new HttpHeaders(),
+        body.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+  }
+
+  private InstanceDTO assembleInstance(long id) {
+    InstanceDTO instance = new InstanceDTO();
+    instance.setId(id);
+    return instance;
+  }
+}
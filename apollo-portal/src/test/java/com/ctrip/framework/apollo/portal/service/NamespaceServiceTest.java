@@ -19,28 +19,38 @@ package com.ctrip.framework.apollo.portal.service;
 import com.ctrip.framework.apollo.common.dto.ClusterDTO;
 import com.ctrip.framework.apollo.common.dto.ItemDTO;
 import com.ctrip.framework.apollo.common.dto.NamespaceDTO;
+import com.ctrip.framework.apollo.common.dto.NamespaceSnapshotDTO;
 import com.ctrip.framework.apollo.common.dto.ReleaseDTO;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
+import com.ctrip.framework.apollo.common.exception.BadRequestException;
+import com.ctrip.framework.apollo.common.exception.ServiceException;
 import com.ctrip.framework.apollo.core.enums.ConfigFileFormat;
 import com.ctrip.framework.apollo.portal.component.PortalSettings;
 import com.ctrip.framework.apollo.portal.entity.vo.NamespaceUsage;
 import com.ctrip.framework.apollo.portal.environment.Env;
 import com.ctrip.framework.apollo.portal.AbstractUnitTest;
 import com.ctrip.framework.apollo.portal.api.AdminServiceAPI;
+import com.ctrip.framework.apollo.portal.api.AsyncAdminServiceAPI;
+import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
 import com.ctrip.framework.apollo.portal.component.txtresolver.PropertyResolver;
 import com.ctrip.framework.apollo.portal.entity.bo.NamespaceBO;
 import com.ctrip.framework.apollo.portal.entity.bo.UserInfo;
 import com.ctrip.framework.apollo.portal.spi.UserInfoHolder;
 
+import com.google.common.collect.Sets;
 import org.assertj.core.util.Lists;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
 
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
@@ -48,6 +58,7 @@ import static org.assertj.core.api.AssertionsForClassTypes.assertThatExceptionOf
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -76,6 +87,10 @@ public class NamespaceServiceTest extends AbstractUnitTest {
   private PortalSettings portalSettings;
   @Mock
   private ClusterService clusterService;
+  @Mock
+  private PortalConfig portalConfig;
+  @Spy
+  private AsyncAdminServiceAPI asyncAdminServiceAPI = new AsyncAdminServiceAPI(2);
 
   @InjectMocks
   private NamespaceService namespaceService;
@@ -87,6 +102,7 @@ public class NamespaceServiceTest extends AbstractUnitTest {
 
   @Before
   public void setup() {
+    when(portalConfig.adminServiceFanOutTimeoutInMilli()).thenReturn(1000);
   }
 
   @Test
@@ -106,7 +122,6 @@ public class NamespaceServiceTest extends AbstractUnitTest {
     hermes.setClusterName("default");
     hermes.setAppId(testAppId);
     hermes.setNamespaceName("hermes");
-    List<NamespaceDTO> namespaces = Arrays.asList(application, hermes);
 
     ReleaseDTO someRelease = new ReleaseDTO();
     someRelease.setConfigurations("{\"a\":\"123\",\"b\":\"123\"}");
@@ -122,18 +137,22 @@ public class NamespaceServiceTest extends AbstractUnitTest {
     when(appNamespaceService.findByAppIdAndName(testAppId, testNamespaceName))
         .thenReturn(applicationAppNamespace);
     when(appNamespaceService.findPublicAppNamespace("hermes")).thenReturn(hermesAppNamespace);
-    when(namespaceAPI.findNamespaceByCluster(testAppId, Env.DEV, testClusterName)).thenReturn(namespaces);
-    when(releaseService.loadLatestRelease(testAppId, Env.DEV, testClusterName,
-                                          testNamespaceName)).thenReturn(someRelease);
-    when(releaseService.loadLatestRelease(testAppId, Env.DEV, testClusterName, "hermes")).thenReturn(someRelease);
-    when(itemService.findItems(testAppId, Env.DEV, testClusterName, testNamespaceName)).thenReturn(someItems);
+    //in the reverse order of ids
+    when(namespaceAPI.findNamespaceSnapshots(testAppId, Env.DEV, testClusterName, true))
+        .thenReturn(Arrays.asList(
+            createNamespaceSnapshot(hermes, someRelease, Collections.emptyList()),
+            createNamespaceSnapshot(application, someRelease, someItems)));
 
     List<NamespaceBO> namespaceVOs = namespaceService.findNamespaceBOs(testAppId, Env.DEV, testClusterName);
     assertEquals(2, namespaceVOs.size());
+    assertEquals(testNamespaceName, namespaceVOs.get(0).getBaseInfo().getNamespaceName());
+    assertEquals(ConfigFileFormat.XML.getValue(), namespaceVOs.get(1).getFormat());
+    //the user info of all the namespaces is enriched at once
+    verify(additionalUserInfoEnrichService, times(1)).enrichAdditionalUserInfo(any(), any());
+    verify(namespaceAPI, never()).findNamespaceByCluster(any(), any(), any());
+    verify(releaseService, never()).loadLatestRelease(any(), any(), any(), any());
+    verify(itemService, never()).findItems(any(), any(), any(), any());
 
-    when(namespaceAPI.findNamespaceByCluster(testAppId, Env.DEV, testClusterName)).thenReturn(Lists.list(application));
-    namespaceVOs = namespaceService.findNamespaceBOs(testAppId, Env.DEV, testClusterName);
-    assertEquals(1, namespaceVOs.size());
     NamespaceBO namespaceVO = namespaceVOs.get(0);
     assertEquals(4, namespaceVO.getItems().size());
     assertEquals("a", namespaceVO.getItems().get(0).getItem().getKey());
@@ -144,11 +163,64 @@ public class NamespaceServiceTest extends AbstractUnitTest {
 
     ReleaseDTO errorRelease = new ReleaseDTO();
     errorRelease.setConfigurations("\"a\":\"123\",\"b\":\"123\"");
-    when(releaseService.loadLatestRelease(testAppId, Env.DEV, testClusterName, testNamespaceName)).thenReturn(errorRelease);
+    when(namespaceAPI.findNamespaceSnapshots(testAppId, Env.DEV, testClusterName, true))
+        .thenReturn(Lists.list(createNamespaceSnapshot(application, errorRelease, someItems)));
     assertThatExceptionOfType(RuntimeException.class)
         .isThrownBy(()-> namespaceService.findNamespaceBOs(testAppId, Env.DEV, testClusterName))
         .withMessageStartingWith("Parse namespaces error, expected: 1, but actual: 0, cannot get those namespaces: [application]");
 
+    when(namespaceAPI.findNamespaceSnapshots(testAppId, Env.DEV, testClusterName, true))
+        .thenReturn(Collections.emptyList());
+    assertThatExceptionOfType(BadRequestException.class)
+        .isThrownBy(()-> namespaceService.findNamespaceBOs(testAppId, Env.DEV, testClusterName));
+  }
+
+  @Test
+  public void testFindNamespaceWithoutDeletedItems() {
+    NamespaceDTO application = createNamespace(testAppId, testClusterName, testNamespaceName);
+    NamespaceSnapshotDTO snapshot = createNamespaceSnapshot(application, createReleaseDTO(),
+        createItems());
+    snapshot.setDeletedItems(createDeletedItems());
+    when(namespaceAPI.findNamespaceSnapshots(testAppId, testEnv, testClusterName, false))
+        .thenReturn(Collections.singletonList(snapshot));
+
+    List<NamespaceBO> namespaceBOs = namespaceService.findNamespaceBOs(testAppId, testEnv,
+        testClusterName, true, false);
+
+    assertEquals(1, namespaceBOs.size());
+    assertEquals(2, namespaceBOs.get(0).getItems().size());
+    assertEquals(2, namespaceBOs.get(0).getItemModifiedCnt());
+  }
+
+  @Test
+  public void testFindNamespaceWithOlderAdminService() {
+    AppNamespace applicationAppNamespace = mock(AppNamespace.class);
+
+    NamespaceDTO application = new NamespaceDTO();
+    application.setId(1);
+    application.setClusterName(testClusterName);
+    application.setAppId(testAppId);
+    application.setNamespaceName(testNamespaceName);
+
+    when(applicationAppNamespace.getFormat()).thenReturn(ConfigFileFormat.Properties.getValue());
+    when(appNamespaceService.findByAppIdAndName(testAppId, testNamespaceName))
+        .thenReturn(applicationAppNamespace);
+    when(namespaceAPI.findNamespaceSnapshots(testAppId, Env.DEV, testClusterName, true))
+        .thenThrow(new HttpClientErrorException(HttpStatus.NOT_FOUND));
+    when(namespaceAPI.findNamespaceByCluster(testAppId, Env.DEV, testClusterName))
+        .thenReturn(Lists.list(application));
+    when(releaseService.loadLatestRelease(testAppId, Env.DEV, testClusterName, testNamespaceName))
+        .thenReturn(createReleaseDTO());
+    when(itemService.findItems(testAppId, Env.DEV, testClusterName, testNamespaceName))
+        .thenReturn(createItems());
+    when(itemService.findDeletedItems(testAppId, Env.DEV, testClusterName, testNamespaceName))
+        .thenReturn(createDeletedItems());
+
+    List<NamespaceBO> namespaceVOs = namespaceService.findNamespaceBOs(testAppId, Env.DEV, testClusterName);
+
+    assertEquals(1, namespaceVOs.size());
+    assertEquals(3, namespaceVOs.get(0).getItems().size());
+    assertEquals(3, namespaceVOs.get(0).getItemModifiedCnt());
   }
 
   @Test
@@ -199,6 +271,36 @@ public class NamespaceServiceTest extends AbstractUnitTest {
     assertThat(usage.getLinkedNamespaceCount()).isEqualTo(0);
   }
 
+  @Test
+  public void testGetNamespaceUsageWithEnvFailed() {
+    when(portalSettings.getActiveEnvs()).thenReturn(Lists.newArrayList(testEnv, Env.FAT));
+    when(clusterService.findClusters(testEnv, testAppId)).thenReturn(Collections.emptyList());
+    when(clusterService.findClusters(Env.FAT, testAppId))
+        .thenThrow(new HttpClientErrorException(HttpStatus.INTERNAL_SERVER_ERROR));
+
+    //the usages of all the envs are required to delete the namespace
+    assertThatExceptionOfType(ServiceException.class)
+        .isThrownBy(() -> namespaceService.getNamespaceUsageByAppId(testAppId, testNamespaceName))
+        .withMessageContaining(Env.FAT.toString());
+  }
+
+  @Test
+  public void testGetNamespacesPublishInfo() {
+    Map<String, Boolean> publishInfo = Collections.singletonMap(testClusterName, true);
+    when(portalConfig.publishTipsSupportedEnvs()).thenReturn(Sets.newHashSet(testEnv, Env.FAT, Env.UAT));
+    when(portalSettings.isEnvActive(testEnv)).thenReturn(true);
+    when(portalSettings.isEnvActive(Env.FAT)).thenReturn(true);
+    when(namespaceAPI.getNamespacePublishInfo(testEnv, testAppId)).thenReturn(publishInfo);
+    when(namespaceAPI.getNamespacePublishInfo(Env.FAT, testAppId))
+        .thenThrow(new HttpClientErrorException(HttpStatus.INTERNAL_SERVER_ERROR));
+
+    Map<String, Map<String, Boolean>> result = namespaceService.getNamespacesPublishInfo(testAppId);
+
+    //the failed env is left out
+    assertEquals(Collections.singletonMap(testEnv.toString(), publishInfo), result);
+    verify(namespaceAPI, never()).getNamespacePublishInfo(Env.UAT, testAppId);
+  }
+
   @Test
   public void testDeleteEmptyNamespace() {
     String branchName = "branch";
@@ -319,6 +421,16 @@ public class NamespaceServiceTest extends AbstractUnitTest {
     return instance;
   }
 
+  private NamespaceSnapshotDTO createNamespaceSnapshot(NamespaceDTO namespace,
+      ReleaseDTO latestRelease, List<ItemDTO> items) {
+    NamespaceSnapshotDTO snapshot = new NamespaceSnapshotDTO();
+    snapshot.setNamespace(namespace);
+    snapshot.setLatestRelease(latestRelease);
+    snapshot.setItems(items);
+    snapshot.setDeletedItems(Collections.emptyList());
+    return snapshot;
+  }
+
   private NamespaceDTO createNamespace(String appId, String clusterName, String namespaceName) {
     NamespaceDTO instance = new NamespaceDTO();
 
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2024 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.portal.spi.defaultImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.openapi.repository.ConsumerRoleRepository;
+import com.ctrip.framework.apollo.portal.AbstractUnitTest;
+import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
+import com.ctrip.framework.apollo.portal.entity.po.Permission;
+import com.ctrip.framework.apollo.portal.entity.po.Role;
+import com.ctrip.framework.apollo.portal.entity.po.RolePermission;
+import com.ctrip.framework.apollo.portal.entity.po.UserRole;
+import com.ctrip.framework.apollo.portal.listener.UserPermissionChangeEvent;
+import com.ctrip.framework.apollo.portal.repository.PermissionRepository;
+import com.ctrip.framework.apollo.portal.repository.RolePermissionRepository;
+import com.ctrip.framework.apollo.portal.repository.RoleRepository;
+import com.ctrip.framework.apollo.portal.repository.UserRoleRepository;
+import com.ctrip.framework.apollo.portal.spi.UserService;
+import com.ctrip.framework.apollo.portal.spi.defaultimpl.DefaultRolePermissionService;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import java.util.Collections;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+
+public class DefaultRolePermissionServiceTest extends AbstractUnitTest {
+
+  @Mock
+  private RoleRepository roleRepository;
+  @Mock
+  private RolePermissionRepository rolePermissionRepository;
+  @Mock
+  private UserRoleRepository userRoleRepository;
+  @Mock
+  private PermissionRepository permissionRepository;
+  @Mock
+  private PortalConfig portalConfig;
+  @Mock
+  private ConsumerRoleRepository consumerRoleRepository;
+  @Mock
+  private UserService userService;
+  @Mock
+  private ApplicationEventPublisher publisher;
+
+  private DefaultRolePermissionService rolePermissionService;
+
+  private String someUser = "someUser";
+  private String anotherUser = "anotherUser";
+  private String somePermissionType = "somePermissionType";
+  private String someTargetId = "someTargetId";
+
+  @Before
+  public void setUp() throws Exception {
+    when(portalConfig.permissionCacheExpireSecond()).thenReturn(60);
+    when(portalConfig.superAdmins()).thenReturn(Collections.singletonList("someSuperAdmin"));
+    rolePermissionService = new DefaultRolePermissionService(roleRepository,
+        rolePermissionRepository, userRoleRepository, permissionRepository, portalConfig,
+        consumerRoleRepository, userService, publisher);
+
+    when(userRoleRepository.findByUserId(someUser))
+        .thenReturn(Collections.singletonList(assembleUserRole(someUser, 1)));
+    when(rolePermissionRepository.findByRoleIdIn(Collections.singleton(1L)))
+        .thenReturn(Collections.singletonList(assembleRolePermission(1, 10)));
+    when(permissionRepository.findAllById(Collections.singleton(10L)))
+        .thenReturn(Collections.singletonList(assemblePermission(10, somePermissionType, someTargetId)));
+  }
+
+  @Test
+  public void testUserHasPermissionCached() {
+    assertTrue(rolePermissionService.userHasPermission(someUser, somePermissionType, someTargetId));
+    assertFalse(rolePermissionService.userHasPermission(someUser, somePermissionType, "anotherTargetId"));
+    assertFalse(rolePermissionService.userHasPermission(anotherUser, somePermissionType, someTargetId));
+    assertFalse(rolePermissionService.userHasPermission(anotherUser, somePermissionType, someTargetId));
+
+    verify(userRoleRepository, times(1)).findByUserId(someUser);
+    verify(userRoleRepository, times(1)).findByUserId(anotherUser);
+    verify(rolePermissionRepository, times(1)).findByRoleIdIn(any());
+    verify(permissionRepository, never()).findTopByPermissionTypeAndTargetId(anyString(), anyString());
+  }
+
+  @Test
+  public void testUserPermissionCacheInvalidated() {
+    assertTrue(rolePermissionService.userHasPermission(someUser, somePermissionType, someTargetId));
+    assertFalse(rolePermissionService.userHasPermission(anotherUser, somePermissionType, someTargetId));
+
+    //the role is removed from some user and assigned to another user
+    when(userRoleRepository.findByUserId(someUser)).thenReturn(Collections.emptyList());
+    when(userRoleRepository.findByUserId(anotherUser))
+        .thenReturn(Collections.singletonList(assembleUserRole(anotherUser, 1)));
+    rolePermissionService.onUserPermissionChange(
+        new UserPermissionChangeEvent(this, Sets.newHashSet(anotherUser)));
+
+    assertTrue(rolePermissionService.userHasPermission(someUser, somePermissionType, someTargetId));
+    assertTrue(rolePermissionService.userHasPermission(anotherUser, somePermissionType, someTargetId));
+
+    rolePermissionService.onUserPermissionChange(new UserPermissionChangeEvent(this, null));
+
+    assertFalse(rolePermissionService.userHasPermission(someUser, somePermissionType, someTargetId));
+    assertTrue(rolePermissionService.userHasPermission(anotherUser, somePermissionType, someTargetId));
+  }
+
+  @Test
+  public void testSuperAdminHasPermission() {
+    when(permissionRepository.findTopByPermissionTypeAndTargetId(somePermissionType, someTargetId))
+        .thenReturn(assemblePermission(10, somePermissionType, someTargetId));
+
+    assertTrue(rolePermissionService.userHasPermission("someSuperAdmin", somePermissionType, someTargetId));
+    assertFalse(rolePermissionService.userHasPermission("someSuperAdmin", somePermissionType, "anotherTargetId"));
+  }
+
+  @Test
+  public void testPublishUserPermissionChange() {
+    UserRole existedUserRole = assembleUserRole(someUser, 1);
+    Role role = new Role();
+    role.setId(1);
+    when(roleRepository.findTopByRoleName("someRole")).thenReturn(role);
+    when(userRoleRepository.findByUserIdInAndRoleId(any(), any(Long.class)))
+        .thenReturn(Lists.newArrayList(existedUserRole));
+
+    rolePermissionService.assignRoleToUsers("someRole", Sets.newHashSet(someUser, anotherUser), "operator");
+    rolePermissionService.removeRoleFromUsers("someRole", Sets.newHashSet(someUser), "operator");
+
+    ArgumentCaptor<ApplicationEvent> events = ArgumentCaptor.forClass(ApplicationEvent.class);
+    verify(publisher, times(2)).publishEvent(events.capture());
+    //only the users whose roles changed
+    assertEquals(Sets.newHashSet(anotherUser),
+        ((UserPermissionChangeEvent) events.getAllValues().get(0)).getUserIds());
+    assertEquals(Sets.newHashSet(someUser),
+        ((UserPermissionChangeEvent) events.getAllValues().get(1)).getUserIds());
+  }
+
+  private UserRole assembleUserRole(String userId, long roleId) {
+    UserRole userRole = new UserRole();
+    userRole.setUserId(userId);
+    userRole.setRoleId(roleId);
+    return userRole;
+  }
+
+  private RolePermission assembleRolePermission(long roleId, long permissionId) {
+    RolePermission rolePermission = new RolePermission();
+    rolePermission.setRoleId(roleId);
+    rolePermission.setPermissionId(permissionId);
+    return rolePermission;
+  }
+
+  private Permission assemblePermission(long id, String permissionType, String targetId) {
+    Permission permission = new Permission();
+    permission.setId(id);
+    permission.setPermissionType(permissionType);
+    permission.setTargetId(targetId);
+    return permission;
+  }
+}
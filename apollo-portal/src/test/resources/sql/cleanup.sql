@@ -18,6 +18,7 @@ DELETE FROM "AppNamespace";
 DELETE FROM "Authorities";
 DELETE FROM "Consumer";
 DELETE FROM "ConsumerAudit";
+DELETE FROM "ConsumerRateLimitWindow";
 DELETE FROM "ConsumerRole";
 DELETE FROM "ConsumerToken";
 DELETE FROM "Favorite";
@@ -131,6 +131,24 @@ CREATE TABLE `ConsumerAudit` (
 
 
 
+-- Dump of table consumerratelimitwindow
+-- ------------------------------------------------------------
+
+
+CREATE TABLE `ConsumerRateLimitWindow` (
+  `Id` bigint(20) unsigned NOT NULL AUTO_INCREMENT COMMENT '自增Id',
+  `Token` varchar(128) NOT NULL DEFAULT '' COMMENT 'token',
+  `WindowStart` bigint(20) NOT NULL DEFAULT '0' COMMENT '当前时间窗口的开始时间戳（毫秒）',
+  `PermitCount` int(11) NOT NULL DEFAULT '0' COMMENT '当前时间窗口内已租出的许可数',
+  `PreviousPermitCount` int(11) NOT NULL DEFAULT '0' COMMENT '上一个时间窗口内已租出的许可数',
+  `DataChange_CreatedTime` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `DataChange_LastTime` timestamp NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '最后修改时间',
+  PRIMARY KEY (`Id`),
+  UNIQUE KEY `ConsumerRateLimitWindow_UK_Token` (`Token`)
+)   COMMENT='开放API集群限流的时间窗口，每个token一行';
+
+
+
 -- Dump of table consumerrole
 -- ------------------------------------------------------------
 
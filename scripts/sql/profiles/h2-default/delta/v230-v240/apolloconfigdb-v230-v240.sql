@@ -55,6 +55,39 @@ ALTER TABLE `Namespace` ADD INDEX `Namespace_IX_NamespaceName`  (`NamespaceName`
 ALTER TABLE `Release` DROP INDEX `Release_AppId_ClusterName_GroupName`;
 ALTER TABLE `Release` ADD INDEX `Release_AppId_ClusterName_GroupName`  (`AppId`,`ClusterName`,`NamespaceName`);
 
+CREATE TABLE `NamespaceInstanceCount` (
+  `Id` int(11) unsigned NOT NULL AUTO_INCREMENT COMMENT '自增Id',
+  `ConfigAppId` varchar(64) NOT NULL DEFAULT 'default' COMMENT 'Config App Id',
+  `ConfigClusterName` varchar(32) NOT NULL DEFAULT 'default' COMMENT 'Config Cluster Name',
+  `ConfigNamespaceName` varchar(32) NOT NULL DEFAULT 'default' COMMENT 'Config Namespace Name',
+  `ReleaseKey` varchar(64) NOT NULL DEFAULT '' COMMENT '发布的Key',
+  `InstanceCount` bigint(20) NOT NULL DEFAULT '0' COMMENT '获取该发布的实例数',
+  `DataChange_CreatedTime` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `DataChange_LastTime` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '最后修改时间',
+  PRIMARY KEY (`Id`),
+  UNIQUE KEY `NamespaceInstanceCount_UK_Namespace_ReleaseKey` (`ConfigAppId`,`ConfigClusterName`,`ConfigNamespaceName`,`ReleaseKey`)
+)   COMMENT='namespace的实例数';
+
+CREATE TABLE `ReleasePayload` (
+  `Id` int(11) unsigned NOT NULL AUTO_INCREMENT COMMENT '自增主键',
+  `Hash` varchar(64) NOT NULL DEFAULT '' COMMENT '配置的sha256值',
+  `Configurations` longtext NOT NULL COMMENT '发布配置',
+  `DataChange_CreatedTime` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  PRIMARY KEY (`Id`),
+  UNIQUE KEY `ReleasePayload_UK_Hash` (`Hash`)
+)   COMMENT='按内容去重的发布配置';
+
+CREATE TABLE `JobLease` (
+  `Id` int(11) unsigned NOT NULL AUTO_INCREMENT COMMENT '自增Id',
+  `JobName` varchar(64) NOT NULL DEFAULT '' COMMENT '后台任务名',
+  `Owner` varchar(128) NOT NULL DEFAULT '' COMMENT '持有租约的服务实例',
+  `ExpireTime` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '租约过期时间',
+  `DataChange_CreatedTime` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `DataChange_LastTime` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '最后修改时间',
+  PRIMARY KEY (`Id`),
+  UNIQUE KEY `JobLease_UK_JobName` (`JobName`)
+)   COMMENT='后台任务的租约，同一时间只有一个服务实例执行任务';
+
 -- 
 -- ===============================================================================
 -- ==                                                                           ==
@@ -255,6 +255,24 @@ CREATE TABLE `Item` (
 
 
 
+-- Dump of table joblease
+-- ------------------------------------------------------------
+
+DROP TABLE IF EXISTS `JobLease`;
+
+CREATE TABLE `JobLease` (
+  `Id` int(11) unsigned NOT NULL AUTO_INCREMENT COMMENT '自增Id',
+  `JobName` varchar(64) NOT NULL DEFAULT '' COMMENT '后台任务名',
+  `Owner` varchar(128) NOT NULL DEFAULT '' COMMENT '持有租约的服务实例',
+  `ExpireTime` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '租约过期时间',
+  `DataChange_CreatedTime` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `DataChange_LastTime` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '最后修改时间',
+  PRIMARY KEY (`Id`),
+  UNIQUE KEY `UK_JobName` (`JobName`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='后台任务的租约，同一时间只有一个服务实例执行任务';
+
+
+
 -- Dump of table namespace
 -- ------------------------------------------------------------
 
@@ -300,6 +318,26 @@ CREATE TABLE `NamespaceLock` (
 
 
 
+-- Dump of table namespaceinstancecount
+-- ------------------------------------------------------------
+
+DROP TABLE IF EXISTS `NamespaceInstanceCount`;
+
+CREATE TABLE `NamespaceInstanceCount` (
+  `Id` int(11) unsigned NOT NULL AUTO_INCREMENT COMMENT '自增Id',
+  `ConfigAppId` varchar(64) NOT NULL DEFAULT 'default' COMMENT 'Config App Id',
+  `ConfigClusterName` varchar(32) NOT NULL DEFAULT 'default' COMMENT 'Config Cluster Name',
+  `ConfigNamespaceName` varchar(32) NOT NULL DEFAULT 'default' COMMENT 'Config Namespace Name',
+  `ReleaseKey` varchar(64) NOT NULL DEFAULT '' COMMENT '发布的Key',
+  `InstanceCount` bigint(20) NOT NULL DEFAULT '0' COMMENT '获取该发布的实例数',
+  `DataChange_CreatedTime` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `DataChange_LastTime` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '最后修改时间',
+  PRIMARY KEY (`Id`),
+  UNIQUE KEY `UK_Namespace_ReleaseKey` (`ConfigAppId`,`ConfigClusterName`,`ConfigNamespaceName`,`ReleaseKey`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='namespace的实例数';
+
+
+
 -- Dump of table release
 -- ------------------------------------------------------------
 
@@ -328,6 +366,23 @@ CREATE TABLE `Release` (
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='发布';
 
 
+
+-- Dump of table releasepayload
+-- ------------------------------------------------------------
+
+DROP TABLE IF EXISTS `ReleasePayload`;
+
+CREATE TABLE `ReleasePayload` (
+  `Id` int(11) unsigned NOT NULL AUTO_INCREMENT COMMENT '自增主键',
+  `Hash` varchar(64) NOT NULL DEFAULT '' COMMENT '配置的sha256值',
+  `Configurations` longtext NOT NULL COMMENT '发布配置',
+  `DataChange_CreatedTime` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  PRIMARY KEY (`Id`),
+  UNIQUE KEY `UK_Hash` (`Hash`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='按内容去重的发布配置';
+
+
+
 -- Dump of table releasehistory
 -- ------------------------------------------------------------
 